@@ -0,0 +1,101 @@
+package com.productivityx.bench;
+
+import com.productivityx.model.telemetry.ActivityBucket;
+import com.productivityx.repository.telemetry.ActivityBucketRepositoryImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ActivityBucketRepositoryImpl#saveAllIgnoreConflict} against a real PostgreSQL with the
+ * Flyway schema applied (start the backend once, or use the docker-compose database).
+ * Connection: {@code -Dbench.jdbc.url}, {@code -Dbench.jdbc.user}, {@code -Dbench.jdbc.password};
+ * defaults match docker-compose. Pass them via
+ * {@code -Djmh.args="BucketInsert -f 1 -jvmArgs -Dbench.jdbc.url=..."}.
+ * <p>
+ * {@code fresh} inserts new rows every invocation; {@code replay} re-sends rows that already
+ * exist, i.e. the agent-retry path where every row hits {@code ON CONFLICT DO NOTHING}.
+ * Rows are written under a throwaway device id and deleted after the trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class BucketInsertBenchmark {
+
+    @Param({"100", "2000"})
+    public int buckets;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private ActivityBucketRepositoryImpl repository;
+    private String deviceId;
+    private UUID tenantId;
+    private UUID orgId;
+    private LocalDateTime nextStart;
+    private List<ActivityBucket> existing;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource(
+                System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5432/focusdb"),
+                System.getProperty("bench.jdbc.user", "focus"),
+                System.getProperty("bench.jdbc.password", "focuspass"),
+                true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        repository = new ActivityBucketRepositoryImpl(jdbcTemplate);
+
+        deviceId = "bench-" + UUID.randomUUID();
+        tenantId = UUID.randomUUID();
+        orgId = UUID.randomUUID();
+        nextStart = LocalDateTime.of(2023, 10, 27, 0, 0);
+
+        existing = nextBatch();
+        repository.saveAllIgnoreConflict(existing);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM activity_buckets WHERE device_id = ?", deviceId);
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public int fresh() {
+        return repository.saveAllIgnoreConflict(nextBatch());
+    }
+
+    @Benchmark
+    public int replay() {
+        return repository.saveAllIgnoreConflict(existing);
+    }
+
+    /** Buckets continue where the previous batch ended, so every call inserts new keys. */
+    private List<ActivityBucket> nextBatch() {
+        UUID batchId = UUID.randomUUID();
+        List<ActivityBucket> batch = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            ActivityBucket bucket = new ActivityBucket();
+            bucket.setId(UUID.randomUUID());
+            bucket.setTenantId(tenantId);
+            bucket.setOrgId(orgId);
+            bucket.setDeviceId(deviceId);
+            bucket.setBucketStart(nextStart);
+            bucket.setBucketMinutes(5);
+            bucket.setActiveSeconds(240);
+            bucket.setIdleSeconds(60);
+            bucket.setAvgFocusScore(70);
+            bucket.setIngestBatchId(batchId);
+            batch.add(bucket);
+            nextStart = nextStart.plusMinutes(5);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,171 @@
+package com.productivityx.bench;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStream;
+import com.productivityx.dto.ingest.IngestBatchDTO;
+import com.productivityx.util.IngestHelper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Decode cost of one agent upload per wire format: the current ISO-timestamp JSON (plain, gzip,
+ * zstd) against CBOR with epoch-millisecond timestamps. Each variant also resolves every event
+ * timestamp the way {@code IngestService} does, since that is part of the per-batch CPU.
+ * Encoded sizes are reported as secondary results by {@link Sizes}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class IngestCodecBenchmark {
+
+    @Param({"100", "2000"})
+    public int events;
+
+    private ObjectMapper json;
+    private ObjectMapper cbor;
+    private byte[] jsonBytes;
+    private byte[] gzipBytes;
+    private byte[] zstdBytes;
+    private byte[] cborBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        json = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        cbor = json.copyWith(new CBORFactory());
+
+        jsonBytes = json.writeValueAsBytes(batch(events, false));
+        gzipBytes = gzip(jsonBytes);
+        zstdBytes = Zstd.compress(jsonBytes, 3);
+        cborBytes = cbor.writeValueAsBytes(batch(events, true));
+    }
+
+    /** Encoded payload sizes in bytes, one secondary result per format. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+        public long jsonBytes;
+        public long gzipBytes;
+        public long zstdBytes;
+        public long cborBytes;
+
+        @Setup(Level.Iteration)
+        public void setUp(IngestCodecBenchmark bench) {
+            jsonBytes = bench.jsonBytes.length;
+            gzipBytes = bench.gzipBytes.length;
+            zstdBytes = bench.zstdBytes.length;
+            cborBytes = bench.cborBytes.length;
+        }
+    }
+
+    @Benchmark
+    public void jsonIso(Sizes sizes, Blackhole bh) throws IOException {
+        consume(json.readValue(jsonBytes, IngestBatchDTO.class), bh);
+    }
+
+    @Benchmark
+    public void jsonIsoGzip(Sizes sizes, Blackhole bh) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipBytes))) {
+            consume(json.readValue(in, IngestBatchDTO.class), bh);
+        }
+    }
+
+    @Benchmark
+    public void jsonIsoZstd(Sizes sizes, Blackhole bh) throws IOException {
+        try (InputStream in = new ZstdInputStream(new ByteArrayInputStream(zstdBytes))) {
+            consume(json.readValue(in, IngestBatchDTO.class), bh);
+        }
+    }
+
+    @Benchmark
+    public void cborEpochMs(Sizes sizes, Blackhole bh) throws IOException {
+        consume(cbor.readValue(cborBytes, IngestBatchDTO.class), bh);
+    }
+
+    private static void consume(IngestBatchDTO batch, Blackhole bh) {
+        for (IngestBatchDTO.AppPayload e : batch.getApp_events()) {
+            bh.consume(IngestHelper.timestamp(e.getTs_start_ms(), e.getTs_start()));
+            bh.consume(IngestHelper.timestamp(e.getTs_end_ms(), e.getTs_end()));
+        }
+        for (IngestBatchDTO.WebPayload e : batch.getWeb_events()) {
+            bh.consume(IngestHelper.timestamp(e.getTs_start_ms(), e.getTs_start()));
+            bh.consume(IngestHelper.timestamp(e.getTs_end_ms(), e.getTs_end()));
+        }
+        for (IngestBatchDTO.FilePayload e : batch.getFile_events()) {
+            bh.consume(IngestHelper.timestamp(e.getTimestamp_ms(), e.getTimestamp()));
+        }
+    }
+
+    /** A catch-up upload shaped like {@code sample-ingest.json}, {@code n} events per section. */
+    static IngestBatchDTO batch(int n, boolean epochMs) {
+        long base = Instant.parse("2023-10-27T10:00:00Z").toEpochMilli();
+        List<IngestBatchDTO.AppPayload> apps = new ArrayList<>(n);
+        List<IngestBatchDTO.WebPayload> webs = new ArrayList<>(n);
+        List<IngestBatchDTO.FilePayload> files = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            long start = base + i * 60_000L;
+            long end = start + 45_000L;
+
+            IngestBatchDTO.AppPayload app = new IngestBatchDTO.AppPayload();
+            app.setId(UUID.randomUUID());
+            app.setApp_name(i % 3 == 0 ? "IntelliJ IDEA" : "Microsoft Teams");
+            app.setProcess_name(i % 3 == 0 ? "idea64.exe" : "ms-teams.exe");
+            IngestBatchDTO.WebPayload web = new IngestBatchDTO.WebPayload();
+            web.setId(UUID.randomUUID());
+            web.setDomain("site" + (i % 40) + ".example.com");
+            IngestBatchDTO.FilePayload file = new IngestBatchDTO.FilePayload();
+            file.setId(UUID.randomUUID());
+            file.setOperation("MODIFY");
+            file.setFile_path("C:\\Users\\User\\Documents\\project\\file" + i + ".docx");
+            file.setFile_name("file" + i + ".docx");
+            file.setSize_bytes(1024L * i);
+
+            if (epochMs) {
+                app.setTs_start_ms(start);
+                app.setTs_end_ms(end);
+                web.setTs_start_ms(start);
+                web.setTs_end_ms(end);
+                file.setTimestamp_ms(end);
+            } else {
+                app.setTs_start(Instant.ofEpochMilli(start).toString());
+                app.setTs_end(Instant.ofEpochMilli(end).toString());
+                web.setTs_start(Instant.ofEpochMilli(start).toString());
+                web.setTs_end(Instant.ofEpochMilli(end).toString());
+                file.setTimestamp(Instant.ofEpochMilli(end).toString());
+            }
+            apps.add(app);
+            webs.add(web);
+            files.add(file);
+        }
+        IngestBatchDTO batch = new IngestBatchDTO();
+        batch.setSchemaVersion("1.0");
+        batch.setApp_events(apps);
+        batch.setWeb_events(webs);
+        batch.setFile_events(files);
+        return batch;
+    }
+
+    private static byte[] gzip(byte[] raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(raw);
+        }
+        return out.toByteArray();
+    }
+}
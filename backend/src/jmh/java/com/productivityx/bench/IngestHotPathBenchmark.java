@@ -0,0 +1,96 @@
+package com.productivityx.bench;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.dto.ingest.IngestBatchDTO;
+import com.productivityx.model.telemetry.AppUsageEvent;
+import com.productivityx.model.telemetry.FileEvent;
+import com.productivityx.service.DeviceContext;
+import com.productivityx.service.IngestMapper;
+import com.productivityx.service.IngestResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU stages of {@code IngestService.processBatch} without the database: decoding the upload,
+ * mapping app and file events to entities (file mapping includes the SHA-256 path hashes) and the
+ * per-day rollup of activity buckets. Baseline for ingest optimisations; compare runs with the
+ * same {@code events} parameter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class IngestHotPathBenchmark {
+
+    @Param({"100", "2000"})
+    public int events;
+
+    private ObjectMapper json;
+    private byte[] jsonBytes;
+    private IngestBatchDTO batch;
+    private IngestMapper.Target target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        json = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        batch = IngestCodecBenchmark.batch(events, false);
+        batch.setActivity_buckets(buckets(events));
+        jsonBytes = json.writeValueAsBytes(batch);
+
+        DeviceContext device = new DeviceContext("bench-device", UUID.randomUUID(), UUID.randomUUID(), null);
+        target = IngestMapper.Target.of(device, UUID.randomUUID());
+    }
+
+    @Benchmark
+    public IngestBatchDTO deserialize() throws IOException {
+        return json.readValue(jsonBytes, IngestBatchDTO.class);
+    }
+
+    @Benchmark
+    public List<AppUsageEvent> mapAppEvents() {
+        IngestResponse response = new IngestResponse();
+        return IngestMapper.mapAll(batch.getApp_events(), e -> IngestMapper.toAppEvent(e, target, response));
+    }
+
+    @Benchmark
+    public List<FileEvent> mapFileEvents() {
+        IngestResponse response = new IngestResponse();
+        return IngestMapper.mapAll(batch.getFile_events(), e -> IngestMapper.toFileEvent(e, target, response));
+    }
+
+    @Benchmark
+    public Map<LocalDate, IngestMapper.DailyTotals> dailyTotals() {
+        IngestResponse response = new IngestResponse();
+        Map<LocalDate, IngestMapper.DailyTotals> totals = new HashMap<>();
+        IngestMapper.addBucketTotals(IngestMapper.mapAll(batch.getActivity_buckets(), b -> IngestMapper.toBucket(b, target, response)), totals);
+        return totals;
+    }
+
+    /** Consecutive 5-minute buckets, so larger uploads span several days. */
+    static List<IngestBatchDTO.BucketPayload> buckets(int n) {
+        long base = Instant.parse("2023-10-27T00:00:00Z").toEpochMilli();
+        List<IngestBatchDTO.BucketPayload> buckets = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            IngestBatchDTO.BucketPayload b = new IngestBatchDTO.BucketPayload();
+            b.setBucket_start(Instant.ofEpochMilli(base + i * 300_000L).toString());
+            b.setBucket_minutes(5);
+            b.setActive_seconds(240 - i % 60);
+            b.setIdle_seconds(60 + i % 60);
+            b.setAvg_focus_score(i % 100);
+            buckets.add(b);
+        }
+        return buckets;
+    }
+}
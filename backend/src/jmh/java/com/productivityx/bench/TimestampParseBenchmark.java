@@ -0,0 +1,46 @@
+package com.productivityx.bench;
+
+import com.productivityx.util.IsoTimestampParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link IsoTimestampParser} against the previous exception-driven {@code IngestHelper.parseIso}
+ * (OffsetDateTime.parse, falling back to LocalDateTime.parse) for each timestamp form agents send.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class TimestampParseBenchmark {
+
+    @Param({"2023-10-27T10:00:00Z", "2023-10-27T10:00:00.123+02:00", "2023-10-27T10:00:00"})
+    public String value;
+
+    @Benchmark
+    public LocalDateTime handRolled() {
+        return IsoTimestampParser.parseUtc(value);
+    }
+
+    @Benchmark
+    public long handRolledEpochMillis() {
+        return IsoTimestampParser.parseEpochMillis(value);
+    }
+
+    @Benchmark
+    public LocalDateTime javaTimeWithFallback() {
+        try {
+            return OffsetDateTime.parse(value).toLocalDateTime();
+        } catch (Exception e1) {
+            try {
+                return LocalDateTime.parse(value);
+            } catch (Exception e2) {
+                return LocalDateTime.now();
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.productivityx.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+
+/**
+ * Agent upload codecs: compressed request bodies on the ingest API and {@code application/cbor}
+ * as a compact alternative to JSON.
+ */
+@Configuration
+public class IngestCodecConfig {
+
+    @Bean
+    public FilterRegistrationBean<RequestDecompressionFilter> requestDecompressionFilter(
+            @Value("${productivityx.ingest.max-decompressed-bytes:67108864}") long maxDecompressedBytes) {
+        FilterRegistrationBean<RequestDecompressionFilter> registration =
+                new FilterRegistrationBean<>(new RequestDecompressionFilter(maxDecompressedBytes));
+        registration.addUrlPatterns("/api/ingest/*");
+        // Before request logging/security so everything downstream sees the plain body.
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    /**
+     * Uses a copy of the Boot-configured JSON mapper so CBOR bodies bind exactly like JSON ones.
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(ObjectMapper objectMapper) {
+        return new MappingJackson2CborHttpMessageConverter(objectMapper.copyWith(new CBORFactory()));
+    }
+}
@@ -0,0 +1,197 @@
+package com.productivityx.config;
+
+import com.github.luben.zstd.ZstdInputStream;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Inflates agent uploads sent with {@code Content-Encoding: gzip}, {@code deflate} or {@code zstd}
+ * so controllers read plain JSON/CBOR. The decompressed size is capped to protect against
+ * compression bombs; other encodings are answered with 415.
+ */
+@Slf4j
+public class RequestDecompressionFilter extends OncePerRequestFilter {
+
+    private final long maxDecompressedBytes;
+
+    public RequestDecompressionFilter(long maxDecompressedBytes) {
+        this.maxDecompressedBytes = maxDecompressedBytes;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        if (encoding == null || encoding.isBlank() || "identity".equalsIgnoreCase(encoding.trim())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String codec = encoding.trim().toLowerCase(Locale.ROOT);
+        if (!codec.equals("gzip") && !codec.equals("deflate") && !codec.equals("zstd")) {
+            log.warn("Unsupported Content-Encoding '{}' on {}", encoding, request.getRequestURI());
+            response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported Content-Encoding: " + encoding);
+            return;
+        }
+        chain.doFilter(new DecompressedRequest(request, codec, maxDecompressedBytes), response);
+    }
+
+    private static InputStream open(String codec, InputStream raw) throws IOException {
+        InputStream buffered = new BufferedInputStream(raw);
+        return switch (codec) {
+            case "gzip" -> new GZIPInputStream(buffered, 8192);
+            case "deflate" -> new InflaterInputStream(buffered);
+            default -> new ZstdInputStream(buffered);
+        };
+    }
+
+    private static class DecompressedRequest extends HttpServletRequestWrapper {
+        private final String codec;
+        private final long limit;
+        private ServletInputStream stream;
+
+        DecompressedRequest(HttpServletRequest request, String codec, long limit) {
+            super(request);
+            this.codec = codec;
+            this.limit = limit;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (stream == null) {
+                ServletInputStream raw = super.getInputStream();
+                stream = new LimitedServletInputStream(raw, open(codec, raw), limit);
+            }
+            return stream;
+        }
+
+        // The body length after inflating is unknown, and the encoding no longer applies.
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)) return null;
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) return null;
+            return super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                return Collections.emptyEnumeration();
+            }
+            return super.getHeaders(name);
+        }
+    }
+
+    private static class LimitedServletInputStream extends ServletInputStream {
+        private final ServletInputStream raw;
+        private final InputStream in;
+        private final long limit;
+        private long count;
+        private volatile boolean finished;
+        private volatile boolean nonBlocking;
+
+        LimitedServletInputStream(ServletInputStream raw, InputStream in, long limit) {
+            this.raw = raw;
+            this.in = in;
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                finished = true;
+            } else {
+                consumed(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = in.read(buf, off, len);
+            if (n < 0) {
+                finished = true;
+            } else {
+                consumed(n);
+            }
+            return n;
+        }
+
+        private void consumed(int n) throws IOException {
+            count += n;
+            if (count > limit) {
+                throw new IOException("Decompressed request body exceeds " + limit + " bytes");
+            }
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            // Blocking reads are always allowed; non-blocking readers follow the compressed stream
+            return !nonBlocking || finished || raw.isReady();
+        }
+
+        /**
+         * Readiness is that of the compressed body, so a read after {@code onDataAvailable} may
+         * still wait briefly for the rest of a compressed block.
+         */
+        @Override
+        public void setReadListener(ReadListener listener) {
+            nonBlocking = true;
+            raw.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    listener.onDataAvailable();
+                }
+
+                @Override
+                public void onAllDataRead() throws IOException {
+                    finished = true;
+                    listener.onAllDataRead();
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    listener.onError(t);
+                }
+            });
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
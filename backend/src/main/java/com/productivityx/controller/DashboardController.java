@@ -6,6 +6,8 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.UUID;
+
 @RestController
 @RequestMapping("/api/dashboard")
 @RequiredArgsConstructor
@@ -15,10 +17,18 @@ public class DashboardController {
 
     @GetMapping
     public ResponseEntity<DashboardDataDTO> getDashboardData(
+            @RequestAttribute(value = "tenantId", required = false) UUID tenantId,
             @RequestParam(defaultValue = "TODAY") String range,
             @RequestParam(defaultValue = "ORG") String scopeType,
             @RequestParam(required = false) String scopeId) {
-        
-        return ResponseEntity.ok(dashboardService.getDashboardData(range, scopeType, scopeId));
+
+        // Mock Auth context if missing (MVP)
+        if (tenantId == null) tenantId = UUID.fromString("10000000-0000-0000-0000-000000000001");
+
+        try {
+            return ResponseEntity.ok(dashboardService.getDashboardData(tenantId, range, scopeType, scopeId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 }
@@ -2,6 +2,9 @@ package com.productivityx.controller;
 
 import com.productivityx.model.Device;
 import com.productivityx.repository.DeviceRepository;
+import com.productivityx.service.DeviceContextCache;
+import com.productivityx.service.DevicePresenceTracker;
+import com.productivityx.service.PolicySnapshotIndex;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -14,6 +17,9 @@ import java.util.List;
 public class DeviceController {
 
     private final DeviceRepository deviceRepository;
+    private final DeviceContextCache deviceContextCache;
+    private final DevicePresenceTracker presenceTracker;
+    private final PolicySnapshotIndex snapshotIndex;
 
     @GetMapping
     public ResponseEntity<List<Device>> listDevices() {
@@ -22,30 +28,31 @@ public class DeviceController {
 
     @PutMapping("/{id}")
     public ResponseEntity<Device> updateDevice(@PathVariable String id, @RequestBody Device device) {
+        // Targeted UPDATE: saving the whole entity would overwrite last_seen_at/agent_version
+        // flushed by DevicePresenceTracker since it was read
+        if (deviceRepository.updateDetails(id, device.getName(), device.getStatus(), device.getGroupId()) == 0) {
+            return ResponseEntity.notFound().build();
+        }
+        deviceContextCache.invalidate(id);
+        // A new group can change the effective policy
+        snapshotIndex.deviceChanged(id);
         return deviceRepository.findById(id)
-            .map(existing -> {
-                existing.setName(device.getName());
-                existing.setStatus(device.getStatus());
-                existing.setGroupId(device.getGroupId());
-                return ResponseEntity.ok(deviceRepository.save(existing));
-            })
+            .map(ResponseEntity::ok)
             .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteDevice(@PathVariable String id) {
         deviceRepository.deleteById(id);
+        deviceContextCache.invalidate(id);
+        snapshotIndex.deviceChanged(id);
         return ResponseEntity.noContent().build();
     }
 
     @PostMapping("/{id}/heartbeat")
     public ResponseEntity<Void> heartbeat(@PathVariable String id, @RequestBody HeartbeatRequest request) {
-        deviceRepository.findById(id).ifPresent(device -> {
-             device.setLastSeenAt(java.time.LocalDateTime.now());
-             // Update other fields if needed (e.g. status)
-             device.setStatus("ONLINE");
-             deviceRepository.save(device);
-        });
+        // Unknown ids are harmless: the batched UPDATE simply matches no row.
+        presenceTracker.record(id, request.getAgentVersion(), false);
         return ResponseEntity.ok().build();
     }
     
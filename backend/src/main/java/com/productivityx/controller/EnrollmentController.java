@@ -8,6 +8,8 @@ import com.productivityx.repository.DeviceRepository;
 import com.productivityx.repository.DeviceCertificateRepository;
 import com.productivityx.repository.EnrollmentTokenRepository;
 import com.productivityx.service.CertificateService;
+import com.productivityx.service.DeviceContextCache;
+import com.productivityx.service.PolicySnapshotIndex;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -28,6 +30,8 @@ public class EnrollmentController {
     private final DeviceRepository deviceRepository;
     private final DeviceCertificateRepository certificateRepository;
     private final CertificateService certificateService;
+    private final DeviceContextCache deviceContextCache;
+    private final PolicySnapshotIndex snapshotIndex;
 
     @PostMapping
     @Transactional
@@ -96,6 +100,9 @@ public class EnrollmentController {
         
         device.setCertThumbprint(thumbprint);
         deviceRepository.save(device);
+        // Re-enrollment can move a known fingerprint to another tenant or group
+        deviceContextCache.invalidate(device.getDeviceId());
+        snapshotIndex.deviceChanged(device.getDeviceId());
 
         // Store Cert Record
         DeviceCertificate cert = new DeviceCertificate();
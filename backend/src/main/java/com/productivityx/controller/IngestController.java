@@ -1,14 +1,24 @@
 package com.productivityx.controller;
 
 import com.productivityx.dto.ingest.IngestBatchDTO;
+import com.productivityx.dto.ingest.IngestReceipt;
+import com.productivityx.service.AsyncIngestPipeline;
+import com.productivityx.service.DeviceContextCache;
 import com.productivityx.service.IngestResponse;
 import com.productivityx.service.IngestService;
-import com.productivityx.service.TelemetryService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
 @RestController
 @RequestMapping("/api/ingest")
 @RequiredArgsConstructor
@@ -16,9 +26,11 @@ import org.springframework.web.bind.annotation.*;
 public class IngestController {
 
     private final IngestService ingestService;
+    private final AsyncIngestPipeline asyncPipeline;
+    private final DeviceContextCache deviceContextCache;
 
     @PostMapping("/batch")
-    public ResponseEntity<IngestResponse> ingestBatch(
+    public ResponseEntity<?> ingestBatch(
             @RequestHeader(value = "X-Device-ID", required = true) String deviceId,
             @RequestBody IngestBatchDTO batch) {
         
@@ -27,6 +39,10 @@ public class IngestController {
         
         // Validation: Header vs Body
         // (Assuming deviceId is consistent or checking it)
+
+        if (asyncPipeline.isEnabled()) {
+            return enqueueBatch(deviceId, batch);
+        }
         
         try {
             IngestResponse response = ingestService.processBatch(deviceId, batch);
@@ -39,4 +55,58 @@ public class IngestController {
             return ResponseEntity.internalServerError().build();
         }
     }
+
+    /**
+     * Same payload as {@code /batch} (JSON or CBOR), parsed incrementally for large catch-up
+     * uploads. Always processed synchronously: the async pipeline needs the whole batch to spool it.
+     */
+    @PostMapping(value = "/batch/stream", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<?> ingestBatchStream(
+            @RequestHeader(value = "X-Device-ID", required = true) String deviceId,
+            HttpServletRequest request) {
+
+        log.debug("Received streamed batch from device {}", deviceId);
+        boolean cbor = MediaType.APPLICATION_CBOR.isCompatibleWith(MediaType.parseMediaType(request.getContentType()));
+
+        try (InputStream body = request.getInputStream()) {
+            IngestResponse response = ingestService.processStream(deviceId, body, cbor);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid ingest request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Ingest failed", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    private ResponseEntity<?> enqueueBatch(String deviceId, IngestBatchDTO batch) {
+        try {
+            ingestService.validateBatch(batch);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid ingest request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        // Checked before the 202: a batch from an unknown device would only be dropped by the worker
+        if (deviceContextCache.find(deviceId).isEmpty()) {
+            log.warn("Invalid ingest request: Device not found: {}", deviceId);
+            return ResponseEntity.badRequest().build();
+        }
+
+        Optional<IngestReceipt> receipt;
+        try {
+            receipt = asyncPipeline.submit(deviceId, batch);
+        } catch (UncheckedIOException e) {
+            // Spool disk full or failing: not accepted, the agent keeps the batch and retries
+            log.error("Ingest spool unavailable: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(asyncPipeline.getRetryAfterSeconds()))
+                    .build();
+        }
+        return receipt
+                .<ResponseEntity<?>>map(r -> ResponseEntity.accepted().body(r))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(asyncPipeline.getRetryAfterSeconds()))
+                        .build());
+    }
 }
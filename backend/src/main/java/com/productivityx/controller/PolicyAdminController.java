@@ -2,6 +2,7 @@ package com.productivityx.controller;
 
 import com.productivityx.dto.policy.PolicyPackDTO;
 import com.productivityx.dto.policy.PolicySnapshotDTO;
+import com.productivityx.service.PolicyAckAggregator;
 import com.productivityx.service.PolicyService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -19,6 +20,7 @@ public class PolicyAdminController {
     private final PolicyService policyService;
     private final com.productivityx.repository.PolicyPackRepository policyPackRepository;
     private final com.productivityx.repository.PolicyAssignmentRepository assignmentRepository;
+    private final PolicyAckAggregator ackAggregator;
 
     @PostMapping("/policies")
     public ResponseEntity<PolicyPackDTO> createPolicy(
@@ -78,13 +80,42 @@ public class PolicyAdminController {
         if (orgId == null) orgId = UUID.fromString("10000000-0000-0000-0000-000000000001");
         if (userId == null) userId = UUID.fromString("20000000-0000-0000-0000-000000000001");
 
-        String deviceId = (String) request.get("deviceId");
-        UUID policyId = UUID.fromString((String) request.get("policyId"));
-        
-        policyService.assignPolicy(tenantId, orgId, userId, deviceId, policyId);
-        return ResponseEntity.ok().build();
+        // Legacy body: {deviceId, policyId}. Otherwise {targetType: DEVICE|GROUP|ORG|TENANT, targetId, policyId, priority}
+        String targetType = (String) request.getOrDefault("targetType", "DEVICE");
+        String targetId = (String) request.getOrDefault("targetId", request.get("deviceId"));
+        Integer priority = request.get("priority") instanceof Number n ? n.intValue() : null;
+        try {
+            UUID policyId = UUID.fromString((String) request.get("policyId"));
+            return ResponseEntity.ok(policyService.assignPolicy(tenantId, orgId, userId,
+                    targetType.toUpperCase(), targetId, policyId, priority));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
     
+    /**
+     * Live rollout progress: devices that acked the version (default: the published one) by
+     * status, as counted by this node.
+     */
+    @GetMapping("/policies/{id}/rollout")
+    public ResponseEntity<PolicyAckAggregator.RolloutProgress> rolloutProgress(
+            @PathVariable UUID id,
+            @RequestParam(required = false) Integer version,
+            @RequestAttribute(value = "tenantId", required = false) UUID tenantId) {
+
+        if (tenantId == null) tenantId = UUID.fromString("10000000-0000-0000-0000-000000000001");
+
+        UUID tenant = tenantId;
+        return policyPackRepository.findById(id)
+                .filter(policy -> tenant.equals(policy.getTenantId()))
+                .map(policy -> {
+                    int v = version != null ? version
+                            : policy.getPublishedVersion() == null ? 0 : policy.getPublishedVersion();
+                    return ResponseEntity.ok(ackAggregator.progress(id, v));
+                })
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @GetMapping("/policies")
     public ResponseEntity<List<com.productivityx.model.policy.PolicyPack>> listPolicies(
             @RequestAttribute(value = "tenantId", required = false) UUID tenantId,
@@ -1,13 +1,23 @@
 package com.productivityx.controller;
 
 import com.productivityx.dto.policy.DevicePolicyAckDTO;
-import com.productivityx.dto.policy.PolicySnapshotDTO;
+import com.productivityx.service.PolicyAckAggregator;
 import com.productivityx.service.PolicyService;
+import com.productivityx.service.PolicySnapshotDeltas;
+import com.productivityx.service.PolicySnapshotIndex;
+import com.productivityx.service.PolicySnapshotWatcher;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import java.util.Locale;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 @RestController
@@ -16,41 +26,172 @@ import java.util.concurrent.TimeUnit;
 public class PolicyController {
 
     private final PolicyService policyService;
+    private final PolicySnapshotWatcher snapshotWatcher;
+    private final PolicySnapshotDeltas snapshotDeltas;
+    private final PolicyAckAggregator ackAggregator;
 
+    /** Sent with deltas, which carry only the config patch. */
+    private static final String POLICY_ID_HEADER = "X-Policy-Id";
+    private static final String POLICY_VERSION_HEADER = "X-Policy-Version";
+    private static final String BASE_VERSION_HEADER = "X-Policy-Base-Version";
+
+    /** JSON Patch media type (RFC 6902); agents that list it in {@code Accept} may be sent deltas. */
+    static final String JSON_PATCH = "application/json-patch+json";
+
+    /**
+     * Answered from the in-memory snapshot index: no query for a 304, pre-serialized JSON for a 200.
+     * An agent that sends its current ETag and accepts {@value #JSON_PATCH} gets a patch against the
+     * {@code snapshotJson} it holds when one is available; either body is gzipped if the agent
+     * accepts it.
+     */
     @GetMapping("/snapshot")
-    public ResponseEntity<PolicySnapshotDTO> getSnapshot(
+    public ResponseEntity<byte[]> getSnapshot(
             @RequestParam String deviceId,
-            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
             
-        return policyService.getSnapshotForDevice(deviceId, ifNoneMatch)
+        return policyService.getSnapshotForDevice(deviceId)
             .map(snapshot -> {
                 // If ETag matches, return 304
-                if (ifNoneMatch != null && ifNoneMatch.replace("\"", "").equals(snapshot.getEtag())) {
+                if (snapshot.matches(ifNoneMatch)) {
                     return ResponseEntity.status(304)
-                            .eTag(snapshot.getEtag())
-                            .body((PolicySnapshotDTO) null);
+                            .eTag(snapshot.etag())
+                            .<byte[]>build();
                 }
                 
-                return ResponseEntity.ok()
-                    .cacheControl(CacheControl.maxAge(60, TimeUnit.SECONDS))
-                    .eTag(snapshot.getEtag())
-                    .body(snapshot);
+                return snapshotResponse(snapshot, ifNoneMatch, accept, acceptEncoding,
+                        CacheControl.maxAge(60, TimeUnit.SECONDS));
             })
             .orElse(ResponseEntity.noContent().build()); // 204 if no assignment
     }
 
+    /**
+     * Long-poll variant of {@link #getSnapshot}: parks until the device's effective snapshot differs
+     * from {@code If-None-Match}, then answers as {@code /snapshot} would. Answers 304 (or 204 for an
+     * agent without a policy) when nothing changed within the timeout, and 429 when this node has
+     * no room for more parked agents. No servlet thread is held while parked.
+     */
+    @GetMapping("/snapshot/watch")
+    public DeferredResult<ResponseEntity<byte[]>> watchSnapshot(
+            @RequestParam String deviceId,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        String etag = ifNoneMatch == null ? null : ifNoneMatch.replace("\"", "");
+        DeferredResult<ResponseEntity<byte[]>> result = new DeferredResult<>(snapshotWatcher.getTimeoutMs());
+        result.onTimeout(() -> result.setResult(etag == null
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.status(304).eTag(etag).build()));
+
+        Optional<Runnable> cancel = snapshotWatcher.watch(deviceId, etag, snapshot -> result.setResult(snapshot
+                .map(current -> snapshotResponse(current, etag, accept, acceptEncoding, CacheControl.noCache()))
+                .orElseGet(() -> ResponseEntity.noContent().build())));
+        if (cancel.isEmpty()) {
+            result.setResult(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(snapshotWatcher.getRetryAfterSeconds()))
+                    .build());
+            return result;
+        }
+        result.onCompletion(cancel.get());
+        return result;
+    }
+
+    private ResponseEntity<byte[]> snapshotResponse(PolicySnapshotIndex.Snapshot snapshot, String heldEtag,
+                                                    String accept, String acceptEncoding, CacheControl cacheControl) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .eTag(snapshot.etag());
+
+        Optional<PolicySnapshotDeltas.Delta> delta = acceptsPatch(accept)
+                ? snapshotDeltas.find(snapshot, heldEtag)
+                : Optional.empty();
+        if (delta.isPresent()) {
+            // A patch only fits the version named by If-None-Match, which shared caches do not key on
+            response.cacheControl(CacheControl.noStore().cachePrivate())
+                    .contentType(MediaType.parseMediaType(JSON_PATCH))
+                    .header(POLICY_ID_HEADER, snapshot.policyId().toString())
+                    .header(POLICY_VERSION_HEADER, String.valueOf(snapshot.version()))
+                    .header(BASE_VERSION_HEADER, String.valueOf(delta.get().fromVersion()));
+            return encoded(response, delta.get().body(), delta.get().gzipBody(), acceptEncoding);
+        }
+        response.contentType(MediaType.APPLICATION_JSON);
+        return encoded(response, snapshot.body(), snapshot.gzipBody(), acceptEncoding);
+    }
+
+    /** Sends the pre-compressed body when there is one and the agent accepts gzip. */
+    private static ResponseEntity<byte[]> encoded(ResponseEntity.BodyBuilder response, byte[] body, byte[] gzipBody,
+                                                  String acceptEncoding) {
+        if (gzipBody != null && acceptsGzip(acceptEncoding)) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(gzipBody);
+        }
+        return response.body(body);
+    }
+
+    /** Whether {@code Accept} names {@value #JSON_PATCH} with a non-zero q; wildcards do not opt in. */
+    static boolean acceptsPatch(String accept) {
+        if (accept == null) return false;
+        try {
+            MediaType patch = MediaType.parseMediaType(JSON_PATCH);
+            return MediaType.parseMediaTypes(accept).stream()
+                    .anyMatch(type -> type.equalsTypeAndSubtype(patch) && type.getQualityValue() > 0);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether {@code Accept-Encoding} allows gzip: by its own q-value when listed, otherwise by that
+     * of {@code *}. A q of 0 means not acceptable.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        double wildcard = 0;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.length() > 2 && param.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equals("gzip") || name.equals("x-gzip")) return q > 0;
+            if (name.equals("*")) wildcard = q;
+        }
+        return wildcard > 0;
+    }
+
+    /** Queued and written in batches; 429 when the ack buffer is full. */
     @PostMapping("/ack")
     public ResponseEntity<Void> ackPolicy(@RequestBody DevicePolicyAckDTO ack) {
-        policyService.recordAck(
-            ack.getDeviceId(),
-            ack.getPolicyId(),
-            ack.getVersion(),
-            ack.getStatus(),
-            ack.getReason(),
-            ack.getAppliedAtMs(),
-            ack.getAgentVersion(),
-            ack.getClientEtag()
-        );
+        boolean accepted;
+        try {
+            accepted = policyService.recordAck(
+                ack.getDeviceId(),
+                ack.getPolicyId(),
+                ack.getVersion(),
+                ack.getStatus(),
+                ack.getReason(),
+                ack.getAppliedAtMs(),
+                ack.getAgentVersion(),
+                ack.getClientEtag()
+            );
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (!accepted) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(ackAggregator.getRetryAfterSeconds()))
+                    .build();
+        }
         return ResponseEntity.ok().build();
     }
 }
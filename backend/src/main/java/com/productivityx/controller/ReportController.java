@@ -1,7 +1,11 @@
 package com.productivityx.controller;
 
 import com.productivityx.model.DailyAggregate;
+import com.productivityx.model.RetentionPolicy;
+import com.productivityx.model.telemetry.DailyOrgSummary;
 import com.productivityx.repository.DailyAggregateRepository;
+import com.productivityx.repository.telemetry.DailyOrgSummaryRepository;
+import com.productivityx.service.TelemetryArchiveService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
@@ -9,6 +13,8 @@ import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/reports")
@@ -16,6 +22,8 @@ import java.util.List;
 public class ReportController {
 
     private final DailyAggregateRepository aggregateRepository;
+    private final DailyOrgSummaryRepository orgSummaryRepository;
+    private final TelemetryArchiveService archiveService;
 
     @GetMapping("/daily")
     public ResponseEntity<List<DailyAggregate>> getDailyReport(
@@ -27,4 +35,80 @@ public class ReportController {
         // For now, returning aggregates by date range
         return ResponseEntity.ok(aggregateRepository.findByDateBetween(from, to));
     }
+
+    /**
+     * One precomputed row per org and day (totals, active devices, top apps/domains, risk counters),
+     * maintained incrementally at ingest. Without {@code orgId}, all orgs of the tenant.
+     */
+    @GetMapping("/org-daily")
+    public ResponseEntity<List<DailyOrgSummary>> getOrgDailyReport(
+            @RequestAttribute(value = "tenantId", required = false) UUID tenantId,
+            @RequestParam(required = false) UUID orgId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+
+        // Mock Auth context if missing (MVP)
+        if (tenantId == null) tenantId = UUID.fromString("10000000-0000-0000-0000-000000000001");
+
+        if (from.isAfter(to)) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<DailyOrgSummary> rows = orgId != null
+                ? orgSummaryRepository.findByTenantIdAndOrgIdAndDateBetweenOrderByDateAsc(tenantId, orgId, from, to)
+                : orgSummaryRepository.findByTenantIdAndDateBetweenOrderByDateAscOrgIdAsc(tenantId, from, to);
+        return ResponseEntity.ok(rows);
+    }
+
+    /**
+     * Raw events of one telemetry table (e.g. {@code file_events}) for audits, oldest first. Ranges
+     * already archived out of PostgreSQL are read from the archive files.
+     */
+    @GetMapping("/raw-events")
+    public ResponseEntity<List<Map<String, Object>>> getRawEvents(
+            @RequestAttribute(value = "tenantId", required = false) UUID tenantId,
+            @RequestParam String table,
+            @RequestParam(required = false) String deviceId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "1000") int limit) {
+
+        // Mock Auth context if missing (MVP)
+        if (tenantId == null) tenantId = UUID.fromString("10000000-0000-0000-0000-000000000001");
+
+        if (from.isAfter(to) || limit < 1 || limit > 10_000) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            // "to" is inclusive, like the other reports
+            return ResponseEntity.ok(archiveService.readEvents(tenantId, table, deviceId,
+                    from.atStartOfDay(), to.plusDays(1).atStartOfDay(), limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/retention-policy")
+    public ResponseEntity<RetentionPolicy> getRetentionPolicy(
+            @RequestAttribute(value = "tenantId", required = false) UUID tenantId) {
+
+        // Mock Auth context if missing (MVP)
+        if (tenantId == null) tenantId = UUID.fromString("10000000-0000-0000-0000-000000000001");
+
+        return ResponseEntity.ok(archiveService.getPolicy(tenantId));
+    }
+
+    @PutMapping("/retention-policy")
+    public ResponseEntity<RetentionPolicy> updateRetentionPolicy(
+            @RequestAttribute(value = "tenantId", required = false) UUID tenantId,
+            @RequestBody RetentionPolicy policy) {
+
+        // Mock Auth context if missing (MVP)
+        if (tenantId == null) tenantId = UUID.fromString("10000000-0000-0000-0000-000000000001");
+
+        try {
+            return ResponseEntity.ok(archiveService.savePolicy(tenantId, policy.getHotDays(), policy.getArchiveDays()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
 }
@@ -0,0 +1,84 @@
+package com.productivityx.controller;
+
+import com.productivityx.model.telemetry.RiskRule;
+import com.productivityx.service.RiskRuleService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/admin/risk-rules")
+@RequiredArgsConstructor
+public class RiskRuleController {
+
+    private final RiskRuleService ruleService;
+
+    @GetMapping
+    public ResponseEntity<List<RiskRule>> listRules(
+            @RequestAttribute(value = "tenantId", required = false) UUID tenantId) {
+
+        // Mock Auth context if missing (MVP)
+        if (tenantId == null) tenantId = UUID.fromString("10000000-0000-0000-0000-000000000001");
+
+        return ResponseEntity.ok(ruleService.listRules(tenantId));
+    }
+
+    @PostMapping
+    public ResponseEntity<RiskRule> createRule(
+            @RequestAttribute(value = "tenantId", required = false) UUID tenantId,
+            @RequestBody RiskRule rule) {
+
+        if (tenantId == null) tenantId = UUID.fromString("10000000-0000-0000-0000-000000000001");
+
+        rule.setId(null);
+        try {
+            return ResponseEntity.ok(ruleService.saveRule(tenantId, rule));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (DataIntegrityViolationException e) {
+            return rejected(e);
+        }
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<RiskRule> updateRule(
+            @PathVariable UUID id,
+            @RequestAttribute(value = "tenantId", required = false) UUID tenantId,
+            @RequestBody RiskRule rule) {
+
+        if (tenantId == null) tenantId = UUID.fromString("10000000-0000-0000-0000-000000000001");
+
+        rule.setId(id);
+        try {
+            return ResponseEntity.ok(ruleService.saveRule(tenantId, rule));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (DataIntegrityViolationException e) {
+            return rejected(e);
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteRule(
+            @PathVariable UUID id,
+            @RequestAttribute(value = "tenantId", required = false) UUID tenantId) {
+
+        if (tenantId == null) tenantId = UUID.fromString("10000000-0000-0000-0000-000000000001");
+
+        return ruleService.deleteRule(tenantId, id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    /** 409 when the scope already has a rule with the code, 400 for other constraint violations. */
+    private static ResponseEntity<RiskRule> rejected(DataIntegrityViolationException e) {
+        String message = e.getMostSpecificCause().getMessage();
+        if (message != null && message.contains("uq_risk_rule_scope_code")) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.badRequest().build();
+    }
+}
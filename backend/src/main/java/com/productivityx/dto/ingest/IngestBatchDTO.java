@@ -36,6 +36,7 @@ public class IngestBatchDTO {
     @Data
     public static class BucketPayload {
         private String bucket_start; // ISO
+        private Long bucket_start_ms; // Epoch ms (UTC); preferred over bucket_start when set
         private Integer bucket_minutes;
         private Integer active_seconds;
         private Integer idle_seconds;
@@ -47,6 +48,8 @@ public class IngestBatchDTO {
         private UUID id; // Client UUID for idempotency
         private String ts_start;
         private String ts_end;
+        private Long ts_start_ms; // Epoch ms (UTC); preferred over the ISO fields when set
+        private Long ts_end_ms;
         private String app_name;
         private String process_name;
     }
@@ -56,6 +59,8 @@ public class IngestBatchDTO {
         private UUID id;
         private String ts_start;
         private String ts_end;
+        private Long ts_start_ms;
+        private Long ts_end_ms;
         private String domain;
     }
 
@@ -63,6 +68,7 @@ public class IngestBatchDTO {
     public static class FilePayload {
         private UUID id;
         private String timestamp; // ISO
+        private Long timestamp_ms; // Epoch ms (UTC); preferred over timestamp when set
         private String operation; // created, modified, renamed, deleted
         private String file_path;
         private String file_name;
@@ -0,0 +1,18 @@
+package com.productivityx.dto.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import java.util.UUID;
+
+/**
+ * Returned with 202 when a batch was queued for asynchronous ingest.
+ */
+@Data
+@AllArgsConstructor
+public class IngestReceipt {
+    private UUID receiptId;
+    private String deviceId;
+    private int partition;
+    private int queueDepth;
+    private long acceptedAtMs;
+}
@@ -0,0 +1,29 @@
+package com.productivityx.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * How long a tenant's raw telemetry stays in PostgreSQL ({@code hotDays}) and how long its archived
+ * files are kept afterwards ({@code archiveDays}, null for ever).
+ */
+@Entity
+@Table(name = "retention_policy")
+@Data
+public class RetentionPolicy {
+    @Id
+    @Column(name = "tenant_id")
+    private UUID tenantId;
+
+    @Column(name = "hot_days", nullable = false)
+    private Integer hotDays;
+
+    @Column(name = "archive_days")
+    private Integer archiveDays;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt = LocalDateTime.now();
+}
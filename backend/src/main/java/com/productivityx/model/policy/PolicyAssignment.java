@@ -14,11 +14,17 @@ public class PolicyAssignment {
     @Column(name = "tenant_id", nullable = false)
     private UUID tenantId;
 
-    @Column(name = "org_id", nullable = false)
-    private UUID orgId;
+    @Column(name = "org_id")
+    private UUID orgId; // null for TENANT targets
+
+    @Column(name = "target_type")
+    private String targetType; // DEVICE, GROUP, ORG, TENANT
 
     @Column(name = "device_id")
-    private String deviceId;
+    private String deviceId; // DEVICE targets
+
+    @Column(name = "group_id")
+    private UUID groupId; // GROUP targets
 
     @Column(name = "policy_id")
     private UUID policyId;
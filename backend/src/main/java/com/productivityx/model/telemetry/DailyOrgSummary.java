@@ -0,0 +1,59 @@
+package com.productivityx.model.telemetry;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Entity
+@Table(name = "daily_org_summary")
+public class DailyOrgSummary {
+    @Id
+    private UUID id;
+
+    @Column(name = "tenant_id", nullable = false)
+    private UUID tenantId;
+
+    @Column(name = "org_id", nullable = false)
+    private UUID orgId;
+
+    @Column(nullable = false)
+    private LocalDate date;
+
+    @Column(name = "total_active_seconds")
+    private Long totalActiveSeconds = 0L;
+
+    @Column(name = "total_idle_seconds")
+    private Long totalIdleSeconds = 0L;
+
+    @Column(name = "active_devices_count")
+    private Integer activeDevicesCount = 0;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "top_apps")
+    private String topApps; // JSONB
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "top_domains")
+    private String topDomains; // JSONB
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "risk_counters")
+    private String riskCounters; // JSONB
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt = LocalDateTime.now();
+
+    @PrePersist
+    public void prePersist() {
+        if (id == null) id = UUID.randomUUID();
+    }
+}
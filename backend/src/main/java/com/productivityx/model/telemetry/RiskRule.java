@@ -0,0 +1,46 @@
+package com.productivityx.model.telemetry;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A risk detection rule. {@code tenantId} null means built-in for every tenant; {@code orgId} narrows
+ * a tenant rule to one org. See V16__risk_rules.sql for the {@code definition} of each kind.
+ */
+@Data
+@Entity
+@Table(name = "risk_rule")
+public class RiskRule {
+    @Id
+    private UUID id;
+
+    @Column(name = "tenant_id")
+    private UUID tenantId;
+
+    @Column(name = "org_id")
+    private UUID orgId;
+
+    @Column(nullable = false)
+    private String code; // becomes RiskEvent.type, e.g. R1_USB_EXFIL
+
+    @Column(nullable = false)
+    private String kind; // COUNT, SEQUENCE, BASELINE
+
+    @Column(nullable = false)
+    private String severity; // LOW, MED, HIGH
+
+    @Column(nullable = false)
+    private Boolean enabled = true;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(nullable = false)
+    private String definition; // JSONB
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt = LocalDateTime.now();
+}
@@ -5,6 +5,6 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import java.util.List;
 import java.util.UUID;
 
-public interface DevicePolicyAckRepository extends JpaRepository<DevicePolicyAck, UUID> {
+public interface DevicePolicyAckRepository extends JpaRepository<DevicePolicyAck, UUID>, DevicePolicyAckRepositoryCustom {
     List<DevicePolicyAck> findByDeviceIdOrderByCreatedAtDesc(String deviceId);
 }
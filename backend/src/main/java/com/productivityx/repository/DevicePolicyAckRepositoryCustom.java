@@ -0,0 +1,9 @@
+package com.productivityx.repository;
+
+import com.productivityx.model.policy.DevicePolicyAck;
+
+import java.util.List;
+
+public interface DevicePolicyAckRepositoryCustom {
+    int insertAll(List<DevicePolicyAck> acks);
+}
@@ -0,0 +1,63 @@
+package com.productivityx.repository;
+
+import com.productivityx.model.policy.DevicePolicyAck;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Types;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class DevicePolicyAckRepositoryImpl implements DevicePolicyAckRepositoryCustom {
+
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO device_policy_ack (id, tenant_id, org_id, device_id, policy_id, version, status, reason, " +
+                    "applied_at_ms, agent_version, client_etag, created_at) VALUES ";
+    private static final String INSERT_TUPLE = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // idx_device_policy_ack_dedup: an agent re-sending the same ack is stored once
+    private static final String INSERT_SUFFIX =
+            " ON CONFLICT (tenant_id, org_id, device_id, policy_id, version, client_etag) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Inserts many acks as one multi-row {@code INSERT} per chunk, skipping duplicates.
+     *
+     * @return the number of acks actually inserted
+     */
+    @Override
+    public int insertAll(List<DevicePolicyAck> acks) {
+        int inserted = 0;
+        for (int from = 0; from < acks.size(); from += CHUNK_SIZE) {
+            List<DevicePolicyAck> chunk = acks.subList(from, Math.min(acks.size(), from + CHUNK_SIZE));
+            StringBuilder sql = new StringBuilder(INSERT_PREFIX);
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0) sql.append(", ");
+                sql.append(INSERT_TUPLE);
+            }
+            sql.append(INSERT_SUFFIX);
+            inserted += jdbcTemplate.update(sql.toString(), ps -> {
+                int i = 1;
+                for (DevicePolicyAck ack : chunk) {
+                    ps.setObject(i++, ack.getId());
+                    ps.setObject(i++, ack.getTenantId());
+                    ps.setObject(i++, ack.getOrgId());
+                    ps.setString(i++, ack.getDeviceId());
+                    ps.setObject(i++, ack.getPolicyId());
+                    ps.setInt(i++, ack.getVersion());
+                    ps.setString(i++, ack.getStatus());
+                    ps.setString(i++, ack.getReason());
+                    ps.setObject(i++, ack.getAppliedAtMs(), Types.BIGINT);
+                    ps.setString(i++, ack.getAgentVersion());
+                    ps.setString(i++, ack.getClientEtag());
+                    ps.setObject(i++, ack.getCreatedAt(), Types.BIGINT);
+                }
+            });
+        }
+        return inserted;
+    }
+}
@@ -0,0 +1,20 @@
+package com.productivityx.repository;
+
+import lombok.Data;
+
+/**
+ * A device's latest policy ack, written to {@code devices} by {@link DeviceRepositoryCustom#updatePolicyAcks}.
+ * {@code receivedAtMs} orders acks of the same device; it is not stored.
+ */
+@Data
+public class DevicePolicyStatus {
+    private final String deviceId;
+    private final String policyVersion;
+    private final String ackStatus;
+    private final long receivedAtMs;
+
+    /** Combines two acks of the same device, keeping the one received last. */
+    public DevicePolicyStatus merge(DevicePolicyStatus other) {
+        return other.receivedAtMs >= receivedAtMs ? other : this;
+    }
+}
@@ -0,0 +1,31 @@
+package com.productivityx.repository;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * Coalesced check-in state for one device, written by {@link DeviceRepositoryCustom#updatePresence}.
+ * {@code lastUploadAt} and {@code agentVersion} are null when the check-ins did not carry them.
+ */
+@Data
+public class DevicePresence {
+    private final String deviceId;
+    private final LocalDateTime lastSeenAt;
+    private final LocalDateTime lastUploadAt;
+    private final String agentVersion;
+
+    /** Combines two check-ins of the same device, keeping the newest values. */
+    public DevicePresence merge(DevicePresence other) {
+        return new DevicePresence(
+                deviceId,
+                latest(lastSeenAt, other.lastSeenAt),
+                latest(lastUploadAt, other.lastUploadAt),
+                other.agentVersion != null ? other.agentVersion : agentVersion);
+    }
+
+    private static LocalDateTime latest(LocalDateTime a, LocalDateTime b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.isAfter(b) ? a : b;
+    }
+}
@@ -2,11 +2,30 @@ package com.productivityx.repository;
 
 import com.productivityx.model.Device;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
-public interface DeviceRepository extends JpaRepository<Device, String> {
+public interface DeviceRepository extends JpaRepository<Device, String>, DeviceRepositoryCustom {
     java.util.List<Device> findByGroupId(java.util.UUID groupId);
     java.util.Optional<Device> findByFingerprintHash(String fingerprintHash);
     long countByStatus(String status);
+
+    /** Rows of (orgId, status, ackStatus, count) for one tenant, in a single grouped scan. */
+    @Query("SELECT d.orgId, d.status, d.ackStatus, COUNT(d) FROM Device d WHERE d.tenantId = :tenantId GROUP BY d.orgId, d.status, d.ackStatus")
+    java.util.List<Object[]> countByOrgStatusAndAck(@Param("tenantId") java.util.UUID tenantId);
+
+    @Modifying
+    @Query("UPDATE Device d SET d.policyVersion = :policyVersion, d.ackStatus = :ackStatus WHERE d.deviceId = :deviceId")
+    int updatePolicyAck(@Param("deviceId") String deviceId, @Param("policyVersion") String policyVersion, @Param("ackStatus") String ackStatus);
+
+    /** Admin edits only; presence columns belong to DevicePresenceTracker and are left alone. */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Device d SET d.name = :name, d.status = :status, d.groupId = :groupId WHERE d.deviceId = :deviceId")
+    int updateDetails(@Param("deviceId") String deviceId, @Param("name") String name,
+                      @Param("status") String status, @Param("groupId") java.util.UUID groupId);
 }
@@ -0,0 +1,10 @@
+package com.productivityx.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface DeviceRepositoryCustom {
+    int updatePresence(List<DevicePresence> presences);
+    int markOfflineSeenBefore(LocalDateTime cutoff);
+    int updatePolicyAcks(List<DevicePolicyStatus> statuses);
+}
@@ -0,0 +1,102 @@
+package com.productivityx.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class DeviceRepositoryImpl implements DeviceRepositoryCustom {
+
+    private static final int CHUNK_SIZE = 500;
+
+    // GREATEST ignores NULLs, so an update without an upload keeps the stored last_upload_at.
+    private static final String UPDATE_PREFIX =
+            "UPDATE devices d SET " +
+                    "last_seen_at = GREATEST(d.last_seen_at, v.last_seen_at), " +
+                    "last_upload_at = GREATEST(d.last_upload_at, v.last_upload_at), " +
+                    "agent_version = COALESCE(v.agent_version, d.agent_version), " +
+                    "status = 'ONLINE' " +
+                    "FROM (VALUES ";
+    private static final String UPDATE_TUPLE = "(?, CAST(? AS timestamp), CAST(? AS timestamp), CAST(? AS varchar))";
+    private static final String UPDATE_SUFFIX =
+            ") AS v(device_id, last_seen_at, last_upload_at, agent_version) WHERE d.device_id = v.device_id";
+
+    private static final String ACK_PREFIX =
+            "UPDATE devices d SET policy_version = v.policy_version, ack_status = v.ack_status FROM (VALUES ";
+    private static final String ACK_TUPLE = "(?, CAST(? AS varchar), CAST(? AS varchar))";
+    private static final String ACK_SUFFIX =
+            ") AS v(device_id, policy_version, ack_status) WHERE d.device_id = v.device_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Applies many check-ins as one {@code UPDATE ... FROM (VALUES ...)} per chunk. Callers should
+     * pass rows sorted by device id so concurrent flushes lock rows in the same order.
+     */
+    @Override
+    public int updatePresence(List<DevicePresence> presences) {
+        int updated = 0;
+        for (int from = 0; from < presences.size(); from += CHUNK_SIZE) {
+            List<DevicePresence> chunk = presences.subList(from, Math.min(presences.size(), from + CHUNK_SIZE));
+            StringBuilder sql = new StringBuilder(UPDATE_PREFIX);
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0) sql.append(", ");
+                sql.append(UPDATE_TUPLE);
+            }
+            sql.append(UPDATE_SUFFIX);
+            updated += jdbcTemplate.update(sql.toString(), ps -> {
+                int i = 1;
+                for (DevicePresence p : chunk) {
+                    ps.setString(i++, p.getDeviceId());
+                    ps.setTimestamp(i++, timestamp(p.getLastSeenAt()));
+                    ps.setTimestamp(i++, timestamp(p.getLastUploadAt()));
+                    ps.setString(i++, p.getAgentVersion());
+                }
+            });
+        }
+        return updated;
+    }
+
+    /**
+     * Applies many acks as one {@code UPDATE ... FROM (VALUES ...)} per chunk, one row per device.
+     * Callers should pass rows sorted by device id, as for {@link #updatePresence}.
+     */
+    @Override
+    public int updatePolicyAcks(List<DevicePolicyStatus> statuses) {
+        int updated = 0;
+        for (int from = 0; from < statuses.size(); from += CHUNK_SIZE) {
+            List<DevicePolicyStatus> chunk = statuses.subList(from, Math.min(statuses.size(), from + CHUNK_SIZE));
+            StringBuilder sql = new StringBuilder(ACK_PREFIX);
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0) sql.append(", ");
+                sql.append(ACK_TUPLE);
+            }
+            sql.append(ACK_SUFFIX);
+            updated += jdbcTemplate.update(sql.toString(), ps -> {
+                int i = 1;
+                for (DevicePolicyStatus s : chunk) {
+                    ps.setString(i++, s.getDeviceId());
+                    ps.setString(i++, s.getPolicyVersion());
+                    ps.setString(i++, s.getAckStatus());
+                }
+            });
+        }
+        return updated;
+    }
+
+    @Override
+    public int markOfflineSeenBefore(LocalDateTime cutoff) {
+        return jdbcTemplate.update(
+                "UPDATE devices SET status = 'OFFLINE' WHERE status = 'ONLINE' AND (last_seen_at IS NULL OR last_seen_at < ?)",
+                Timestamp.valueOf(cutoff));
+    }
+
+    private static Timestamp timestamp(LocalDateTime value) {
+        return value != null ? Timestamp.valueOf(value) : null;
+    }
+}
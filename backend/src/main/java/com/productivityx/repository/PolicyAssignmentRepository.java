@@ -3,10 +3,25 @@ package com.productivityx.repository;
 import com.productivityx.model.policy.PolicyAssignment;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface PolicyAssignmentRepository extends JpaRepository<PolicyAssignment, UUID> {
     @Query("SELECT p FROM PolicyAssignment p WHERE p.tenantId = :tenantId AND p.orgId = :orgId AND p.deviceId = :deviceId AND p.active = true")
     Optional<PolicyAssignment> findActiveByDeviceId(UUID tenantId, UUID orgId, String deviceId);
+
+    @Query("SELECT p FROM PolicyAssignment p WHERE p.tenantId = :tenantId AND p.targetType = 'GROUP' AND p.groupId = :groupId AND p.active = true")
+    Optional<PolicyAssignment> findActiveByGroupId(UUID tenantId, UUID groupId);
+
+    @Query("SELECT p FROM PolicyAssignment p WHERE p.tenantId = :tenantId AND p.targetType = 'ORG' AND p.orgId = :orgId AND p.active = true")
+    Optional<PolicyAssignment> findActiveForOrg(UUID tenantId, UUID orgId);
+
+    @Query("SELECT p FROM PolicyAssignment p WHERE p.tenantId = :tenantId AND p.targetType = 'TENANT' AND p.active = true")
+    Optional<PolicyAssignment> findActiveForTenant(UUID tenantId);
+
+    List<PolicyAssignment> findByActiveTrue();
+
+    /** Rows created, changed or deactivated after {@code sinceMs}, oldest first. */
+    List<PolicyAssignment> findByUpdatedAtGreaterThanOrderByUpdatedAt(Long sinceMs);
 }
@@ -2,9 +2,15 @@ package com.productivityx.repository;
 
 import com.productivityx.model.policy.PolicyPack;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
 public interface PolicyPackRepository extends JpaRepository<PolicyPack, UUID> {
     List<PolicyPack> findByTenantIdAndOrgId(UUID tenantId, UUID orgId);
+
+    /** {@code [id, publishedVersion]} pairs, without loading the drafts. */
+    @Query("SELECT p.id, p.publishedVersion FROM PolicyPack p WHERE p.id IN :ids")
+    List<Object[]> findPublishedVersions(Collection<UUID> ids);
 }
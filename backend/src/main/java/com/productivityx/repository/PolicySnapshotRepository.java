@@ -7,4 +7,7 @@ import java.util.UUID;
 
 public interface PolicySnapshotRepository extends JpaRepository<PolicySnapshot, UUID> {
     Optional<PolicySnapshot> findByPolicyIdAndVersion(UUID policyId, Integer version);
+
+    /** ETags are content hashes, so versions republishing the same config share one. */
+    Optional<PolicySnapshot> findFirstByPolicyIdAndEtagOrderByVersionDesc(UUID policyId, String etag);
 }
@@ -0,0 +1,15 @@
+package com.productivityx.repository;
+
+import com.productivityx.model.RetentionPolicy;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface RetentionPolicyRepository extends JpaRepository<RetentionPolicy, UUID> {
+    @Query("SELECT MAX(p.hotDays) FROM RetentionPolicy p")
+    Integer findMaxHotDays();
+
+    List<RetentionPolicy> findByArchiveDaysIsNotNull();
+}
@@ -2,7 +2,14 @@ package com.productivityx.repository.telemetry;
 
 import com.productivityx.model.telemetry.ActivityBucket;
 import java.util.List;
+import java.util.UUID;
 
 public interface ActivityBucketRepositoryCustom {
     int saveAllIgnoreConflict(List<ActivityBucket> buckets);
+
+    /**
+     * Inserts with {@code ON CONFLICT (device_id, bucket_start, bucket_minutes) DO NOTHING} and
+     * returns the ids that were new.
+     */
+    List<UUID> saveAllIgnoreConflictReturningIds(List<ActivityBucket> buckets);
 }
@@ -5,42 +5,41 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
-import java.sql.Timestamp;
 import java.util.List;
+import java.util.UUID;
 
 @Repository
 @RequiredArgsConstructor
 public class ActivityBucketRepositoryImpl implements ActivityBucketRepositoryCustom {
 
+    private static final MultiRowInsert<ActivityBucket> INSERT = new MultiRowInsert<>(
+            "INSERT INTO activity_buckets " +
+                    "(id, tenant_id, org_id, device_id, bucket_start, bucket_minutes, " +
+                    "active_seconds, idle_seconds, avg_focus_score, ingest_batch_id, created_at) VALUES ",
+            "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW())",
+            "ON CONFLICT (device_id, bucket_start, bucket_minutes) DO NOTHING",
+            (ps, i, bucket) -> {
+                ps.setObject(i, bucket.getId());
+                ps.setObject(i + 1, bucket.getTenantId());
+                ps.setObject(i + 2, bucket.getOrgId());
+                ps.setString(i + 3, bucket.getDeviceId());
+                ps.setTimestamp(i + 4, MultiRowInsert.timestamp(bucket.getBucketStart()));
+                ps.setObject(i + 5, bucket.getBucketMinutes());
+                ps.setObject(i + 6, bucket.getActiveSeconds());
+                ps.setObject(i + 7, bucket.getIdleSeconds());
+                ps.setObject(i + 8, bucket.getAvgFocusScore());
+                ps.setObject(i + 9, bucket.getIngestBatchId());
+            });
+
     private final JdbcTemplate jdbcTemplate;
 
     @Override
     public int saveAllIgnoreConflict(List<ActivityBucket> buckets) {
-        String sql = "INSERT INTO activity_buckets " +
-                "(id, tenant_id, org_id, device_id, bucket_start, bucket_minutes, " +
-                "active_seconds, idle_seconds, avg_focus_score, ingest_batch_id, created_at) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW()) " +
-                "ON CONFLICT (device_id, bucket_start, bucket_minutes) DO NOTHING";
+        return INSERT.execute(jdbcTemplate, buckets);
+    }
 
-        int[][] result = jdbcTemplate.batchUpdate(sql, buckets, 1000, (ps, bucket) -> {
-            ps.setObject(1, bucket.getId());
-            ps.setObject(2, bucket.getTenantId());
-            ps.setObject(3, bucket.getOrgId());
-            ps.setString(4, bucket.getDeviceId());
-            ps.setTimestamp(5, Timestamp.valueOf(bucket.getBucketStart()));
-            ps.setObject(6, bucket.getBucketMinutes());
-            ps.setObject(7, bucket.getActiveSeconds());
-            ps.setObject(8, bucket.getIdleSeconds());
-            ps.setObject(9, bucket.getAvgFocusScore());
-            ps.setObject(10, bucket.getIngestBatchId());
-        });
-        
-        int inserted = 0;
-        for (int[] batchResult : result) {
-            for (int r : batchResult) {
-                if (r > 0) inserted += r;
-            }
-        }
-        return inserted;
+    @Override
+    public List<UUID> saveAllIgnoreConflictReturningIds(List<ActivityBucket> buckets) {
+        return INSERT.executeReturningIds(jdbcTemplate, buckets);
     }
 }
@@ -4,5 +4,5 @@ import com.productivityx.model.telemetry.AppUsageEvent;
 import org.springframework.data.jpa.repository.JpaRepository;
 import java.util.UUID;
 
-public interface AppUsageEventRepository extends JpaRepository<AppUsageEvent, UUID> {
+public interface AppUsageEventRepository extends JpaRepository<AppUsageEvent, UUID>, AppUsageEventRepositoryCustom {
 }
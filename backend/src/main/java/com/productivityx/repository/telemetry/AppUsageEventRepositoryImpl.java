@@ -0,0 +1,45 @@
+package com.productivityx.repository.telemetry;
+
+import com.productivityx.model.telemetry.AppUsageEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+@RequiredArgsConstructor
+public class AppUsageEventRepositoryImpl implements AppUsageEventRepositoryCustom {
+
+    private static final MultiRowInsert<AppUsageEvent> INSERT = new MultiRowInsert<>(
+            "INSERT INTO app_usage_events " +
+                    "(id, tenant_id, org_id, device_id, ts_start, ts_end, app_name, process_name, " +
+                    "category, ingest_batch_id, created_at) VALUES ",
+            "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW())",
+            "ON CONFLICT (id, ts_start) DO NOTHING",
+            (ps, i, e) -> {
+                ps.setObject(i, e.getId());
+                ps.setObject(i + 1, e.getTenantId());
+                ps.setObject(i + 2, e.getOrgId());
+                ps.setString(i + 3, e.getDeviceId());
+                ps.setTimestamp(i + 4, MultiRowInsert.timestamp(e.getTsStart()));
+                ps.setTimestamp(i + 5, MultiRowInsert.timestamp(e.getTsEnd()));
+                ps.setString(i + 6, e.getAppName());
+                ps.setString(i + 7, e.getProcessName());
+                ps.setString(i + 8, e.getCategory());
+                ps.setObject(i + 9, e.getIngestBatchId());
+            });
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int saveAllIgnoreConflict(List<AppUsageEvent> events) {
+        return INSERT.execute(jdbcTemplate, events);
+    }
+
+    @Override
+    public List<UUID> saveAllIgnoreConflictReturningIds(List<AppUsageEvent> events) {
+        return INSERT.executeReturningIds(jdbcTemplate, events);
+    }
+}
@@ -10,7 +10,7 @@ import java.time.LocalDate;
 import java.util.Optional;
 import java.util.UUID;
 
-public interface DailyDeviceSummaryRepository extends JpaRepository<DailyDeviceSummary, UUID> {
+public interface DailyDeviceSummaryRepository extends JpaRepository<DailyDeviceSummary, UUID>, DailyDeviceSummaryRepositoryCustom {
     
     Optional<DailyDeviceSummary> findByDeviceIdAndDate(String deviceId, LocalDate date);
 
@@ -0,0 +1,15 @@
+package com.productivityx.repository.telemetry;
+
+import java.util.List;
+
+public interface DailyDeviceSummaryRepositoryCustom {
+
+    /**
+     * Adds the totals to their summary rows, creating missing rows, in chunked multi-row upserts.
+     * Updates are relative ({@code active_seconds + EXCLUDED.active_seconds}), so concurrent writers
+     * on other nodes never overwrite each other. Rows must be unique per (tenant, org, device, date).
+     *
+     * @return the totals whose row did not exist yet, i.e. the device's first activity that day
+     */
+    List<DailyDeviceTotals> addTotals(List<DailyDeviceTotals> totals);
+}
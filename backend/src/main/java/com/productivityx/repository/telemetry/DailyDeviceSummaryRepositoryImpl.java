@@ -0,0 +1,74 @@
+package com.productivityx.repository.telemetry;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+@Repository
+@RequiredArgsConstructor
+public class DailyDeviceSummaryRepositoryImpl implements DailyDeviceSummaryRepositoryCustom {
+
+    private static final String TABLE = "daily_device_summary";
+
+    private static final MultiRowInsert<DailyDeviceTotals> ADD_TOTALS = new MultiRowInsert<>(
+            "INSERT INTO " + TABLE + " " +
+                    "(id, tenant_id, org_id, device_id, date, active_seconds, idle_seconds, top_apps, top_domains, risk_counters) VALUES ",
+            "(gen_random_uuid(), ?, ?, ?, ?, ?, ?, CAST(? AS jsonb), CAST(? AS jsonb), CAST(? AS jsonb))",
+            "ON CONFLICT (tenant_id, org_id, device_id, date) DO UPDATE SET " +
+                    "active_seconds = " + TABLE + ".active_seconds + EXCLUDED.active_seconds, " +
+                    "idle_seconds = " + TABLE + ".idle_seconds + EXCLUDED.idle_seconds, " +
+                    "top_apps = " + JsonbMerge.topItems(TABLE, "top_apps", DailyDeviceTotals.TOP_ITEMS) + ", " +
+                    "top_domains = " + JsonbMerge.topItems(TABLE, "top_domains", DailyDeviceTotals.TOP_ITEMS) + ", " +
+                    "risk_counters = " + JsonbMerge.counters(TABLE, "risk_counters") + ", " +
+                    "updated_at = NOW()",
+            (ps, i, t) -> {
+                ps.setObject(i, t.getTenantId());
+                ps.setObject(i + 1, t.getOrgId());
+                ps.setString(i + 2, t.getDeviceId());
+                ps.setDate(i + 3, Date.valueOf(t.getDate()));
+                ps.setInt(i + 4, Math.toIntExact(t.getActiveSeconds()));
+                ps.setInt(i + 5, Math.toIntExact(t.getIdleSeconds()));
+                ps.setString(i + 6, t.getTopApps());
+                ps.setString(i + 7, t.getTopDomains());
+                ps.setString(i + 8, t.getRiskCounters());
+            });
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<DailyDeviceTotals> addTotals(List<DailyDeviceTotals> totals) {
+        if (totals.isEmpty()) return List.of();
+
+        // xmax is 0 only for rows this statement inserted, not for rows it updated.
+        List<RowKey> returned = ADD_TOTALS.executeReturning(jdbcTemplate, totals,
+                "tenant_id, org_id, device_id, date, (xmax = 0) AS inserted",
+                (rs, rowNum) -> rs.getBoolean(5)
+                        ? new RowKey(rs.getObject(1, UUID.class), rs.getObject(2, UUID.class), rs.getString(3), rs.getDate(4).toLocalDate())
+                        : null);
+        Set<RowKey> created = new HashSet<>(returned);
+        List<DailyDeviceTotals> firstOfDay = new ArrayList<>();
+        for (DailyDeviceTotals t : totals) {
+            if (created.contains(new RowKey(t.getTenantId(), t.getOrgId(), t.getDeviceId(), t.getDate()))) {
+                firstOfDay.add(t);
+            }
+        }
+        return firstOfDay;
+    }
+
+    @Data
+    private static class RowKey {
+        private final UUID tenantId;
+        private final UUID orgId;
+        private final String deviceId;
+        private final LocalDate date;
+    }
+}
@@ -0,0 +1,29 @@
+package com.productivityx.repository.telemetry;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Deltas to add to one {@code daily_device_summary} row, written by
+ * {@link DailyDeviceSummaryRepositoryCustom#addTotals}. The JSON fields hold only this delta:
+ * {@code topApps} / {@code topDomains} as {@code [{"name": .., "durationSeconds": ..}]} (heaviest
+ * first, at most {@link #TOP_ITEMS}) and {@code riskCounters} as {@code {"<type>": count}}.
+ */
+@Data
+public class DailyDeviceTotals {
+
+    /** Entries kept in {@code top_apps} / {@code top_domains}. */
+    public static final int TOP_ITEMS = 10;
+
+    private final UUID tenantId;
+    private final UUID orgId;
+    private final String deviceId;
+    private final LocalDate date;
+    private final long activeSeconds;
+    private final long idleSeconds;
+    private final String topApps;
+    private final String topDomains;
+    private final String riskCounters;
+}
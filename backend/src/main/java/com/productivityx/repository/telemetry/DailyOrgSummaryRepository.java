@@ -0,0 +1,15 @@
+package com.productivityx.repository.telemetry;
+
+import com.productivityx.model.telemetry.DailyOrgSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+public interface DailyOrgSummaryRepository extends JpaRepository<DailyOrgSummary, UUID>, DailyOrgSummaryRepositoryCustom {
+
+    List<DailyOrgSummary> findByTenantIdAndOrgIdAndDateBetweenOrderByDateAsc(UUID tenantId, UUID orgId, LocalDate from, LocalDate to);
+
+    List<DailyOrgSummary> findByTenantIdAndDateBetweenOrderByDateAscOrgIdAsc(UUID tenantId, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,15 @@
+package com.productivityx.repository.telemetry;
+
+import java.util.List;
+
+public interface DailyOrgSummaryRepositoryCustom {
+
+    /**
+     * Adds the totals to their org-day rows, creating missing rows, in chunked multi-row upserts.
+     * Like {@link DailyDeviceSummaryRepositoryCustom#addTotals} every column is updated relative to
+     * its stored value. Rows must be unique per (org, date).
+     *
+     * @return number of rows inserted or updated
+     */
+    int addTotals(List<DailyOrgTotals> totals);
+}
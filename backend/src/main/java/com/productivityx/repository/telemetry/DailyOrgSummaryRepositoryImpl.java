@@ -0,0 +1,48 @@
+package com.productivityx.repository.telemetry;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class DailyOrgSummaryRepositoryImpl implements DailyOrgSummaryRepositoryCustom {
+
+    private static final String TABLE = "daily_org_summary";
+
+    private static final MultiRowInsert<DailyOrgTotals> ADD_TOTALS = new MultiRowInsert<>(
+            "INSERT INTO " + TABLE + " " +
+                    "(id, tenant_id, org_id, date, total_active_seconds, total_idle_seconds, active_devices_count, " +
+                    "top_apps, top_domains, risk_counters) VALUES ",
+            "(gen_random_uuid(), ?, ?, ?, ?, ?, ?, CAST(? AS jsonb), CAST(? AS jsonb), CAST(? AS jsonb))",
+            "ON CONFLICT (org_id, date) DO UPDATE SET " +
+                    "total_active_seconds = " + TABLE + ".total_active_seconds + EXCLUDED.total_active_seconds, " +
+                    "total_idle_seconds = " + TABLE + ".total_idle_seconds + EXCLUDED.total_idle_seconds, " +
+                    "active_devices_count = " + TABLE + ".active_devices_count + EXCLUDED.active_devices_count, " +
+                    "top_apps = " + JsonbMerge.topItems(TABLE, "top_apps", DailyDeviceTotals.TOP_ITEMS) + ", " +
+                    "top_domains = " + JsonbMerge.topItems(TABLE, "top_domains", DailyDeviceTotals.TOP_ITEMS) + ", " +
+                    "risk_counters = " + JsonbMerge.counters(TABLE, "risk_counters") + ", " +
+                    "updated_at = NOW()",
+            (ps, i, t) -> {
+                ps.setObject(i, t.getTenantId());
+                ps.setObject(i + 1, t.getOrgId());
+                ps.setDate(i + 2, Date.valueOf(t.getDate()));
+                ps.setLong(i + 3, t.getActiveSeconds());
+                ps.setLong(i + 4, t.getIdleSeconds());
+                ps.setInt(i + 5, t.getNewDevices());
+                ps.setString(i + 6, t.getTopApps());
+                ps.setString(i + 7, t.getTopDomains());
+                ps.setString(i + 8, t.getRiskCounters());
+            });
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int addTotals(List<DailyOrgTotals> totals) {
+        if (totals.isEmpty()) return 0;
+        return ADD_TOTALS.execute(jdbcTemplate, totals);
+    }
+}
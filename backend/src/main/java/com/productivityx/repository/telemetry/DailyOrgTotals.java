@@ -0,0 +1,25 @@
+package com.productivityx.repository.telemetry;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Deltas to add to one {@code daily_org_summary} row, written by
+ * {@link DailyOrgSummaryRepositoryCustom#addTotals}. {@code newDevices} counts devices whose
+ * device-day row was created by the same flush. JSON fields have the same shape as in
+ * {@link DailyDeviceTotals}.
+ */
+@Data
+public class DailyOrgTotals {
+    private final UUID tenantId;
+    private final UUID orgId;
+    private final LocalDate date;
+    private final long activeSeconds;
+    private final long idleSeconds;
+    private final int newDevices;
+    private final String topApps;
+    private final String topDomains;
+    private final String riskCounters;
+}
@@ -0,0 +1,14 @@
+package com.productivityx.repository.telemetry;
+
+import lombok.Data;
+
+import java.util.UUID;
+
+/** One device's serialized baseline state, as written to {@code device_baseline}. */
+@Data
+public class DeviceBaselineCheckpoint {
+    private final UUID tenantId;
+    private final UUID orgId;
+    private final String deviceId;
+    private final byte[] state;
+}
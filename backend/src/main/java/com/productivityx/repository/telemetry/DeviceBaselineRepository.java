@@ -0,0 +1,41 @@
+package com.productivityx.repository.telemetry;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Checkpoints of per-device activity baselines in {@code device_baseline}. The state is opaque to
+ * the database; see {@code DeviceBaseline}.
+ */
+@Repository
+@RequiredArgsConstructor
+public class DeviceBaselineRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** The checkpointed state, or null if the device has none yet. */
+    public byte[] find(UUID tenantId, String deviceId) {
+        List<byte[]> rows = jdbcTemplate.query("SELECT state FROM device_baseline WHERE tenant_id = ? AND device_id = ?",
+                (rs, n) -> rs.getBytes(1), tenantId, deviceId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /** Inserts or replaces the checkpoints, in one batch. */
+    public void saveAll(List<DeviceBaselineCheckpoint> checkpoints) {
+        if (checkpoints.isEmpty()) return;
+        List<Object[]> args = new ArrayList<>(checkpoints.size());
+        for (DeviceBaselineCheckpoint c : checkpoints) {
+            args.add(new Object[]{c.getTenantId(), c.getDeviceId(), c.getOrgId(), c.getState()});
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO device_baseline (tenant_id, device_id, org_id, state) VALUES (?, ?, ?, ?) " +
+                        "ON CONFLICT (tenant_id, device_id) DO UPDATE SET org_id = EXCLUDED.org_id, " +
+                        "state = EXCLUDED.state, updated_at = NOW()",
+                args);
+    }
+}
@@ -4,5 +4,5 @@ import com.productivityx.model.telemetry.DeviceHeartbeat;
 import org.springframework.data.jpa.repository.JpaRepository;
 import java.util.UUID;
 
-public interface DeviceHeartbeatRepository extends JpaRepository<DeviceHeartbeat, UUID> {
+public interface DeviceHeartbeatRepository extends JpaRepository<DeviceHeartbeat, UUID>, DeviceHeartbeatRepositoryCustom {
 }
@@ -0,0 +1,8 @@
+package com.productivityx.repository.telemetry;
+
+import com.productivityx.model.telemetry.DeviceHeartbeat;
+import java.util.List;
+
+public interface DeviceHeartbeatRepositoryCustom {
+    int saveAllIgnoreConflict(List<DeviceHeartbeat> events);
+}
@@ -0,0 +1,39 @@
+package com.productivityx.repository.telemetry;
+
+import com.productivityx.model.telemetry.DeviceHeartbeat;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class DeviceHeartbeatRepositoryImpl implements DeviceHeartbeatRepositoryCustom {
+
+    private static final MultiRowInsert<DeviceHeartbeat> INSERT = new MultiRowInsert<>(
+            "INSERT INTO device_heartbeats " +
+                    "(id, tenant_id, org_id, device_id, ts, status, agent_version, queue_depth, " +
+                    "upload_error_count, ingest_batch_id, created_at) VALUES ",
+            "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW())",
+            "ON CONFLICT (id, ts) DO NOTHING",
+            (ps, i, hb) -> {
+                ps.setObject(i, hb.getId());
+                ps.setObject(i + 1, hb.getTenantId());
+                ps.setObject(i + 2, hb.getOrgId());
+                ps.setString(i + 3, hb.getDeviceId());
+                ps.setTimestamp(i + 4, MultiRowInsert.timestamp(hb.getTs()));
+                ps.setString(i + 5, hb.getStatus());
+                ps.setString(i + 6, hb.getAgentVersion());
+                ps.setObject(i + 7, hb.getQueueDepth());
+                ps.setObject(i + 8, hb.getUploadErrorCount());
+                ps.setObject(i + 9, hb.getIngestBatchId());
+            });
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int saveAllIgnoreConflict(List<DeviceHeartbeat> heartbeats) {
+        return INSERT.execute(jdbcTemplate, heartbeats);
+    }
+}
@@ -0,0 +1,12 @@
+package com.productivityx.repository.telemetry;
+
+import com.productivityx.model.telemetry.FileEvent;
+import java.util.List;
+import java.util.UUID;
+
+public interface FileEventRepositoryCustom {
+    int saveAllIgnoreConflict(List<FileEvent> events);
+
+    /** Inserts with {@code ON CONFLICT (id, ts) DO NOTHING} and returns the ids that were new. */
+    List<UUID> saveAllIgnoreConflictReturningIds(List<FileEvent> events);
+}
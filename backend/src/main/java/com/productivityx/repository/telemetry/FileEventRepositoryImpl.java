@@ -0,0 +1,49 @@
+package com.productivityx.repository.telemetry;
+
+import com.productivityx.model.telemetry.FileEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+@RequiredArgsConstructor
+public class FileEventRepositoryImpl implements FileEventRepositoryCustom {
+
+    private static final MultiRowInsert<FileEvent> INSERT = new MultiRowInsert<>(
+            "INSERT INTO file_events " +
+                    "(id, tenant_id, org_id, device_id, ts, ts_ms, operation, path_hash, file_ext, " +
+                    "size_bytes, is_usb, is_external, dest_path_hash, ingest_batch_id, created_at) VALUES ",
+            "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW())",
+            "ON CONFLICT (id, ts) DO NOTHING",
+            (ps, i, e) -> {
+                ps.setObject(i, e.getId());
+                ps.setObject(i + 1, e.getTenantId());
+                ps.setObject(i + 2, e.getOrgId());
+                ps.setString(i + 3, e.getDeviceId());
+                ps.setTimestamp(i + 4, MultiRowInsert.timestamp(e.getTs()));
+                ps.setObject(i + 5, e.getTsMs());
+                ps.setString(i + 6, e.getOperation());
+                ps.setString(i + 7, e.getPathHash());
+                ps.setString(i + 8, e.getFileExt());
+                ps.setObject(i + 9, e.getSizeBytes());
+                ps.setObject(i + 10, e.getIsUsb());
+                ps.setObject(i + 11, e.getIsExternal());
+                ps.setString(i + 12, e.getDestPathHash());
+                ps.setObject(i + 13, e.getIngestBatchId());
+            });
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int saveAllIgnoreConflict(List<FileEvent> events) {
+        return INSERT.execute(jdbcTemplate, events);
+    }
+
+    @Override
+    public List<UUID> saveAllIgnoreConflictReturningIds(List<FileEvent> events) {
+        return INSERT.executeReturningIds(jdbcTemplate, events);
+    }
+}
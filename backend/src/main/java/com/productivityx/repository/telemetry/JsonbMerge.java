@@ -0,0 +1,34 @@
+package com.productivityx.repository.telemetry;
+
+/**
+ * SQL expressions for {@code ON CONFLICT DO UPDATE} that merge an incoming JSONB delta into the
+ * stored summary column instead of overwriting it, so concurrent writers only ever add.
+ */
+final class JsonbMerge {
+
+    private JsonbMerge() {
+    }
+
+    /**
+     * Sums the stored and incoming {@code durationSeconds} of {@code [{"name", "durationSeconds"}]}
+     * lists per name and keeps the heaviest {@code limit}. Both sides are top-K lists, so like any
+     * merged heavy-hitter summary the result is approximate for items near the cut-off.
+     */
+    static String topItems(String table, String column, int limit) {
+        return "CASE WHEN EXCLUDED." + column + " = '[]'::jsonb THEN " + table + "." + column + " ELSE (" +
+                "SELECT COALESCE(jsonb_agg(jsonb_build_object('name', m.name, 'durationSeconds', m.seconds) " +
+                "ORDER BY m.seconds DESC, m.name), '[]'::jsonb) FROM (" +
+                "SELECT e->>'name' AS name, SUM(COALESCE((e->>'durationSeconds')::bigint, 0)) AS seconds " +
+                "FROM jsonb_array_elements(COALESCE(" + table + "." + column + ", '[]'::jsonb) || EXCLUDED." + column + ") e " +
+                "GROUP BY e->>'name' ORDER BY seconds DESC, name LIMIT " + limit + ") m) END";
+    }
+
+    /** Adds the incoming per-key counts of a {@code {"key": count}} object to the stored ones. */
+    static String counters(String table, String column) {
+        return "CASE WHEN EXCLUDED." + column + " = '{}'::jsonb THEN " + table + "." + column + " ELSE (" +
+                "SELECT jsonb_object_agg(c.key, c.total) FROM (" +
+                "SELECT key, SUM(value::bigint) AS total FROM (" +
+                "SELECT * FROM jsonb_each_text(COALESCE(" + table + "." + column + ", '{}'::jsonb)) " +
+                "UNION ALL SELECT * FROM jsonb_each_text(EXCLUDED." + column + ")) kv GROUP BY key) c) END";
+    }
+}
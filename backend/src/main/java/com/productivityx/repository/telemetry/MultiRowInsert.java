@@ -0,0 +1,104 @@
+package com.productivityx.repository.telemetry;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes rows as chunked multi-row {@code INSERT ... VALUES (..), (..) ON CONFLICT ...} statements,
+ * so a batch costs one round trip per chunk instead of one per entity.
+ * The affected-row count of each statement is exact, unlike rewritten JDBC batches.
+ */
+final class MultiRowInsert<T> {
+
+    /** Keeps each statement well below PostgreSQL's 32767 bind parameter limit. */
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
+    @FunctionalInterface
+    interface RowBinder<T> {
+        /**
+         * Binds one row starting at the 1-based parameter index {@code offset}.
+         */
+        void bind(PreparedStatement ps, int offset, T row) throws SQLException;
+    }
+
+    private final String prefix;
+    private final String tuple;
+    private final String suffix;
+    private final int paramsPerRow;
+    private final RowBinder<T> binder;
+
+    /**
+     * @param prefix       e.g. {@code INSERT INTO t (a, b, created_at) VALUES }
+     * @param tuple        placeholder tuple for one row, e.g. {@code (?, ?, NOW())}
+     * @param suffix       conflict clause, e.g. {@code ON CONFLICT (id) DO NOTHING}
+     */
+    MultiRowInsert(String prefix, String tuple, String suffix, RowBinder<T> binder) {
+        this.prefix = prefix;
+        this.tuple = tuple;
+        this.suffix = suffix;
+        this.paramsPerRow = (int) tuple.chars().filter(c -> c == '?').count();
+        this.binder = binder;
+    }
+
+    int execute(JdbcTemplate jdbcTemplate, List<T> rows) {
+        int inserted = 0;
+        for (int from = 0; from < rows.size(); from += DEFAULT_CHUNK_SIZE) {
+            List<T> chunk = rows.subList(from, Math.min(rows.size(), from + DEFAULT_CHUNK_SIZE));
+            inserted += jdbcTemplate.update(sql(chunk.size()), ps -> bindChunk(ps, chunk));
+        }
+        return inserted;
+    }
+
+    /**
+     * Same as {@link #execute}, with {@code RETURNING id} appended: returns the ids of the rows that
+     * were actually inserted, so callers know which rows of the batch are new without a read-back.
+     */
+    List<UUID> executeReturningIds(JdbcTemplate jdbcTemplate, List<T> rows) {
+        return executeReturning(jdbcTemplate, rows, "id", (rs, rowNum) -> rs.getObject(1, UUID.class));
+    }
+
+    /**
+     * Same as {@link #execute}, with {@code RETURNING <columns>} appended; one mapped result per
+     * inserted or updated row.
+     */
+    <R> List<R> executeReturning(JdbcTemplate jdbcTemplate, List<T> rows, String columns, RowMapper<R> rowMapper) {
+        List<R> results = new ArrayList<>(rows.size());
+        for (int from = 0; from < rows.size(); from += DEFAULT_CHUNK_SIZE) {
+            List<T> chunk = rows.subList(from, Math.min(rows.size(), from + DEFAULT_CHUNK_SIZE));
+            PreparedStatementSetter setter = ps -> bindChunk(ps, chunk);
+            results.addAll(jdbcTemplate.query(sql(chunk.size()) + " RETURNING " + columns, setter, rowMapper));
+        }
+        return results;
+    }
+
+    String sql(int rowCount) {
+        StringBuilder sql = new StringBuilder(prefix.length() + suffix.length() + rowCount * (tuple.length() + 2));
+        sql.append(prefix);
+        for (int i = 0; i < rowCount; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(tuple);
+        }
+        return sql.append(' ').append(suffix).toString();
+    }
+
+    void bindChunk(PreparedStatement ps, List<T> chunk) throws SQLException {
+        int offset = 1;
+        for (T row : chunk) {
+            binder.bind(ps, offset, row);
+            offset += paramsPerRow;
+        }
+    }
+
+    static Timestamp timestamp(LocalDateTime value) {
+        return value != null ? Timestamp.valueOf(value) : null;
+    }
+}
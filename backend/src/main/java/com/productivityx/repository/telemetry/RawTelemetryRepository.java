@@ -0,0 +1,144 @@
+package com.productivityx.repository.telemetry;
+
+import com.productivityx.util.ColumnarFile;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Untyped access to the raw telemetry tables, for archiving partitions and for audit reads. Values
+ * use the {@link ColumnarFile.Type} Java types, so rows read from PostgreSQL and from archives look
+ * alike; TIMESTAMPTZ columns become {@link java.time.Instant}s.
+ */
+@Repository
+@RequiredArgsConstructor
+public class RawTelemetryRepository {
+
+    private static final int FETCH_SIZE = 5000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Receives the columns once, then every row. */
+    public interface RowSink {
+        void columns(List<ColumnarFile.Column> columns) throws IOException;
+
+        void row(Object[] values) throws IOException;
+    }
+
+    public List<UUID> findTenants(String partitionName) {
+        return jdbcTemplate.queryForList(
+                "SELECT DISTINCT tenant_id FROM " + TelemetryPartitionRepository.quote(partitionName), UUID.class);
+    }
+
+    /** Streams one tenant's rows of a partition through a cursor; call inside a transaction. */
+    public void streamPartition(String partitionName, UUID tenantId, RowSink sink) {
+        String sql = "SELECT * FROM " + TelemetryPartitionRepository.quote(partitionName) + " WHERE tenant_id = ?";
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setObject(1, tenantId);
+            return ps;
+        }, (ResultSetExtractor<Void>) rs -> {
+            List<ColumnarFile.Column> columns = columns(rs.getMetaData());
+            try {
+                sink.columns(columns);
+                while (rs.next()) {
+                    sink.row(values(rs, columns));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+    }
+
+    /** Rows of the tenant in [{@code from}, {@code to}), oldest first, optionally for one device. */
+    public List<Map<String, Object>> findRows(TelemetryPartition table, UUID tenantId, String deviceId,
+                                              LocalDateTime from, LocalDateTime to, int limit) {
+        String column = TelemetryPartitionRepository.quote(table.getPartitionColumn());
+        String sql = "SELECT * FROM " + TelemetryPartitionRepository.quote(table.getTableName()) +
+                " WHERE tenant_id = ? AND " + column + " >= ? AND " + column + " < ?" +
+                (deviceId != null ? " AND device_id = ?" : "") +
+                " ORDER BY " + column + " LIMIT ?";
+        List<Object> args = new ArrayList<>(List.of(tenantId, bound(table, from), bound(table, to)));
+        if (deviceId != null) args.add(deviceId);
+        args.add(limit);
+
+        return jdbcTemplate.query(sql, (ResultSetExtractor<List<Map<String, Object>>>) rs -> {
+            List<ColumnarFile.Column> columns = columns(rs.getMetaData());
+            List<Map<String, Object>> rows = new ArrayList<>();
+            while (rs.next()) {
+                rows.add(toMap(columns, values(rs, columns)));
+            }
+            return rows;
+        }, args.toArray());
+    }
+
+    public static Map<String, Object> toMap(List<ColumnarFile.Column> columns, Object[] values) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int c = 0; c < values.length; c++) {
+            row.put(columns.get(c).getName(), values[c]);
+        }
+        return row;
+    }
+
+    private static Object bound(TelemetryPartition table, LocalDateTime value) {
+        return table.isEpochMillis() ? value.toInstant(ZoneOffset.UTC).toEpochMilli() : value.atOffset(ZoneOffset.UTC);
+    }
+
+    private static List<ColumnarFile.Column> columns(ResultSetMetaData meta) throws SQLException {
+        List<ColumnarFile.Column> columns = new ArrayList<>(meta.getColumnCount());
+        for (int c = 1; c <= meta.getColumnCount(); c++) {
+            columns.add(new ColumnarFile.Column(meta.getColumnName(c), typeOf(meta.getColumnTypeName(c))));
+        }
+        return columns;
+    }
+
+    private static ColumnarFile.Type typeOf(String pgType) {
+        return switch (pgType) {
+            case "uuid" -> ColumnarFile.Type.UUID;
+            case "int2", "int4" -> ColumnarFile.Type.INT;
+            case "int8" -> ColumnarFile.Type.LONG;
+            case "float4", "float8", "numeric" -> ColumnarFile.Type.DOUBLE;
+            case "bool" -> ColumnarFile.Type.BOOLEAN;
+            case "timestamptz" -> ColumnarFile.Type.TIMESTAMP;
+            default -> ColumnarFile.Type.STRING;
+        };
+    }
+
+    private static Object[] values(ResultSet rs, List<ColumnarFile.Column> columns) throws SQLException {
+        Object[] values = new Object[columns.size()];
+        for (int c = 0; c < values.length; c++) {
+            int index = c + 1;
+            values[c] = switch (columns.get(c).getType()) {
+                case UUID -> rs.getObject(index, UUID.class);
+                case INT -> rs.getObject(index, Integer.class);
+                case LONG -> rs.getObject(index, Long.class);
+                case DOUBLE -> rs.getObject(index, Double.class);
+                case BOOLEAN -> rs.getObject(index, Boolean.class);
+                case TIMESTAMP -> {
+                    OffsetDateTime ts = rs.getObject(index, OffsetDateTime.class);
+                    yield ts != null ? ts.toInstant() : null;
+                }
+                case STRING -> rs.getString(index);
+            };
+        }
+        return values;
+    }
+}
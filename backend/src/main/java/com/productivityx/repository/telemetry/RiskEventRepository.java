@@ -2,8 +2,16 @@ package com.productivityx.repository.telemetry;
 
 import com.productivityx.model.telemetry.RiskEvent;
 import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 public interface RiskEventRepository extends JpaRepository<RiskEvent, UUID> {
     boolean existsByTenantIdAndOrgIdAndDeviceIdAndTypeAndDedupKey(UUID tenantId, UUID orgId, String deviceId, String type, String dedupKey);
+
+    List<RiskEvent> findTop5ByTenantIdAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(UUID tenantId, String status, LocalDateTime since);
+
+    // Served by idx_risk_event_tenant_created (tenant_id, org_id, created_at DESC)
+    List<RiskEvent> findTop5ByTenantIdAndOrgIdAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(UUID tenantId, UUID orgId, String status, LocalDateTime since);
 }
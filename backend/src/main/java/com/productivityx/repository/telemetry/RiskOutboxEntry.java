@@ -0,0 +1,17 @@
+package com.productivityx.repository.telemetry;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/** A claimed {@code risk_outbox} row; {@code signalsJson} is decoded by the dispatcher. */
+@Data
+public class RiskOutboxEntry {
+    private final long id;
+    private final UUID tenantId;
+    private final UUID orgId;
+    private final String deviceId;
+    private final String signalsJson;
+    private final LocalDateTime createdAt; // UTC
+}
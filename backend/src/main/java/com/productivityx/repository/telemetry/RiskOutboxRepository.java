@@ -0,0 +1,73 @@
+package com.productivityx.repository.telemetry;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The {@code risk_outbox} queue. {@link #append} joins the caller's (ingest) transaction; claimed
+ * rows stay locked until the claiming transaction ends, so concurrent workers on any node skip them.
+ * Each share of the devices is leased to one node at a time through {@code risk_outbox_lease}.
+ */
+@Repository
+@RequiredArgsConstructor
+public class RiskOutboxRepository {
+
+    private static final RowMapper<RiskOutboxEntry> MAPPER = (rs, n) -> new RiskOutboxEntry(
+            rs.getLong("id"),
+            rs.getObject("tenant_id", UUID.class),
+            rs.getObject("org_id", UUID.class),
+            rs.getString("device_id"),
+            rs.getString("signals"),
+            rs.getObject("created_at", OffsetDateTime.class).withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void append(UUID tenantId, UUID orgId, String deviceId, String signalsJson) {
+        jdbcTemplate.update("INSERT INTO risk_outbox (tenant_id, org_id, device_id, signals) VALUES (?, ?, ?, ?::jsonb)",
+                tenantId, orgId, deviceId, signalsJson);
+    }
+
+    /**
+     * Takes or renews the lease of share {@code worker} for {@code owner}, then locks up to {@code limit} of the
+     * oldest rows whose device hashes to {@code worker} of {@code workers}, skipping rows another transaction holds.
+     * Returns nothing while another owner's lease is current. All nodes must run the same number of workers.
+     */
+    public List<RiskOutboxEntry> claim(String owner, int worker, int workers, int limit, long leaseSeconds) {
+        List<Integer> leased = jdbcTemplate.queryForList(
+                "INSERT INTO risk_outbox_lease (share, owner, expires_at) VALUES (?, ?, NOW() + make_interval(secs => ?)) " +
+                        "ON CONFLICT (share) DO UPDATE SET owner = EXCLUDED.owner, expires_at = EXCLUDED.expires_at " +
+                        "WHERE risk_outbox_lease.owner = EXCLUDED.owner OR risk_outbox_lease.expires_at < NOW() " +
+                        "RETURNING share",
+                Integer.class, worker, owner, leaseSeconds);
+        if (leased.isEmpty()) return List.of();
+        return jdbcTemplate.query(
+                "SELECT id, tenant_id, org_id, device_id, signals, created_at FROM risk_outbox " +
+                        "WHERE mod(hashtext(device_id) & 2147483647, ?) = ? " +
+                        "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED",
+                MAPPER, workers, worker, limit);
+    }
+
+    public void delete(List<Long> ids) {
+        if (ids.isEmpty()) return;
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("DELETE FROM risk_outbox WHERE id = ANY(?)");
+            ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+    }
+
+    /** Pending rows and the age in seconds of the oldest one (0 when empty). */
+    public long[] backlog() {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*), COALESCE(EXTRACT(EPOCH FROM NOW() - MIN(created_at)), 0)::BIGINT FROM risk_outbox",
+                (rs, n) -> new long[]{rs.getLong(1), rs.getLong(2)});
+    }
+}
@@ -0,0 +1,14 @@
+package com.productivityx.repository.telemetry;
+
+import com.productivityx.model.telemetry.RiskRule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface RiskRuleRepository extends JpaRepository<RiskRule, UUID> {
+    /** Built-in rules and the tenant's own, for the admin API. */
+    @Query("SELECT r FROM RiskRule r WHERE r.tenantId IS NULL OR r.tenantId = :tenantId ORDER BY r.code, r.tenantId NULLS FIRST, r.orgId NULLS FIRST")
+    List<RiskRule> findVisibleToTenant(UUID tenantId);
+}
@@ -0,0 +1,18 @@
+package com.productivityx.repository.telemetry;
+
+import com.productivityx.model.telemetry.TelemetryArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface TelemetryArchiveRepository extends JpaRepository<TelemetryArchive, UUID> {
+    /** Archives of the table overlapping [from, to), oldest first. */
+    List<TelemetryArchive> findByTenantIdAndTableNameAndRangeStartLessThanAndRangeEndGreaterThanOrderByRangeStartAsc(
+            UUID tenantId, String tableName, LocalDateTime to, LocalDateTime from);
+
+    List<TelemetryArchive> findByTenantIdAndRangeEndLessThanEqual(UUID tenantId, LocalDateTime cutoff);
+
+    List<TelemetryArchive> findByTableNameAndPartitionName(String tableName, String partitionName);
+}
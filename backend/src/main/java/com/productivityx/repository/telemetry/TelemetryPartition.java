@@ -0,0 +1,24 @@
+package com.productivityx.repository.telemetry;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * One range-partitioned telemetry table as registered in {@code telemetry_partition}. Every value
+ * of {@code partitionColumn} below {@code coveredUntil} (UTC) has a partition; each further
+ * partition spans one {@code period} (DAY or WEEK) and is named {@code <table>_pYYYYMMDD} after
+ * its first day.
+ */
+@Data
+public class TelemetryPartition {
+    private final String tableName;
+    private final String partitionColumn;
+    private final boolean epochMillis;
+    private final String period;
+    private final LocalDateTime coveredUntil;
+
+    public LocalDateTime next(LocalDateTime start) {
+        return "WEEK".equals(period) ? start.plusWeeks(1) : start.plusDays(1);
+    }
+}
@@ -0,0 +1,116 @@
+package com.productivityx.repository.telemetry;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * DDL for the range-partitioned telemetry tables. Table and column names come from
+ * {@code telemetry_partition}, never from requests. Callers run each method in a transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TelemetryPartitionRepository {
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter LITERAL = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final String COLUMNS = "table_name, partition_column, epoch_millis, period, covered_until";
+
+    private static final RowMapper<TelemetryPartition> MAPPER = (rs, n) -> new TelemetryPartition(
+            rs.getString("table_name"),
+            rs.getString("partition_column"),
+            rs.getBoolean("epoch_millis"),
+            rs.getString("period"),
+            rs.getObject("covered_until", OffsetDateTime.class).withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<TelemetryPartition> findAll() {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM telemetry_partition ORDER BY table_name", MAPPER);
+    }
+
+    /** Locks the registry row, so only one node at a time adds partitions to the table. */
+    public Optional<TelemetryPartition> lock(String tableName) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM telemetry_partition WHERE table_name = ? FOR UPDATE",
+                MAPPER, tableName).stream().findFirst();
+    }
+
+    /**
+     * Creates the partition for [{@code from}, {@code to}). Rows for that range that already landed
+     * in {@code <table>_default} are moved into it; otherwise PostgreSQL would refuse the partition.
+     */
+    public void createPartition(TelemetryPartition table, LocalDateTime from, LocalDateTime to) {
+        String parent = quote(table.getTableName());
+        String defaultPartition = quote(table.getTableName() + "_default");
+        String partition = quote(partitionName(table, from));
+        String range = quote(table.getPartitionColumn()) + " >= " + bound(table, from) +
+                " AND " + quote(table.getPartitionColumn()) + " < " + bound(table, to);
+        String create = "CREATE TABLE " + partition + " PARTITION OF " + parent +
+                " FOR VALUES FROM (" + bound(table, from) + ") TO (" + bound(table, to) + ")";
+
+        Boolean spilled = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + defaultPartition + " WHERE " + range + ")", Boolean.class);
+        if (!Boolean.TRUE.equals(spilled)) {
+            jdbcTemplate.execute(create);
+            return;
+        }
+
+        String columns = jdbcTemplate.queryForObject(
+                "SELECT string_agg(quote_ident(attname), ', ' ORDER BY attnum) FROM pg_attribute " +
+                        "WHERE attrelid = ?::regclass AND attnum > 0 AND NOT attisdropped AND attgenerated = ''",
+                String.class, table.getTableName());
+        jdbcTemplate.execute("ALTER TABLE " + parent + " DETACH PARTITION " + defaultPartition);
+        jdbcTemplate.execute(create);
+        jdbcTemplate.execute("INSERT INTO " + parent + " (" + columns + ") SELECT " + columns +
+                " FROM " + defaultPartition + " WHERE " + range);
+        jdbcTemplate.execute("DELETE FROM " + defaultPartition + " WHERE " + range);
+        jdbcTemplate.execute("ALTER TABLE " + parent + " ATTACH PARTITION " + defaultPartition + " DEFAULT");
+    }
+
+    /** Names of the table's partitions: {@code <table>_pYYYYMMDD}, {@code <table>_legacy} and {@code <table>_default}. */
+    public List<String> findPartitionNames(String tableName) {
+        return jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                        "WHERE i.inhparent = ?::regclass ORDER BY c.relname", String.class, tableName);
+    }
+
+    /** Blocks writes to the partition for the rest of the transaction and returns its row count. */
+    public long lockAndCount(String partitionName) {
+        jdbcTemplate.execute("LOCK TABLE " + quote(partitionName) + " IN SHARE MODE");
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + quote(partitionName), Long.class);
+        return count != null ? count : 0;
+    }
+
+    public void dropPartition(String tableName, String partitionName) {
+        jdbcTemplate.execute("ALTER TABLE " + quote(tableName) + " DETACH PARTITION " + quote(partitionName));
+        jdbcTemplate.execute("DROP TABLE " + quote(partitionName));
+    }
+
+    public void setCoveredUntil(String tableName, LocalDateTime coveredUntil) {
+        jdbcTemplate.update("UPDATE telemetry_partition SET covered_until = ?, updated_at = NOW() WHERE table_name = ?",
+                coveredUntil.atOffset(ZoneOffset.UTC), tableName);
+    }
+
+    public static String partitionName(TelemetryPartition table, LocalDateTime from) {
+        return table.getTableName() + "_p" + SUFFIX.format(from);
+    }
+
+    private static String bound(TelemetryPartition table, LocalDateTime value) {
+        return table.isEpochMillis()
+                ? String.valueOf(value.toInstant(ZoneOffset.UTC).toEpochMilli())
+                : "'" + LITERAL.format(value) + "+00'";
+    }
+
+    static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,8 @@
+package com.productivityx.repository.telemetry;
+
+import com.productivityx.model.telemetry.UsbEvent;
+import java.util.List;
+
+public interface UsbEventRepositoryCustom {
+    int saveAllIgnoreConflict(List<UsbEvent> events);
+}
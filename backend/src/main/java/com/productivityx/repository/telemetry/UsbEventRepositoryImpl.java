@@ -0,0 +1,39 @@
+package com.productivityx.repository.telemetry;
+
+import com.productivityx.model.telemetry.UsbEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class UsbEventRepositoryImpl implements UsbEventRepositoryCustom {
+
+    private static final MultiRowInsert<UsbEvent> INSERT = new MultiRowInsert<>(
+            "INSERT INTO usb_events " +
+                    "(id, tenant_id, org_id, device_id, ts_ms, action, drive_letter, vendor_id, " +
+                    "product_id, volume_serial, created_at) VALUES ",
+            "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW())",
+            "ON CONFLICT (id, ts_ms) DO NOTHING",
+            (ps, i, e) -> {
+                ps.setObject(i, e.getId());
+                ps.setObject(i + 1, e.getTenantId());
+                ps.setObject(i + 2, e.getOrgId());
+                ps.setString(i + 3, e.getDeviceId());
+                ps.setObject(i + 4, e.getTsMs());
+                ps.setString(i + 5, e.getAction());
+                ps.setString(i + 6, e.getDriveLetter());
+                ps.setString(i + 7, e.getVendorId());
+                ps.setString(i + 8, e.getProductId());
+                ps.setString(i + 9, e.getVolumeSerial());
+            });
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int saveAllIgnoreConflict(List<UsbEvent> events) {
+        return INSERT.execute(jdbcTemplate, events);
+    }
+}
@@ -4,5 +4,5 @@ import com.productivityx.model.telemetry.WebUsageEvent;
 import org.springframework.data.jpa.repository.JpaRepository;
 import java.util.UUID;
 
-public interface WebUsageEventRepository extends JpaRepository<WebUsageEvent, UUID> {
+public interface WebUsageEventRepository extends JpaRepository<WebUsageEvent, UUID>, WebUsageEventRepositoryCustom {
 }
@@ -0,0 +1,12 @@
+package com.productivityx.repository.telemetry;
+
+import com.productivityx.model.telemetry.WebUsageEvent;
+import java.util.List;
+import java.util.UUID;
+
+public interface WebUsageEventRepositoryCustom {
+    int saveAllIgnoreConflict(List<WebUsageEvent> events);
+
+    /** Inserts with {@code ON CONFLICT (id, ts_start) DO NOTHING} and returns the ids that were new. */
+    List<UUID> saveAllIgnoreConflictReturningIds(List<WebUsageEvent> events);
+}
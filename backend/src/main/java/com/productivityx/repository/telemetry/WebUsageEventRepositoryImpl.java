@@ -0,0 +1,44 @@
+package com.productivityx.repository.telemetry;
+
+import com.productivityx.model.telemetry.WebUsageEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+@RequiredArgsConstructor
+public class WebUsageEventRepositoryImpl implements WebUsageEventRepositoryCustom {
+
+    private static final MultiRowInsert<WebUsageEvent> INSERT = new MultiRowInsert<>(
+            "INSERT INTO web_usage_events " +
+                    "(id, tenant_id, org_id, device_id, ts_start, ts_end, domain, category, " +
+                    "ingest_batch_id, created_at) VALUES ",
+            "(?, ?, ?, ?, ?, ?, ?, ?, ?, NOW())",
+            "ON CONFLICT (id, ts_start) DO NOTHING",
+            (ps, i, e) -> {
+                ps.setObject(i, e.getId());
+                ps.setObject(i + 1, e.getTenantId());
+                ps.setObject(i + 2, e.getOrgId());
+                ps.setString(i + 3, e.getDeviceId());
+                ps.setTimestamp(i + 4, MultiRowInsert.timestamp(e.getTsStart()));
+                ps.setTimestamp(i + 5, MultiRowInsert.timestamp(e.getTsEnd()));
+                ps.setString(i + 6, e.getDomain());
+                ps.setString(i + 7, e.getCategory());
+                ps.setObject(i + 8, e.getIngestBatchId());
+            });
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int saveAllIgnoreConflict(List<WebUsageEvent> events) {
+        return INSERT.execute(jdbcTemplate, events);
+    }
+
+    @Override
+    public List<UUID> saveAllIgnoreConflictReturningIds(List<WebUsageEvent> events) {
+        return INSERT.executeReturningIds(jdbcTemplate, events);
+    }
+}
@@ -0,0 +1,255 @@
+package com.productivityx.service;
+
+import com.productivityx.dto.ingest.IngestBatchDTO;
+import com.productivityx.dto.ingest.IngestReceipt;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opt-in asynchronous ingest: batches are queued per partition (by device id, so one device's
+ * batches stay ordered) and writer workers commit many batches in a single transaction.
+ * With {@link IngestSpool} enabled, a batch is on disk before it is acknowledged.
+ * <p>
+ * A batch that can never be written (invalid, or violating a constraint) is dropped. Other failures,
+ * such as a database restart, are retried with backoff, holding back the partition's later batches;
+ * on shutdown the batch stays in the spool and is replayed on the next start.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AsyncIngestPipeline {
+
+    private static final long MIN_RETRY_MS = 100;
+    private static final long MAX_RETRY_MS = 5000;
+
+    private final IngestService ingestService;
+    private final IngestSpool spool;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${productivityx.ingest.async.enabled:false}")
+    private boolean enabled;
+
+    @Value("${productivityx.ingest.async.partitions:4}")
+    private int partitions;
+
+    @Value("${productivityx.ingest.async.queue-capacity:2000}")
+    private int queueCapacity;
+
+    @Value("${productivityx.ingest.async.group-size:50}")
+    private int groupSize;
+
+    @Value("${productivityx.ingest.async.retry-after-seconds:5}")
+    private int retryAfterSeconds;
+
+    private final List<BlockingQueue<PendingBatch>> queues = new ArrayList<>();
+    private ExecutorService workers;
+    private TransactionTemplate txTemplate;
+    private volatile boolean running;
+
+    private Counter acceptedCounter;
+    private Counter rejectedCounter;
+    private Counter failedCounter;
+    private Timer latencyTimer;
+    private Timer commitTimer;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+
+        txTemplate = new TransactionTemplate(transactionManager);
+        acceptedCounter = meterRegistry.counter("ingest.async.batches", "result", "accepted");
+        rejectedCounter = meterRegistry.counter("ingest.async.batches", "result", "rejected");
+        failedCounter = meterRegistry.counter("ingest.async.batches", "result", "failed");
+        latencyTimer = Timer.builder("ingest.async.latency")
+                .description("Time from enqueue to commit")
+                .register(meterRegistry);
+        commitTimer = Timer.builder("ingest.async.commit")
+                .description("Duration of one group-commit transaction")
+                .register(meterRegistry);
+
+        for (int i = 0; i < partitions; i++) {
+            BlockingQueue<PendingBatch> queue = new ArrayBlockingQueue<>(queueCapacity);
+            queues.add(queue);
+            Gauge.builder("ingest.async.queue.depth", queue, BlockingQueue::size)
+                    .tag("partition", String.valueOf(i))
+                    .register(meterRegistry);
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(partitions, r -> {
+            Thread t = new Thread(r, "ingest-writer-" + threadIndex.getAndIncrement());
+            t.setDaemon(false);
+            return t;
+        });
+        running = true;
+        for (int i = 0; i < partitions; i++) {
+            int partition = i;
+            workers.submit(() -> drain(partition));
+        }
+        log.info("Async ingest enabled: {} partitions x {} slots, group size {}", partitions, queueCapacity, groupSize);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (workers == null) return;
+        running = false;
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Async ingest workers did not drain within 30s; {} batches left", queuedBatches());
+            workers.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Queues a batch for background ingest.
+     * @return the receipt, or empty when the partition queue is full and the caller should back off.
+     */
+    public Optional<IngestReceipt> submit(String deviceId, IngestBatchDTO batch) {
+        if (!running) throw new IllegalStateException("Async ingest is not running");
+
+        int partition = Math.floorMod(deviceId.hashCode(), partitions);
+        BlockingQueue<PendingBatch> queue = queues.get(partition);
+        UUID receiptId = UUID.randomUUID();
+        if (queue.remainingCapacity() == 0) {
+            rejectedCounter.increment();
+            return Optional.empty();
+        }
+        IngestSpool.Ticket ticket = spool.isEnabled() ? spool.append(receiptId, deviceId, batch) : null;
+        PendingBatch pending = new PendingBatch(receiptId, deviceId, batch, ticket, System.nanoTime());
+        if (!queue.offer(pending)) {
+            // Filled up while we were spooling; the agent retries, so release the spooled copy.
+            release(pending);
+            rejectedCounter.increment();
+            return Optional.empty();
+        }
+        acceptedCounter.increment();
+        return Optional.of(new IngestReceipt(pending.receiptId, deviceId, partition, queue.size(), System.currentTimeMillis()));
+    }
+
+    int queuedBatches() {
+        return queues.stream().mapToInt(BlockingQueue::size).sum();
+    }
+
+    private void drain(int partition) {
+        BlockingQueue<PendingBatch> queue = queues.get(partition);
+        List<PendingBatch> group = new ArrayList<>(groupSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingBatch first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                group.add(first);
+                queue.drainTo(group, groupSize - 1);
+                commitGroup(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Async ingest worker {} failed", partition, e);
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void commitGroup(List<PendingBatch> group) throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            txTemplate.executeWithoutResult(status ->
+                    group.forEach(p -> ingestService.processBatch(p.deviceId, p.batch)));
+            group.forEach(this::completed);
+        } catch (RuntimeException e) {
+            // One bad batch rolls back the whole group; isolate it by retrying one transaction per batch.
+            log.warn("Group commit of {} batches failed, retrying individually: {}", group.size(), e.getMessage());
+            for (PendingBatch p : group) {
+                commitAlone(p);
+            }
+        } finally {
+            commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /** Commits one batch, retrying until it succeeds, can never succeed, or the pipeline stops. */
+    private void commitAlone(PendingBatch p) throws InterruptedException {
+        long retryMs = MIN_RETRY_MS;
+        while (true) {
+            try {
+                txTemplate.executeWithoutResult(status -> ingestService.processBatch(p.deviceId, p.batch));
+                completed(p);
+                return;
+            } catch (IllegalArgumentException | DataIntegrityViolationException e) {
+                failedCounter.increment();
+                log.error("Dropping ingest batch {} from device {}", p.receiptId, p.deviceId, e);
+                release(p);
+                return;
+            } catch (RuntimeException e) {
+                if (!running) {
+                    // Not released: the spooled copy is replayed on the next start
+                    log.warn("Leaving ingest batch {} from device {} uncommitted on shutdown: {}",
+                            p.receiptId, p.deviceId, e.getMessage());
+                    return;
+                }
+                log.warn("Ingest batch {} from device {} failed, retrying in {} ms: {}",
+                        p.receiptId, p.deviceId, retryMs, e.getMessage());
+                Thread.sleep(retryMs);
+                retryMs = Math.min(MAX_RETRY_MS, retryMs * 2);
+            }
+        }
+    }
+
+    private void completed(PendingBatch p) {
+        latencyTimer.record(System.nanoTime() - p.enqueuedAtNanos, TimeUnit.NANOSECONDS);
+        release(p);
+    }
+
+    private void release(PendingBatch p) {
+        if (p.spoolTicket != null) spool.markCommitted(p.spoolTicket);
+    }
+
+    private static final class PendingBatch {
+        private final UUID receiptId;
+        private final String deviceId;
+        private final IngestBatchDTO batch;
+        private final IngestSpool.Ticket spoolTicket;
+        private final long enqueuedAtNanos;
+
+        private PendingBatch(UUID receiptId, String deviceId, IngestBatchDTO batch,
+                             IngestSpool.Ticket spoolTicket, long enqueuedAtNanos) {
+            this.receiptId = receiptId;
+            this.deviceId = deviceId;
+            this.batch = batch;
+            this.spoolTicket = spoolTicket;
+            this.enqueuedAtNanos = enqueuedAtNanos;
+        }
+    }
+}
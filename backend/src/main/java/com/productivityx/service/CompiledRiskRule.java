@@ -0,0 +1,401 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.model.telemetry.RiskRule;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A {@link RiskRule} parsed once into an evaluator. Evaluators are shared by every device the rule
+ * applies to; per-device progress lives in the {@link State} each device window keeps for the rule.
+ * {@link #getTriggers()} lists the event types the rule reacts to, which is what
+ * {@link RiskRuleIndex} indexes on.
+ */
+@Getter
+public abstract class CompiledRiskRule {
+
+    private final UUID id;
+    private final UUID tenantId;
+    private final UUID orgId;
+    private final String code;
+    private final String severity;
+    private final boolean enabled;
+    private final LocalDateTime version;
+    private final Set<RiskSignal.Type> triggers;
+
+    private CompiledRiskRule(RiskRule rule, Set<RiskSignal.Type> triggers) {
+        this.id = rule.getId();
+        this.tenantId = rule.getTenantId();
+        this.orgId = rule.getOrgId();
+        this.code = rule.getCode();
+        this.severity = rule.getSeverity();
+        this.enabled = Boolean.TRUE.equals(rule.getEnabled());
+        this.version = rule.getUpdatedAt();
+        this.triggers = Collections.unmodifiableSet(triggers);
+    }
+
+    abstract State newState();
+
+    /** Feeds one triggering signal; returns the firings it caused, usually none. */
+    abstract List<Firing> evaluate(State state, RiskSignal signal);
+
+    /** Per-device progress of one rule. Guarded by the device window's monitor. */
+    interface State {
+        /** Drops what no window ending at or after {@code latestTsMs} can use; true once nothing is left. */
+        boolean prune(long latestTsMs, int maxEvents);
+    }
+
+    /**
+     * A rule that fired. {@code anchor} identifies the occurrence (bucket or first event time) and,
+     * with the rule code and device, makes the risk's dedup key.
+     */
+    public record Firing(CompiledRiskRule rule, long anchor, long windowStartMs, long windowEndMs, Map<String, Object> evidence) {
+    }
+
+    /**
+     * Parses {@code rule.definition}. Disabled rules are not parsed; they only hide broader rules
+     * with the same code.
+     *
+     * @throws IllegalArgumentException if the definition is malformed
+     */
+    public static CompiledRiskRule compile(RiskRule rule, ObjectMapper objectMapper) {
+        if (rule.getCode() == null || rule.getCode().isBlank()) throw new IllegalArgumentException("Rule code is required");
+        if (rule.getCode().length() > 50) throw new IllegalArgumentException("Rule code is longer than 50 characters");
+        if (!Boolean.TRUE.equals(rule.getEnabled())) return new Disabled(rule);
+        JsonNode def;
+        try {
+            def = objectMapper.readTree(rule.getDefinition());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Rule " + rule.getCode() + ": definition is not JSON", e);
+        }
+        if (def == null || !def.isObject()) throw new IllegalArgumentException("Rule " + rule.getCode() + ": definition must be an object");
+        String kind = rule.getKind() == null ? "" : rule.getKind().toUpperCase(Locale.ROOT);
+        return switch (kind) {
+            case "COUNT" -> new Count(rule, Matcher.parse(def.get("match")),
+                    positiveLong(def, "window_ms"), positiveLong(def, "threshold"));
+            case "SEQUENCE" -> new Sequence(rule, Matcher.parse(def.get("first")), Matcher.parse(def.get("then")),
+                    positiveLong(def, "within_ms"), def.path("ordered").asBoolean(true));
+            case "BASELINE" -> new Baseline(rule, Matcher.parse(def.get("match")), positiveLong(def, "window_ms"),
+                    def.path("factor").asDouble(3.0), def.path("min_count").asLong(1),
+                    def.path("alpha").asDouble(0.1), def.path("warmup_windows").asInt(24));
+            default -> throw new IllegalArgumentException("Rule " + rule.getCode() + ": unknown kind " + rule.getKind());
+        };
+    }
+
+    private static long positiveLong(JsonNode def, String field) {
+        long value = def.path(field).asLong(0);
+        if (value <= 0) throw new IllegalArgumentException(field + " must be a positive number");
+        return value;
+    }
+
+    /** {@code {"events": [...], "external": true}}; {@code external} is optional. */
+    record Matcher(Set<RiskSignal.Type> types, Boolean external) {
+
+        static Matcher parse(JsonNode node) {
+            if (node == null || !node.path("events").isArray() || node.path("events").isEmpty()) {
+                throw new IllegalArgumentException("A matcher needs a non-empty events list");
+            }
+            Set<RiskSignal.Type> types = EnumSet.noneOf(RiskSignal.Type.class);
+            for (JsonNode event : node.path("events")) {
+                try {
+                    types.add(RiskSignal.Type.valueOf(event.asText()));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown event type " + event.asText());
+                }
+            }
+            Boolean external = node.hasNonNull("external") ? node.get("external").asBoolean() : null;
+            return new Matcher(types, external);
+        }
+
+        boolean matches(RiskSignal signal) {
+            return types.contains(signal.type()) && (external == null || external == signal.external());
+        }
+    }
+
+    private static Set<RiskSignal.Type> union(Matcher a, Matcher b) {
+        Set<RiskSignal.Type> types = EnumSet.copyOf(a.types());
+        types.addAll(b.types());
+        return types;
+    }
+
+    private static final class Disabled extends CompiledRiskRule {
+        Disabled(RiskRule rule) {
+            super(rule, EnumSet.noneOf(RiskSignal.Type.class));
+        }
+
+        @Override
+        State newState() {
+            return (latestTsMs, maxEvents) -> true;
+        }
+
+        @Override
+        List<Firing> evaluate(State state, RiskSignal signal) {
+            return List.of();
+        }
+    }
+
+    /** More than {@code threshold} matches within {@code windowMs}; fires at most once per window-sized bucket. */
+    static final class Count extends CompiledRiskRule {
+        private final Matcher match;
+        private final long windowMs;
+        private final long threshold;
+
+        Count(RiskRule rule, Matcher match, long windowMs, long threshold) {
+            super(rule, match.types());
+            this.match = match;
+            this.windowMs = windowMs;
+            this.threshold = threshold;
+        }
+
+        @Override
+        State newState() {
+            return new CountState();
+        }
+
+        @Override
+        List<Firing> evaluate(State state, RiskSignal signal) {
+            if (!match.matches(signal)) return List.of();
+            CountState s = (CountState) state;
+            s.add(signal.tsMs());
+            int count = s.count(signal.tsMs() - windowMs, signal.tsMs());
+            if (count <= threshold) return List.of();
+            long bucket = signal.tsMs() / windowMs;
+            if (!s.firedBuckets.add(bucket)) return List.of();
+
+            Map<String, Object> evidence = new LinkedHashMap<>();
+            evidence.put("rule", getCode());
+            evidence.put("count", count);
+            evidence.put("threshold", threshold);
+            evidence.put("window_ms", windowMs);
+            return List.of(new Firing(this, bucket, signal.tsMs() - windowMs, signal.tsMs(), evidence));
+        }
+
+        private final class CountState implements State {
+            /** Sorted, so window counts are two binary searches even when uploads arrive out of order. */
+            private final ArrayList<Long> times = new ArrayList<>();
+            private final Set<Long> firedBuckets = new HashSet<>();
+
+            void add(long tsMs) {
+                int at = Collections.binarySearch(times, tsMs);
+                times.add(at < 0 ? -at - 1 : at, tsMs);
+            }
+
+            /** Matches with {@code from < ts <= to}. */
+            int count(long from, long to) {
+                return upperBound(to) - upperBound(from);
+            }
+
+            private int upperBound(long tsMs) {
+                int lo = 0;
+                int hi = times.size();
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (times.get(mid) <= tsMs) lo = mid + 1;
+                    else hi = mid;
+                }
+                return lo;
+            }
+
+            @Override
+            public boolean prune(long latestTsMs, int maxEvents) {
+                times.subList(0, upperBound(latestTsMs - windowMs - 1)).clear();
+                if (times.size() > maxEvents) times.subList(0, times.size() - maxEvents).clear();
+                long oldestBucket = (latestTsMs - windowMs) / windowMs;
+                firedBuckets.removeIf(bucket -> bucket < oldestBucket);
+                return times.isEmpty() && firedBuckets.isEmpty();
+            }
+        }
+    }
+
+    /**
+     * A {@code first} match followed by {@code then} matches within {@code withinMs} (either order
+     * unless {@code ordered}). Fires once per first event, quoting every {@code then} in range.
+     */
+    static final class Sequence extends CompiledRiskRule {
+        private final Matcher first;
+        private final Matcher then;
+        private final long withinMs;
+        private final boolean ordered;
+
+        Sequence(RiskRule rule, Matcher first, Matcher then, long withinMs, boolean ordered) {
+            super(rule, union(first, then));
+            this.first = first;
+            this.then = then;
+            this.withinMs = withinMs;
+            this.ordered = ordered;
+        }
+
+        @Override
+        State newState() {
+            return new SequenceState();
+        }
+
+        @Override
+        List<Firing> evaluate(State state, RiskSignal signal) {
+            SequenceState s = (SequenceState) state;
+            boolean isFirst = first.matches(signal);
+            boolean isThen = then.matches(signal);
+            if (isFirst) {
+                // Some agents re-send the same insert with a new id; the time and detail identify it
+                boolean seen = s.firsts.stream().anyMatch(f -> f.signal.tsMs() == signal.tsMs()
+                        && Objects.equals(f.signal.detail(), signal.detail()));
+                if (!seen) s.firsts.add(new Pending(signal));
+            }
+            if (isThen) s.thens.add(signal);
+            if (!isFirst && !isThen) return List.of();
+
+            List<Firing> firings = new ArrayList<>();
+            for (Pending pending : s.firsts) {
+                if (pending.fired) continue;
+                // A new first looks back over the thens; a new then only needs checking against the firsts
+                boolean triggered = pending.signal == signal
+                        ? s.thens.stream().anyMatch(t -> t != signal && inRange(pending.signal.tsMs(), t.tsMs()))
+                        : isThen && inRange(pending.signal.tsMs(), signal.tsMs());
+                if (!triggered) continue;
+
+                List<UUID> ids = new ArrayList<>();
+                long start = pending.signal.tsMs();
+                long end = start;
+                for (RiskSignal candidate : s.thens) {
+                    if (candidate != pending.signal && inRange(pending.signal.tsMs(), candidate.tsMs())) {
+                        ids.add(candidate.id());
+                        start = Math.min(start, candidate.tsMs());
+                        end = Math.max(end, candidate.tsMs());
+                    }
+                }
+                if (ids.isEmpty()) continue;
+                pending.fired = true;
+
+                Map<String, Object> evidence = new LinkedHashMap<>();
+                evidence.put("rule", getCode());
+                evidence.put("first_event_id", pending.signal.id());
+                if (pending.signal.detail() != null) evidence.put("first_detail", pending.signal.detail());
+                evidence.put("event_ids", ids);
+                evidence.put("event_count", ids.size());
+                firings.add(new Firing(this, pending.signal.tsMs(), start, end, evidence));
+            }
+            return firings;
+        }
+
+        private boolean inRange(long firstTs, long thenTs) {
+            long delta = thenTs - firstTs;
+            return ordered ? delta >= 0 && delta <= withinMs : Math.abs(delta) <= withinMs;
+        }
+
+        private static final class Pending {
+            final RiskSignal signal;
+            boolean fired;
+
+            Pending(RiskSignal signal) {
+                this.signal = signal;
+            }
+        }
+
+        private final class SequenceState implements State {
+            private final ArrayDeque<Pending> firsts = new ArrayDeque<>();
+            private final ArrayDeque<RiskSignal> thens = new ArrayDeque<>();
+
+            @Override
+            public boolean prune(long latestTsMs, int maxEvents) {
+                long horizon = latestTsMs - withinMs;
+                firsts.removeIf(p -> p.signal.tsMs() < horizon);
+                thens.removeIf(t -> t.tsMs() < horizon);
+                while (firsts.size() > maxEvents) firsts.removeFirst();
+                while (thens.size() > maxEvents) thens.removeFirst();
+                return firsts.isEmpty() && thens.isEmpty();
+            }
+        }
+    }
+
+    /**
+     * Matches per {@code windowMs} bucket against the device's own exponentially weighted mean of
+     * earlier buckets. Fires when a bucket reaches {@code minCount} and exceeds {@code factor} times
+     * the mean, once the mean has seen {@code warmupWindows} buckets. Late events for a bucket that
+     * has already closed are ignored.
+     */
+    static final class Baseline extends CompiledRiskRule {
+        private final Matcher match;
+        private final long windowMs;
+        private final double factor;
+        private final long minCount;
+        private final double alpha;
+        private final int warmupWindows;
+
+        Baseline(RiskRule rule, Matcher match, long windowMs, double factor, long minCount, double alpha, int warmupWindows) {
+            super(rule, match.types());
+            if (alpha <= 0 || alpha > 1) throw new IllegalArgumentException("alpha must be in (0, 1]");
+            this.match = match;
+            this.windowMs = windowMs;
+            this.factor = factor;
+            this.minCount = minCount;
+            this.alpha = alpha;
+            this.warmupWindows = warmupWindows;
+        }
+
+        @Override
+        State newState() {
+            return new BaselineState();
+        }
+
+        @Override
+        List<Firing> evaluate(State state, RiskSignal signal) {
+            if (!match.matches(signal)) return List.of();
+            BaselineState s = (BaselineState) state;
+            long bucket = signal.tsMs() / windowMs;
+            if (bucket < s.bucket) return List.of();
+            if (bucket > s.bucket) s.roll(bucket);
+            s.count++;
+
+            if (s.windows < warmupWindows || s.count < minCount || s.count <= factor * s.mean || s.firedBucket == bucket) {
+                return List.of();
+            }
+            s.firedBucket = bucket;
+            Map<String, Object> evidence = new LinkedHashMap<>();
+            evidence.put("rule", getCode());
+            evidence.put("count", s.count);
+            evidence.put("baseline_mean", Math.round(s.mean * 100) / 100.0);
+            evidence.put("factor", factor);
+            evidence.put("window_ms", windowMs);
+            return List.of(new Firing(this, bucket, bucket * windowMs, signal.tsMs(), evidence));
+        }
+
+        private final class BaselineState implements State {
+            private long bucket = Long.MIN_VALUE;
+            private long count;
+            private double mean;
+            private int windows;
+            private long firedBucket = Long.MIN_VALUE;
+
+            /** Folds the closing bucket, and any empty ones after it, into the mean. */
+            void roll(long next) {
+                if (bucket != Long.MIN_VALUE) {
+                    mean = windows == 0 ? count : alpha * count + (1 - alpha) * mean;
+                    long empty = Math.min(next - bucket - 1, 10_000);
+                    mean *= Math.pow(1 - alpha, empty);
+                    windows = (int) Math.min(Integer.MAX_VALUE, windows + 1 + empty);
+                }
+                bucket = next;
+                count = 0;
+            }
+
+            @Override
+            public boolean prune(long latestTsMs, int maxEvents) {
+                return false; // the mean is the state worth keeping
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.repository.telemetry.DailyDeviceSummaryRepository;
+import com.productivityx.repository.telemetry.DailyDeviceTotals;
+import com.productivityx.repository.telemetry.DailyOrgSummaryRepository;
+import com.productivityx.repository.telemetry.DailyOrgTotals;
+import com.productivityx.util.TopKSketch;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Sums active/idle seconds per (tenant, org, device, day) in memory and adds them to
+ * {@code daily_device_summary} in one batched upsert every {@code flush-interval-ms}, instead of one
+ * row upsert per device-day per ingest batch.
+ * <p>
+ * App and domain usage seconds go into a bounded {@link TopKSketch} per device-day, and risk events
+ * into per-type counters. The flush sends the heaviest {@link DailyDeviceTotals#TOP_ITEMS} of each
+ * sketch, which the upsert merges into {@code top_apps} / {@code top_domains}; raw events are never
+ * rescanned.
+ * <p>
+ * Only deltas are written and the upsert adds them to the stored values, so any number of backend
+ * nodes can accumulate and flush the same rows concurrently. Rows are written in key order so two
+ * nodes flushing overlapping rows lock them in the same order. Totals are recorded after the ingest
+ * transaction commits; totals not yet flushed when the process dies are lost (the buckets are not).
+ * <p>
+ * The same flush rolls the device deltas up per (org, day) into {@code daily_org_summary}, in the
+ * same transaction. A device counts towards {@code active_devices_count} when the flush creates its
+ * device-day row, which happens exactly once per device and day whichever node flushes it.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DailyRollupAccumulator {
+
+    private static final Comparator<Key> KEY_ORDER = Comparator
+            .comparing(Key::getTenantId)
+            .thenComparing(Key::getOrgId)
+            .thenComparing(Key::getDeviceId)
+            .thenComparing(Key::getDate);
+
+    private static final Comparator<OrgKey> ORG_KEY_ORDER = Comparator
+            .comparing(OrgKey::getTenantId)
+            .thenComparing(OrgKey::getOrgId)
+            .thenComparing(OrgKey::getDate);
+
+    private final DailyDeviceSummaryRepository summaryRepository;
+    private final DailyOrgSummaryRepository orgSummaryRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+
+    @Value("${productivityx.rollup.sketch-capacity:64}")
+    private int sketchCapacity;
+
+    /** Writers hold the read lock while adding; flush takes the write lock only to swap the map. */
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private volatile Map<Key, Cell> cells = new ConcurrentHashMap<>();
+    private TransactionTemplate txTemplate;
+
+    @PostConstruct
+    public void start() {
+        txTemplate = new TransactionTemplate(transactionManager);
+        Gauge.builder("daily.rollup.pending", this, a -> a.cells.size()).register(meterRegistry);
+    }
+
+    /**
+     * Adds a batch's per-day totals. Inside a transaction they are only counted once it commits, so
+     * a rolled-back batch leaves the summaries untouched.
+     */
+    public void add(IngestMapper.Target target, Map<LocalDate, IngestMapper.DailyTotals> totalsByDay) {
+        if (totalsByDay.isEmpty()) return;
+        afterCommit(() -> {
+            swapLock.readLock().lock();
+            try {
+                totalsByDay.forEach((date, totals) -> {
+                    Cell cell = cell(new Key(target.getTenantId(), target.getOrgId(), target.getDeviceId(), date));
+                    cell.active.add(totals.getActiveSeconds());
+                    cell.idle.add(totals.getIdleSeconds());
+                    totals.getAppSeconds().forEach(cell.apps::add);
+                    totals.getDomainSeconds().forEach(cell.domains::add);
+                });
+            } finally {
+                swapLock.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Counts one risk event of {@code type} (e.g. {@code R1_USB_EXFIL}) towards the device-day's
+     * {@code risk_counters}, once the surrounding transaction commits.
+     */
+    public void addRisk(UUID tenantId, UUID orgId, String deviceId, LocalDate date, String type) {
+        afterCommit(() -> {
+            swapLock.readLock().lock();
+            try {
+                cell(new Key(tenantId, orgId, deviceId, date)).risks
+                        .computeIfAbsent(type, t -> new LongAdder()).increment();
+            } finally {
+                swapLock.readLock().unlock();
+            }
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /** Caller holds the read lock. */
+    private Cell cell(Key key) {
+        return cells.computeIfAbsent(key, k -> new Cell(sketchCapacity));
+    }
+
+    @Scheduled(fixedDelayString = "${productivityx.rollup.flush-interval-ms:10000}")
+    public synchronized void flush() {
+        if (cells.isEmpty()) return;
+
+        Map<Key, Cell> drained;
+        swapLock.writeLock().lock();
+        try {
+            drained = cells;
+            cells = new ConcurrentHashMap<>();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        List<DailyDeviceTotals> deltas = new ArrayList<>(drained.size());
+        drained.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(KEY_ORDER))
+                .forEach(e -> deltas.add(toDelta(e.getKey(), e.getValue())));
+        if (deltas.isEmpty()) return;
+
+        try {
+            // One transaction, so a failed chunk does not leave earlier chunks applied and re-queued twice.
+            Integer orgDays = txTemplate.execute(status -> {
+                List<DailyDeviceTotals> firstOfDay = summaryRepository.addTotals(deltas);
+                List<DailyOrgTotals> orgDeltas = toOrgDeltas(drained, firstOfDay);
+                orgSummaryRepository.addTotals(orgDeltas);
+                return orgDeltas.size();
+            });
+            log.debug("Flushed daily totals for {} device-days and {} org-days", deltas.size(), orgDays);
+        } catch (RuntimeException e) {
+            // Put the deltas back; they add up with anything recorded meanwhile.
+            swapLock.readLock().lock();
+            try {
+                drained.forEach((key, drainedCell) -> cell(key).addAll(drainedCell));
+            } finally {
+                swapLock.readLock().unlock();
+            }
+            log.warn("Daily rollup flush of {} device-days failed, will retry", deltas.size(), e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    private DailyDeviceTotals toDelta(Key key, Cell cell) {
+        try {
+            return new DailyDeviceTotals(key.getTenantId(), key.getOrgId(), key.getDeviceId(), key.getDate(),
+                    cell.active.sum(), cell.idle.sum(),
+                    topItemsJson(cell.apps), topItemsJson(cell.domains), countersJson(cell.risks));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize daily rollup for device " + key.getDeviceId(), e);
+        }
+    }
+
+    private List<DailyOrgTotals> toOrgDeltas(Map<Key, Cell> drained, List<DailyDeviceTotals> firstOfDay) {
+        Map<OrgKey, Cell> orgCells = new TreeMap<>(ORG_KEY_ORDER);
+        drained.forEach((key, cell) -> orgCells
+                .computeIfAbsent(new OrgKey(key.getTenantId(), key.getOrgId(), key.getDate()), k -> new Cell(sketchCapacity))
+                .addAll(cell));
+        Map<OrgKey, Integer> newDevices = new HashMap<>();
+        for (DailyDeviceTotals t : firstOfDay) {
+            newDevices.merge(new OrgKey(t.getTenantId(), t.getOrgId(), t.getDate()), 1, Integer::sum);
+        }
+
+        List<DailyOrgTotals> orgDeltas = new ArrayList<>(orgCells.size());
+        try {
+            for (Map.Entry<OrgKey, Cell> e : orgCells.entrySet()) {
+                OrgKey k = e.getKey();
+                Cell cell = e.getValue();
+                orgDeltas.add(new DailyOrgTotals(k.getTenantId(), k.getOrgId(), k.getDate(),
+                        cell.active.sum(), cell.idle.sum(), newDevices.getOrDefault(k, 0),
+                        topItemsJson(cell.apps), topItemsJson(cell.domains), countersJson(cell.risks)));
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize daily org rollup", e);
+        }
+        return orgDeltas;
+    }
+
+    private String countersJson(Map<String, LongAdder> counters) throws JsonProcessingException {
+        Map<String, Long> values = new LinkedHashMap<>();
+        counters.forEach((key, count) -> values.put(key, count.sum()));
+        return objectMapper.writeValueAsString(values);
+    }
+
+    /** Same element shape as the dashboard's top-app entries: {@code {"name", "durationSeconds"}}. */
+    private String topItemsJson(TopKSketch sketch) throws JsonProcessingException {
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (TopKSketch.Item item : sketch.top(DailyDeviceTotals.TOP_ITEMS)) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", item.getKey());
+            entry.put("durationSeconds", item.getWeight());
+            items.add(entry);
+        }
+        return objectMapper.writeValueAsString(items);
+    }
+
+    @Data
+    private static class Key {
+        private final UUID tenantId;
+        private final UUID orgId;
+        private final String deviceId;
+        private final LocalDate date;
+    }
+
+    @Data
+    private static class OrgKey {
+        private final UUID tenantId;
+        private final UUID orgId;
+        private final LocalDate date;
+    }
+
+    private static class Cell {
+        private final LongAdder active = new LongAdder();
+        private final LongAdder idle = new LongAdder();
+        private final TopKSketch apps;
+        private final TopKSketch domains;
+        private final Map<String, LongAdder> risks = new ConcurrentHashMap<>();
+
+        Cell(int sketchCapacity) {
+            apps = new TopKSketch(sketchCapacity);
+            domains = new TopKSketch(sketchCapacity);
+        }
+
+        void addAll(Cell other) {
+            active.add(other.active.sum());
+            idle.add(other.idle.sum());
+            apps.addAll(other.apps);
+            domains.addAll(other.domains);
+            other.risks.forEach((type, count) -> risks.computeIfAbsent(type, t -> new LongAdder()).add(count.sum()));
+        }
+    }
+}
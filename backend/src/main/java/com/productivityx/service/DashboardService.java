@@ -1,59 +1,171 @@
 package com.productivityx.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.productivityx.dto.dashboard.DashboardDataDTO;
+import com.productivityx.model.Organization;
+import com.productivityx.model.telemetry.DailyOrgSummary;
+import com.productivityx.model.telemetry.RiskEvent;
 import com.productivityx.repository.DeviceRepository;
 import com.productivityx.repository.OrganizationRepository;
-import lombok.RequiredArgsConstructor;
+import com.productivityx.repository.telemetry.DailyOrgSummaryRepository;
+import com.productivityx.repository.telemetry.RiskEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Random;
-import java.util.UUID;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Executive dashboard built from {@code daily_org_summary}, grouped device counts and the latest
+ * open {@code risk_event} rows; raw telemetry is never scanned.
+ * <p>
+ * Snapshots are cached per (tenant, range, scope). After {@code refresh-seconds} the next read
+ * still gets the cached snapshot while a background thread rebuilds it; a snapshot older than
+ * {@code max-stale-seconds} is rebuilt before it is returned, which bounds staleness.
+ */
 @Service
-@RequiredArgsConstructor
+@Slf4j
 public class DashboardService {
 
+    private static final TypeReference<Map<String, Long>> COUNTERS = new TypeReference<>() {};
+
+    private final DailyOrgSummaryRepository orgSummaryRepository;
+    private final RiskEventRepository riskEventRepository;
     private final DeviceRepository deviceRepository;
     private final OrganizationRepository organizationRepository;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService refresher;
+    private final LoadingCache<SnapshotKey, DashboardDataDTO> snapshots;
+
+    public DashboardService(DailyOrgSummaryRepository orgSummaryRepository,
+                            RiskEventRepository riskEventRepository,
+                            DeviceRepository deviceRepository,
+                            OrganizationRepository organizationRepository,
+                            ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${productivityx.dashboard.refresh-seconds:30}") long refreshSeconds,
+                            @Value("${productivityx.dashboard.max-stale-seconds:300}") long maxStaleSeconds,
+                            @Value("${productivityx.dashboard.max-snapshots:1000}") long maxSnapshots) {
+        this.orgSummaryRepository = orgSummaryRepository;
+        this.riskEventRepository = riskEventRepository;
+        this.deviceRepository = deviceRepository;
+        this.organizationRepository = organizationRepository;
+        this.objectMapper = objectMapper;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.refresher = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "dashboard-refresh-" + threadIndex.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        this.snapshots = CacheBuilder.newBuilder()
+                .maximumSize(maxSnapshots)
+                .refreshAfterWrite(refreshSeconds, TimeUnit.SECONDS)
+                .expireAfterWrite(maxStaleSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build(CacheLoader.asyncReloading(CacheLoader.from(this::buildSnapshot), refresher));
+        GuavaCacheMetrics.monitor(meterRegistry, snapshots, "dashboard.snapshot");
+    }
+
+    @PreDestroy
+    public void stop() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * @param range     TODAY, 24H, 7D or 30D (whole UTC days, ending today)
+     * @param scopeType ORG; {@code scopeId} is an org id, or empty / {@code root} for the whole tenant
+     * @throws IllegalArgumentException for an unknown range or scope
+     */
+    public DashboardDataDTO getDashboardData(UUID tenantId, String range, String scopeType, String scopeId) {
+        return snapshots.getUnchecked(SnapshotKey.of(tenantId, range, scopeType, scopeId));
+    }
+
+    private DashboardDataDTO buildSnapshot(SnapshotKey key) {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate from = today.minusDays(key.getDays() - 1);
+        LocalDate previousFrom = from.minusDays(key.getDays());
+
+        List<DailyOrgSummary> rows = key.getOrgId() != null
+                ? orgSummaryRepository.findByTenantIdAndOrgIdAndDateBetweenOrderByDateAsc(key.getTenantId(), key.getOrgId(), previousFrom, today)
+                : orgSummaryRepository.findByTenantIdAndDateBetweenOrderByDateAscOrgIdAsc(key.getTenantId(), previousFrom, today);
+
+        Totals current = new Totals();
+        Totals previous = new Totals();
+        Map<UUID, Totals> currentByOrg = new LinkedHashMap<>();
+        Map<UUID, Totals> previousByOrg = new HashMap<>();
+        Map<LocalDate, Totals> byDay = new TreeMap<>();
+        for (LocalDate d = from; !d.isAfter(today); d = d.plusDays(1)) {
+            byDay.put(d, new Totals());
+        }
+        for (DailyOrgSummary row : rows) {
+            Map<String, Long> risks = parseCounters(row.getRiskCounters());
+            if (row.getDate().isBefore(from)) {
+                previous.add(row, risks);
+                previousByOrg.computeIfAbsent(row.getOrgId(), k -> new Totals()).add(row, risks);
+            } else {
+                current.add(row, risks);
+                currentByOrg.computeIfAbsent(row.getOrgId(), k -> new Totals()).add(row, risks);
+                byDay.get(row.getDate()).add(row, risks);
+            }
+        }
 
-    public DashboardDataDTO getDashboardData(String range, String scopeType, String scopeId) {
-        // Hybrid Implementation:
-        // Real Data: Online Devices count
-        // Mock Data: Productivity metrics (until aggregation engine is built)
+        DeviceCounts devices = new DeviceCounts();
+        Map<UUID, DeviceCounts> devicesByOrg = new HashMap<>();
+        for (Object[] r : deviceRepository.countByOrgStatusAndAck(key.getTenantId())) {
+            UUID orgId = (UUID) r[0];
+            if (key.getOrgId() != null && !key.getOrgId().equals(orgId)) continue;
+            long count = ((Number) r[3]).longValue();
+            devices.add((String) r[1], (String) r[2], count);
+            devicesByOrg.computeIfAbsent(orgId, k -> new DeviceCounts()).add((String) r[1], (String) r[2], count);
+        }
 
-        long totalDevices = deviceRepository.count();
-        long onlineDevices = deviceRepository.countByStatus("ONLINE"); // Assuming we have this, or use findAll
-        
-        DashboardDataDTO.ExecutiveKPIsDTO kpis = buildKpis(totalDevices, onlineDevices);
-        List<DashboardDataDTO.DepartmentStatsDTO> departments = buildDepartments();
-        DashboardDataDTO.TrendsDTO trends = buildTrends();
-        List<DashboardDataDTO.RiskBreakdownDTO> riskBreakdown = buildRiskBreakdown();
-        List<DashboardDataDTO.TopIssueDTO> topIssues = buildTopIssues();
+        List<RiskEvent> openRisks = key.getOrgId() != null
+                ? riskEventRepository.findTop5ByTenantIdAndOrgIdAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(key.getTenantId(), key.getOrgId(), "OPEN", from.atStartOfDay())
+                : riskEventRepository.findTop5ByTenantIdAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(key.getTenantId(), "OPEN", from.atStartOfDay());
 
         return DashboardDataDTO.builder()
                 .generatedAt(LocalDateTime.now().toString())
-                .kpis(kpis)
-                .departments(departments)
-                .trends(trends)
-                .riskBreakdown(riskBreakdown)
-                .topIssues(topIssues)
+                .kpis(buildKpis(current, previous, byDay.get(today), devices))
+                .departments(buildDepartments(currentByOrg, previousByOrg, devicesByOrg))
+                .trends(buildTrends(byDay, devices))
+                .riskBreakdown(buildRiskBreakdown(current))
+                .topIssues(buildTopIssues(openRisks))
                 .build();
     }
 
-    private DashboardDataDTO.ExecutiveKPIsDTO buildKpis(long totalDevices, long onlineDevices) {
+    private DashboardDataDTO.ExecutiveKPIsDTO buildKpis(Totals current, Totals previous, Totals today, DeviceCounts devices) {
+        long activePerDevice = current.activePerDevice();
+        int idleRatio = current.idleRatio();
         return DashboardDataDTO.ExecutiveKPIsDTO.builder()
-                .onlineDevices(createMetric("online", "Online Devices", onlineDevices + "/" + totalDevices, "", 5, true))
-                .activeMinutes(createMetric("active", "Avg Active Time", "5h 12m", "", 12, true))
-                .idleRatio(createMetric("idle", "Idle Ratio", "12%", "", -2, false)) // Lower is better
-                .focusIndex(createMetric("focus", "Focus Index", 78, "", 3, true))
-                .productiveAppShare(createMetric("prod", "Prod. App Share", "82%", "", 1, true))
-                .riskAlerts(createMetric("risk", "Risk Alerts", 3, "", -50, false))
-                .policyCompliance(createMetric("compliance", "Policy Health", "98%", "", 0, true))
-                .dataHealth(createMetric("health", "Data Completeness", "100%", "", 0, true))
+                .onlineDevices(createMetric("online", "Online Devices", devices.online + "/" + devices.total, "", 0, true))
+                .activeMinutes(createMetric("active", "Avg Active Time", formatDuration(activePerDevice), "",
+                        percentChange(activePerDevice, previous.activePerDevice()), true))
+                .idleRatio(createMetric("idle", "Idle Ratio", idleRatio + "%", "", idleRatio - previous.idleRatio(), false)) // Lower is better
+                // No focus score in the rollups yet: active share of tracked time
+                .focusIndex(createMetric("focus", "Focus Index", 100 - idleRatio, "", previous.idleRatio() - idleRatio, true))
+                // Apps are not categorised yet
+                .productiveAppShare(createMetric("prod", "Prod. App Share", "n/a", "", 0, true))
+                .riskAlerts(createMetric("risk", "Risk Alerts", current.riskTotal(), "",
+                        percentChange(current.riskTotal(), previous.riskTotal()), false))
+                .policyCompliance(createMetric("compliance", "Policy Health", percent(devices.applied, devices.total) + "%", "", 0, true))
+                // Devices that reported today out of all enrolled devices
+                .dataHealth(createMetric("health", "Data Completeness", percent(today.deviceDays, devices.total) + "%", "", 0, true))
                 .build();
     }
 
@@ -67,60 +179,176 @@ public class DashboardService {
                         .value(Math.abs(trendVal))
                         .direction(trendVal > 0 ? "up" : trendVal < 0 ? "down" : "flat")
                         .isGood(isGood ? trendVal >= 0 : trendVal <= 0)
-                        .label("vs yesterday")
+                        .label("vs previous period")
                         .build())
                 .color(isGood ? "success" : "warning") // simplistic
                 .build();
     }
 
-    private List<DashboardDataDTO.DepartmentStatsDTO> buildDepartments() {
-         // Mock Depts
-         return Arrays.asList(
-             DashboardDataDTO.DepartmentStatsDTO.builder().id("d1").name("Engineering").userCount(12).deviceCount(15).activeMinPerUser(350).idleRatio(10).focusIndex(85).riskScore(5).onlineRate(95).topRiskType("None").trend("stable").build(),
-             DashboardDataDTO.DepartmentStatsDTO.builder().id("d2").name("Sales").userCount(8).deviceCount(8).activeMinPerUser(280).idleRatio(15).focusIndex(65).riskScore(12).onlineRate(88).topRiskType("DLP").trend("improving").build(),
-             DashboardDataDTO.DepartmentStatsDTO.builder().id("d3").name("Marketing").userCount(5).deviceCount(5).activeMinPerUser(310).idleRatio(20).focusIndex(70).riskScore(8).onlineRate(100).topRiskType("ShadowIT").trend("stable").build()
-         );
+    private List<DashboardDataDTO.DepartmentStatsDTO> buildDepartments(Map<UUID, Totals> currentByOrg, Map<UUID, Totals> previousByOrg,
+                                                                     Map<UUID, DeviceCounts> devicesByOrg) {
+        Map<UUID, String> names = new HashMap<>();
+        for (Organization org : organizationRepository.findAllById(currentByOrg.keySet())) {
+            names.put(org.getId(), org.getName());
+        }
+
+        List<DashboardDataDTO.DepartmentStatsDTO> departments = new ArrayList<>();
+        currentByOrg.forEach((orgId, t) -> {
+            DeviceCounts devices = devicesByOrg.getOrDefault(orgId, new DeviceCounts());
+            Totals before = previousByOrg.get(orgId);
+            long change = before != null ? percentChange(t.activePerDevice(), before.activePerDevice()) : 0;
+            departments.add(DashboardDataDTO.DepartmentStatsDTO.builder()
+                    .id(orgId.toString())
+                    .name(names.getOrDefault(orgId, orgId.toString()))
+                    // Agents report per device; users are not tracked separately
+                    .userCount((int) devices.total)
+                    .deviceCount((int) devices.total)
+                    .activeMinPerUser((int) (t.activePerDevice() / 60))
+                    .idleRatio(t.idleRatio())
+                    .focusIndex(100 - t.idleRatio())
+                    .riskScore((int) t.riskTotal())
+                    .onlineRate(percent(devices.online, devices.total))
+                    .topRiskType(t.topRiskType())
+                    .trend(change > 5 ? "improving" : change < -5 ? "degrading" : "stable")
+                    .build());
+        });
+        return departments;
     }
 
-    private DashboardDataDTO.TrendsDTO buildTrends() {
+    private DashboardDataDTO.TrendsDTO buildTrends(Map<LocalDate, Totals> byDay, DeviceCounts devices) {
         List<DashboardDataDTO.TrendPointDTO> daily = new ArrayList<>();
-        // Last 7 days
-        for(int i=6; i>=0; i--) {
-            daily.add(DashboardDataDTO.TrendPointDTO.builder()
-                .time(LocalDateTime.now().minusDays(i).toLocalDate().toString())
-                .active(300 + new Random().nextInt(100))
-                .idle(30 + new Random().nextInt(20))
-                .risk(new Random().nextInt(10))
-                .health(90 + new Random().nextInt(10))
-                .build());
-        }
+        byDay.forEach((date, t) -> daily.add(DashboardDataDTO.TrendPointDTO.builder()
+                .time(date.toString())
+                .active((int) (t.activePerDevice() / 60))
+                .idle((int) (t.idlePerDevice() / 60))
+                .risk((int) t.riskTotal())
+                .health(percent(t.deviceDays, devices.total))
+                .build()));
+        // Rollups are daily; there is no hourly series
         return DashboardDataDTO.TrendsDTO.builder().daily(daily).hourly(new ArrayList<>()).build();
     }
 
-    private List<DashboardDataDTO.RiskBreakdownDTO> buildRiskBreakdown() {
-        return Arrays.asList(
-            DashboardDataDTO.RiskBreakdownDTO.builder().type("USB Storage").count(12).build(),
-            DashboardDataDTO.RiskBreakdownDTO.builder().type("Unsanctioned App").count(8).build(),
-            DashboardDataDTO.RiskBreakdownDTO.builder().type("Large Upload").count(3).build()
-        );
-    }
-
-    private List<DashboardDataDTO.TopIssueDTO> buildTopIssues() {
-        return Arrays.asList(
-            DashboardDataDTO.TopIssueDTO.builder()
-                .id("i1")
-                .title("High Idle Rate in Sales")
-                .category("PRODUCTIVITY")
-                .severity("P2")
-                .confidence(85)
-                .impact("Sales Dept")
-                .evidence("Idle > 20% for 3 days")
-                .recommendation(DashboardDataDTO.TopIssueDTO.RecommendationDTO.builder()
-                    .label("Investigate")
-                    .action("NAVIGATE")
-                    .target("/departments/d2")
-                    .build())
-                .build()
-        );
+    private List<DashboardDataDTO.RiskBreakdownDTO> buildRiskBreakdown(Totals current) {
+        List<DashboardDataDTO.RiskBreakdownDTO> breakdown = new ArrayList<>();
+        current.risks.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(e -> breakdown.add(DashboardDataDTO.RiskBreakdownDTO.builder()
+                        .type(e.getKey())
+                        .count(e.getValue().intValue())
+                        .build()));
+        return breakdown;
+    }
+
+    private List<DashboardDataDTO.TopIssueDTO> buildTopIssues(List<RiskEvent> openRisks) {
+        List<DashboardDataDTO.TopIssueDTO> issues = new ArrayList<>();
+        for (RiskEvent risk : openRisks) {
+            issues.add(DashboardDataDTO.TopIssueDTO.builder()
+                    .id(risk.getId().toString())
+                    .title(risk.getType())
+                    .category("RISK")
+                    .severity("HIGH".equals(risk.getSeverity()) ? "P1" : "MED".equals(risk.getSeverity()) ? "P2" : "P3")
+                    .confidence(90)
+                    .impact(risk.getDeviceId())
+                    .evidence("Open since " + risk.getCreatedAt())
+                    .recommendation(DashboardDataDTO.TopIssueDTO.RecommendationDTO.builder()
+                            .label("Investigate")
+                            .action("NAVIGATE")
+                            .target("/devices/" + risk.getDeviceId())
+                            .build())
+                    .build());
+        }
+        return issues;
+    }
+
+    private Map<String, Long> parseCounters(String json) {
+        if (json == null || json.isBlank()) return Map.of();
+        try {
+            return objectMapper.readValue(json, COUNTERS);
+        } catch (Exception e) {
+            log.warn("Ignoring unreadable risk_counters {}", json);
+            return Map.of();
+        }
+    }
+
+    private static long percentChange(long current, long previous) {
+        return previous == 0 ? 0 : Math.round((current - previous) * 100.0 / previous);
+    }
+
+    private static int percent(long part, long whole) {
+        return whole == 0 ? 0 : (int) Math.round(part * 100.0 / whole);
+    }
+
+    private static String formatDuration(long seconds) {
+        return (seconds / 3600) + "h " + (seconds % 3600 / 60) + "m";
+    }
+
+    /** Cache key; scope and range are normalised so equivalent requests share a snapshot. */
+    @Data
+    static class SnapshotKey {
+        private final UUID tenantId;
+        private final int days;
+        private final UUID orgId;
+
+        static SnapshotKey of(UUID tenantId, String range, String scopeType, String scopeId) {
+            int days = switch (range == null ? "TODAY" : range.toUpperCase(Locale.ROOT)) {
+                case "TODAY" -> 1;
+                case "24H" -> 2;
+                case "7D" -> 7;
+                case "30D" -> 30;
+                default -> throw new IllegalArgumentException("Unknown range: " + range);
+            };
+            if (scopeType != null && !"ORG".equalsIgnoreCase(scopeType)) {
+                throw new IllegalArgumentException("Unsupported scope type: " + scopeType);
+            }
+            UUID orgId = scopeId == null || scopeId.isBlank() || "root".equals(scopeId) ? null : UUID.fromString(scopeId);
+            return new SnapshotKey(tenantId, days, orgId);
+        }
+    }
+
+    /** Summed org-day rows. {@code deviceDays} sums active_devices_count over the days. */
+    private static class Totals {
+        private long active;
+        private long idle;
+        private long deviceDays;
+        private final Map<String, Long> risks = new HashMap<>();
+
+        void add(DailyOrgSummary row, Map<String, Long> rowRisks) {
+            active += row.getTotalActiveSeconds() != null ? row.getTotalActiveSeconds() : 0;
+            idle += row.getTotalIdleSeconds() != null ? row.getTotalIdleSeconds() : 0;
+            deviceDays += row.getActiveDevicesCount() != null ? row.getActiveDevicesCount() : 0;
+            rowRisks.forEach((type, count) -> risks.merge(type, count, Long::sum));
+        }
+
+        long activePerDevice() {
+            return deviceDays == 0 ? 0 : active / deviceDays;
+        }
+
+        long idlePerDevice() {
+            return deviceDays == 0 ? 0 : idle / deviceDays;
+        }
+
+        int idleRatio() {
+            return percent(idle, active + idle);
+        }
+
+        long riskTotal() {
+            return risks.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        String topRiskType() {
+            return risks.entrySet().stream().max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse("None");
+        }
+    }
+
+    private static class DeviceCounts {
+        private long total;
+        private long online;
+        private long applied;
+
+        void add(String status, String ackStatus, long count) {
+            total += count;
+            if ("ONLINE".equals(status)) online += count;
+            if ("APPLIED".equals(ackStatus)) applied += count;
+        }
     }
 }
@@ -0,0 +1,195 @@
+package com.productivityx.service;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Activity baselines of one device. For each {@link Metric} and each of the 168 hours of the week
+ * (UTC, Monday 00:00 first) it keeps an exponentially weighted mean and variance of the hourly value,
+ * and it fills the current hour as signals arrive. When a signal moves past the current hour, that
+ * hour and the silent hours after it (up to a week; a longer gap is treated as the device being
+ * away) are folded into their slots.
+ * <p>
+ * About 5 KB per device. Not thread-safe; {@link DeviceBaselineTracker} guards each instance with
+ * its own monitor.
+ */
+final class DeviceBaseline {
+
+    enum Metric {
+        /** File events of any operation. */
+        FILE_OPS,
+        /** Bytes of files created, modified or copied on external or USB media. */
+        EXTERNAL_BYTES,
+        USB_INSERTS
+    }
+
+    static final int SLOTS = 168;
+    static final long HOUR_MS = 3_600_000L;
+
+    private static final int METRICS = Metric.values().length;
+    private static final byte FORMAT = 1;
+    /** 1970-01-01 was a Thursday; shifts epoch hours so that slot 0 is Monday 00:00. */
+    private static final long MONDAY_OFFSET_HOURS = 72;
+    private static final int RECENT_SOURCES = 16;
+    private static final int SERIALIZED_SIZE = 1 + 8 + 8 * METRICS + 10 * METRICS * SLOTS;
+
+    private final float[] mean = new float[METRICS * SLOTS];
+    private final float[] variance = new float[METRICS * SLOTS];
+    private final short[] samples = new short[METRICS * SLOTS];
+    private final long[] current = new long[METRICS];
+    private long hourStartMs = Long.MIN_VALUE;
+    private int firedThisHour;
+
+    private final long[] recentSources = new long[RECENT_SOURCES];
+    private int nextSource;
+    private boolean dirty;
+
+    DeviceBaseline() {
+        Arrays.fill(recentSources, Long.MIN_VALUE);
+    }
+
+    /** False if {@code sourceId} was applied recently. */
+    boolean markApplied(long sourceId) {
+        for (long recent : recentSources) {
+            if (recent == sourceId) return false;
+        }
+        recentSources[nextSource] = sourceId;
+        nextSource = (nextSource + 1) % RECENT_SOURCES;
+        return true;
+    }
+
+    /**
+     * Counts a signal towards its hour, first closing the current hour if the signal is later.
+     *
+     * @param alpha EWMA weight of a new hourly value in its slot
+     * @return false if the signal belongs to an hour already closed
+     */
+    boolean add(RiskSignal signal, double alpha) {
+        long hour = Math.floorDiv(signal.tsMs(), HOUR_MS) * HOUR_MS;
+        if (hourStartMs == Long.MIN_VALUE) {
+            hourStartMs = hour;
+        } else if (hour < hourStartMs) {
+            return false;
+        } else if (hour > hourStartMs) {
+            advanceTo(hour, alpha);
+        }
+
+        switch (signal.type()) {
+            case USB_INSERT -> current[Metric.USB_INSERTS.ordinal()]++;
+            case USB_REMOVE -> {
+            }
+            default -> {
+                current[Metric.FILE_OPS.ordinal()]++;
+                if (signal.external() && writesData(signal.type())) {
+                    current[Metric.EXTERNAL_BYTES.ordinal()] += signal.bytes();
+                }
+            }
+        }
+        dirty = true;
+        return true;
+    }
+
+    private static boolean writesData(RiskSignal.Type type) {
+        return type == RiskSignal.Type.FILE_CREATE || type == RiskSignal.Type.FILE_MODIFY || type == RiskSignal.Type.FILE_COPY;
+    }
+
+    private void advanceTo(long hour, double alpha) {
+        fold(hourStartMs, current, alpha);
+        long gapHours = (hour - hourStartMs) / HOUR_MS;
+        if (gapHours <= SLOTS) {
+            long[] silent = new long[METRICS];
+            for (long h = hourStartMs + HOUR_MS; h < hour; h += HOUR_MS) fold(h, silent, alpha);
+        }
+        Arrays.fill(current, 0);
+        firedThisHour = 0;
+        hourStartMs = hour;
+    }
+
+    /** Incremental EWMA mean and variance; a slot's first samples are plain averages so it warms up fast. */
+    private void fold(long hour, long[] values, double alpha) {
+        int slot = slot(hour);
+        for (int m = 0; m < METRICS; m++) {
+            int i = m * SLOTS + slot;
+            double a = Math.max(alpha, 1.0 / (samples[i] + 1));
+            double diff = values[m] - mean[i];
+            double increment = a * diff;
+            mean[i] = (float) (mean[i] + increment);
+            variance[i] = (float) ((1 - a) * (variance[i] + diff * increment));
+            if (samples[i] < Short.MAX_VALUE) samples[i]++;
+        }
+    }
+
+    static int slot(long hourStartMs) {
+        return (int) Math.floorMod(Math.floorDiv(hourStartMs, HOUR_MS) + MONDAY_OFFSET_HOURS, SLOTS);
+    }
+
+    long hourStartMs() {
+        return hourStartMs;
+    }
+
+    /** Value of the current hour so far. */
+    long value(Metric metric) {
+        return current[metric.ordinal()];
+    }
+
+    /** Baseline of the current hour's slot. */
+    double mean(Metric metric) {
+        return mean[metric.ordinal() * SLOTS + slot(hourStartMs)];
+    }
+
+    double stdDev(Metric metric) {
+        return Math.sqrt(Math.max(0, variance[metric.ordinal() * SLOTS + slot(hourStartMs)]));
+    }
+
+    /** Weeks of history behind the current hour's slot. */
+    int samples(Metric metric) {
+        return samples[metric.ordinal() * SLOTS + slot(hourStartMs)];
+    }
+
+    /** False if {@code metric} already fired for the current hour. */
+    boolean markFired(Metric metric) {
+        int bit = 1 << metric.ordinal();
+        if ((firedThisHour & bit) != 0) return false;
+        firedThisHour |= bit;
+        return true;
+    }
+
+    /** Returns whether there are changes since the last call, and clears the flag. */
+    boolean takeDirty() {
+        boolean was = dirty;
+        dirty = false;
+        return was;
+    }
+
+    void markDirty() {
+        dirty = true;
+    }
+
+    byte[] toBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(SERIALIZED_SIZE);
+        buf.put(FORMAT);
+        buf.putLong(hourStartMs);
+        for (long v : current) buf.putLong(v);
+        for (int i = 0; i < METRICS * SLOTS; i++) {
+            buf.putFloat(mean[i]).putFloat(variance[i]).putShort(samples[i]);
+        }
+        return buf.array();
+    }
+
+    /** @throws IllegalArgumentException if {@code bytes} is not a checkpoint of this format */
+    static DeviceBaseline fromBytes(byte[] bytes) {
+        if (bytes.length != SERIALIZED_SIZE || bytes[0] != FORMAT) {
+            throw new IllegalArgumentException("Unknown device baseline format");
+        }
+        DeviceBaseline baseline = new DeviceBaseline();
+        ByteBuffer buf = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+        baseline.hourStartMs = buf.getLong();
+        for (int m = 0; m < METRICS; m++) baseline.current[m] = buf.getLong();
+        for (int i = 0; i < METRICS * SLOTS; i++) {
+            baseline.mean[i] = buf.getFloat();
+            baseline.variance[i] = buf.getFloat();
+            baseline.samples[i] = buf.getShort();
+        }
+        return baseline;
+    }
+}
@@ -0,0 +1,213 @@
+package com.productivityx.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.productivityx.repository.telemetry.DeviceBaselineCheckpoint;
+import com.productivityx.repository.telemetry.DeviceBaselineRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Scores each device's file and USB activity against its own history, without querying raw events:
+ * a {@link DeviceBaseline} per device keeps hour-of-week EWMA baselines of file operations, bytes
+ * written to external media and USB inserts, fed by {@link RiskOutboxDispatcher} with the same
+ * signals the risk rules see. The current hour is scored as it fills: once a metric reaches its
+ * minimum and lies {@code z-threshold} standard deviations above its slot's mean, an anomaly is
+ * reported, at most once per device, metric and hour.
+ * <p>
+ * Baselines are checkpointed to {@code device_baseline} every {@code checkpoint-interval-ms} and
+ * loaded from there when a device is first seen, so they survive restarts and eviction; activity
+ * since the last checkpoint is lost with the process.
+ */
+@Component
+@Slf4j
+public class DeviceBaselineTracker {
+
+    private final DeviceBaselineRepository baselineRepository;
+    private final boolean enabled;
+    private final double alpha;
+    private final int warmupWeeks;
+    private final double zThreshold;
+    private final long[] minValue = new long[DeviceBaseline.Metric.values().length];
+
+    private final Cache<Key, DeviceBaseline> baselines;
+    /** Evicted baselines with unsaved changes, written by the next checkpoint. */
+    private final Map<Key, DeviceBaseline> evicted = new ConcurrentHashMap<>();
+    private final Counter lateSignals;
+
+    public DeviceBaselineTracker(DeviceBaselineRepository baselineRepository,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${productivityx.risk.baseline.enabled:true}") boolean enabled,
+                                 @Value("${productivityx.risk.baseline.alpha:0.2}") double alpha,
+                                 @Value("${productivityx.risk.baseline.warmup-weeks:3}") int warmupWeeks,
+                                 @Value("${productivityx.risk.baseline.z-threshold:4.0}") double zThreshold,
+                                 @Value("${productivityx.risk.baseline.min-file-ops:200}") long minFileOps,
+                                 @Value("${productivityx.risk.baseline.min-external-bytes:104857600}") long minExternalBytes,
+                                 @Value("${productivityx.risk.baseline.min-usb-inserts:3}") long minUsbInserts,
+                                 @Value("${productivityx.risk.baseline.max-devices:20000}") long maxDevices) {
+        this.baselineRepository = baselineRepository;
+        this.enabled = enabled;
+        this.alpha = alpha;
+        this.warmupWeeks = warmupWeeks;
+        this.zThreshold = zThreshold;
+        minValue[DeviceBaseline.Metric.FILE_OPS.ordinal()] = minFileOps;
+        minValue[DeviceBaseline.Metric.EXTERNAL_BYTES.ordinal()] = minExternalBytes;
+        minValue[DeviceBaseline.Metric.USB_INSERTS.ordinal()] = minUsbInserts;
+        this.baselines = CacheBuilder.newBuilder()
+                .maximumSize(maxDevices)
+                .recordStats()
+                .<Key, DeviceBaseline>removalListener(removal -> {
+                    if (removal.getCause() == RemovalCause.SIZE) evicted.put(removal.getKey(), removal.getValue());
+                })
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, baselines, "risk.baseline");
+        this.lateSignals = meterRegistry.counter("risk.baseline.late.signals");
+    }
+
+    /** Whether baselines count signals of {@code type}, so that they need to be queued. */
+    public boolean tracks(RiskSignal.Type type) {
+        return enabled && type != RiskSignal.Type.USB_REMOVE;
+    }
+
+    /**
+     * Adds one outbox row's signals to the device's baselines.
+     *
+     * @param sourceId the outbox row id; a row applied recently is ignored
+     * @return anomalies of the current hour not reported before, for the caller to record
+     */
+    public List<Anomaly> apply(UUID tenantId, UUID orgId, String deviceId, long sourceId, List<RiskSignal> signals) {
+        if (!enabled || signals.isEmpty()) return List.of();
+        List<RiskSignal> sorted = new ArrayList<>(signals);
+        sorted.sort(Comparator.comparingLong(RiskSignal::tsMs));
+
+        Key key = new Key(tenantId, orgId, deviceId);
+        DeviceBaseline baseline;
+        try {
+            baseline = baselines.get(key, () -> load(key));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Baseline unavailable for device " + deviceId, e);
+        }
+
+        List<Anomaly> anomalies = new ArrayList<>();
+        synchronized (baseline) {
+            if (!baseline.markApplied(sourceId)) return List.of();
+            for (RiskSignal signal : sorted) {
+                if (tracks(signal.type()) && !baseline.add(signal, alpha)) lateSignals.increment();
+            }
+            for (DeviceBaseline.Metric metric : DeviceBaseline.Metric.values()) {
+                Anomaly anomaly = score(baseline, metric);
+                if (anomaly != null && baseline.markFired(metric)) anomalies.add(anomaly);
+            }
+        }
+        return anomalies;
+    }
+
+    private Anomaly score(DeviceBaseline baseline, DeviceBaseline.Metric metric) {
+        long value = baseline.value(metric);
+        int samples = baseline.samples(metric);
+        if (value < minValue[metric.ordinal()] || samples < warmupWeeks) return null;
+        double mean = baseline.mean(metric);
+        // Floor the deviation so a perfectly regular slot does not turn any change into an outlier
+        double stdDev = Math.max(baseline.stdDev(metric), Math.max(1.0, 0.1 * mean));
+        double z = (value - mean) / stdDev;
+        if (z < zThreshold) return null;
+        return new Anomaly(metric, baseline.hourStartMs(), value, mean, stdDev, z, samples);
+    }
+
+    private DeviceBaseline load(Key key) {
+        DeviceBaseline pending = evicted.remove(key);
+        if (pending != null) return pending;
+        byte[] state = baselineRepository.find(key.tenantId(), key.deviceId());
+        if (state == null) return new DeviceBaseline();
+        try {
+            return DeviceBaseline.fromBytes(state);
+        } catch (IllegalArgumentException e) {
+            log.warn("Discarding unreadable baseline of device {}: {}", key.deviceId(), e.getMessage());
+            return new DeviceBaseline();
+        }
+    }
+
+    /** Writes the baselines changed since the last checkpoint in one batch. */
+    @Scheduled(fixedDelayString = "${productivityx.risk.baseline.checkpoint-interval-ms:60000}")
+    public synchronized void checkpoint() {
+        Map<Key, DeviceBaseline> candidates = new LinkedHashMap<>(baselines.asMap());
+        Map<Key, DeviceBaseline> drained = new LinkedHashMap<>();
+        for (Key key : evicted.keySet()) {
+            DeviceBaseline baseline = evicted.remove(key);
+            if (baseline != null && candidates.putIfAbsent(key, baseline) == null) drained.put(key, baseline);
+        }
+
+        List<DeviceBaselineCheckpoint> batch = new ArrayList<>();
+        List<DeviceBaseline> written = new ArrayList<>();
+        candidates.forEach((key, baseline) -> {
+            synchronized (baseline) {
+                if (!baseline.takeDirty()) return;
+                batch.add(new DeviceBaselineCheckpoint(key.tenantId(), key.orgId(), key.deviceId(), baseline.toBytes()));
+            }
+            written.add(baseline);
+        });
+        if (batch.isEmpty()) return;
+
+        try {
+            baselineRepository.saveAll(batch);
+            log.debug("Checkpointed baselines of {} devices", batch.size());
+        } catch (RuntimeException e) {
+            for (DeviceBaseline baseline : written) {
+                synchronized (baseline) {
+                    baseline.markDirty();
+                }
+            }
+            // Evicted ones are only referenced here; keep them for the next attempt unless reloaded meanwhile
+            drained.forEach((key, baseline) -> {
+                if (baselines.getIfPresent(key) == null) evicted.putIfAbsent(key, baseline);
+            });
+            log.warn("Baseline checkpoint of {} devices failed, will retry", batch.size(), e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        checkpoint();
+    }
+
+    /** One metric of one device-hour well above the device's baseline for that hour of the week. */
+    public record Anomaly(DeviceBaseline.Metric metric, long hourStartMs, long value, double mean, double stdDev,
+                          double zScore, int samples) {
+
+        /** Risk type, e.g. {@code ANOMALY_USB_INSERTS}. */
+        public String code() {
+            return "ANOMALY_" + metric.name();
+        }
+
+        public Map<String, Object> evidence() {
+            Map<String, Object> evidence = new LinkedHashMap<>();
+            evidence.put("metric", metric.name());
+            evidence.put("value", value);
+            evidence.put("baseline_mean", mean);
+            evidence.put("baseline_stddev", stdDev);
+            evidence.put("z_score", zScore);
+            evidence.put("hour_of_week", DeviceBaseline.slot(hourStartMs));
+            evidence.put("baseline_weeks", samples);
+            return evidence;
+        }
+    }
+
+    private record Key(UUID tenantId, UUID orgId, String deviceId) {
+    }
+}
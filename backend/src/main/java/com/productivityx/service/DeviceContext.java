@@ -0,0 +1,20 @@
+package com.productivityx.service;
+
+import com.productivityx.model.Device;
+import lombok.Data;
+import java.util.UUID;
+
+/**
+ * The identity part of a {@link Device} that hot paths need: which tenant, org and group it belongs to.
+ */
+@Data
+public class DeviceContext {
+    private final String deviceId;
+    private final UUID tenantId;
+    private final UUID orgId;
+    private final UUID groupId;
+
+    public static DeviceContext of(Device device) {
+        return new DeviceContext(device.getDeviceId(), device.getTenantId(), device.getOrgId(), device.getGroupId());
+    }
+}
@@ -0,0 +1,68 @@
+package com.productivityx.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.productivityx.repository.DeviceRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of {@link DeviceContext} by device id, so ingest, risk and policy paths do not
+ * re-read the {@code devices} row on every request. Hit/miss/eviction counts are published as
+ * {@code cache.*{cache=device.context}} metrics.
+ */
+@Component
+public class DeviceContextCache {
+
+    private final DeviceRepository deviceRepository;
+    private final Cache<String, DeviceContext> cache;
+
+    public DeviceContextCache(DeviceRepository deviceRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${productivityx.device-cache.max-size:100000}") long maxSize,
+                              @Value("${productivityx.device-cache.ttl-seconds:600}") long ttlSeconds) {
+        this.deviceRepository = deviceRepository;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, cache, "device.context");
+    }
+
+    public Optional<DeviceContext> find(String deviceId) {
+        if (deviceId == null) return Optional.empty();
+
+        DeviceContext cached = cache.getIfPresent(deviceId);
+        if (cached != null) return Optional.of(cached);
+
+        // Unknown devices are not cached, so a device enrolling right after a miss is seen at once.
+        Optional<DeviceContext> loaded = deviceRepository.findById(deviceId).map(DeviceContext::of);
+        loaded.ifPresent(ctx -> cache.put(deviceId, ctx));
+        return loaded;
+    }
+
+    /**
+     * Drops the cached identity. Inside a transaction it is dropped again after commit, so a
+     * concurrent reader cannot re-cache the pre-commit row.
+     */
+    public void invalidate(String deviceId) {
+        if (deviceId == null) return;
+        cache.invalidate(deviceId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(deviceId);
+                }
+            });
+        }
+    }
+}
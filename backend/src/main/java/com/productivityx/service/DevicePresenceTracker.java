@@ -0,0 +1,111 @@
+package com.productivityx.service;
+
+import com.productivityx.repository.DevicePresence;
+import com.productivityx.repository.DeviceRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps device check-ins (last seen, last upload, agent version) in memory and writes them to
+ * {@code devices} as one batched UPDATE every {@code flush-interval-ms}, instead of rewriting the
+ * row on every request. A device checking in many times between flushes costs a single row update.
+ * <p>
+ * Status follows last-seen age: flushed devices are ONLINE, and a periodic sweep marks devices
+ * OFFLINE once they have not been seen for {@code offline-after-seconds}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DevicePresenceTracker {
+
+    private final DeviceRepository deviceRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${productivityx.presence.offline-after-seconds:300}")
+    private long offlineAfterSeconds;
+
+    private final Map<String, DevicePresence> pending = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("device.presence.pending", pending, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Records a check-in. {@code agentVersion} may be null; {@code upload} marks a telemetry upload.
+     * Inside a transaction the check-in counts only once it commits, so a rolled-back upload does
+     * not mark the device ONLINE.
+     */
+    public void record(String deviceId, String agentVersion, boolean upload) {
+        LocalDateTime now = LocalDateTime.now();
+        DevicePresence presence = new DevicePresence(deviceId, now, upload ? now : null, agentVersion);
+        afterCommit(() -> pending.merge(deviceId, presence, DevicePresence::merge));
+    }
+
+    @Scheduled(fixedDelayString = "${productivityx.presence.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) return;
+
+        List<DevicePresence> batch = new ArrayList<>(pending.size());
+        for (String deviceId : pending.keySet()) {
+            DevicePresence presence = pending.remove(deviceId);
+            if (presence != null) batch.add(presence);
+        }
+        batch.sort(Comparator.comparing(DevicePresence::getDeviceId));
+
+        try {
+            int updated = deviceRepository.updatePresence(batch);
+            log.debug("Flushed presence for {} devices ({} rows updated)", batch.size(), updated);
+        } catch (RuntimeException e) {
+            // Put the check-ins back; newer ones recorded meanwhile win on merge.
+            for (DevicePresence presence : batch) {
+                pending.merge(presence.getDeviceId(), presence, DevicePresence::merge);
+            }
+            log.warn("Presence flush of {} devices failed, will retry", batch.size(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${productivityx.presence.sweep-interval-ms:60000}")
+    public void markStaleDevicesOffline() {
+        // Flush first so devices seen since the last flush are not flapped to OFFLINE.
+        flush();
+        int offline = deviceRepository.markOfflineSeenBefore(LocalDateTime.now().minusSeconds(offlineAfterSeconds));
+        if (offline > 0) {
+            log.info("Marked {} devices OFFLINE (not seen for {} s)", offline, offlineAfterSeconds);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.productivityx.dto.ingest.IngestBatchDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads an {@link IngestBatchDTO} body with the Jackson streaming parser instead of binding the
+ * whole graph. Array sections are handed to a {@link SectionHandler} in chunks of at most
+ * {@code chunk-size} elements, so memory per request stays bounded by the chunk size rather than
+ * by the upload size. JSON and CBOR bodies share the same field layout.
+ */
+@Component
+public class IngestBatchStreamReader {
+
+    /** Receives each section of the batch as it is parsed, in document order. */
+    public interface SectionHandler {
+        void onHeartbeat(IngestBatchDTO.HeartbeatPayload heartbeat);
+        void onBuckets(List<IngestBatchDTO.BucketPayload> chunk);
+        void onAppEvents(List<IngestBatchDTO.AppPayload> chunk);
+        void onWebEvents(List<IngestBatchDTO.WebPayload> chunk);
+        void onFileEvents(List<IngestBatchDTO.FilePayload> chunk);
+        void onUsbEvents(List<IngestBatchDTO.UsbPayload> chunk);
+    }
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+    private final int chunkSize;
+
+    public IngestBatchStreamReader(ObjectMapper objectMapper,
+                                   @Value("${productivityx.ingest.stream.chunk-size:500}") int chunkSize) {
+        this.jsonMapper = objectMapper;
+        this.cborMapper = objectMapper.copyWith(new CBORFactory());
+        this.chunkSize = chunkSize;
+    }
+
+    public void read(InputStream body, SectionHandler handler) {
+        read(body, false, handler);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the body is not a well-formed batch
+     * @throws UncheckedIOException     if reading the body fails
+     */
+    public void read(InputStream body, boolean cbor, SectionHandler handler) {
+        ObjectMapper objectMapper = cbor ? cborMapper : jsonMapper;
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Batch must be an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "heartbeat" -> {
+                        if (parser.currentToken() != JsonToken.VALUE_NULL) {
+                            handler.onHeartbeat(objectMapper.readValue(parser, IngestBatchDTO.HeartbeatPayload.class));
+                        }
+                    }
+                    case "activity_buckets" -> readArray(objectMapper, parser, IngestBatchDTO.BucketPayload.class, handler::onBuckets);
+                    case "app_events" -> readArray(objectMapper, parser, IngestBatchDTO.AppPayload.class, handler::onAppEvents);
+                    case "web_events" -> readArray(objectMapper, parser, IngestBatchDTO.WebPayload.class, handler::onWebEvents);
+                    case "file_events" -> readArray(objectMapper, parser, IngestBatchDTO.FilePayload.class, handler::onFileEvents);
+                    case "usb_events" -> readArray(objectMapper, parser, IngestBatchDTO.UsbPayload.class, handler::onUsbEvents);
+                    default -> parser.skipChildren(); // schemaVersion and fields of newer agents
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed batch: " + e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> void readArray(ObjectMapper objectMapper, JsonParser parser, Class<T> type, Consumer<List<T>> sink) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) return;
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new IllegalArgumentException("Expected an array for " + parser.getCurrentName());
+        }
+        List<T> chunk = new ArrayList<>(chunkSize);
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            chunk.add(objectMapper.readValue(parser, type));
+            if (chunk.size() >= chunkSize) {
+                sink.accept(chunk);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) sink.accept(chunk);
+    }
+}
@@ -0,0 +1,230 @@
+package com.productivityx.service;
+
+import com.productivityx.dto.ingest.IngestBatchDTO;
+import com.productivityx.model.telemetry.*;
+import com.productivityx.util.IngestHelper;
+import lombok.Data;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Maps ingest payload elements to telemetry entities. Kept free of repositories so the per-event
+ * mapping cost (timestamps, path hashing) can be benchmarked on its own; see {@code src/jmh}.
+ * Mappers return {@code null} for elements they reject, after recording why in the response.
+ */
+public final class IngestMapper {
+
+    static final UUID FALLBACK_ORG_ID = UUID.fromString("d1111111-1111-1111-1111-111111111111");
+
+    private IngestMapper() {
+    }
+
+    /** Who the mapped rows belong to. */
+    @Data
+    public static class Target {
+        private final String deviceId;
+        private final UUID tenantId;
+        private final UUID orgId;
+        private final UUID batchId;
+
+        public static Target of(DeviceContext device, UUID batchId) {
+            UUID orgId = device.getOrgId() != null ? device.getOrgId() : FALLBACK_ORG_ID;
+            return new Target(device.getDeviceId(), device.getTenantId(), orgId, batchId);
+        }
+    }
+
+    /** Active/idle seconds and per-app / per-domain usage seconds of one device-day. */
+    @Data
+    public static class DailyTotals {
+        private long activeSeconds;
+        private long idleSeconds;
+        private final Map<String, Long> appSeconds = new HashMap<>();
+        private final Map<String, Long> domainSeconds = new HashMap<>();
+    }
+
+    public static <P, E> List<E> mapAll(List<P> payloads, Function<P, E> mapper) {
+        List<E> mapped = new ArrayList<>(payloads.size());
+        for (P payload : payloads) {
+            E entity = mapper.apply(payload);
+            if (entity != null) mapped.add(entity);
+        }
+        return mapped;
+    }
+
+    public static DeviceHeartbeat toHeartbeat(IngestBatchDTO.HeartbeatPayload hb, Target target) {
+        DeviceHeartbeat dhb = new DeviceHeartbeat();
+        dhb.setId(UUID.randomUUID());
+        dhb.setTenantId(target.getTenantId());
+        dhb.setOrgId(target.getOrgId());
+        dhb.setDeviceId(target.getDeviceId());
+        dhb.setTs(LocalDateTime.now());
+        dhb.setStatus(hb.getStatus());
+        dhb.setAgentVersion(hb.getAgentVersion());
+        dhb.setQueueDepth(hb.getQueueDepth());
+        dhb.setUploadErrorCount(hb.getUploadErrorCount());
+        dhb.setIngestBatchId(target.getBatchId());
+        return dhb;
+    }
+
+    public static ActivityBucket toBucket(IngestBatchDTO.BucketPayload b, Target target, IngestResponse response) {
+        LocalDateTime start = IngestHelper.timestamp(b.getBucket_start_ms(), b.getBucket_start());
+        if (start == null) {
+            response.reject("buckets", null, "bucket_start", "missing or malformed timestamp: " + b.getBucket_start());
+            return null;
+        }
+        ActivityBucket bucket = new ActivityBucket();
+        bucket.setId(UUID.randomUUID());
+        bucket.setTenantId(target.getTenantId());
+        bucket.setOrgId(target.getOrgId());
+        bucket.setDeviceId(target.getDeviceId());
+        bucket.setBucketStart(start);
+        bucket.setBucketMinutes(b.getBucket_minutes());
+        bucket.setActiveSeconds(b.getActive_seconds());
+        bucket.setIdleSeconds(b.getIdle_seconds());
+        bucket.setAvgFocusScore(b.getAvg_focus_score());
+        bucket.setIngestBatchId(target.getBatchId());
+        return bucket;
+    }
+
+    public static AppUsageEvent toAppEvent(IngestBatchDTO.AppPayload e, Target target, IngestResponse response) {
+        LocalDateTime start = IngestHelper.timestamp(e.getTs_start_ms(), e.getTs_start());
+        LocalDateTime end = IngestHelper.timestamp(e.getTs_end_ms(), e.getTs_end());
+        if (!validRange("app_events", e.getId(), start, e.getTs_start(), end, e.getTs_end(), response)) return null;
+        AppUsageEvent evt = new AppUsageEvent();
+        evt.setId(e.getId() != null ? e.getId() : UUID.randomUUID());
+        evt.setTenantId(target.getTenantId());
+        evt.setOrgId(target.getOrgId());
+        evt.setDeviceId(target.getDeviceId());
+        evt.setTsStart(start);
+        evt.setTsEnd(end);
+        evt.setAppName(e.getApp_name());
+        evt.setProcessName(e.getProcess_name());
+        evt.setIngestBatchId(target.getBatchId());
+        return evt;
+    }
+
+    public static WebUsageEvent toWebEvent(IngestBatchDTO.WebPayload e, Target target, IngestResponse response) {
+        LocalDateTime start = IngestHelper.timestamp(e.getTs_start_ms(), e.getTs_start());
+        LocalDateTime end = IngestHelper.timestamp(e.getTs_end_ms(), e.getTs_end());
+        if (!validRange("web_events", e.getId(), start, e.getTs_start(), end, e.getTs_end(), response)) return null;
+        WebUsageEvent evt = new WebUsageEvent();
+        evt.setId(e.getId() != null ? e.getId() : UUID.randomUUID());
+        evt.setTenantId(target.getTenantId());
+        evt.setOrgId(target.getOrgId());
+        evt.setDeviceId(target.getDeviceId());
+        evt.setTsStart(start);
+        evt.setTsEnd(end);
+        evt.setDomain(e.getDomain());
+        evt.setIngestBatchId(target.getBatchId());
+        return evt;
+    }
+
+    public static FileEvent toFileEvent(IngestBatchDTO.FilePayload e, Target target, IngestResponse response) {
+        LocalDateTime ts = IngestHelper.timestamp(e.getTimestamp_ms(), e.getTimestamp());
+        if (ts == null) {
+            response.reject("file_events", e.getId(), "timestamp", "missing or malformed timestamp: " + e.getTimestamp());
+            return null;
+        }
+        FileEvent evt = new FileEvent();
+        evt.setId(e.getId() != null ? e.getId() : UUID.randomUUID());
+        evt.setTenantId(target.getTenantId());
+        evt.setOrgId(target.getOrgId());
+        evt.setDeviceId(target.getDeviceId());
+
+        evt.setTs(ts);
+        evt.setTsMs(ts.toInstant(ZoneOffset.UTC).toEpochMilli());
+
+        evt.setOperation(e.getOperation());
+        evt.setPathHash(IngestHelper.hash(e.getFile_path()));
+        evt.setFileExt(e.getFile_name().contains(".") ? e.getFile_name().substring(e.getFile_name().lastIndexOf(".") + 1) : "");
+        evt.setSizeBytes(e.getSize_bytes());
+        evt.setIsUsb(e.is_usb());
+
+        // New Fields
+        evt.setIsExternal(e.is_external()); // Trust agent or derived
+        if (e.getDest_path() != null) {
+            evt.setDestPathHash(IngestHelper.hash(e.getDest_path()));
+        }
+
+        evt.setIngestBatchId(target.getBatchId());
+        return evt;
+    }
+
+    public static UsbEvent toUsbEvent(IngestBatchDTO.UsbPayload e, Target target) {
+        // USB payloads carry no id and usb_events has no natural key, so every upload is a new row.
+        UsbEvent evt = new UsbEvent();
+        evt.setId(UUID.randomUUID());
+        evt.setTenantId(target.getTenantId());
+        evt.setOrgId(target.getOrgId());
+        evt.setDeviceId(target.getDeviceId());
+        evt.setTsMs(e.getTs_ms());
+        evt.setAction(e.getAction());
+        evt.setDriveLetter(e.getDrive_letter());
+        evt.setVendorId(e.getVendor_id());
+        evt.setProductId(e.getProduct_id());
+        evt.setVolumeSerial(e.getVolume_serial());
+        evt.setCreatedAt(LocalDateTime.now());
+        return evt;
+    }
+
+    /**
+     * Sums active/idle seconds per day into {@code totals}, attributed to the day the bucket starts.
+     */
+    public static void addBucketTotals(List<ActivityBucket> buckets, Map<LocalDate, DailyTotals> totals) {
+        for (ActivityBucket b : buckets) {
+            DailyTotals day = totals.computeIfAbsent(b.getBucketStart().toLocalDate(), k -> new DailyTotals());
+            day.activeSeconds += (b.getActiveSeconds() != null ? b.getActiveSeconds() : 0);
+            day.idleSeconds += (b.getIdleSeconds() != null ? b.getIdleSeconds() : 0);
+        }
+    }
+
+    /**
+     * Sums usage seconds per app into {@code totals}, attributed to the day the event started.
+     */
+    public static void addAppTotals(List<AppUsageEvent> events, Map<LocalDate, DailyTotals> totals) {
+        for (AppUsageEvent e : events) {
+            if (e.getAppName() == null) continue;
+            DailyTotals day = totals.computeIfAbsent(e.getTsStart().toLocalDate(), k -> new DailyTotals());
+            day.appSeconds.merge(e.getAppName(), Duration.between(e.getTsStart(), e.getTsEnd()).getSeconds(), Long::sum);
+        }
+    }
+
+    /**
+     * Sums usage seconds per domain into {@code totals}, attributed to the day the event started.
+     */
+    public static void addWebTotals(List<WebUsageEvent> events, Map<LocalDate, DailyTotals> totals) {
+        for (WebUsageEvent e : events) {
+            if (e.getDomain() == null) continue;
+            DailyTotals day = totals.computeIfAbsent(e.getTsStart().toLocalDate(), k -> new DailyTotals());
+            day.domainSeconds.merge(e.getDomain(), Duration.between(e.getTsStart(), e.getTsEnd()).getSeconds(), Long::sum);
+        }
+    }
+
+    /**
+     * Usage events need both ends, in order ({@code CHECK (ts_end >= ts_start)}).
+     */
+    static boolean validRange(String section, UUID id, LocalDateTime start, String rawStart, LocalDateTime end, String rawEnd, IngestResponse response) {
+        if (start == null) {
+            response.reject(section, id, "ts_start", "missing or malformed timestamp: " + rawStart);
+            return false;
+        }
+        if (end == null) {
+            response.reject(section, id, "ts_end", "missing or malformed timestamp: " + rawEnd);
+            return false;
+        }
+        if (end.isBefore(start)) {
+            response.reject(section, id, "ts_end", "ts_end is before ts_start");
+            return false;
+        }
+        return true;
+    }
+}
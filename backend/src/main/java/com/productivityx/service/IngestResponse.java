@@ -1,13 +1,20 @@
 package com.productivityx.service;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Data
 public class IngestResponse {
+    /** Detailed rejections beyond this are still counted in {@code rejected}. */
+    static final int MAX_REJECTION_DETAILS = 100;
+
     private Map<String, Integer> processed = new HashMap<>();
     private Map<String, Integer> rejected = new HashMap<>();
+    private List<Rejection> rejections = new ArrayList<>();
 
     public void incrementProcessed(String key) {
         processed.put(key, processed.getOrDefault(key, 0) + 1);
@@ -24,4 +31,32 @@ public class IngestResponse {
     public void incrementRejected(String key) {
         rejected.put(key, rejected.getOrDefault(key, 0) + 1);
     }
+
+    /**
+     * Records the outcome of an insert-ignore write: rows skipped by {@code ON CONFLICT DO NOTHING}
+     * are duplicates of an earlier upload.
+     */
+    public void recordInserts(String key, int submitted, int inserted) {
+        if (inserted > 0) incrementProcessed(key, inserted);
+        if (submitted > inserted) incrementRejected(key, submitted - inserted);
+    }
+
+    /**
+     * Rejects one malformed element so the agent can see what was dropped and why.
+     */
+    public void reject(String section, Object id, String field, String reason) {
+        incrementRejected(section);
+        if (rejections.size() < MAX_REJECTION_DETAILS) {
+            rejections.add(new Rejection(section, id != null ? id.toString() : null, field, reason));
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Rejection {
+        private String section;
+        private String id;
+        private String field;
+        private String reason;
+    }
 }
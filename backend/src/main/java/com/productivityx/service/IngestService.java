@@ -1,283 +1,226 @@
 package com.productivityx.service;
 
 import com.productivityx.dto.ingest.IngestBatchDTO;
-import com.productivityx.model.Device;
 import com.productivityx.model.telemetry.*;
-import com.productivityx.repository.DeviceRepository;
 import com.productivityx.repository.telemetry.*;
-import com.productivityx.util.IngestHelper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.InputStream;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class IngestService {
 
-    private final DeviceRepository deviceRepository;
+    private final DeviceContextCache deviceContextCache;
+    private final DevicePresenceTracker presenceTracker;
     private final ActivityBucketRepository bucketRepo;
     private final AppUsageEventRepository appRepo;
     private final WebUsageEventRepository webRepo;
     private final FileEventRepository fileRepo;
     private final DeviceHeartbeatRepository heartbeatRepo;
-    private final DailyDeviceSummaryRepository dailySummaryRepo;
+    private final DailyRollupAccumulator rollupAccumulator;
     private final UsbEventRepository usbRepo;
-    private final RiskService riskService;
+    private final RiskOutboxDispatcher riskOutbox;
+    private final IngestBatchStreamReader streamReader;
 
     @Transactional
     public IngestResponse processBatch(String deviceIdStr, IngestBatchDTO batch) {
-        Device device = deviceRepository.findById(deviceIdStr)
+        DeviceContext device = deviceContextCache.find(deviceIdStr)
                 .orElseThrow(() -> new IllegalArgumentException("Device not found: " + deviceIdStr));
 
         // 1. Basic Validation
         validateBatch(batch);
 
         IngestResponse response = new IngestResponse();
-        UUID batchId = UUID.randomUUID();
-        UUID tenantId = device.getTenantId();
-        UUID orgId = device.getOrgId() != null ? device.getOrgId() : UUID.fromString("d1111111-1111-1111-1111-111111111111");
+        IngestMapper.Target target = IngestMapper.Target.of(device, UUID.randomUUID());
+        Map<LocalDate, IngestMapper.DailyTotals> totalsByDay = new HashMap<>();
 
         // 2. Heartbeat
         if (batch.getHeartbeat() != null) {
-            processHeartbeat(device, batch.getHeartbeat(), tenantId, orgId, batchId);
+            processHeartbeat(batch.getHeartbeat(), target);
         } else {
-            device.setLastSeenAt(LocalDateTime.now());
-            deviceRepository.save(device);
+            presenceTracker.record(device.getDeviceId(), null, false);
         }
 
         // 3. Activity Buckets
         if (batch.getActivity_buckets() != null && !batch.getActivity_buckets().isEmpty()) {
-            processBuckets(batch.getActivity_buckets(), device, tenantId, orgId, batchId, response);
+            processBuckets(batch.getActivity_buckets(), target, response, totalsByDay);
         }
 
         // 4. App Events
         if (batch.getApp_events() != null && !batch.getApp_events().isEmpty()) {
-            processAppEvents(batch.getApp_events(), device, tenantId, orgId, batchId, response);
+            processAppEvents(batch.getApp_events(), target, response, totalsByDay);
         }
 
         // 5. Web Events
         if (batch.getWeb_events() != null && !batch.getWeb_events().isEmpty()) {
-            processWebEvents(batch.getWeb_events(), device, tenantId, orgId, batchId, response);
+            processWebEvents(batch.getWeb_events(), target, response, totalsByDay);
         }
 
         // 6. File Events
+        if (batch.getFile_events() != null && !batch.getFile_events().isEmpty()) {
+            processFileEvents(batch.getFile_events(), target, response);
+        }
+
+        // 7. USB Events
+        if (batch.getUsb_events() != null && !batch.getUsb_events().isEmpty()) {
+            processUsbEvents(batch.getUsb_events(), target, response);
+        }
 
+        // 8. Aggregation Trigger
+        writeDailyTotals(totalsByDay, target);
 
-    // 6. File Events
-    if (batch.getFile_events() != null && !batch.getFile_events().isEmpty()) {
-        processFileEvents(batch.getFile_events(), device, tenantId, orgId, batchId, response);
+        return response;
     }
 
-    // 7. USB Events
-    if (batch.getUsb_events() != null && !batch.getUsb_events().isEmpty()) {
-        processUsbEvents(batch.getUsb_events(), device, tenantId, orgId, batchId, response);
-    }
+    /**
+     * Streaming variant of {@link #processBatch}: sections are parsed and written chunk by chunk in
+     * one transaction, so a large catch-up upload never exists in memory as a whole.
+     * {@code cbor} selects the binary encoding of the same payload.
+     */
+    @Transactional
+    public IngestResponse processStream(String deviceIdStr, InputStream body, boolean cbor) {
+        DeviceContext device = deviceContextCache.find(deviceIdStr)
+                .orElseThrow(() -> new IllegalArgumentException("Device not found: " + deviceIdStr));
 
-    // 8. Aggregation Trigger
-    updateAggregations(batch, device, tenantId, orgId);
+        IngestResponse response = new IngestResponse();
+        IngestMapper.Target target = IngestMapper.Target.of(device, UUID.randomUUID());
+        Map<LocalDate, IngestMapper.DailyTotals> totalsByDay = new HashMap<>();
 
-    // 9. Risk Check
-    try {
-        riskService.checkForRisks(device.getDeviceId(), System.currentTimeMillis());
-    } catch (Exception e) {
-        log.error("Risk check failed for device {}", device.getDeviceId(), e);
-    }
-    
-    return response;
+        StreamHandler handler = new StreamHandler(target, response, totalsByDay);
+        streamReader.read(body, cbor, handler);
+
+        if (!handler.heartbeatSeen) {
+            presenceTracker.record(device.getDeviceId(), null, false);
+        }
+        writeDailyTotals(totalsByDay, target);
+
+        return response;
     }
 
-    // ... (other methods)
+    private class StreamHandler implements IngestBatchStreamReader.SectionHandler {
+        private final IngestMapper.Target target;
+        private final IngestResponse response;
+        private final Map<LocalDate, IngestMapper.DailyTotals> totalsByDay;
+        private boolean heartbeatSeen;
+
+        StreamHandler(IngestMapper.Target target, IngestResponse response, Map<LocalDate, IngestMapper.DailyTotals> totalsByDay) {
+            this.target = target;
+            this.response = response;
+            this.totalsByDay = totalsByDay;
+        }
+
+        @Override
+        public void onHeartbeat(IngestBatchDTO.HeartbeatPayload heartbeat) {
+            heartbeatSeen = true;
+            processHeartbeat(heartbeat, target);
+        }
 
-    private void validateBatch(IngestBatchDTO batch) {
+        @Override
+        public void onBuckets(List<IngestBatchDTO.BucketPayload> chunk) {
+            processBuckets(chunk, target, response, totalsByDay);
+        }
+
+        @Override
+        public void onAppEvents(List<IngestBatchDTO.AppPayload> chunk) {
+            processAppEvents(chunk, target, response, totalsByDay);
+        }
+
+        @Override
+        public void onWebEvents(List<IngestBatchDTO.WebPayload> chunk) {
+            processWebEvents(chunk, target, response, totalsByDay);
+        }
+
+        @Override
+        public void onFileEvents(List<IngestBatchDTO.FilePayload> chunk) {
+            processFileEvents(chunk, target, response);
+        }
+
+        @Override
+        public void onUsbEvents(List<IngestBatchDTO.UsbPayload> chunk) {
+            processUsbEvents(chunk, target, response);
+        }
+    }
+
+    public void validateBatch(IngestBatchDTO batch) {
         if (batch == null) throw new IllegalArgumentException("Batch cannot be null");
     }
 
-    private void processHeartbeat(Device device, IngestBatchDTO.HeartbeatPayload hb, UUID tenantId, UUID orgId, UUID batchId) {
-        device.setLastSeenAt(LocalDateTime.now());
-        device.setStatus("ONLINE");
-        device.setAgentVersion(hb.getAgentVersion());
-        deviceRepository.save(device);
-
-        DeviceHeartbeat dhb = new DeviceHeartbeat();
-        dhb.setId(UUID.randomUUID());
-        dhb.setTenantId(tenantId);
-        dhb.setOrgId(orgId);
-        dhb.setDeviceId(device.getDeviceId());
-        dhb.setTs(LocalDateTime.now());
-        dhb.setStatus(hb.getStatus());
-        dhb.setAgentVersion(hb.getAgentVersion());
-        dhb.setQueueDepth(hb.getQueueDepth());
-        dhb.setUploadErrorCount(hb.getUploadErrorCount());
-        dhb.setIngestBatchId(batchId);
-        heartbeatRepo.save(dhb);
+    private void processHeartbeat(IngestBatchDTO.HeartbeatPayload hb, IngestMapper.Target target) {
+        presenceTracker.record(target.getDeviceId(), hb.getAgentVersion(), false);
+        heartbeatRepo.saveAllIgnoreConflict(List.of(IngestMapper.toHeartbeat(hb, target)));
     }
 
-    private void processBuckets(List<IngestBatchDTO.BucketPayload> buckets, Device device, UUID tenantId, UUID orgId, UUID batchId, IngestResponse response) {
-        List<ActivityBucket> toSave = buckets.stream().map(b -> {
-            ActivityBucket bucket = new ActivityBucket();
-            bucket.setId(UUID.randomUUID());
-            bucket.setTenantId(tenantId);
-            bucket.setOrgId(orgId);
-            bucket.setDeviceId(device.getDeviceId());
-            bucket.setBucketStart(IngestHelper.parseIso(b.getBucket_start()));
-            bucket.setBucketMinutes(b.getBucket_minutes());
-            bucket.setActiveSeconds(b.getActive_seconds());
-            bucket.setIdleSeconds(b.getIdle_seconds());
-            bucket.setAvgFocusScore(b.getAvg_focus_score());
-            bucket.setIngestBatchId(batchId);
-            return bucket;
-        }).collect(Collectors.toList());
+    private void processBuckets(List<IngestBatchDTO.BucketPayload> buckets, IngestMapper.Target target, IngestResponse response,
+                                Map<LocalDate, IngestMapper.DailyTotals> totalsByDay) {
+        List<ActivityBucket> toSave = IngestMapper.mapAll(buckets, b -> IngestMapper.toBucket(b, target, response));
 
         if (!toSave.isEmpty()) {
-            bucketRepo.saveAll(toSave);
-            response.getProcessed().put("buckets", response.getProcessed().getOrDefault("buckets", 0) + toSave.size());
+            List<UUID> inserted = bucketRepo.saveAllIgnoreConflictReturningIds(toSave);
+            response.recordInserts("buckets", toSave.size(), inserted.size());
+            IngestMapper.addBucketTotals(onlyInserted(toSave, inserted, ActivityBucket::getId), totalsByDay);
         }
     }
 
-    private void processAppEvents(List<IngestBatchDTO.AppPayload> events, Device device, UUID tenantId, UUID orgId, UUID batchId, IngestResponse response) {
-        List<AppUsageEvent> toSave = events.stream().map(e -> {
-            AppUsageEvent evt = new AppUsageEvent();
-            evt.setId(e.getId() != null ? e.getId() : UUID.randomUUID());
-            evt.setTenantId(tenantId);
-            evt.setOrgId(orgId);
-            evt.setDeviceId(device.getDeviceId());
-            evt.setTsStart(IngestHelper.parseIso(e.getTs_start()));
-            evt.setTsEnd(IngestHelper.parseIso(e.getTs_end()));
-            evt.setAppName(e.getApp_name());
-            evt.setProcessName(e.getProcess_name());
-            evt.setIngestBatchId(batchId);
-            return evt;
-        }).collect(Collectors.toList());
+    private void processAppEvents(List<IngestBatchDTO.AppPayload> events, IngestMapper.Target target, IngestResponse response,
+                                  Map<LocalDate, IngestMapper.DailyTotals> totalsByDay) {
+        List<AppUsageEvent> toSave = IngestMapper.mapAll(events, e -> IngestMapper.toAppEvent(e, target, response));
 
         if (!toSave.isEmpty()) {
-            appRepo.saveAll(toSave);
-            response.getProcessed().put("app_events", response.getProcessed().getOrDefault("app_events", 0) + toSave.size());
+            List<UUID> inserted = appRepo.saveAllIgnoreConflictReturningIds(toSave);
+            response.recordInserts("app_events", toSave.size(), inserted.size());
+            // A replayed upload must not add its usage seconds to the rollups twice
+            IngestMapper.addAppTotals(onlyInserted(toSave, inserted, AppUsageEvent::getId), totalsByDay);
         }
     }
 
-    private void processWebEvents(List<IngestBatchDTO.WebPayload> events, Device device, UUID tenantId, UUID orgId, UUID batchId, IngestResponse response) {
-        List<WebUsageEvent> toSave = events.stream().map(e -> {
-            WebUsageEvent evt = new WebUsageEvent();
-            evt.setId(e.getId() != null ? e.getId() : UUID.randomUUID());
-            evt.setTenantId(tenantId);
-            evt.setOrgId(orgId);
-            evt.setDeviceId(device.getDeviceId());
-            evt.setTsStart(IngestHelper.parseIso(e.getTs_start()));
-            evt.setTsEnd(IngestHelper.parseIso(e.getTs_end()));
-            evt.setDomain(e.getDomain());
-            evt.setIngestBatchId(batchId);
-            return evt;
-        }).collect(Collectors.toList());
+    private void processWebEvents(List<IngestBatchDTO.WebPayload> events, IngestMapper.Target target, IngestResponse response,
+                                  Map<LocalDate, IngestMapper.DailyTotals> totalsByDay) {
+        List<WebUsageEvent> toSave = IngestMapper.mapAll(events, e -> IngestMapper.toWebEvent(e, target, response));
 
         if (!toSave.isEmpty()) {
-            webRepo.saveAll(toSave);
-            response.getProcessed().put("web_events", response.getProcessed().getOrDefault("web_events", 0) + toSave.size());
+            List<UUID> inserted = webRepo.saveAllIgnoreConflictReturningIds(toSave);
+            response.recordInserts("web_events", toSave.size(), inserted.size());
+            IngestMapper.addWebTotals(onlyInserted(toSave, inserted, WebUsageEvent::getId), totalsByDay);
         }
     }
 
-    private void processFileEvents(List<IngestBatchDTO.FilePayload> events, Device device, UUID tenantId, UUID orgId, UUID batchId, IngestResponse response) {
-        Set<UUID> ids = events.stream().map(IngestBatchDTO.FilePayload::getId).collect(Collectors.toSet());
-        Set<UUID> existing = new HashSet<>(fileRepo.findAllById(ids).stream().map(FileEvent::getId).toList());
-
-        List<FileEvent> newEvents = events.stream()
-                .filter(e -> !existing.contains(e.getId()))
-                .map(e -> {
-                    FileEvent evt = new FileEvent();
-                    evt.setId(e.getId());
-                    evt.setTenantId(tenantId);
-                    evt.setOrgId(orgId);
-                    evt.setDeviceId(device.getDeviceId());
-                    
-                    LocalDateTime ts = IngestHelper.parseIso(e.getTimestamp());
-                    evt.setTs(ts);
-                    evt.setTsMs(ts.atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli());
-                    
-                    evt.setOperation(e.getOperation());
-                    evt.setPathHash(IngestHelper.hash(e.getFile_path())); 
-                    evt.setFileExt(e.getFile_name().contains(".") ? e.getFile_name().substring(e.getFile_name().lastIndexOf(".") + 1) : ""); 
-                    evt.setSizeBytes(e.getSize_bytes());
-                    evt.setIsUsb(e.is_usb());
-                    
-                    // New Fields
-                    evt.setIsExternal(e.is_external()); // Trust agent or derived
-                    if (e.getDest_path() != null) {
-                        evt.setDestPathHash(IngestHelper.hash(e.getDest_path()));
-                    }
-                    
-                    evt.setIngestBatchId(batchId);
-                    return evt;
-                }).toList();
-
-        if (!newEvents.isEmpty()) {
-            fileRepo.saveAll(newEvents);
-            response.getProcessed().put("file_events", response.getProcessed().getOrDefault("file_events", 0) + newEvents.size());
-        }
-        int rejected = events.size() - newEvents.size();
-        if (rejected > 0) response.getRejected().put("file_events", rejected);
+    private void processFileEvents(List<IngestBatchDTO.FilePayload> events, IngestMapper.Target target, IngestResponse response) {
+        List<FileEvent> toSave = IngestMapper.mapAll(events, e -> IngestMapper.toFileEvent(e, target, response));
+
+        if (toSave.isEmpty()) return;
+        // Duplicates are skipped by the insert itself; RETURNING tells us which rows are new.
+        List<UUID> inserted = fileRepo.saveAllIgnoreConflictReturningIds(toSave);
+        response.recordInserts("file_events", toSave.size(), inserted.size());
+
+        // Only new rows move the risk windows, so a replayed upload cannot double-count
+        riskOutbox.onFileEvents(target, onlyInserted(toSave, inserted, FileEvent::getId));
     }
-    
-    private void processUsbEvents(List<IngestBatchDTO.UsbPayload> events, Device device, UUID tenantId, UUID orgId, UUID batchId, IngestResponse response) {
-        // We assume IDs are not provided in payload? Actually DTO didn't have ID. 
-        // We should generate generic IDs or hash-based determinism? 
-        // Task 1 "ensure idempotency: if ingest repeats, use event IDs or unique constraints"
-        // DTO USB payload has no ID. I'll use random UUID for now, or check for duplicates based on properties?
-        // "usb_events dedup based on props?" Table has no unique constraint.
-        // I'll trust the ingest layer to be reasonable or just save all (as it's a log).
-        // But to avoid spam, maybe check? 
-        // For MVP, just insert.
-        
-        List<UsbEvent> newEvents = events.stream().map(e -> {
-            UsbEvent evt = new UsbEvent();
-            evt.setId(UUID.randomUUID());
-            evt.setTenantId(tenantId);
-            evt.setOrgId(orgId);
-            evt.setDeviceId(device.getDeviceId());
-            evt.setTsMs(e.getTs_ms());
-            evt.setAction(e.getAction());
-            evt.setDriveLetter(e.getDrive_letter());
-            evt.setVendorId(e.getVendor_id());
-            evt.setProductId(e.getProduct_id());
-            evt.setVolumeSerial(e.getVolume_serial());
-            evt.setCreatedAt(LocalDateTime.now());
-            return evt;
-        }).collect(Collectors.toList());
-        
-        usbRepo.saveAll(newEvents);
-        response.getProcessed().put("usb_events", response.getProcessed().getOrDefault("usb_events", 0) + newEvents.size());
+
+    /** The rows of {@code rows} whose id is in {@code insertedIds}, in batch order. */
+    private static <T> List<T> onlyInserted(List<T> rows, List<UUID> insertedIds, Function<T, UUID> id) {
+        if (insertedIds.size() == rows.size()) return rows;
+        Set<UUID> inserted = new HashSet<>(insertedIds);
+        return rows.stream().filter(row -> inserted.contains(id.apply(row))).toList();
     }
 
-    private void updateAggregations(IngestBatchDTO batch, Device device, UUID tenantId, UUID orgId) {
-        if (batch.getActivity_buckets() == null) return;
-        
-        // Simple Aggregation: Sum active/idle per day
-        Map<LocalDate, AggStats> statsByDay = new HashMap<>();
-
-        for (IngestBatchDTO.BucketPayload b : batch.getActivity_buckets()) {
-            LocalDateTime start = IngestHelper.parseIso(b.getBucket_start());
-            LocalDate date = start.toLocalDate();
-            statsByDay.computeIfAbsent(date, k -> new AggStats()).active += (b.getActive_seconds() != null ? b.getActive_seconds() : 0);
-            statsByDay.computeIfAbsent(date, k -> new AggStats()).idle += (b.getIdle_seconds() != null ? b.getIdle_seconds() : 0);
-        }
+    private void processUsbEvents(List<IngestBatchDTO.UsbPayload> events, IngestMapper.Target target, IngestResponse response) {
+        List<UsbEvent> newEvents = IngestMapper.mapAll(events, e -> IngestMapper.toUsbEvent(e, target));
 
-        statsByDay.forEach((date, stats) -> {
-            try {
-                // Upsert
-                dailySummaryRepo.upsertStats(tenantId, orgId, device.getDeviceId(), date, stats.active, stats.idle, "[]", "[]", "{}");
-            } catch (Exception e) {
-                log.error("Failed to update daily summary for device {} on {}", device.getDeviceId(), date, e);
-            }
-        });
+        int inserted = usbRepo.saveAllIgnoreConflict(newEvents);
+        response.recordInserts("usb_events", newEvents.size(), inserted);
+        riskOutbox.onUsbEvents(target, newEvents);
     }
 
-    private static class AggStats {
-        int active = 0;
-        int idle = 0;
+    private void writeDailyTotals(Map<LocalDate, IngestMapper.DailyTotals> totalsByDay, IngestMapper.Target target) {
+        // Summed in memory and flushed as one batched upsert; see DailyRollupAccumulator.
+        rollupAccumulator.add(target, totalsByDay);
     }
 }
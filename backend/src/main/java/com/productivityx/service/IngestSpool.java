@@ -0,0 +1,472 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.dto.ingest.IngestBatchDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead spool for batches accepted by {@link AsyncIngestPipeline}.
+ * <p>
+ * Records are framed as {@code [int length][int crc32][json]} in segment files. An append returns
+ * only once an fsync covers it; fsyncs are shared by all appends arriving within
+ * {@code fsync-interval-ms} (or {@code fsync-batch-size} records), so the 202 keeps the
+ * at-least-once contract without paying one fsync per request.
+ * <p>
+ * Each segment has a {@code .committed} sidecar listing the receipt ids of its batches that were
+ * committed, or released because the agent was told to retry. A segment is deleted once every
+ * batch in it is released and it is sealed, or on shutdown. Leftover segments are replayed into
+ * {@link IngestService} on startup, skipping released batches, so only batches that may never
+ * have reached PostgreSQL are ingested again. Sidecar writes are not fsynced: after a power loss a
+ * few committed batches may be replayed once more.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IngestSpool {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String COMMITTED_SUFFIX = ".committed";
+    private static final int RECEIPT_BYTES = 16;
+    private static final long MIN_RETRY_MS = 100;
+    private static final long MAX_RETRY_MS = 5000;
+    private static final int HEADER_BYTES = 8;
+
+    private final IngestService ingestService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${productivityx.ingest.spool.enabled:false}")
+    private boolean enabled;
+
+    @Value("${productivityx.ingest.spool.dir:./data/ingest-spool}")
+    private String dir;
+
+    @Value("${productivityx.ingest.spool.segment-bytes:67108864}")
+    private long segmentBytes;
+
+    @Value("${productivityx.ingest.spool.fsync-interval-ms:5}")
+    private long fsyncIntervalMs;
+
+    @Value("${productivityx.ingest.spool.fsync-batch-size:64}")
+    private int fsyncBatchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+
+    private Path spoolDir;
+    private Segment active;
+    private long nextSegmentId;
+    private long appendSeq;
+    private long durableSeq;
+    /** Set while fsyncs are failing; appends fail fast instead of waiting. */
+    private IOException fsyncFailure;
+    private volatile boolean running;
+    private Thread flusher;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) return;
+
+        spoolDir = Paths.get(dir);
+        Files.createDirectories(spoolDir);
+
+        List<Path> leftovers = listSegments();
+        nextSegmentId = leftovers.isEmpty() ? 0 : segmentId(leftovers.get(leftovers.size() - 1)) + 1;
+        replay(leftovers);
+
+        active = openSegment();
+        running = true;
+        flusher = new Thread(this::flushLoop, "ingest-spool-fsync");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Ingest spool at {} (segment {} bytes, fsync every {} ms / {} records)",
+                spoolDir.toAbsolutePath(), segmentBytes, fsyncIntervalMs, fsyncBatchSize);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) return;
+        lock.lock();
+        try {
+            running = false;
+            flushNeeded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+        // AsyncIngestPipeline has drained by now; only batches it could not commit are kept.
+        if (active.outstanding.get() == 0) {
+            delete(active);
+        } else {
+            log.warn("Keeping spool segment {} with {} uncommitted batches for replay", active.path, active.outstanding.get());
+            closeQuietly(active);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends the batch and blocks until it is on stable storage.
+     *
+     * @throws UncheckedIOException when the spool cannot write or fsync; the caller should answer
+     *                              503 so the agent retries
+     */
+    public Ticket append(UUID receiptId, String deviceId, IngestBatchDTO batch) {
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(new SpooledBatch(receiptId, deviceId, batch));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload);
+        record.flip();
+
+        Ticket ticket = null;
+        lock.lock();
+        try {
+            if (!running) throw new IllegalStateException("Ingest spool is closed");
+            if (fsyncFailure != null) throw new UncheckedIOException("Ingest spool fsync failing", fsyncFailure);
+            if (active.size > 0 && active.size + record.remaining() > segmentBytes) {
+                roll();
+            }
+            Segment segment = active;
+            segment.outstanding.incrementAndGet();
+            ticket = new Ticket(segment, receiptId);
+            while (record.hasRemaining()) {
+                segment.size += segment.channel.write(record);
+            }
+            long seq = ++appendSeq;
+            if (seq - durableSeq >= fsyncBatchSize) flushNeeded.signal();
+            if (fsyncIntervalMs <= 0) flushNeeded.signal();
+
+            while (durableSeq < seq) {
+                if (!running) throw new IllegalStateException("Ingest spool closed before fsync");
+                if (fsyncFailure != null) throw new UncheckedIOException("Ingest spool fsync failed", fsyncFailure);
+                durable.await();
+            }
+            Ticket durableTicket = ticket;
+            ticket = null;
+            return durableTicket;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for spool fsync", e);
+        } finally {
+            lock.unlock();
+            // Not acknowledged: the agent resends it, so it must not be replayed
+            if (ticket != null) markCommitted(ticket);
+        }
+    }
+
+    /**
+     * Releases a spooled batch once it is committed to PostgreSQL (or deliberately dropped), so it
+     * is not replayed.
+     */
+    public void markCommitted(Ticket ticket) {
+        Segment segment = ticket.segment;
+        try {
+            // Recorded before the count drops, so the segment cannot be deleted underneath
+            writeReceipt(segment.committed, ticket.receiptId);
+        } catch (IOException e) {
+            log.warn("Could not record committed batch {} in {}; it will be replayed", ticket.receiptId, segment.path, e);
+        }
+        if (segment.outstanding.decrementAndGet() == 0 && segment.sealed) {
+            delete(segment);
+        }
+    }
+
+    private void flushLoop() {
+        long retryMs = MIN_RETRY_MS;
+        while (true) {
+            long target;
+            FileChannel channel;
+            lock.lock();
+            try {
+                while (running && appendSeq == durableSeq) {
+                    flushNeeded.await();
+                }
+                if (!running && (appendSeq == durableSeq || fsyncFailure != null)) return;
+                if (running && fsyncIntervalMs > 0 && appendSeq - durableSeq < fsyncBatchSize) {
+                    // Group window: let more appends join this fsync.
+                    flushNeeded.await(fsyncIntervalMs, TimeUnit.MILLISECONDS);
+                }
+                target = appendSeq;
+                channel = active.channel;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // Segment was sealed (and forced) by roll() and already fully committed.
+                continue;
+            } catch (IOException e) {
+                log.error("Ingest spool fsync failed, retrying in {} ms", retryMs, e);
+                lock.lock();
+                try {
+                    fsyncFailure = e;
+                    durable.signalAll();
+                    // Back off; appends fail fast meanwhile, so nothing wakes this early but stop()
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryMs);
+                    for (long left; running && (left = deadline - System.nanoTime()) > 0; ) {
+                        flushNeeded.awaitNanos(left);
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    lock.unlock();
+                }
+                retryMs = Math.min(MAX_RETRY_MS, retryMs * 2);
+                continue;
+            }
+
+            retryMs = MIN_RETRY_MS;
+            lock.lock();
+            try {
+                fsyncFailure = null;
+                durableSeq = Math.max(durableSeq, target);
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Called with the lock held. Forces the old segment so earlier sequence numbers stay covered. */
+    private void roll() throws IOException {
+        Segment old = active;
+        old.channel.force(false);
+        active = openSegment();
+        old.sealed = true;
+        if (old.outstanding.get() == 0) {
+            delete(old);
+        }
+    }
+
+    private Segment openSegment() throws IOException {
+        Path path = spoolDir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSegmentId++, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        // A sidecar left behind by an earlier segment of the same id is stale
+        FileChannel committed = FileChannel.open(committedPath(path),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new Segment(path, channel, committed);
+    }
+
+    private void delete(Segment segment) {
+        if (!segment.deleted.compareAndSet(false, true)) return;
+        closeQuietly(segment);
+        try {
+            // Segment first: a segment without its sidecar would be replayed in full
+            Files.deleteIfExists(segment.path);
+            Files.deleteIfExists(committedPath(segment.path));
+        } catch (IOException e) {
+            log.warn("Could not delete committed spool segment {}", segment.path, e);
+        }
+    }
+
+    private void replay(List<Path> segments) {
+        for (Path path : segments) {
+            int replayed = 0;
+            int skipped = 0;
+            try (InputStream in = Files.newInputStream(path);
+                 FileChannel marks = FileChannel.open(committedPath(path), StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                Set<UUID> committed = readCommitted(path);
+                marks.truncate(marks.size() - marks.size() % RECEIPT_BYTES);
+                DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+                SpooledBatch spooled;
+                while ((spooled = readRecord(data, path)) != null) {
+                    if (committed.contains(spooled.getReceiptId())) {
+                        skipped++;
+                        continue;
+                    }
+                    try {
+                        ingestService.processBatch(spooled.getDeviceId(), spooled.getBatch());
+                    } catch (IllegalArgumentException e) {
+                        log.warn("Skipping spooled batch {} from device {}: {}", spooled.getReceiptId(), spooled.getDeviceId(), e.getMessage());
+                    }
+                    // So a replay interrupted later in this segment does not ingest it again
+                    writeReceipt(marks, spooled.getReceiptId());
+                    replayed++;
+                }
+            } catch (IOException | RuntimeException e) {
+                // Keep this and later segments; they are replayed again on the next start.
+                log.error("Spool replay stopped in {} after {} batches", path, replayed, e);
+                return;
+            }
+            log.info("Replayed {} spooled batches from {} ({} already committed)", replayed, path.getFileName(), skipped);
+            try {
+                Files.delete(path);
+                Files.deleteIfExists(committedPath(path));
+            } catch (IOException e) {
+                log.warn("Could not delete replayed spool segment {}", path, e);
+            }
+        }
+    }
+
+    private static void writeReceipt(FileChannel channel, UUID receiptId) throws IOException {
+        ByteBuffer receipt = ByteBuffer.allocate(RECEIPT_BYTES)
+                .putLong(receiptId.getMostSignificantBits())
+                .putLong(receiptId.getLeastSignificantBits());
+        receipt.flip();
+        while (receipt.hasRemaining()) channel.write(receipt);
+    }
+
+    private static Set<UUID> readCommitted(Path segment) throws IOException {
+        Path path = committedPath(segment);
+        Set<UUID> committed = new HashSet<>();
+        if (!Files.exists(path)) return committed;
+        ByteBuffer ids = ByteBuffer.wrap(Files.readAllBytes(path));
+        // A torn last entry is ignored; that batch is replayed
+        while (ids.remaining() >= RECEIPT_BYTES) {
+            committed.add(new UUID(ids.getLong(), ids.getLong()));
+        }
+        return committed;
+    }
+
+    private SpooledBatch readRecord(DataInputStream data, Path path) throws IOException {
+        int length;
+        int expectedCrc;
+        byte[] payload;
+        try {
+            length = data.readInt();
+            expectedCrc = data.readInt();
+            if (length <= 0 || length > segmentBytes) {
+                log.warn("Corrupt record length {} in {}, ignoring rest of segment", length, path);
+                return null;
+            }
+            payload = new byte[length];
+            data.readFully(payload);
+        } catch (EOFException e) {
+            // Clean end of segment, or a torn write that was never acknowledged.
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != expectedCrc) {
+            log.warn("Checksum mismatch in {}, ignoring rest of segment", path);
+            return null;
+        }
+        return objectMapper.readValue(payload, SpooledBatch.class);
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            return files
+                    .filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static Path committedPath(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + COMMITTED_SUFFIX);
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void closeQuietly(Segment segment) {
+        if (segment == null) return;
+        try {
+            segment.channel.close();
+        } catch (IOException ignored) {
+            // Already unusable; nothing left to flush.
+        }
+        try {
+            segment.committed.close();
+        } catch (IOException ignored) {
+            // At worst some committed batches are replayed.
+        }
+    }
+
+    /** Handle returned by {@link #append}; pass it back to {@link #markCommitted}. */
+    public static final class Ticket {
+        private final Segment segment;
+        private final UUID receiptId;
+
+        private Ticket(Segment segment, UUID receiptId) {
+            this.segment = segment;
+            this.receiptId = receiptId;
+        }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        /** Receipt ids of released batches, 16 bytes each. */
+        private final FileChannel committed;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicBoolean deleted = new AtomicBoolean();
+        private long size;
+        private volatile boolean sealed;
+
+        private Segment(Path path, FileChannel channel, FileChannel committed) {
+            this.path = path;
+            this.channel = channel;
+            this.committed = committed;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SpooledBatch {
+        private UUID receiptId;
+        private String deviceId;
+        private IngestBatchDTO batch;
+    }
+}
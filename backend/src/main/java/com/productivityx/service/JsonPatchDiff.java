@@ -0,0 +1,88 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Computes an RFC 6902 JSON Patch turning one document into another. Objects are diffed member by
+ * member; arrays by trimming their common head and tail, so entries appended to or removed from a
+ * long list cost one operation each rather than a copy of the list. The patch is correct but not
+ * minimal: no {@code move} or {@code copy} operations are produced.
+ */
+final class JsonPatchDiff {
+
+    private JsonPatchDiff() {
+    }
+
+    static ArrayNode diff(JsonNode from, JsonNode to) {
+        ArrayNode patch = JsonNodeFactory.instance.arrayNode();
+        diff(patch, "", from, to);
+        return patch;
+    }
+
+    private static void diff(ArrayNode patch, String path, JsonNode from, JsonNode to) {
+        if (from.equals(to)) return;
+        if (from.isObject() && to.isObject()) {
+            diffObjects(patch, path, from, to);
+        } else if (from.isArray() && to.isArray()) {
+            diffArrays(patch, path, from, to);
+        } else {
+            add(patch, "replace", path, to);
+        }
+    }
+
+    private static void diffObjects(ArrayNode patch, String path, JsonNode from, JsonNode to) {
+        Iterator<Map.Entry<String, JsonNode>> fields = from.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String child = path + "/" + escape(field.getKey());
+            JsonNode target = to.get(field.getKey());
+            if (target == null) remove(patch, child);
+            else diff(patch, child, field.getValue(), target);
+        }
+        fields = to.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!from.has(field.getKey())) add(patch, "add", path + "/" + escape(field.getKey()), field.getValue());
+        }
+    }
+
+    private static void diffArrays(ArrayNode patch, String path, JsonNode from, JsonNode to) {
+        int head = 0;
+        while (head < from.size() && head < to.size() && from.get(head).equals(to.get(head))) head++;
+        int tail = 0;
+        while (tail < from.size() - head && tail < to.size() - head
+                && from.get(from.size() - 1 - tail).equals(to.get(to.size() - 1 - tail))) tail++;
+
+        int removed = from.size() - head - tail;
+        int added = to.size() - head - tail;
+        int common = Math.min(removed, added);
+        // Changed in place, then surplus removed or missing inserted where the changed run ends
+        for (int i = head; i < head + common; i++) diff(patch, path + "/" + i, from.get(i), to.get(i));
+        for (int i = common; i < removed; i++) remove(patch, path + "/" + (head + common));
+        for (int i = common; i < added; i++) add(patch, "add", path + "/" + (head + i), to.get(head + i));
+    }
+
+    private static void add(ArrayNode patch, String op, String path, JsonNode value) {
+        ObjectNode operation = patch.addObject();
+        operation.put("op", op);
+        operation.put("path", path);
+        operation.set("value", value);
+    }
+
+    private static void remove(ArrayNode patch, String path) {
+        ObjectNode operation = patch.addObject();
+        operation.put("op", "remove");
+        operation.put("path", path);
+    }
+
+    /** JSON Pointer (RFC 6901) escaping of a member name. */
+    private static String escape(String name) {
+        return name.replace("~", "~0").replace("/", "~1");
+    }
+}
@@ -0,0 +1,76 @@
+package com.productivityx.service;
+
+import com.productivityx.repository.telemetry.TelemetryPartition;
+import com.productivityx.repository.telemetry.TelemetryPartitionRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Keeps the range-partitioned telemetry tables (see {@code telemetry_partition}) supplied with
+ * partitions {@code premake-days} ahead of the current time, so ingest always lands in a dated
+ * partition rather than in {@code <table>_default}.
+ * <p>
+ * Runs at startup and then on {@code maintenance-cron}. Each partition is created in its own short
+ * transaction while holding the table's registry row, so several backend nodes can run this
+ * concurrently and no range is created twice or skipped.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PartitionManager {
+
+    private final TelemetryPartitionRepository partitionRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${productivityx.partitions.premake-days:7}")
+    private int premakeDays;
+
+    private TransactionTemplate txTemplate;
+
+    @PostConstruct
+    public void start() {
+        txTemplate = new TransactionTemplate(transactionManager);
+        try {
+            ensurePartitions();
+        } catch (RuntimeException e) {
+            // Rows go to the default partitions meanwhile; the scheduled run retries.
+            log.error("Initial partition maintenance failed", e);
+        }
+    }
+
+    @Scheduled(cron = "${productivityx.partitions.maintenance-cron:0 15 * * * *}")
+    public synchronized void ensurePartitions() {
+        LocalDateTime horizon = LocalDateTime.now(ZoneOffset.UTC).plusDays(premakeDays);
+        for (TelemetryPartition table : partitionRepository.findAll()) {
+            int created = 0;
+            while (Boolean.TRUE.equals(txTemplate.execute(status -> createNext(table.getTableName(), horizon)))) {
+                created++;
+            }
+            if (created > 0) {
+                log.info("Created {} partitions for {}", created, table.getTableName());
+            }
+        }
+    }
+
+    /** Creates the partition after {@code covered_until} if that is still before the horizon. */
+    private boolean createNext(String tableName, LocalDateTime horizon) {
+        TelemetryPartition table = partitionRepository.lock(tableName).orElse(null);
+        if (table == null || !table.getCoveredUntil().isBefore(horizon)) return false;
+
+        LocalDateTime from = table.getCoveredUntil();
+        LocalDateTime to = table.next(from);
+        partitionRepository.createPartition(table, from, to);
+        partitionRepository.setCoveredUntil(tableName, to);
+        log.debug("Created partition {} [{}, {})", TelemetryPartitionRepository.partitionName(table, from), from, to);
+        return true;
+    }
+}
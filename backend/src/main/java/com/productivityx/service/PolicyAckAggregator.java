@@ -0,0 +1,205 @@
+package com.productivityx.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.productivityx.model.policy.DevicePolicyAck;
+import com.productivityx.repository.DevicePolicyAckRepository;
+import com.productivityx.repository.DevicePolicyStatus;
+import com.productivityx.repository.DeviceRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * Buffers agent policy acks and writes them every {@code flush-interval-ms}: the acks as one
+ * multi-row insert into {@code device_policy_ack} (re-sent acks are dropped by its dedup index) and
+ * each device's latest ack as one batched UPDATE of {@code devices}. A fleet acking a publish
+ * within seconds then costs a few statements instead of two writes per agent.
+ * <p>
+ * A chunk that violates a constraint is written again row by row and the rows that still fail are
+ * dropped ({@code policy.ack.dropped}); other failures keep the unwritten rows for the next flush.
+ * <p>
+ * Also counts, per policy version, how many devices last reported each status, for live rollout
+ * progress. The counts cover acks received by this node since it started.
+ */
+@Component
+@Slf4j
+public class PolicyAckAggregator {
+
+    private static final int CHUNK_SIZE = 500;
+
+    private final DevicePolicyAckRepository ackRepository;
+    private final DeviceRepository deviceRepository;
+    private final int maxPending;
+    private final int retryAfterSeconds;
+
+    private final Queue<DevicePolicyAck> pendingAcks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Map<String, DevicePolicyStatus> pendingStatuses = new ConcurrentHashMap<>();
+    private final Cache<RolloutKey, Rollout> rollouts;
+    private final Counter rejectedCounter;
+    private final Counter droppedCounter;
+
+    public PolicyAckAggregator(DevicePolicyAckRepository ackRepository,
+                               DeviceRepository deviceRepository,
+                               MeterRegistry meterRegistry,
+                               @Value("${productivityx.policy.ack.max-pending:100000}") int maxPending,
+                               @Value("${productivityx.policy.ack.retry-after-seconds:5}") int retryAfterSeconds,
+                               @Value("${productivityx.policy.ack.max-rollouts:1000}") long maxRollouts) {
+        this.ackRepository = ackRepository;
+        this.deviceRepository = deviceRepository;
+        this.maxPending = maxPending;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.rollouts = CacheBuilder.newBuilder()
+                .maximumSize(maxRollouts)
+                .build();
+        Gauge.builder("policy.ack.pending", pendingCount, AtomicInteger::get).register(meterRegistry);
+        this.rejectedCounter = meterRegistry.counter("policy.ack.rejected");
+        this.droppedCounter = meterRegistry.counter("policy.ack.dropped");
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Queues an ack for the next flush and counts it towards its rollout.
+     *
+     * @return false when {@code max-pending} acks are already waiting; the agent should retry later
+     */
+    public boolean record(DevicePolicyAck ack) {
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            rejectedCounter.increment();
+            return false;
+        }
+        pendingAcks.add(ack);
+        pendingStatuses.merge(ack.getDeviceId(),
+                new DevicePolicyStatus(ack.getDeviceId(), ack.getVersion().toString(), ack.getStatus(), ack.getCreatedAt()),
+                DevicePolicyStatus::merge);
+        rollouts.asMap()
+                .computeIfAbsent(new RolloutKey(ack.getPolicyId(), ack.getVersion()), key -> new Rollout())
+                .report(ack.getDeviceId(), ack.getStatus());
+        return true;
+    }
+
+    /** Devices that acked the policy version, by the status they reported last. */
+    public RolloutProgress progress(UUID policyId, int version) {
+        Rollout rollout = rollouts.getIfPresent(new RolloutKey(policyId, version));
+        Map<String, Long> byStatus = new TreeMap<>();
+        long devices = 0;
+        if (rollout != null) {
+            for (Map.Entry<String, AtomicLong> entry : rollout.counts.entrySet()) {
+                long count = entry.getValue().get();
+                if (count == 0) continue;
+                byStatus.put(entry.getKey(), count);
+                devices += count;
+            }
+        }
+        return new RolloutProgress(policyId, version, devices, byStatus);
+    }
+
+    @Scheduled(fixedDelayString = "${productivityx.policy.ack.flush-interval-ms:2000}")
+    public synchronized void flush() {
+        List<DevicePolicyAck> acks = new ArrayList<>();
+        for (DevicePolicyAck ack; (ack = pendingAcks.poll()) != null; ) acks.add(ack);
+        if (!acks.isEmpty()) {
+            int written = writeAll(acks, ackRepository::insertAll, "acks");
+            pendingCount.addAndGet(-written);
+            // The rest stay in the pending count, so a failing database pushes back on agents
+            pendingAcks.addAll(acks.subList(written, acks.size()));
+        }
+
+        if (pendingStatuses.isEmpty()) return;
+        List<DevicePolicyStatus> statuses = new ArrayList<>(pendingStatuses.size());
+        for (String deviceId : pendingStatuses.keySet()) {
+            DevicePolicyStatus status = pendingStatuses.remove(deviceId);
+            if (status != null) statuses.add(status);
+        }
+        statuses.sort(Comparator.comparing(DevicePolicyStatus::getDeviceId));
+        int written = writeAll(statuses, deviceRepository::updatePolicyAcks, "statuses");
+        // Put the rest back; acks received meanwhile win on merge
+        for (DevicePolicyStatus status : statuses.subList(written, statuses.size())) {
+            pendingStatuses.merge(status.getDeviceId(), status, DevicePolicyStatus::merge);
+        }
+    }
+
+    /**
+     * Writes {@code rows} in chunks. A chunk failing on a constraint is retried row by row, dropping
+     * the rows that fail again, so one bad row cannot hold back the others.
+     *
+     * @return how many leading rows were written or dropped; the rest failed for another reason
+     */
+    private <T> int writeAll(List<T> rows, ToIntFunction<List<T>> writer, String what) {
+        int done = 0;
+        try {
+            while (done < rows.size()) {
+                List<T> chunk = rows.subList(done, Math.min(rows.size(), done + CHUNK_SIZE));
+                try {
+                    writer.applyAsInt(chunk);
+                    done += chunk.size();
+                } catch (DataIntegrityViolationException e) {
+                    log.warn("Policy {} chunk of {} rows rejected, retrying individually: {}", what, chunk.size(), e.getMessage());
+                    for (T row : chunk) {
+                        try {
+                            writer.applyAsInt(List.of(row));
+                        } catch (DataIntegrityViolationException ex) {
+                            droppedCounter.increment();
+                            log.error("Dropping policy {} row {}", what, row, ex);
+                        }
+                        done++;
+                    }
+                }
+            }
+            log.debug("Flushed {} policy {}", done, what);
+        } catch (RuntimeException e) {
+            log.warn("Policy {} flush failed after {} of {} rows, will retry", what, done, rows.size(), e);
+        }
+        return done;
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    private record RolloutKey(UUID policyId, int version) {
+    }
+
+    /** Latest status per device, with the number of devices in each status kept alongside. */
+    private static final class Rollout {
+        private final Map<String, String> statusByDevice = new ConcurrentHashMap<>();
+        private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+
+        void report(String deviceId, String status) {
+            statusByDevice.compute(deviceId, (id, previous) -> {
+                if (status.equals(previous)) return previous;
+                if (previous != null) counts.get(previous).decrementAndGet();
+                counts.computeIfAbsent(status, s -> new AtomicLong()).incrementAndGet();
+                return status;
+            });
+        }
+    }
+
+    public record RolloutProgress(UUID policyId, int version, long devices, Map<String, Long> byStatus) {
+    }
+}
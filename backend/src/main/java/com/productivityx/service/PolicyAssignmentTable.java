@@ -0,0 +1,125 @@
+package com.productivityx.service;
+
+import com.productivityx.model.policy.PolicyAssignment;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The active policy assignments of all tenants, keyed by target, so a device's effective policy is
+ * resolved in memory from at most four lookups: the device itself, its group, its org and its
+ * tenant. The assignment with the highest {@code priority} wins; on a tie the more specific target
+ * does (device, then group, org, tenant).
+ * <p>
+ * Thread-safe. Rows are applied as they change; a row older than the one held for its target is
+ * ignored, so late or repeated deliveries do no harm.
+ */
+final class PolicyAssignmentTable {
+
+    static final int DEFAULT_PRIORITY = 100;
+
+    private final Map<Target, PolicyAssignment> active = new ConcurrentHashMap<>();
+
+    /** Replaces the whole table with {@code assignments} (the active rows). */
+    void load(List<PolicyAssignment> assignments) {
+        active.clear();
+        for (PolicyAssignment assignment : assignments) apply(assignment);
+    }
+
+    /**
+     * Applies a created, changed or deactivated row.
+     *
+     * @return whether the table changed
+     */
+    boolean apply(PolicyAssignment assignment) {
+        Target target = targetOf(assignment);
+        boolean[] changed = {false};
+        if (Boolean.TRUE.equals(assignment.getActive())) {
+            active.compute(target, (t, current) -> {
+                if (current != null && updatedAt(current) > updatedAt(assignment)) return current;
+                changed[0] = current == null || !sameState(current, assignment);
+                return assignment;
+            });
+        } else {
+            active.computeIfPresent(target, (t, current) -> {
+                if (!current.getId().equals(assignment.getId())) return current;
+                changed[0] = true;
+                return null;
+            });
+        }
+        return changed[0];
+    }
+
+    /** The assignment that applies to the device, or null. */
+    PolicyAssignment resolve(DeviceContext device) {
+        PolicyAssignment best = null;
+        best = better(best, active.get(Target.device(device.getTenantId(), device.getOrgId(), device.getDeviceId())));
+        if (device.getGroupId() != null) best = better(best, active.get(Target.group(device.getTenantId(), device.getGroupId())));
+        best = better(best, active.get(Target.org(device.getTenantId(), device.getOrgId())));
+        best = better(best, active.get(Target.tenant(device.getTenantId())));
+        return best;
+    }
+
+    int size() {
+        return active.size();
+    }
+
+    /** Whether the row targets a single device; such a change cannot affect any other device. */
+    static boolean isDeviceTarget(PolicyAssignment assignment) {
+        return assignment.getTargetType() == null || "DEVICE".equals(assignment.getTargetType());
+    }
+
+    /** Candidates are offered from most to least specific, so only a strictly higher priority replaces. */
+    private static PolicyAssignment better(PolicyAssignment best, PolicyAssignment candidate) {
+        if (candidate == null) return best;
+        if (best == null || priority(candidate) > priority(best)) return candidate;
+        return best;
+    }
+
+    private static int priority(PolicyAssignment assignment) {
+        return assignment.getPriority() == null ? DEFAULT_PRIORITY : assignment.getPriority();
+    }
+
+    private static long updatedAt(PolicyAssignment assignment) {
+        return assignment.getUpdatedAt() == null ? 0 : assignment.getUpdatedAt();
+    }
+
+    private static boolean sameState(PolicyAssignment a, PolicyAssignment b) {
+        return a.getId().equals(b.getId())
+                && Objects.equals(a.getPolicyId(), b.getPolicyId())
+                && priority(a) == priority(b);
+    }
+
+    private static Target targetOf(PolicyAssignment assignment) {
+        String type = assignment.getTargetType() == null ? "DEVICE" : assignment.getTargetType();
+        return switch (type) {
+            case "DEVICE" -> Target.device(assignment.getTenantId(), assignment.getOrgId(), assignment.getDeviceId());
+            case "GROUP" -> Target.group(assignment.getTenantId(), assignment.getGroupId());
+            case "ORG" -> Target.org(assignment.getTenantId(), assignment.getOrgId());
+            case "TENANT" -> Target.tenant(assignment.getTenantId());
+            default -> throw new IllegalArgumentException("Unknown assignment target type " + type);
+        };
+    }
+
+    private record Target(String type, UUID tenantId, UUID scopeId, String deviceId) {
+
+        static Target device(UUID tenantId, UUID orgId, String deviceId) {
+            return new Target("DEVICE", tenantId, orgId, deviceId);
+        }
+
+        static Target group(UUID tenantId, UUID groupId) {
+            return new Target("GROUP", tenantId, groupId, null);
+        }
+
+        static Target org(UUID tenantId, UUID orgId) {
+            return new Target("ORG", tenantId, orgId, null);
+        }
+
+        static Target tenant(UUID tenantId) {
+            return new Target("TENANT", tenantId, null, null);
+        }
+    }
+}
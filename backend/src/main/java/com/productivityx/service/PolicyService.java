@@ -1,7 +1,6 @@
 package com.productivityx.service;
 
 import com.productivityx.dto.policy.*;
-import com.productivityx.model.Device;
 import com.productivityx.model.policy.*;
 import com.productivityx.repository.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -13,6 +12,8 @@ import org.springframework.transaction.annotation.Transactional;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -24,8 +25,9 @@ public class PolicyService {
     private final PolicyPackRepository policyRepo;
     private final PolicySnapshotRepository snapshotRepo;
     private final PolicyAssignmentRepository assignmentRepo;
-    private final DevicePolicyAckRepository ackRepo;
-    private final DeviceRepository deviceRepo;
+    private final PolicyAckAggregator ackAggregator;
+    private final DeviceContextCache deviceContextCache;
+    private final PolicySnapshotIndex snapshotIndex;
     private final AuditLogRepository auditRepo;
     private final ObjectMapper objectMapper;
 
@@ -109,6 +111,7 @@ public class PolicyService {
         snapshot.setCreatedAt(now);
 
         snapshotRepo.save(snapshot);
+        snapshotIndex.published(snapshot);
         
         // Update Policy Pack
         policy.setPublishedVersion(nextVersion);
@@ -122,71 +125,107 @@ public class PolicyService {
         return mapToSnapshotDTO(snapshot);
     }
 
-    @Transactional(readOnly = true)
-    public Optional<PolicySnapshotDTO> getSnapshotForDevice(String deviceId, String ifNoneMatch) {
-         Device device = deviceRepo.findById(deviceId).orElse(null);
-         if (device == null) return Optional.empty();
-         
-         // 1. Find active assignment
-         Optional<PolicyAssignment> assignOpt = assignmentRepo.findActiveByDeviceId(
-             device.getTenantId(), device.getOrgId(), deviceId);
-             
-         if (assignOpt.isEmpty()) return Optional.empty();
-         
-         PolicyAssignment assignment = assignOpt.get();
-         PolicyPack policy = policyRepo.findById(assignment.getPolicyId()).orElse(null);
-         if (policy == null || policy.getPublishedVersion() == null || policy.getPublishedVersion() == 0) {
-             return Optional.empty();
-         }
-         
-         int version = policy.getPublishedVersion();
-         
-         // 2. Get Snapshot
-         Optional<PolicySnapshot> snapshotOpt = snapshotRepo.findByPolicyIdAndVersion(policy.getId(), version);
-         if (snapshotOpt.isEmpty()) return Optional.empty();
-         
-         PolicySnapshot snapshot = snapshotOpt.get();
-         
-         PolicySnapshotDTO dto = mapToSnapshotDTO(snapshot);
-         
-         // Check ETag
-         if (ifNoneMatch != null && ifNoneMatch.replace("\"", "").equals(snapshot.getEtag())) {
-             // 304 Case - handled by Controller returning empty body + 304 status if DTO matches
-             // But Service should return the DTO and let controller decide? 
-             // Or return empty optional? 
-             // Returning the DTO is safer, Controller uses ETag to set status.
-         }
-         
-         return Optional.of(dto);
+    /**
+     * The device's current snapshot, answered from {@link PolicySnapshotIndex}. The caller compares
+     * ETags and sends the pre-serialized body.
+     */
+    public Optional<PolicySnapshotIndex.Snapshot> getSnapshotForDevice(String deviceId) {
+        return snapshotIndex.find(deviceId);
     }
     
     @Transactional
     public void assignPolicy(UUID tenantId, UUID orgId, UUID userId, String deviceId, UUID policyId) {
-        // Enforce Unique Active Assignment
-        // Deactivate existing
-        assignmentRepo.findActiveByDeviceId(tenantId, orgId, deviceId).ifPresent(existing -> {
+        assignPolicy(tenantId, orgId, userId, "DEVICE", deviceId, policyId, null);
+    }
+
+    /**
+     * Assigns the policy to a device, a device group, the org or the whole tenant, replacing the
+     * target's current assignment. One row and one audit entry per target, however many devices it
+     * reaches; {@link PolicySnapshotIndex} works out which devices that changes.
+     *
+     * @param priority the higher wins where several targets reach a device; null for the default
+     */
+    @Transactional
+    public PolicyAssignment assignPolicy(UUID tenantId, UUID orgId, UUID userId,
+                                         String targetType, String targetId, UUID policyId, Integer priority) {
+        if (policyId == null) throw new IllegalArgumentException("policyId is required");
+        if (targetType == null) throw new IllegalArgumentException("targetType is required");
+
+        PolicyAssignment pa = new PolicyAssignment();
+        pa.setTenantId(tenantId);
+        pa.setTargetType(targetType);
+        Optional<PolicyAssignment> current;
+        switch (targetType) {
+            case "DEVICE" -> {
+                if (targetId == null || targetId.isBlank()) throw new IllegalArgumentException("Device id is required");
+                pa.setOrgId(orgId);
+                pa.setDeviceId(targetId);
+                current = assignmentRepo.findActiveByDeviceId(tenantId, orgId, targetId);
+            }
+            case "GROUP" -> {
+                UUID groupId = parseTargetId(targetId);
+                pa.setOrgId(orgId);
+                pa.setGroupId(groupId);
+                current = assignmentRepo.findActiveByGroupId(tenantId, groupId);
+            }
+            case "ORG" -> {
+                UUID targetOrgId = targetId == null ? orgId : parseTargetId(targetId);
+                pa.setOrgId(targetOrgId);
+                current = assignmentRepo.findActiveForOrg(tenantId, targetOrgId);
+            }
+            case "TENANT" -> current = assignmentRepo.findActiveForTenant(tenantId);
+            default -> throw new IllegalArgumentException("Unknown target type " + targetType);
+        }
+
+        long now = System.currentTimeMillis();
+        // Enforce Unique Active Assignment per target
+        List<PolicyAssignment> changed = new ArrayList<>(2);
+        current.ifPresent(existing -> {
             existing.setActive(false);
+            existing.setUpdatedAt(now);
             assignmentRepo.save(existing);
+            changed.add(existing);
         });
-        
-        PolicyAssignment pa = new PolicyAssignment();
+
         pa.setId(UUID.randomUUID());
-        pa.setTenantId(tenantId);
-        pa.setOrgId(orgId);
-        pa.setDeviceId(deviceId);
         pa.setPolicyId(policyId);
         pa.setActive(true);
-        pa.setPriority(100);
-        pa.setCreatedAt(System.currentTimeMillis());
-        pa.setUpdatedAt(System.currentTimeMillis());
-        
+        pa.setPriority(priority != null ? priority : PolicyAssignmentTable.DEFAULT_PRIORITY);
+        pa.setCreatedAt(now);
+        pa.setUpdatedAt(now);
+
         assignmentRepo.save(pa);
-        logAudit(tenantId, orgId, userId, "ASSIGN_POLICY", deviceId, policyId.toString());
+        changed.add(pa);
+        snapshotIndex.assignmentsChanged(changed);
+        String target = "DEVICE".equals(targetType) ? targetId : targetType + ":" + (targetId != null ? targetId : tenantId);
+        logAudit(tenantId, orgId, userId, "ASSIGN_POLICY", target, policyId.toString());
+        return pa;
     }
 
-    @Transactional
-    public void recordAck(String deviceId, UUID policyId, Integer version, String status, String reason, Long appliedAtMs, String agentVersion, String clientEtag) {
-        Device device = deviceRepo.findById(deviceId).orElseThrow(() -> new RuntimeException("Device not found"));
+    private static UUID parseTargetId(String targetId) {
+        if (targetId == null) throw new IllegalArgumentException("Target id is required");
+        try {
+            return UUID.fromString(targetId);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Target id must be a UUID: " + targetId);
+        }
+    }
+
+    /**
+     * Queues the ack with {@link PolicyAckAggregator}, which writes it and the device's ack status
+     * in batches.
+     *
+     * @return false when the aggregator is full and the agent should retry later
+     */
+    public boolean recordAck(String deviceId, UUID policyId, Integer version, String status, String reason, Long appliedAtMs, String agentVersion, String clientEtag) {
+        if (policyId == null || version == null || status == null) {
+            throw new IllegalArgumentException("policyId, version and status are required");
+        }
+        // device_policy_ack.status and agent_version are VARCHAR(50)
+        if (status.length() > 50 || (agentVersion != null && agentVersion.length() > 50)) {
+            throw new IllegalArgumentException("status and agentVersion are limited to 50 characters");
+        }
+        DeviceContext device = deviceContextCache.find(deviceId).orElseThrow(() -> new RuntimeException("Device not found"));
         
         DevicePolicyAck ack = new DevicePolicyAck();
         ack.setId(UUID.randomUUID());
@@ -202,12 +241,7 @@ public class PolicyService {
         ack.setClientEtag(clientEtag);
         ack.setCreatedAt(System.currentTimeMillis());
         
-        ackRepo.save(ack);
-        
-        // Update Device status for quick lookup
-        device.setPolicyVersion(version.toString());
-        device.setAckStatus(status);
-        deviceRepo.save(device);
+        return ackAggregator.record(ack);
     }
 
     private void logAudit(UUID tenantId, UUID orgId, UUID userId, String action, String target, String details) {
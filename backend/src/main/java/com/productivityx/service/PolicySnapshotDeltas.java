@@ -0,0 +1,90 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.productivityx.model.policy.PolicySnapshot;
+import com.productivityx.repository.PolicySnapshotRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * JSON Patches taking an agent from the snapshot it holds to the current one, so a publish that
+ * changes a few entries of a large block list ships those entries rather than the whole config.
+ * The patch applies to the {@code snapshotJson} document.
+ * <p>
+ * Each patch is computed once per (held, current) pair and cached; agents name the snapshot they
+ * hold by its ETag, which is a hash of its content. When the held snapshot is unknown, or the patch
+ * would not be smaller than the full snapshot, there is no delta and the full snapshot is sent.
+ */
+@Component
+@Slf4j
+public class PolicySnapshotDeltas {
+
+    private static final Delta NONE = new Delta(null, 0, 0, null, null, null);
+
+    private final PolicySnapshotRepository snapshotRepo;
+    private final ObjectMapper objectMapper;
+    private final Cache<Key, Delta> deltas;
+
+    public PolicySnapshotDeltas(PolicySnapshotRepository snapshotRepo,
+                                ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry,
+                                @Value("${productivityx.policy.delta.max-entries:10000}") long maxEntries) {
+        this.snapshotRepo = snapshotRepo;
+        this.objectMapper = objectMapper;
+        this.deltas = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, deltas, "policy.snapshot.delta");
+    }
+
+    /** The patch from the snapshot with ETag {@code heldEtag} to {@code current}; empty to send {@code current} in full. */
+    public Optional<Delta> find(PolicySnapshotIndex.Snapshot current, String heldEtag) {
+        if (heldEtag == null || current.matches(heldEtag)) return Optional.empty();
+        Key key = new Key(current.policyId(), heldEtag.replace("\"", ""), current.version());
+        try {
+            Delta delta = deltas.get(key, () -> compute(key, current));
+            return delta == NONE ? Optional.empty() : Optional.of(delta);
+        } catch (ExecutionException | RuntimeException e) {
+            // Not cached: the next agent with this ETag tries again
+            log.warn("Cannot compute delta of policy {} from {} to version {}", key.policyId(), key.heldEtag(), key.version(), e);
+            return Optional.empty();
+        }
+    }
+
+    private Delta compute(Key key, PolicySnapshotIndex.Snapshot current) throws IOException {
+        PolicySnapshot held = snapshotRepo.findFirstByPolicyIdAndEtagOrderByVersionDesc(key.policyId(), key.heldEtag()).orElse(null);
+        if (held == null) return NONE;
+
+        JsonNode from = objectMapper.readTree(held.getSnapshotJson());
+        // The current config is inside the already serialized response body
+        JsonNode to = objectMapper.readTree(objectMapper.readTree(current.body()).get("snapshotJson").asText());
+        byte[] patch = objectMapper.writeValueAsBytes(JsonPatchDiff.diff(from, to));
+        if (patch.length >= current.body().length) return NONE;
+
+        log.debug("Policy {} delta v{} -> v{}: {} bytes instead of {}", key.policyId(), held.getVersion(),
+                current.version(), patch.length, current.body().length);
+        return new Delta(key.policyId(), held.getVersion(), current.version(), current.etag(), patch, PolicySnapshotIndex.gzip(patch));
+    }
+
+    private record Key(UUID policyId, String heldEtag, int version) {
+    }
+
+    /**
+     * An RFC 6902 patch from version {@code fromVersion} to {@code version}, whose ETag is {@code etag};
+     * {@code gzipBody} is null for small patches.
+     */
+    public record Delta(UUID policyId, int fromVersion, int version, String etag, byte[] body, byte[] gzipBody) {
+    }
+}
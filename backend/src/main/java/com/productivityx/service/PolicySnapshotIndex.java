@@ -0,0 +1,341 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.productivityx.dto.policy.PolicySnapshotDTO;
+import com.productivityx.model.policy.PolicyAssignment;
+import com.productivityx.model.policy.PolicyPack;
+import com.productivityx.model.policy.PolicySnapshot;
+import com.productivityx.repository.PolicyAssignmentRepository;
+import com.productivityx.repository.PolicyPackRepository;
+import com.productivityx.repository.PolicySnapshotRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Answers agent snapshot polls from memory. Each device resolves to its effective policy, and each
+ * policy to its current published snapshot with the ETag and the response body already serialized,
+ * so a 304 costs no query and a 200 no serialization. Devices share their policy's entry, so a
+ * publish replaces one entry however many devices it reaches.
+ * <p>
+ * All active assignments are held in a {@link PolicyAssignmentTable}, so resolving a device needs
+ * only its (cached) identity. The resolved device-to-policy map is updated as assignments change:
+ * a device assignment re-resolves that device, a group, org or tenant assignment re-resolves the
+ * devices in memory, without touching the database.
+ * <p>
+ * Changes made through this node apply when their transaction commits; changes made on other nodes
+ * are picked up every {@code refresh-ms} from assignment update times and published versions.
+ * {@link Listener}s hear of every device whose policy changed and every newly published snapshot,
+ * so parked agents can be woken.
+ */
+@Component
+@Slf4j
+public class PolicySnapshotIndex {
+
+    /** Resolved for devices without an applicable assignment. */
+    private static final UUID NO_POLICY = new UUID(0, 0);
+    /** Margin for clock skew between nodes when looking for changed assignments. */
+    private static final long SKEW_MARGIN_MS = 30_000;
+    /** Bodies smaller than this are sent uncompressed; gzip gains little below a packet. */
+    private static final int GZIP_MIN_BYTES = 1024;
+
+    private final DeviceContextCache deviceContextCache;
+    private final PolicyAssignmentRepository assignmentRepo;
+    private final PolicyPackRepository policyRepo;
+    private final PolicySnapshotRepository snapshotRepo;
+    private final ObjectMapper objectMapper;
+
+    private final PolicyAssignmentTable assignments = new PolicyAssignmentTable();
+    private final Cache<String, Resolved> policyByDevice;
+    private final Map<UUID, Snapshot> snapshotByPolicy = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean loaded;
+    private volatile long lastRefreshMs;
+
+    public PolicySnapshotIndex(DeviceContextCache deviceContextCache,
+                               PolicyAssignmentRepository assignmentRepo,
+                               PolicyPackRepository policyRepo,
+                               PolicySnapshotRepository snapshotRepo,
+                               ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry,
+                               @Value("${productivityx.policy.index.max-devices:200000}") long maxDevices,
+                               @Value("${productivityx.device-cache.ttl-seconds:600}") long deviceTtlSeconds) {
+        this.deviceContextCache = deviceContextCache;
+        this.assignmentRepo = assignmentRepo;
+        this.policyRepo = policyRepo;
+        this.snapshotRepo = snapshotRepo;
+        this.objectMapper = objectMapper;
+        this.policyByDevice = CacheBuilder.newBuilder()
+                .maximumSize(maxDevices)
+                // Same bound as DeviceContextCache on a missed move to another group or org
+                .expireAfterWrite(deviceTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, policyByDevice, "policy.snapshot.device");
+        Gauge.builder("policy.snapshot.policies", snapshotByPolicy, Map::size).register(meterRegistry);
+        Gauge.builder("policy.assignments.active", assignments, PolicyAssignmentTable::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            loadAssignments();
+        } catch (RuntimeException e) {
+            // Devices resolve to no policy until the scheduled refresh loads the table
+            log.error("Initial policy assignment load failed", e);
+        }
+    }
+
+    private void loadAssignments() {
+        long startedMs = System.currentTimeMillis();
+        assignments.load(assignmentRepo.findByActiveTrue());
+        policyByDevice.invalidateAll();
+        lastRefreshMs = startedMs;
+        loaded = true;
+    }
+
+    /** The device's current snapshot; empty for unknown devices, devices without a policy or unpublished policies. */
+    public Optional<Snapshot> find(String deviceId) {
+        if (deviceId == null) return Optional.empty();
+        Resolved resolved = policyByDevice.getIfPresent(deviceId);
+        if (resolved == null) {
+            DeviceContext device = deviceContextCache.find(deviceId).orElse(null);
+            if (device == null) return Optional.empty(); // unknown device; not cached, like DeviceContextCache
+            resolved = new Resolved(device, resolve(device));
+            policyByDevice.put(deviceId, resolved);
+        }
+        UUID policyId = resolved.policyId();
+        if (NO_POLICY.equals(policyId)) return Optional.empty();
+
+        Snapshot snapshot = snapshotByPolicy.get(policyId);
+        if (snapshot == null) snapshot = offer(loadSnapshot(policyId));
+        return snapshot.isPublished() ? Optional.of(snapshot) : Optional.empty();
+    }
+
+    /** The policy the device is known to resolve to, without resolving it; null if not cached. */
+    public UUID cachedPolicyOf(String deviceId) {
+        Resolved resolved = policyByDevice.getIfPresent(deviceId);
+        return resolved == null ? null : resolved.policyId();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /** Makes {@code snapshot} its policy's current one once the surrounding transaction commits. */
+    public void published(PolicySnapshot snapshot) {
+        Snapshot entry = toEntry(snapshot);
+        afterCommit(() -> {
+            if (offer(entry) == entry) notifyPolicy(entry.policyId());
+        });
+    }
+
+    /** Applies created or deactivated assignment rows once the surrounding transaction commits. */
+    public void assignmentsChanged(List<PolicyAssignment> changed) {
+        List<PolicyAssignment> rows = List.copyOf(changed);
+        afterCommit(() -> apply(rows));
+    }
+
+    /**
+     * Re-resolves a device whose identity changed (e.g. moved to another group), once the
+     * surrounding transaction commits.
+     */
+    public void deviceChanged(String deviceId) {
+        afterCommit(() -> {
+            policyByDevice.invalidate(deviceId);
+            notifyDevice(deviceId);
+        });
+    }
+
+    /** Catches up with publishes and assignments made on other nodes. */
+    @Scheduled(fixedDelayString = "${productivityx.policy.index.refresh-ms:10000}")
+    public void refresh() {
+        if (!loaded) {
+            loadAssignments();
+        } else {
+            long startedMs = System.currentTimeMillis();
+            apply(assignmentRepo.findByUpdatedAtGreaterThanOrderByUpdatedAt(lastRefreshMs - SKEW_MARGIN_MS));
+            lastRefreshMs = startedMs;
+        }
+
+        if (snapshotByPolicy.isEmpty()) return;
+        for (Object[] row : policyRepo.findPublishedVersions(new ArrayList<>(snapshotByPolicy.keySet()))) {
+            UUID policyId = (UUID) row[0];
+            int version = row[1] == null ? 0 : ((Number) row[1]).intValue();
+            Snapshot current = snapshotByPolicy.get(policyId);
+            if (current == null || current.version() >= version) continue;
+            Snapshot loaded = loadSnapshot(policyId);
+            if (offer(loaded) == loaded) notifyPolicy(policyId);
+        }
+    }
+
+    /**
+     * Updates the table and re-resolves the devices in memory that the changes can affect, telling
+     * listeners about each device whose policy changed. Rows already applied change nothing.
+     */
+    private void apply(List<PolicyAssignment> rows) {
+        boolean broad = false;
+        Set<String> devices = new HashSet<>();
+        for (PolicyAssignment row : rows) {
+            if (!assignments.apply(row)) continue;
+            if (PolicyAssignmentTable.isDeviceTarget(row)) devices.add(row.getDeviceId());
+            else broad = true;
+        }
+        if (!broad && devices.isEmpty()) return;
+
+        int changed = 0;
+        for (Map.Entry<String, Resolved> entry : policyByDevice.asMap().entrySet()) {
+            if (!broad && !devices.contains(entry.getKey())) continue;
+            Resolved current = entry.getValue();
+            UUID policyId = resolve(current.device());
+            if (policyId.equals(current.policyId())) continue;
+            policyByDevice.put(entry.getKey(), new Resolved(current.device(), policyId));
+            notifyDevice(entry.getKey());
+            changed++;
+        }
+        log.debug("Applied {} assignment changes; {} devices changed policy", rows.size(), changed);
+    }
+
+    private UUID resolve(DeviceContext device) {
+        PolicyAssignment assignment = assignments.resolve(device);
+        return assignment == null ? NO_POLICY : assignment.getPolicyId();
+    }
+
+    private void notifyPolicy(UUID policyId) {
+        for (Listener listener : listeners) {
+            try {
+                listener.policyChanged(policyId);
+            } catch (RuntimeException e) {
+                log.error("Policy change listener failed for policy {}", policyId, e);
+            }
+        }
+    }
+
+    private void notifyDevice(String deviceId) {
+        for (Listener listener : listeners) {
+            try {
+                listener.deviceChanged(deviceId);
+            } catch (RuntimeException e) {
+                log.error("Policy change listener failed for device {}", deviceId, e);
+            }
+        }
+    }
+
+    /** Keeps the newer of {@code candidate} and the current entry; returns the one kept. */
+    private Snapshot offer(Snapshot candidate) {
+        return snapshotByPolicy.merge(candidate.policyId(), candidate,
+                (current, offered) -> offered.version() > current.version() ? offered : current);
+    }
+
+    private Snapshot loadSnapshot(UUID policyId) {
+        PolicyPack policy = policyRepo.findById(policyId).orElse(null);
+        Integer version = policy == null ? null : policy.getPublishedVersion();
+        if (version == null || version == 0) return Snapshot.unpublished(policyId);
+        return snapshotRepo.findByPolicyIdAndVersion(policyId, version)
+                .map(this::toEntry)
+                .orElse(Snapshot.unpublished(policyId));
+    }
+
+    private Snapshot toEntry(PolicySnapshot snapshot) {
+        PolicySnapshotDTO dto = new PolicySnapshotDTO();
+        dto.setPolicyId(snapshot.getPolicyId());
+        dto.setVersion(snapshot.getVersion());
+        dto.setSnapshotJson(snapshot.getSnapshotJson());
+        dto.setEtag(snapshot.getEtag());
+        dto.setIssuedAtMs(snapshot.getIssuedAtMs());
+        dto.setExpiresAtMs(snapshot.getExpiresAtMs());
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(dto);
+            return new Snapshot(snapshot.getPolicyId(), snapshot.getVersion(), snapshot.getEtag(), body, gzip(body));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize snapshot of policy " + snapshot.getPolicyId(), e);
+        }
+    }
+
+    /**
+     * The gzip encoding of {@code body}, compressed once here rather than per response; null when
+     * the body is too small to be worth it.
+     */
+    static byte[] gzip(byte[] body) {
+        if (body.length < GZIP_MIN_BYTES) return null;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /** A device's identity as resolved, and the policy it resolved to. */
+    private record Resolved(DeviceContext device, UUID policyId) {
+    }
+
+    /** Told after the index changed; must return quickly. */
+    public interface Listener {
+        /** A newer snapshot of the policy became current. */
+        void policyChanged(UUID policyId);
+
+        /** The device may resolve to a different policy now. */
+        void deviceChanged(String deviceId);
+    }
+
+    /**
+     * A published snapshot as served to agents. {@code body} is the serialized {@link PolicySnapshotDTO}
+     * and {@code gzipBody} its gzip encoding, null for small bodies; version 0 marks a policy with
+     * nothing published.
+     */
+    public record Snapshot(UUID policyId, int version, String etag, byte[] body, byte[] gzipBody) {
+
+        static Snapshot unpublished(UUID policyId) {
+            return new Snapshot(policyId, 0, null, null, null);
+        }
+
+        boolean isPublished() {
+            return version > 0;
+        }
+
+        /** Whether an {@code If-None-Match} header names this snapshot's ETag. */
+        public boolean matches(String ifNoneMatch) {
+            return ifNoneMatch != null && etag != null && ifNoneMatch.replace("\"", "").equals(etag);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.productivityx.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Agents parked on their current ETag, woken when {@link PolicySnapshotIndex} reports that their
+ * effective snapshot may have changed. A watch holds no thread: the caller completes its pending
+ * response from the callback. Wakeups run on one background thread, so a publish reaching many
+ * parked agents does not hold up the publishing request.
+ * <p>
+ * At most {@code max-watchers} agents are parked per node; beyond that {@link #watch} refuses and
+ * the agent should fall back to polling.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PolicySnapshotWatcher implements PolicySnapshotIndex.Listener {
+
+    private final PolicySnapshotIndex snapshotIndex;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${productivityx.policy.watch.max-watchers:50000}")
+    private int maxWatchers;
+
+    @Value("${productivityx.policy.watch.timeout-ms:55000}")
+    private long timeoutMs;
+
+    @Value("${productivityx.policy.watch.retry-after-seconds:30}")
+    private int retryAfterSeconds;
+
+    private final Map<String, Set<Watch>> watches = new ConcurrentHashMap<>();
+    private final AtomicInteger parked = new AtomicInteger();
+    private ExecutorService notifier;
+    private Counter wokenCounter;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    public void start() {
+        notifier = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "policy-watch-notifier");
+            t.setDaemon(true);
+            return t;
+        });
+        Gauge.builder("policy.watch.parked", parked, AtomicInteger::get).register(meterRegistry);
+        wokenCounter = meterRegistry.counter("policy.watch.woken");
+        rejectedCounter = meterRegistry.counter("policy.watch.rejected");
+        snapshotIndex.addListener(this);
+    }
+
+    @PreDestroy
+    public void stop() {
+        // Parked requests end with the container; agents reconnect elsewhere
+        notifier.shutdownNow();
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Parks until the device's snapshot no longer has ETag {@code etag} (null: until it has one),
+     * then calls {@code onChange} once with the current snapshot, empty if the device has none any
+     * more. Calls it right away if that is already the case.
+     *
+     * @return cancels the watch; empty when this node has no room and the caller should back off
+     */
+    public Optional<Runnable> watch(String deviceId, String etag, Consumer<Optional<PolicySnapshotIndex.Snapshot>> onChange) {
+        if (parked.incrementAndGet() > maxWatchers) {
+            parked.decrementAndGet();
+            rejectedCounter.increment();
+            return Optional.empty();
+        }
+        Watch watch = new Watch(deviceId, etag, onChange);
+        watches.compute(deviceId, (id, set) -> {
+            if (set == null) set = ConcurrentHashMap.newKeySet();
+            set.add(watch);
+            return set;
+        });
+        // Checked after registering, so a change racing with the registration is not missed
+        check(watch);
+        return Optional.of(() -> remove(watch));
+    }
+
+    @Override
+    public void policyChanged(UUID policyId) {
+        notifier.execute(() -> {
+            for (String deviceId : watches.keySet()) {
+                UUID assigned = snapshotIndex.cachedPolicyOf(deviceId);
+                if (assigned == null || assigned.equals(policyId)) checkDevice(deviceId);
+            }
+        });
+    }
+
+    @Override
+    public void deviceChanged(String deviceId) {
+        if (watches.containsKey(deviceId)) notifier.execute(() -> checkDevice(deviceId));
+    }
+
+    private void checkDevice(String deviceId) {
+        Set<Watch> set = watches.get(deviceId);
+        if (set == null) return;
+        for (Watch watch : set) {
+            try {
+                check(watch);
+            } catch (RuntimeException e) {
+                log.warn("Snapshot watch of device {} failed", deviceId, e);
+            }
+        }
+    }
+
+    private void check(Watch watch) {
+        Optional<PolicySnapshotIndex.Snapshot> current = snapshotIndex.find(watch.deviceId);
+        boolean changed = current.map(snapshot -> !snapshot.matches(watch.etag)).orElse(watch.etag != null);
+        if (!changed || !watch.fired.compareAndSet(false, true)) return;
+        remove(watch);
+        wokenCounter.increment();
+        watch.onChange.accept(current);
+    }
+
+    private void remove(Watch watch) {
+        watches.computeIfPresent(watch.deviceId, (id, set) -> {
+            if (set.remove(watch)) parked.decrementAndGet();
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static final class Watch {
+        private final String deviceId;
+        private final String etag;
+        private final Consumer<Optional<PolicySnapshotIndex.Snapshot>> onChange;
+        private final AtomicBoolean fired = new AtomicBoolean();
+
+        private Watch(String deviceId, String etag, Consumer<Optional<PolicySnapshotIndex.Snapshot>> onChange) {
+            this.deviceId = deviceId;
+            this.etag = etag;
+            this.onChange = onChange;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.productivityx.model.telemetry.FileEvent;
+import com.productivityx.model.telemetry.UsbEvent;
+import com.productivityx.repository.telemetry.RiskOutboxEntry;
+import com.productivityx.repository.telemetry.RiskOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves risk evaluation out of the ingest transaction. Ingest only appends the risk-relevant
+ * events of a chunk to {@code risk_outbox} (one row, same transaction); {@code workers} background
+ * threads claim rows with {@code FOR UPDATE SKIP LOCKED}, feed them to {@link RiskWindowEngine},
+ * record any risks and delete the rows. Each worker owns a hash share of the devices, leased to one
+ * node at a time, so one device's rows are evaluated in order and by the node holding its state. The same
+ * signals also feed the {@link DeviceBaselineTracker} activity baselines.
+ * <p>
+ * Metrics: {@code risk.outbox.lag} (time from ingest commit to evaluation), {@code risk.outbox.backlog}
+ * and {@code risk.outbox.oldest.age} (seconds), {@code risk.outbox.signals}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RiskOutboxDispatcher {
+
+    /** Rows whose risks are remembered for redelivery; each is dropped once its deletion commits. */
+    private static final int UNRECORDED_ROWS = 10_000;
+
+    private final RiskOutboxRepository outboxRepository;
+    private final RiskWindowEngine engine;
+    private final DeviceBaselineTracker baselines;
+    private final RiskService riskService;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${productivityx.risk.outbox.workers:2}")
+    private int workers;
+
+    @Value("${productivityx.risk.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${productivityx.risk.outbox.poll-interval-ms:500}")
+    private long pollIntervalMs;
+
+    @Value("${productivityx.risk.outbox.lease-seconds:30}")
+    private long leaseSeconds;
+
+    /** Lease owner name of this node. */
+    private final String owner = UUID.randomUUID().toString();
+
+    /** Outcomes of claimed rows whose deletion has not committed yet, by outbox id. */
+    private final Cache<Long, Outcome> unrecorded = CacheBuilder.newBuilder().maximumSize(UNRECORDED_ROWS).build();
+    private final AtomicLong backlog = new AtomicLong();
+    private final AtomicLong oldestAgeSeconds = new AtomicLong();
+    private ExecutorService executor;
+    private TransactionTemplate txTemplate;
+    private volatile boolean running;
+
+    private Timer lagTimer;
+    private Counter signalCounter;
+
+    @PostConstruct
+    public void start() {
+        txTemplate = new TransactionTemplate(transactionManager);
+        lagTimer = Timer.builder("risk.outbox.lag")
+                .description("Time from ingest commit to risk evaluation")
+                .register(meterRegistry);
+        signalCounter = meterRegistry.counter("risk.outbox.signals");
+        Gauge.builder("risk.outbox.backlog", backlog, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("risk.outbox.oldest.age", oldestAgeSeconds, AtomicLong::get)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+
+        if (workers <= 0) {
+            log.info("Risk outbox dispatching is off on this node");
+            return;
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "risk-dispatcher-" + threadIndex.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            int worker = i;
+            executor.submit(() -> run(worker));
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (executor == null) return;
+        executor.shutdown();
+        // Unclaimed and rolled-back rows stay in the outbox for the next start
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) executor.shutdownNow();
+    }
+
+    /** Queues newly inserted file events; joins the caller's transaction. */
+    public void onFileEvents(IngestMapper.Target target, List<FileEvent> events) {
+        List<RiskSignal> signals = new ArrayList<>();
+        for (FileEvent event : events) {
+            RiskSignal signal = RiskSignal.of(event);
+            if (signal != null && wanted(target, signal)) signals.add(signal);
+        }
+        append(target, signals);
+    }
+
+    public void onUsbEvents(IngestMapper.Target target, List<UsbEvent> events) {
+        List<RiskSignal> signals = new ArrayList<>();
+        for (UsbEvent event : events) {
+            RiskSignal signal = RiskSignal.of(event);
+            if (signal != null && wanted(target, signal)) signals.add(signal);
+        }
+        append(target, signals);
+    }
+
+    private boolean wanted(IngestMapper.Target target, RiskSignal signal) {
+        return baselines.tracks(signal.type()) || engine.wants(target.getTenantId(), target.getOrgId(), signal.type());
+    }
+
+    private void append(IngestMapper.Target target, List<RiskSignal> signals) {
+        if (signals.isEmpty()) return;
+        outboxRepository.append(target.getTenantId(), target.getOrgId(), target.getDeviceId(), encode(signals));
+    }
+
+    private void run(int worker) {
+        while (running) {
+            try {
+                if (dispatchOnce(worker, workers) < batchSize) Thread.sleep(pollIntervalMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Risk dispatcher {} failed", worker, e);
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates one batch of the rows of worker {@code worker} of {@code of}. The rows stay locked until the deletion commits;
+     * if a risk cannot be recorded the claim rolls back and the rows are claimed again. The engine and baselines skip
+     * rows they already applied, so what those rows produced is kept here until the deletion commits and raised again
+     * on redelivery; raising is idempotent through the risk's dedup key.
+     *
+     * @return the number of rows claimed
+     */
+    int dispatchOnce(int worker, int of) {
+        List<Long> ids = new ArrayList<>();
+        Integer claimed = txTemplate.execute(status -> {
+            List<RiskOutboxEntry> entries = outboxRepository.claim(owner, worker, of, batchSize, leaseSeconds);
+            LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+            for (RiskOutboxEntry entry : entries) {
+                ids.add(entry.getId());
+                lagTimer.record(Duration.between(entry.getCreatedAt(), now));
+                List<RiskSignal> signals;
+                try {
+                    signals = decode(entry.getSignalsJson());
+                } catch (RuntimeException e) {
+                    log.error("Dropping malformed risk outbox row {}", entry.getId(), e);
+                    continue;
+                }
+                signalCounter.increment(signals.size());
+                Outcome outcome = evaluate(entry, signals);
+                for (CompiledRiskRule.Firing firing : outcome.firings()) {
+                    riskService.raise(entry.getTenantId(), entry.getOrgId(), entry.getDeviceId(), firing);
+                }
+                for (DeviceBaselineTracker.Anomaly anomaly : outcome.anomalies()) {
+                    riskService.raise(entry.getTenantId(), entry.getOrgId(), entry.getDeviceId(), anomaly);
+                }
+            }
+            outboxRepository.delete(ids);
+            return entries.size();
+        });
+        unrecorded.invalidateAll(ids);
+        return claimed == null ? 0 : claimed;
+    }
+
+    private Outcome evaluate(RiskOutboxEntry entry, List<RiskSignal> signals) {
+        Outcome pending = unrecorded.getIfPresent(entry.getId());
+        Outcome outcome = new Outcome(
+                engine.apply(entry.getTenantId(), entry.getOrgId(), entry.getDeviceId(), entry.getId(), signals),
+                baselines.apply(entry.getTenantId(), entry.getOrgId(), entry.getDeviceId(), entry.getId(), signals));
+        if (pending != null) outcome = pending.plus(outcome);
+        if (!outcome.isEmpty()) unrecorded.put(entry.getId(), outcome);
+        return outcome;
+    }
+
+    @Scheduled(fixedDelayString = "${productivityx.risk.outbox.metrics-interval-ms:15000}")
+    public void refreshBacklog() {
+        long[] current = outboxRepository.backlog();
+        backlog.set(current[0]);
+        oldestAgeSeconds.set(current[1]);
+    }
+
+    String encode(List<RiskSignal> signals) {
+        List<Object[]> rows = new ArrayList<>(signals.size());
+        for (RiskSignal s : signals) {
+            rows.add(new Object[]{s.type().name(), s.tsMs(), s.id(), s.external(), s.detail(), s.bytes()});
+        }
+        try {
+            return objectMapper.writeValueAsString(rows);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to encode risk signals", e);
+        }
+    }
+
+    List<RiskSignal> decode(String json) {
+        JsonNode rows;
+        try {
+            rows = objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Risk signals are not JSON", e);
+        }
+        List<RiskSignal> signals = new ArrayList<>(rows.size());
+        for (JsonNode row : rows) {
+            signals.add(new RiskSignal(
+                    RiskSignal.Type.valueOf(row.get(0).asText()),
+                    row.get(1).asLong(),
+                    row.get(2).isNull() ? null : UUID.fromString(row.get(2).asText()),
+                    row.get(3).asBoolean(),
+                    row.get(4).isNull() ? null : row.get(4).asText(),
+                    row.get(5).asLong()));
+        }
+        return signals;
+    }
+
+    /** Risks one outbox row produced, not yet known to be recorded. */
+    private record Outcome(List<CompiledRiskRule.Firing> firings, List<DeviceBaselineTracker.Anomaly> anomalies) {
+
+        boolean isEmpty() {
+            return firings.isEmpty() && anomalies.isEmpty();
+        }
+
+        Outcome plus(Outcome other) {
+            List<CompiledRiskRule.Firing> allFirings = new ArrayList<>(firings);
+            allFirings.addAll(other.firings);
+            List<DeviceBaselineTracker.Anomaly> allAnomalies = new ArrayList<>(anomalies);
+            allAnomalies.addAll(other.anomalies);
+            return new Outcome(allFirings, allAnomalies);
+        }
+    }
+}
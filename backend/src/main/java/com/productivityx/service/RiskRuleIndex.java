@@ -0,0 +1,76 @@
+package com.productivityx.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable set of compiled rules, resolved per (tenant, org) into event-type buckets, so an event
+ * only visits the rules that can react to it. For each rule code the most specific rule wins: org,
+ * then tenant, then built-in; a disabled rule hides the broader ones without adding anything.
+ * Resolutions are built on first use and kept for the lifetime of the index; a reload builds a new
+ * index.
+ */
+public final class RiskRuleIndex {
+
+    public static final RiskRuleIndex EMPTY = new RiskRuleIndex(List.of());
+
+    private final List<CompiledRiskRule> builtIn = new ArrayList<>();
+    private final Map<UUID, List<CompiledRiskRule>> byTenant = new HashMap<>();
+    private final Set<CompiledRiskRule> all = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<Scope, Map<RiskSignal.Type, List<CompiledRiskRule>>> resolved = new ConcurrentHashMap<>();
+
+    public RiskRuleIndex(List<CompiledRiskRule> rules) {
+        for (CompiledRiskRule rule : rules) {
+            all.add(rule);
+            if (rule.getTenantId() == null) builtIn.add(rule);
+            else byTenant.computeIfAbsent(rule.getTenantId(), t -> new ArrayList<>()).add(rule);
+        }
+    }
+
+    /** Enabled rules for the scope that react to {@code type}. */
+    public List<CompiledRiskRule> rulesFor(UUID tenantId, UUID orgId, RiskSignal.Type type) {
+        return resolved.computeIfAbsent(new Scope(tenantId, orgId), this::resolve).getOrDefault(type, List.of());
+    }
+
+    public boolean contains(CompiledRiskRule rule) {
+        return all.contains(rule);
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    private Map<RiskSignal.Type, List<CompiledRiskRule>> resolve(Scope scope) {
+        Map<String, CompiledRiskRule> effective = new LinkedHashMap<>();
+        for (CompiledRiskRule rule : builtIn) effective.put(rule.getCode(), rule);
+        List<CompiledRiskRule> tenantRules = byTenant.getOrDefault(scope.tenantId(), List.of());
+        for (CompiledRiskRule rule : tenantRules) {
+            if (rule.getOrgId() == null) effective.put(rule.getCode(), rule);
+        }
+        for (CompiledRiskRule rule : tenantRules) {
+            if (rule.getOrgId() != null && rule.getOrgId().equals(scope.orgId())) effective.put(rule.getCode(), rule);
+        }
+
+        Map<RiskSignal.Type, List<CompiledRiskRule>> byType = new EnumMap<>(RiskSignal.Type.class);
+        for (CompiledRiskRule rule : effective.values()) {
+            if (!rule.isEnabled()) continue;
+            for (RiskSignal.Type type : rule.getTriggers()) {
+                byType.computeIfAbsent(type, t -> new ArrayList<>()).add(rule);
+            }
+        }
+        byType.replaceAll((type, list) -> List.copyOf(list));
+        return byType;
+    }
+
+    private record Scope(UUID tenantId, UUID orgId) {
+    }
+}
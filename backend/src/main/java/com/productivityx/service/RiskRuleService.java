@@ -0,0 +1,132 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.model.telemetry.RiskRule;
+import com.productivityx.repository.telemetry.RiskRuleRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Loads {@code risk_rule} rows and compiles them into the {@link RiskRuleIndex} that
+ * {@link RiskWindowEngine} evaluates. Rules are reloaded after every change made through this node
+ * and every {@code rules-refresh-ms} to pick up changes made elsewhere. Unchanged rules keep their
+ * compiled instance, so devices keep their window state across reloads.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RiskRuleService {
+
+    /** Severities of {@code risk_events}; see V13. */
+    private static final Set<String> SEVERITIES = Set.of("LOW", "MED", "HIGH");
+
+    private final RiskRuleRepository ruleRepository;
+    private final ObjectMapper objectMapper;
+
+    private volatile RiskRuleIndex index = RiskRuleIndex.EMPTY;
+    private Map<UUID, CompiledRiskRule> compiled = Map.of();
+
+    @PostConstruct
+    public void start() {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            // No rules fire until the scheduled reload succeeds
+            log.error("Initial risk rule load failed", e);
+        }
+    }
+
+    public RiskRuleIndex index() {
+        return index;
+    }
+
+    @Scheduled(fixedDelayString = "${productivityx.risk.rules-refresh-ms:60000}", initialDelayString = "${productivityx.risk.rules-refresh-ms:60000}")
+    public synchronized void reload() {
+        Map<UUID, CompiledRiskRule> next = new HashMap<>();
+        for (RiskRule rule : ruleRepository.findAll()) {
+            CompiledRiskRule previous = compiled.get(rule.getId());
+            if (previous != null && Objects.equals(previous.getVersion(), rule.getUpdatedAt())) {
+                next.put(rule.getId(), previous);
+                continue;
+            }
+            try {
+                next.put(rule.getId(), CompiledRiskRule.compile(rule, objectMapper));
+            } catch (IllegalArgumentException e) {
+                log.error("Skipping risk rule {} ({}): {}", rule.getId(), rule.getCode(), e.getMessage());
+            }
+        }
+        compiled = next;
+        index = new RiskRuleIndex(new ArrayList<>(next.values()));
+        log.debug("Loaded {} risk rules", next.size());
+    }
+
+    public List<RiskRule> listRules(UUID tenantId) {
+        return ruleRepository.findVisibleToTenant(tenantId);
+    }
+
+    /**
+     * Creates or replaces one of the tenant's rules. Built-in rules cannot be edited; saving a tenant
+     * or org rule with the same code overrides them.
+     *
+     * @throws IllegalArgumentException if the rule belongs to another scope, has an unknown severity
+     *                                  or does not compile
+     * @throws org.springframework.dao.DataIntegrityViolationException if the tenant already has a
+     *                                  rule with the code
+     */
+    public RiskRule saveRule(UUID tenantId, RiskRule rule) {
+        if (rule.getId() != null) {
+            RiskRule existing = ruleRepository.findById(rule.getId()).orElse(null);
+            if (existing != null && !tenantId.equals(existing.getTenantId())) {
+                throw new IllegalArgumentException("Rule belongs to another tenant or is built in");
+            }
+        } else {
+            rule.setId(UUID.randomUUID());
+        }
+        rule.setTenantId(tenantId);
+        if (rule.getCode() != null) rule.setCode(rule.getCode().toUpperCase(Locale.ROOT));
+        if (rule.getKind() != null) rule.setKind(rule.getKind().toUpperCase(Locale.ROOT));
+        if (rule.getSeverity() == null) rule.setSeverity("HIGH");
+        rule.setSeverity(rule.getSeverity().toUpperCase(Locale.ROOT));
+        if (!SEVERITIES.contains(rule.getSeverity())) {
+            throw new IllegalArgumentException("Unknown severity: " + rule.getSeverity());
+        }
+        if (rule.getEnabled() == null) rule.setEnabled(true);
+        // Truncated to what TIMESTAMPTZ keeps, so the next reload sees the same version
+        rule.setUpdatedAt(LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
+
+        // Reject definitions that would not compile; disabled rules are checked as if enabled
+        RiskRule probe = new RiskRule();
+        probe.setCode(rule.getCode());
+        probe.setKind(rule.getKind());
+        probe.setDefinition(rule.getDefinition());
+        probe.setEnabled(true);
+        CompiledRiskRule.compile(probe, objectMapper);
+
+        RiskRule saved = ruleRepository.save(rule);
+        reload();
+        return saved;
+    }
+
+    /** @return false if there is no such rule of the tenant's */
+    public boolean deleteRule(UUID tenantId, UUID ruleId) {
+        RiskRule existing = ruleRepository.findById(ruleId).orElse(null);
+        if (existing == null || !tenantId.equals(existing.getTenantId())) return false;
+        ruleRepository.delete(existing);
+        reload();
+        return true;
+    }
+}
@@ -1,27 +1,22 @@
 package com.productivityx.service;
 
-import com.productivityx.model.Device;
-import com.productivityx.model.telemetry.FileEvent;
 import com.productivityx.model.telemetry.RiskEvent;
-import com.productivityx.model.telemetry.UsbEvent;
-import com.productivityx.repository.telemetry.FileEventRepository;
 import com.productivityx.repository.telemetry.RiskEventRepository;
-import com.productivityx.repository.telemetry.UsbEventRepository;
-import com.productivityx.repository.DeviceRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.List;
+import java.time.ZoneOffset;
 import java.util.Map;
 import java.util.UUID;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -29,107 +24,72 @@ import java.util.stream.Collectors;
 public class RiskService {
 
     private final RiskEventRepository riskRepo;
-    private final UsbEventRepository usbRepo;
-    private final FileEventRepository fileRepo;
-    private final DeviceRepository deviceRepo;
     private final ObjectMapper objectMapper;
+    private final DailyRollupAccumulator rollupAccumulator;
+
+    /**
+     * Records a risk fired by {@link RiskWindowEngine}, unless this occurrence was already recorded.
+     * The dedup key is the rule code, device and the firing's anchor (the bucket, or the time of the
+     * sequence's first event, which stays the same when agents replay it under a new id). Runs in
+     * its own transaction, so a failed insert does not roll back the dispatcher's outbox claim.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean raise(UUID tenantId, UUID orgId, String deviceId, CompiledRiskRule.Firing firing) {
+        String type = firing.rule().getCode();
+        String dedupKey = sha256(type + ":" + deviceId + ":" + firing.anchor());
+        if (riskRepo.existsByTenantIdAndOrgIdAndDeviceIdAndTypeAndDedupKey(tenantId, orgId, deviceId, type, dedupKey)) {
+            return false;
+        }
 
-    @Transactional
-    public void checkForRisks(String deviceId, Long windowEndTsMs) {
-        Device device = deviceRepo.findById(deviceId).orElse(null);
-        if (device == null) return;
-        
-        UUID tenantId = device.getTenantId();
-        UUID orgId = device.getOrgId();
-
-        checkR1UsbExfil(tenantId, orgId, deviceId, windowEndTsMs);
-        checkR2MassDelete(tenantId, orgId, deviceId, windowEndTsMs);
+        saveRisk(newRisk(tenantId, orgId, deviceId, type, firing.rule().getSeverity(),
+                firing.windowStartMs(), firing.windowEndMs(), dedupKey, firing.evidence()));
+        return true;
     }
 
-    private void checkR1UsbExfil(UUID tenantId, UUID orgId, String deviceId, Long windowEndTsMs) {
-        long windowStart = windowEndTsMs - 600_000; // 10 mins
-        List<UsbEvent> usbInserts = usbRepo.findRecentInserts(tenantId, orgId, deviceId, windowStart);
-        
-        if (usbInserts.isEmpty()) return;
-
-        List<FileEvent> suspiciousFiles = fileRepo.findRecentExternalOps(tenantId, orgId, deviceId, windowStart);
-        if (suspiciousFiles.isEmpty()) return;
-
-        for (UsbEvent usb : usbInserts) {
-            String dedupKey = sha256("R1:" + deviceId + ":" + usb.getId());
-            if (riskRepo.existsByTenantIdAndOrgIdAndDeviceIdAndTypeAndDedupKey(tenantId, orgId, deviceId, "R1_USB_EXFIL", dedupKey)) {
-                continue;
-            }
+    /**
+     * Records an activity anomaly found by {@link DeviceBaselineTracker}, at most once per device,
+     * metric and hour. Same transaction handling as {@link #raise(UUID, UUID, String, CompiledRiskRule.Firing)}.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean raise(UUID tenantId, UUID orgId, String deviceId, DeviceBaselineTracker.Anomaly anomaly) {
+        String type = anomaly.code();
+        String dedupKey = sha256(type + ":" + deviceId + ":" + anomaly.hourStartMs());
+        if (riskRepo.existsByTenantIdAndOrgIdAndDeviceIdAndTypeAndDedupKey(tenantId, orgId, deviceId, type, dedupKey)) {
+            return false;
+        }
 
-            // Create Risk
-            RiskEvent risk = new RiskEvent();
-            risk.setId(UUID.randomUUID());
-            risk.setTenantId(tenantId);
-            risk.setOrgId(orgId);
-            risk.setDeviceId(deviceId);
-            risk.setSeverity("HIGH");
-            risk.setType("R1_USB_EXFIL");
-            risk.setWindowStartMs(windowStart);
-            risk.setWindowEndMs(windowEndTsMs);
-            risk.setDedupKey(dedupKey);
-            risk.setStatus("OPEN");
-            risk.setCreatedAt(LocalDateTime.now());
+        saveRisk(newRisk(tenantId, orgId, deviceId, type, "MED",
+                anomaly.hourStartMs(), anomaly.hourStartMs() + DeviceBaseline.HOUR_MS - 1, dedupKey, anomaly.evidence()));
+        return true;
+    }
 
-            Map<String, Object> evidence = new HashMap<>();
-            evidence.put("rule", "R1_USB_EXFIL");
-            evidence.put("usb_event_id", usb.getId());
-            evidence.put("drive_letter", usb.getDriveLetter());
-            evidence.put("file_event_ids", suspiciousFiles.stream().map(FileEvent::getId).collect(Collectors.toList()));
-            evidence.put("file_count", suspiciousFiles.size());
-            
-            try {
-                risk.setEvidenceJson(objectMapper.writeValueAsString(evidence));
-            } catch (Exception e) {
-                log.error("Failed to serialize evidence", e);
-            }
+    private RiskEvent newRisk(UUID tenantId, UUID orgId, String deviceId, String type, String severity,
+                              long windowStartMs, long windowEndMs, String dedupKey, Map<String, Object> evidence) {
+        RiskEvent risk = new RiskEvent();
+        risk.setId(UUID.randomUUID());
+        risk.setTenantId(tenantId);
+        risk.setOrgId(orgId);
+        risk.setDeviceId(deviceId);
+        risk.setSeverity(severity);
+        risk.setType(type);
+        risk.setWindowStartMs(windowStartMs);
+        risk.setWindowEndMs(windowEndMs);
+        risk.setDedupKey(dedupKey);
+        risk.setStatus("OPEN");
+        risk.setCreatedAt(LocalDateTime.now());
 
-            riskRepo.save(risk);
+        try {
+            risk.setEvidenceJson(objectMapper.writeValueAsString(evidence));
+        } catch (Exception e) {
+            log.error("Failed to serialize evidence", e);
         }
+        return risk;
     }
 
-    private void checkR2MassDelete(UUID tenantId, UUID orgId, String deviceId, Long windowEndTsMs) {
-        long windowStart = windowEndTsMs - 300_000; // 5 mins
-        long count = fileRepo.countRecentDestructiveOps(tenantId, orgId, deviceId, windowStart);
-        
-        if (count > 30) {
-            long bucket = windowEndTsMs / 300_000;
-            String dedupKey = sha256("R2:" + deviceId + ":" + bucket);
-            
-            if (riskRepo.existsByTenantIdAndOrgIdAndDeviceIdAndTypeAndDedupKey(tenantId, orgId, deviceId, "R2_MASS_DELETE_RENAME", dedupKey)) {
-                 return;
-            }
-
-            RiskEvent risk = new RiskEvent();
-            risk.setId(UUID.randomUUID());
-            risk.setTenantId(tenantId);
-            risk.setOrgId(orgId);
-            risk.setDeviceId(deviceId);
-            risk.setSeverity("HIGH");
-            risk.setType("R2_MASS_DELETE_RENAME");
-            risk.setWindowStartMs(windowStart);
-            risk.setWindowEndMs(windowEndTsMs);
-            risk.setDedupKey(dedupKey);
-            risk.setStatus("OPEN");
-            risk.setCreatedAt(LocalDateTime.now());
-
-            Map<String, Object> evidence = new HashMap<>();
-            evidence.put("rule", "R2_MASS_DELETE_RENAME");
-            evidence.put("count", count);
-            evidence.put("threshold", 30);
-            
-            try {
-                risk.setEvidenceJson(objectMapper.writeValueAsString(evidence));
-            } catch (Exception e) {
-                log.error("Failed to serialize evidence", e);
-            }
-
-            riskRepo.save(risk);
-        }
+    private void saveRisk(RiskEvent risk) {
+        riskRepo.save(risk);
+        LocalDate day = Instant.ofEpochMilli(risk.getWindowEndMs()).atOffset(ZoneOffset.UTC).toLocalDate();
+        rollupAccumulator.addRisk(risk.getTenantId(), risk.getOrgId(), risk.getDeviceId(), day, risk.getType());
     }
 
     private String sha256(String input) {
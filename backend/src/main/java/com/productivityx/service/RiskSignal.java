@@ -0,0 +1,45 @@
+package com.productivityx.service;
+
+import com.productivityx.model.telemetry.FileEvent;
+import com.productivityx.model.telemetry.UsbEvent;
+
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * One ingested event as the risk rules see it. {@code detail} is a short attribute worth quoting in
+ * evidence (the drive letter of a USB insert); {@code bytes} is the size of the file, 0 when unknown.
+ */
+public record RiskSignal(Type type, long tsMs, UUID id, boolean external, String detail, long bytes) {
+
+    public enum Type {
+        USB_INSERT, USB_REMOVE,
+        FILE_CREATE, FILE_MODIFY, FILE_COPY, FILE_DELETE, FILE_RENAME, FILE_OTHER
+    }
+
+    /** Null when the event carries no time. */
+    public static RiskSignal of(FileEvent file) {
+        if (file.getTsMs() == null) return null;
+        Type type = switch (file.getOperation() == null ? "" : file.getOperation().toUpperCase(Locale.ROOT)) {
+            case "CREATE" -> Type.FILE_CREATE;
+            case "MODIFY" -> Type.FILE_MODIFY;
+            case "COPY" -> Type.FILE_COPY;
+            case "DELETE" -> Type.FILE_DELETE;
+            case "RENAME" -> Type.FILE_RENAME;
+            default -> Type.FILE_OTHER;
+        };
+        boolean external = Boolean.TRUE.equals(file.getIsExternal()) || Boolean.TRUE.equals(file.getIsUsb());
+        long bytes = file.getSizeBytes() == null ? 0 : Math.max(0, file.getSizeBytes());
+        return new RiskSignal(type, file.getTsMs(), file.getId(), external, null, bytes);
+    }
+
+    /** Null when the event carries no time or an unknown action. */
+    public static RiskSignal of(UsbEvent usb) {
+        if (usb.getTsMs() == null) return null;
+        Type type;
+        if ("INSERT".equals(usb.getAction())) type = Type.USB_INSERT;
+        else if ("REMOVE".equals(usb.getAction())) type = Type.USB_REMOVE;
+        else return null;
+        return new RiskSignal(type, usb.getTsMs(), usb.getId(), true, usb.getDriveLetter(), 0);
+    }
+}
@@ -0,0 +1,138 @@
+package com.productivityx.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates the sliding-window risk rules in memory, instead of querying {@code usb_events} and
+ * {@code file_events} after every batch. Each device keeps, per rule, the few events that rule's
+ * window still needs. Which rules apply, and to which event types, comes from the compiled
+ * {@link RiskRuleIndex}, so an event only visits the rules that can react to it.
+ * <p>
+ * Windows run on event time ({@code ts_ms}), so late and replayed uploads are judged by when things
+ * happened. Signals arrive through {@link RiskOutboxDispatcher}; a redelivered outbox row is
+ * recognised by its id and not counted twice.
+ * <p>
+ * State is per node and lost on restart or eviction, which at worst misses a rule spanning the
+ * restart. Fired risks are still deduplicated by their {@code dedup_key} in the database.
+ */
+@Component
+public class RiskWindowEngine {
+
+    /** Outbox ids remembered per device to recognise redelivery. */
+    private static final int APPLIED_IDS = 256;
+
+    private final RiskRuleService ruleService;
+    private final Cache<String, DeviceWindow> windows;
+    private final int maxEventsPerDevice;
+
+    public RiskWindowEngine(RiskRuleService ruleService,
+                            MeterRegistry meterRegistry,
+                            @Value("${productivityx.risk.max-devices:200000}") long maxDevices,
+                            @Value("${productivityx.risk.idle-expiry-minutes:30}") long idleExpiryMinutes,
+                            @Value("${productivityx.risk.max-events-per-device:1024}") int maxEventsPerDevice) {
+        this.ruleService = ruleService;
+        this.maxEventsPerDevice = maxEventsPerDevice;
+        this.windows = CacheBuilder.newBuilder()
+                .maximumSize(maxDevices)
+                .expireAfterAccess(idleExpiryMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, windows, "risk.window");
+    }
+
+    /** Whether any rule of the scope reacts to {@code type}; other events need not be queued at all. */
+    public boolean wants(UUID tenantId, UUID orgId, RiskSignal.Type type) {
+        return !ruleService.index().rulesFor(tenantId, orgId, type).isEmpty();
+    }
+
+    /**
+     * Feeds one outbox row's signals to the device's windows.
+     *
+     * @param sourceId the outbox row id; a row applied before is ignored
+     * @return the rules that fired, for the caller to record
+     */
+    public List<CompiledRiskRule.Firing> apply(UUID tenantId, UUID orgId, String deviceId, long sourceId, List<RiskSignal> signals) {
+        if (signals.isEmpty()) return List.of();
+        List<RiskSignal> sorted = new ArrayList<>(signals);
+        sorted.sort(Comparator.comparingLong(RiskSignal::tsMs));
+
+        RiskRuleIndex index = ruleService.index();
+        List<CompiledRiskRule.Firing> firings = new ArrayList<>();
+        DeviceWindow window;
+        try {
+            window = windows.get(deviceId, DeviceWindow::new);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Risk window unavailable for device " + deviceId, e);
+        }
+        synchronized (window) {
+            if (!window.markApplied(sourceId)) return List.of();
+            window.useIndex(index);
+            for (RiskSignal signal : sorted) {
+                window.observe(signal.tsMs());
+                for (CompiledRiskRule rule : index.rulesFor(tenantId, orgId, signal.type())) {
+                    firings.addAll(rule.evaluate(window.state(rule), signal));
+                }
+            }
+            window.prune(maxEventsPerDevice);
+        }
+        return firings;
+    }
+
+    /** Per-rule state of one device. Guarded by its own monitor. */
+    static class DeviceWindow {
+        /** Keyed by rule instance: a recompiled rule starts from fresh state. */
+        private final Map<CompiledRiskRule, CompiledRiskRule.State> states = new HashMap<>();
+        private final LinkedHashSet<Long> applied = new LinkedHashSet<>();
+        private RiskRuleIndex index;
+        private long latestTsMs = Long.MIN_VALUE;
+
+        private DeviceWindow() {
+        }
+
+        /** False if {@code sourceId} was applied before. */
+        boolean markApplied(long sourceId) {
+            if (!applied.add(sourceId)) return false;
+            if (applied.size() > APPLIED_IDS) {
+                Iterator<Long> oldest = applied.iterator();
+                oldest.next();
+                oldest.remove();
+            }
+            return true;
+        }
+
+        /** Drops the state of rules that a reload removed or replaced. */
+        void useIndex(RiskRuleIndex current) {
+            if (current == index) return;
+            index = current;
+            states.keySet().removeIf(rule -> !current.contains(rule));
+        }
+
+        void observe(long tsMs) {
+            latestTsMs = Math.max(latestTsMs, tsMs);
+        }
+
+        CompiledRiskRule.State state(CompiledRiskRule rule) {
+            return states.computeIfAbsent(rule, CompiledRiskRule::newState);
+        }
+
+        void prune(int maxEvents) {
+            states.values().removeIf(state -> state.prune(latestTsMs, maxEvents));
+        }
+    }
+}
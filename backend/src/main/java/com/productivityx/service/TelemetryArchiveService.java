@@ -0,0 +1,380 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.productivityx.model.RetentionPolicy;
+import com.productivityx.model.telemetry.TelemetryArchive;
+import com.productivityx.repository.RetentionPolicyRepository;
+import com.productivityx.repository.telemetry.RawTelemetryRepository;
+import com.productivityx.repository.telemetry.TelemetryArchiveRepository;
+import com.productivityx.repository.telemetry.TelemetryPartition;
+import com.productivityx.repository.telemetry.TelemetryPartitionRepository;
+import com.productivityx.util.ColumnarFile;
+import jakarta.annotation.PostConstruct;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Moves aged raw telemetry out of PostgreSQL. Once a partition is older than the longest hot period
+ * of any tenant ({@code retention_policy.hot_days}, default {@code hot-days}), each tenant's rows
+ * are written to {@code <archive-dir>/<table>/<partition>/<tenantId>.pxc} ({@link ColumnarFile})
+ * next to a {@code manifest.json}, and the partition is dropped. Archived files are deleted once a
+ * tenant's {@code archive_days} have passed.
+ * <p>
+ * {@code telemetry_archive} rows are written in the transaction that drops the partition, so a row
+ * is read either from PostgreSQL or from a file, never both. Rows that arrive after their range was
+ * dropped land in {@code <table>_default}, which is never archived; they stay in PostgreSQL and
+ * {@link #readEvents} merges them with the archived rows of that range.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TelemetryArchiveService {
+
+    private static final Pattern DATED_PARTITION = Pattern.compile("_p(\\d{8})$");
+    private static final DateTimeFormatter PARTITION_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final LocalDateTime LEGACY_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final TelemetryPartitionRepository partitionRepository;
+    private final RawTelemetryRepository rawRepository;
+    private final TelemetryArchiveRepository archiveRepository;
+    private final RetentionPolicyRepository policyRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+
+    @Value("${productivityx.retention.enabled:false}")
+    private boolean enabled;
+
+    @Value("${productivityx.retention.hot-days:90}")
+    private int hotDays;
+
+    @Value("${productivityx.retention.archive-dir:./data/archive}")
+    private String archiveDir;
+
+    @Value("${productivityx.retention.row-group-size:65536}")
+    private int rowGroupSize;
+
+    @Value("${productivityx.retention.compression-level:9}")
+    private int compressionLevel;
+
+    private TransactionTemplate txTemplate;
+
+    @PostConstruct
+    public void start() {
+        txTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${productivityx.retention.cron:0 30 2 * * *}")
+    public synchronized void runRetention() {
+        if (!enabled) return;
+        archiveAgedPartitions();
+        expireArchives();
+    }
+
+    /** The tenant's policy, or the defaults if it has none. */
+    public RetentionPolicy getPolicy(UUID tenantId) {
+        return policyRepository.findById(tenantId).orElseGet(() -> {
+            RetentionPolicy policy = new RetentionPolicy();
+            policy.setTenantId(tenantId);
+            policy.setHotDays(hotDays);
+            return policy;
+        });
+    }
+
+    public RetentionPolicy savePolicy(UUID tenantId, Integer hotDays, Integer archiveDays) {
+        if (hotDays == null || hotDays < 1 || (archiveDays != null && archiveDays < 1)) {
+            throw new IllegalArgumentException("hotDays must be positive, archiveDays positive or absent");
+        }
+        RetentionPolicy policy = new RetentionPolicy();
+        policy.setTenantId(tenantId);
+        policy.setHotDays(hotDays);
+        policy.setArchiveDays(archiveDays);
+        return policyRepository.save(policy);
+    }
+
+    void archiveAgedPartitions() {
+        Integer longestHotDays = policyRepository.findMaxHotDays();
+        int keepDays = Math.max(hotDays, longestHotDays != null ? longestHotDays : 0);
+        LocalDateTime dropBefore = LocalDate.now(ZoneOffset.UTC).minusDays(keepDays).atStartOfDay();
+
+        for (TelemetryPartition table : partitionRepository.findAll()) {
+            for (PartitionRange range : ranges(table)) {
+                if (range.getEnd().isAfter(dropBefore)) break;
+                try {
+                    archivePartition(table, range);
+                } catch (RuntimeException | IOException e) {
+                    // Later partitions wait, so archives stay contiguous; the next run retries.
+                    log.error("Archiving partition {} failed", range.getName(), e);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void archivePartition(TelemetryPartition table, PartitionRange range) throws IOException {
+        Path dir = root().resolve(table.getTableName()).resolve(range.getName());
+        Files.createDirectories(dir);
+
+        List<TelemetryArchive> archives = new ArrayList<>();
+        for (UUID tenantId : rawRepository.findTenants(range.getName())) {
+            archives.add(exportTenant(table, range, tenantId, dir));
+        }
+        long exported = archives.stream().mapToLong(TelemetryArchive::getRowCount).sum();
+
+        txTemplate.executeWithoutResult(status -> {
+            // Writes that reached the partition after the export would be lost with it
+            long current = partitionRepository.lockAndCount(range.getName());
+            if (current != exported) {
+                throw new IllegalStateException("Partition " + range.getName() + " changed during export: "
+                        + exported + " rows exported, " + current + " present");
+            }
+            archiveRepository.deleteAll(archiveRepository.findByTableNameAndPartitionName(table.getTableName(), range.getName()));
+            archiveRepository.flush();
+            archiveRepository.saveAll(archives);
+            partitionRepository.dropPartition(table.getTableName(), range.getName());
+        });
+        writeManifest(table.getTableName(), range.getName());
+        log.info("Archived partition {} ({} rows, {} tenants) and dropped it", range.getName(), exported, archives.size());
+    }
+
+    private TelemetryArchive exportTenant(TelemetryPartition table, PartitionRange range, UUID tenantId, Path dir) throws IOException {
+        Path file = dir.resolve(tenantId + ".pxc");
+        Path tmp = dir.resolve(tenantId + ".pxc.tmp");
+        HashingOutputStream out = new HashingOutputStream(Hashing.sha256(), Files.newOutputStream(tmp));
+        ColumnarFile.Writer[] writer = new ColumnarFile.Writer[1];
+        try {
+            // The cursor only streams inside a transaction
+            txTemplate.executeWithoutResult(status -> rawRepository.streamPartition(range.getName(), tenantId,
+                    new RawTelemetryRepository.RowSink() {
+                        @Override
+                        public void columns(List<ColumnarFile.Column> columns) throws IOException {
+                            writer[0] = new ColumnarFile.Writer(out, columns, rowGroupSize, compressionLevel,
+                                    table.getPartitionColumn());
+                        }
+
+                        @Override
+                        public void row(Object[] values) throws IOException {
+                            writer[0].write(values);
+                        }
+                    }));
+        } finally {
+            // Closing the writer adds the footer and closes the file
+            if (writer[0] != null) writer[0].close();
+            else out.close();
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        TelemetryArchive archive = new TelemetryArchive();
+        archive.setTenantId(tenantId);
+        archive.setTableName(table.getTableName());
+        archive.setPartitionName(range.getName());
+        archive.setRangeStart(range.getStart());
+        archive.setRangeEnd(range.getEnd());
+        archive.setFilePath(root().relativize(file).toString());
+        archive.setRowCount(writer[0].getRows());
+        archive.setSizeBytes(Files.size(file));
+        archive.setSha256(out.hash().toString());
+        return archive;
+    }
+
+    void expireArchives() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        for (RetentionPolicy policy : policyRepository.findByArchiveDaysIsNotNull()) {
+            LocalDateTime cutoff = today.minusDays(policy.getArchiveDays()).atStartOfDay();
+            for (TelemetryArchive archive : archiveRepository.findByTenantIdAndRangeEndLessThanEqual(policy.getTenantId(), cutoff)) {
+                try {
+                    Files.deleteIfExists(root().resolve(archive.getFilePath()));
+                    archiveRepository.delete(archive);
+                    writeManifest(archive.getTableName(), archive.getPartitionName());
+                } catch (IOException e) {
+                    log.error("Deleting expired archive {} failed", archive.getFilePath(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * The tenant's rows of a raw telemetry table in [{@code from}, {@code to}), oldest first, from
+     * archived files and PostgreSQL alike.
+     *
+     * @throws IllegalArgumentException for a table that is not partitioned telemetry
+     */
+    public List<Map<String, Object>> readEvents(UUID tenantId, String tableName, String deviceId,
+                                                LocalDateTime from, LocalDateTime to, int limit) {
+        TelemetryPartition table = partitionRepository.findAll().stream()
+                .filter(t -> t.getTableName().equals(tableName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown telemetry table: " + tableName));
+
+        List<Map<String, Object>> archived = new ArrayList<>();
+        for (TelemetryArchive archive : archiveRepository
+                .findByTenantIdAndTableNameAndRangeStartLessThanAndRangeEndGreaterThanOrderByRangeStartAsc(tenantId, tableName, to, from)) {
+            if (archived.size() >= limit) break;
+            archived.addAll(readArchive(table, archive, deviceId, from, to, limit - archived.size()));
+        }
+        // Late rows of archived ranges sit in the default partition, so PostgreSQL rows can precede archived ones
+        List<Map<String, Object>> live = rawRepository.findRows(table, tenantId, deviceId, from, to, limit);
+        return merge(archived, live, table.getPartitionColumn(), limit);
+    }
+
+    /** The first {@code limit} rows of two lists that are each ordered by {@code timeColumn}. */
+    private static List<Map<String, Object>> merge(List<Map<String, Object>> a, List<Map<String, Object>> b,
+                                                   String timeColumn, int limit) {
+        List<Map<String, Object>> rows = new ArrayList<>(Math.min(limit, a.size() + b.size()));
+        int i = 0;
+        int j = 0;
+        while (rows.size() < limit && (i < a.size() || j < b.size())) {
+            boolean takeA = j >= b.size() || (i < a.size()
+                    && ColumnarFile.rangeValue(a.get(i).get(timeColumn)) <= ColumnarFile.rangeValue(b.get(j).get(timeColumn)));
+            rows.add(takeA ? a.get(i++) : b.get(j++));
+        }
+        return rows;
+    }
+
+    /**
+     * The earliest {@code limit} matching rows of one archive, oldest first. Rows are kept in a heap
+     * of at most {@code limit} entries, and row groups whose time bounds lie outside [{@code from},
+     * {@code to}), or after the latest row kept once the heap is full, are not decoded.
+     */
+    private List<Map<String, Object>> readArchive(TelemetryPartition table, TelemetryArchive archive, String deviceId,
+                                                  LocalDateTime from, LocalDateTime to, int limit) {
+        long fromMs = from.toInstant(ZoneOffset.UTC).toEpochMilli();
+        long toMs = to.toInstant(ZoneOffset.UTC).toEpochMilli();
+        Comparator<TimedRow> byTime = Comparator.comparingLong(TimedRow::time);
+        PriorityQueue<TimedRow> earliest = new PriorityQueue<>(byTime.reversed());
+        try (ColumnarFile.Reader reader = new ColumnarFile.Reader(root().resolve(archive.getFilePath()))) {
+            List<ColumnarFile.Column> columns = reader.getColumns();
+            int timeColumn = indexOf(columns, table.getPartitionColumn());
+            int deviceColumn = indexOf(columns, "device_id");
+            if (timeColumn < 0) throw new IOException("Archive has no column " + table.getPartitionColumn());
+            boolean bounded = table.getPartitionColumn().equals(reader.getRangeColumn());
+            for (ColumnarFile.RowGroup group : reader.getRowGroups()) {
+                long until = earliest.size() == limit ? Math.min(toMs, earliest.peek().time()) : toMs;
+                if (bounded && !group.overlaps(fromMs, until)) continue;
+                reader.read(group, values -> {
+                    if (values[timeColumn] == null) return;
+                    long time = ColumnarFile.rangeValue(values[timeColumn]);
+                    if (time < fromMs || time >= toMs) return;
+                    if (deviceId != null && (deviceColumn < 0 || !deviceId.equals(values[deviceColumn]))) return;
+                    if (earliest.size() == limit) {
+                        if (time >= earliest.peek().time()) return;
+                        earliest.poll();
+                    }
+                    earliest.add(new TimedRow(time, RawTelemetryRepository.toMap(columns, values)));
+                });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read archive " + archive.getFilePath(), e);
+        }
+        List<TimedRow> kept = new ArrayList<>(earliest);
+        kept.sort(byTime);
+        return kept.stream().map(TimedRow::row).toList();
+    }
+
+    private static int indexOf(List<ColumnarFile.Column> columns, String name) {
+        for (int c = 0; c < columns.size(); c++) {
+            if (columns.get(c).getName().equals(name)) return c;
+        }
+        return -1;
+    }
+
+    private record TimedRow(long time, Map<String, Object> row) {
+    }
+
+    /**
+     * Droppable partitions of the table, oldest first. The default partition is never archived: it has no range,
+     * and rows of dropped ranges in it are read from PostgreSQL alongside the archives.
+     */
+    private List<PartitionRange> ranges(TelemetryPartition table) {
+        List<PartitionRange> dated = new ArrayList<>();
+        boolean hasLegacy = false;
+        for (String name : partitionRepository.findPartitionNames(table.getTableName())) {
+            Matcher m = DATED_PARTITION.matcher(name);
+            if (m.find()) {
+                LocalDateTime start = LocalDate.parse(m.group(1), PARTITION_DATE).atStartOfDay();
+                dated.add(new PartitionRange(name, start, table.next(start)));
+            } else if (name.equals(table.getTableName() + "_legacy")) {
+                hasLegacy = true;
+            }
+        }
+        dated.sort(Comparator.comparing(PartitionRange::getStart));
+
+        List<PartitionRange> ranges = new ArrayList<>();
+        if (hasLegacy) {
+            // The legacy partition ends where the first dated one starts
+            LocalDateTime end = dated.isEmpty() ? table.getCoveredUntil() : dated.get(0).getStart();
+            ranges.add(new PartitionRange(table.getTableName() + "_legacy", LEGACY_START, end));
+        }
+        ranges.addAll(dated);
+        return ranges;
+    }
+
+    private void writeManifest(String tableName, String partitionName) throws IOException {
+        Path dir = root().resolve(tableName).resolve(partitionName);
+        List<TelemetryArchive> archives = archiveRepository.findByTableNameAndPartitionName(tableName, partitionName);
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("format", ColumnarFile.FORMAT);
+        manifest.put("table", tableName);
+        manifest.put("partition", partitionName);
+        List<Map<String, Object>> files = new ArrayList<>();
+        for (TelemetryArchive archive : archives) {
+            manifest.putIfAbsent("rangeStart", archive.getRangeStart().toString());
+            manifest.putIfAbsent("rangeEnd", archive.getRangeEnd().toString());
+            Map<String, Object> file = new LinkedHashMap<>();
+            file.put("tenantId", archive.getTenantId());
+            file.put("file", dir.relativize(root().resolve(archive.getFilePath())).toString());
+            file.put("rows", archive.getRowCount());
+            file.put("bytes", archive.getSizeBytes());
+            file.put("sha256", archive.getSha256());
+            files.add(file);
+        }
+        manifest.put("files", files);
+
+        Path tmp = dir.resolve("manifest.json.tmp");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), manifest);
+        Files.move(tmp, dir.resolve("manifest.json"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path root() {
+        return Paths.get(archiveDir).toAbsolutePath().normalize();
+    }
+
+    @Data
+    private static class PartitionRange {
+        private final String name;
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+    }
+}
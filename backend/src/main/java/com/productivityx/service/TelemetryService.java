@@ -5,15 +5,16 @@ import com.productivityx.model.Device;
 import com.productivityx.model.telemetry.*;
 import com.productivityx.repository.*;
 import com.productivityx.repository.telemetry.*;
+import com.productivityx.util.IngestHelper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 @Service
@@ -28,6 +29,7 @@ public class TelemetryService {
     private final FileEventRepository fileEventRepository;
     private final BlockEventRepository blockEventRepository;
     private final DeviceHeartbeatRepository deviceHeartbeatRepository;
+    private final DevicePresenceTracker presenceTracker;
 
     @Transactional
     public IngestResponse processIngestBatch(String deviceIdStr, IngestBatchDTO batch) {
@@ -58,136 +60,118 @@ public class TelemetryService {
             hb.setIngestBatchId(batchId);
             deviceHeartbeatRepository.save(hb);
         } else {
-             // Implicit "Online" if sending events? Or just update last seen
-             device.setLastSeenAt(LocalDateTime.now());
-             device.setLastUploadAt(LocalDateTime.now());
-             device.setStatus("ONLINE"); // Infer online
-             deviceRepository.save(device);
+             // Implicit "Online" if sending events
+             presenceTracker.record(device.getDeviceId(), null, true);
         }
 
         // 2. Process Activity Buckets
-        if (batch.getActivity_buckets() != null) {
+        // Idempotency is enforced by the insert: ON CONFLICT (device, bucket_start, minutes) DO NOTHING
+        if (batch.getActivity_buckets() != null && !batch.getActivity_buckets().isEmpty()) {
+            List<ActivityBucket> buckets = new ArrayList<>(batch.getActivity_buckets().size());
             for (IngestBatchDTO.BucketPayload b : batch.getActivity_buckets()) {
-                LocalDateTime start = parseIso(b.getBucket_start());
-                // Idempotency check handled by DB Constraint (Unique device, time, minutes)
-                // We use ON CONFLICT DO NOTHING (via separate native query or try-catch if JPA)
-                // For simplicity in JPA: Check existence first or handle exception? 
-                // Best practice for bulk is usually native SQL or JDBC batch. 
-                // Given the requirement "INSERT ON CONFLICT DO NOTHING", let's try to save and check existence.
-                
-                boolean exists = activityBucketRepository.existsByDeviceIdAndBucketStartAndBucketMinutes(
-                        device.getDeviceId(), start, b.getBucket_minutes());
-                
-                if (!exists) {
-                    ActivityBucket bucket = new ActivityBucket();
-                    bucket.setId(UUID.randomUUID());
-                    bucket.setTenantId(tenantId);
-                    bucket.setOrgId(orgId);
-                    bucket.setDeviceId(device.getDeviceId());
-                    bucket.setBucketStart(start);
-                    bucket.setBucketMinutes(b.getBucket_minutes());
-                    bucket.setActiveSeconds(b.getActive_seconds());
-                    bucket.setIdleSeconds(b.getIdle_seconds());
-                    bucket.setAvgFocusScore(b.getAvg_focus_score());
-                    bucket.setIngestBatchId(batchId);
-                    activityBucketRepository.save(bucket);
-                    response.incrementProcessed("buckets");
-                } else {
-                    response.incrementRejected("buckets");
+                LocalDateTime start = IngestHelper.parseIso(b.getBucket_start());
+                if (start == null) {
+                    response.reject("buckets", null, "bucket_start", "missing or malformed timestamp: " + b.getBucket_start());
+                    continue;
                 }
+                ActivityBucket bucket = new ActivityBucket();
+                bucket.setId(UUID.randomUUID());
+                bucket.setTenantId(tenantId);
+                bucket.setOrgId(orgId);
+                bucket.setDeviceId(device.getDeviceId());
+                bucket.setBucketStart(start);
+                bucket.setBucketMinutes(b.getBucket_minutes());
+                bucket.setActiveSeconds(b.getActive_seconds());
+                bucket.setIdleSeconds(b.getIdle_seconds());
+                bucket.setAvgFocusScore(b.getAvg_focus_score());
+                bucket.setIngestBatchId(batchId);
+                buckets.add(bucket);
             }
+            response.recordInserts("buckets", buckets.size(), activityBucketRepository.saveAllIgnoreConflict(buckets));
         }
 
         // 3. Process Events (App)
-        if (batch.getApp_events() != null) {
+        if (batch.getApp_events() != null && !batch.getApp_events().isEmpty()) {
+            List<AppUsageEvent> events = new ArrayList<>(batch.getApp_events().size());
             for (IngestBatchDTO.AppPayload e : batch.getApp_events()) {
-                if (appUsageEventRepository.existsById(e.getId())) {
-                    response.incrementRejected("app_events");
+                LocalDateTime start = IngestHelper.parseIso(e.getTs_start());
+                LocalDateTime end = IngestHelper.parseIso(e.getTs_end());
+                if (!IngestMapper.validRange("app_events", e.getId(), start, e.getTs_start(), end, e.getTs_end(), response)) {
                     continue;
                 }
                 AppUsageEvent evt = new AppUsageEvent();
-                evt.setId(e.getId());
+                evt.setId(e.getId() != null ? e.getId() : UUID.randomUUID());
                 evt.setTenantId(tenantId);
                 evt.setOrgId(orgId);
                 evt.setDeviceId(device.getDeviceId());
-                evt.setTsStart(parseIso(e.getTs_start()));
-                evt.setTsEnd(parseIso(e.getTs_end()));
+                evt.setTsStart(start);
+                evt.setTsEnd(end);
                 evt.setAppName(e.getApp_name());
                 evt.setProcessName(e.getProcess_name());
                 evt.setIngestBatchId(batchId);
-                appUsageEventRepository.save(evt);
-                response.incrementProcessed("app_events");
+                events.add(evt);
             }
+            response.recordInserts("app_events", events.size(), appUsageEventRepository.saveAllIgnoreConflict(events));
         }
 
         // 4. Process Events (Web)
-        if (batch.getWeb_events() != null) {
+        if (batch.getWeb_events() != null && !batch.getWeb_events().isEmpty()) {
+            List<WebUsageEvent> events = new ArrayList<>(batch.getWeb_events().size());
             for (IngestBatchDTO.WebPayload e : batch.getWeb_events()) {
-                if (webUsageEventRepository.existsById(e.getId())) {
-                    response.incrementRejected("web_events");
+                LocalDateTime start = IngestHelper.parseIso(e.getTs_start());
+                LocalDateTime end = IngestHelper.parseIso(e.getTs_end());
+                if (!IngestMapper.validRange("web_events", e.getId(), start, e.getTs_start(), end, e.getTs_end(), response)) {
                     continue;
                 }
                 WebUsageEvent evt = new WebUsageEvent();
-                evt.setId(e.getId());
+                evt.setId(e.getId() != null ? e.getId() : UUID.randomUUID());
                 evt.setTenantId(tenantId);
                 evt.setOrgId(orgId);
                 evt.setDeviceId(device.getDeviceId());
-                evt.setTsStart(parseIso(e.getTs_start()));
-                evt.setTsEnd(parseIso(e.getTs_end()));
+                evt.setTsStart(start);
+                evt.setTsEnd(end);
                 evt.setDomain(e.getDomain());
                 evt.setIngestBatchId(batchId);
-                webUsageEventRepository.save(evt);
-                response.incrementProcessed("web_events");
+                events.add(evt);
             }
+            response.recordInserts("web_events", events.size(), webUsageEventRepository.saveAllIgnoreConflict(events));
         }
 
         // 5. Process Events (File)
-        if (batch.getFile_events() != null) {
+        if (batch.getFile_events() != null && !batch.getFile_events().isEmpty()) {
+            List<FileEvent> events = new ArrayList<>(batch.getFile_events().size());
             for (IngestBatchDTO.FilePayload e : batch.getFile_events()) {
-                if (fileEventRepository.existsById(e.getId())) {
-                    response.incrementRejected("file_events");
+                LocalDateTime ts = IngestHelper.parseIso(e.getTimestamp());
+                if (ts == null) {
+                    response.reject("file_events", e.getId(), "timestamp", "missing or malformed timestamp: " + e.getTimestamp());
                     continue;
                 }
                 FileEvent evt = new FileEvent();
-                evt.setId(e.getId());
+                evt.setId(e.getId() != null ? e.getId() : UUID.randomUUID());
                 evt.setTenantId(tenantId);
                 evt.setOrgId(orgId);
                 evt.setDeviceId(device.getDeviceId());
-                evt.setTs(parseIso(e.getTimestamp()));
+                evt.setTs(ts);
                 evt.setOperation(e.getOperation());
                 // Simple parsing for now
                 evt.setFileExt(e.getFile_name().contains(".") ? e.getFile_name().substring(e.getFile_name().lastIndexOf(".") + 1) : "");
                 evt.setSizeBytes(e.getSize_bytes());
                 evt.setIsUsb(e.is_usb());
                 evt.setIngestBatchId(batchId);
-                fileEventRepository.save(evt);
-                response.incrementProcessed("file_events");
+                events.add(evt);
             }
+            List<UUID> inserted = fileEventRepository.saveAllIgnoreConflictReturningIds(events);
+            response.recordInserts("file_events", events.size(), inserted.size());
         }
 
         return response;
     }
 
     private void updateDeviceStatus(Device device, IngestBatchDTO.HeartbeatPayload hb) {
-        device.setLastSeenAt(LocalDateTime.now());
-        device.setLastUploadAt(LocalDateTime.now());
-        device.setStatus("ONLINE"); // Heartbeat implies online
-        device.setAgentVersion(hb.getAgentVersion());
-        // device.setQueueDepth(hb.getQueueDepth()); // If we had this col on Device
-        deviceRepository.save(device);
+        // Heartbeat implies online; the tracker batches the devices row update.
+        presenceTracker.record(device.getDeviceId(), hb.getAgentVersion(), true);
     }
     
-    private LocalDateTime parseIso(String iso) {
-        if (iso == null) return LocalDateTime.now();
-        // Assuming Input is UTC ISO
-        try {
-            return LocalDateTime.ofInstant(Instant.parse(iso), ZoneId.of("UTC"));
-        } catch (Exception e) {
-            log.error("Failed to parse date: " + iso);
-            return LocalDateTime.now();
-        }
-    }
-
 
     // --- Legacy / Read Methods Support (Restored for Controller Compatibility) ---
 
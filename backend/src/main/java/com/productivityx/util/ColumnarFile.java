@@ -0,0 +1,314 @@
+package com.productivityx.util;
+
+import com.github.luben.zstd.Zstd;
+import com.google.common.io.CountingOutputStream;
+import lombok.Data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Minimal columnar file for cold telemetry archives, in the spirit of Parquet without its Hadoop
+ * dependency tree. Rows are cut into row groups; inside a group every column is encoded on its own
+ * and zstd-compressed, so similar values sit together and compress well.
+ * <pre>
+ * "PXC2" | row group* | footer | int footerLength | "PXC2"
+ * row group: per column: int rawLength, int compressedLength, compressed bytes
+ * footer:    int columnCount, (UTF name, byte type)*, int rangeColumn,
+ *            int groupCount, (long offset, int rows, long min, long max)*
+ * </pre>
+ * Each value is a presence byte followed by the value; timestamps are stored as epoch microseconds.
+ * The footer keeps the minimum and maximum of one range column per row group (timestamps as epoch
+ * millis), so readers can skip groups outside a time range; {@code rangeColumn} is -1 without one.
+ */
+public final class ColumnarFile {
+
+    public static final String FORMAT = "PXC2";
+
+    private static final byte[] MAGIC = FORMAT.getBytes(StandardCharsets.US_ASCII);
+
+    private ColumnarFile() {
+    }
+
+    /** Java value types: UUID, String, Integer, Long, Double, Boolean and Instant. */
+    public enum Type { UUID, STRING, INT, LONG, DOUBLE, BOOLEAN, TIMESTAMP }
+
+    @Data
+    public static class Column {
+        private final String name;
+        private final Type type;
+    }
+
+    /**
+     * A row group's position, row count and range column bounds; without a range column the bounds
+     * are unknown and span every value.
+     */
+    public record RowGroup(long offset, int rows, long min, long max) {
+        /** Whether the group may hold range column values in [{@code from}, {@code to}). */
+        public boolean overlaps(long from, long to) {
+            return max >= from && min < to;
+        }
+    }
+
+    /** Streams rows to {@code out}; only the current row group is held in memory. */
+    public static class Writer implements Closeable {
+        private final CountingOutputStream out;
+        private final DataOutputStream data;
+        private final List<Column> columns;
+        private final int rowGroupSize;
+        private final int level;
+        private final int rangeColumn;
+        private final ByteArrayOutputStream[] buffers;
+        private final DataOutputStream[] encoders;
+        private final List<RowGroup> groups = new ArrayList<>();
+        private int groupRows;
+        private long groupMin = Long.MAX_VALUE;
+        private long groupMax = Long.MIN_VALUE;
+        private long rows;
+
+        public Writer(OutputStream out, List<Column> columns, int rowGroupSize, int level) throws IOException {
+            this(out, columns, rowGroupSize, level, null);
+        }
+
+        /**
+         * @param rangeColumn name of a TIMESTAMP, INT or LONG column whose bounds are kept per row
+         *                    group; null for none
+         */
+        public Writer(OutputStream out, List<Column> columns, int rowGroupSize, int level, String rangeColumn) throws IOException {
+            this.out = new CountingOutputStream(out);
+            this.data = new DataOutputStream(this.out);
+            this.columns = List.copyOf(columns);
+            this.rowGroupSize = rowGroupSize;
+            this.level = level;
+            this.rangeColumn = rangeColumn == null ? -1 : indexOf(this.columns, rangeColumn);
+            this.buffers = new ByteArrayOutputStream[columns.size()];
+            this.encoders = new DataOutputStream[columns.size()];
+            for (int c = 0; c < buffers.length; c++) {
+                buffers[c] = new ByteArrayOutputStream();
+                encoders[c] = new DataOutputStream(buffers[c]);
+            }
+            data.write(MAGIC);
+        }
+
+        /** One value per column, in column order; nulls allowed. */
+        public void write(Object[] row) throws IOException {
+            for (int c = 0; c < encoders.length; c++) {
+                encode(encoders[c], columns.get(c).getType(), row[c]);
+            }
+            if (rangeColumn >= 0 && row[rangeColumn] != null) {
+                long value = rangeValue(row[rangeColumn]);
+                groupMin = Math.min(groupMin, value);
+                groupMax = Math.max(groupMax, value);
+            }
+            rows++;
+            if (++groupRows == rowGroupSize) flushGroup();
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        private void flushGroup() throws IOException {
+            if (groupRows == 0) return;
+            groups.add(rangeColumn >= 0
+                    ? new RowGroup(out.getCount(), groupRows, groupMin, groupMax)
+                    : new RowGroup(out.getCount(), groupRows, Long.MIN_VALUE, Long.MAX_VALUE));
+            for (ByteArrayOutputStream buffer : buffers) {
+                byte[] raw = buffer.toByteArray();
+                byte[] compressed = Zstd.compress(raw, level);
+                data.writeInt(raw.length);
+                data.writeInt(compressed.length);
+                data.write(compressed);
+                buffer.reset();
+            }
+            groupRows = 0;
+            groupMin = Long.MAX_VALUE;
+            groupMax = Long.MIN_VALUE;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushGroup();
+            ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+            DataOutputStream footer = new DataOutputStream(footerBytes);
+            footer.writeInt(columns.size());
+            for (Column column : columns) {
+                footer.writeUTF(column.getName());
+                footer.writeByte(column.getType().ordinal());
+            }
+            footer.writeInt(rangeColumn);
+            footer.writeInt(groups.size());
+            for (RowGroup group : groups) {
+                footer.writeLong(group.offset());
+                footer.writeInt(group.rows());
+                footer.writeLong(group.min());
+                footer.writeLong(group.max());
+            }
+            data.write(footerBytes.toByteArray());
+            data.writeInt(footerBytes.size());
+            data.write(MAGIC);
+            data.close();
+        }
+    }
+
+    public static class Reader implements Closeable {
+        private final RandomAccessFile file;
+        private final List<Column> columns = new ArrayList<>();
+        private final List<RowGroup> groups = new ArrayList<>();
+        private int rangeColumn;
+
+        public Reader(Path path) throws IOException {
+            file = new RandomAccessFile(path.toFile(), "r");
+            try {
+                long length = file.length();
+                byte[] magic = new byte[MAGIC.length];
+                file.seek(length - 4 - MAGIC.length);
+                int footerLength = file.readInt();
+                file.readFully(magic);
+                if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a columnar archive: " + path);
+
+                byte[] footerBytes = new byte[footerLength];
+                file.seek(length - 4 - MAGIC.length - footerLength);
+                file.readFully(footerBytes);
+                DataInputStream footer = new DataInputStream(new ByteArrayInputStream(footerBytes));
+                int columnCount = footer.readInt();
+                for (int c = 0; c < columnCount; c++) {
+                    columns.add(new Column(footer.readUTF(), Type.values()[footer.readByte()]));
+                }
+                rangeColumn = footer.readInt();
+                int groupCount = footer.readInt();
+                for (int g = 0; g < groupCount; g++) {
+                    groups.add(new RowGroup(footer.readLong(), footer.readInt(), footer.readLong(), footer.readLong()));
+                }
+            } catch (IOException | RuntimeException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        public List<Column> getColumns() {
+            return columns;
+        }
+
+        public long getRows() {
+            return groups.stream().mapToLong(RowGroup::rows).sum();
+        }
+
+        /** The column whose bounds {@link #getRowGroups()} carry, or null. */
+        public String getRangeColumn() {
+            return rangeColumn >= 0 ? columns.get(rangeColumn).getName() : null;
+        }
+
+        public List<RowGroup> getRowGroups() {
+            return groups;
+        }
+
+        /** Hands every row to {@code action}, values in column order. */
+        public void forEach(Consumer<Object[]> action) throws IOException {
+            for (RowGroup group : groups) {
+                read(group, action);
+            }
+        }
+
+        /** Hands every row of one group to {@code action}, values in column order. */
+        public void read(RowGroup group, Consumer<Object[]> action) throws IOException {
+            int rows = group.rows();
+            Object[][] values = new Object[columns.size()][];
+            file.seek(group.offset());
+            for (int c = 0; c < columns.size(); c++) {
+                int rawLength = file.readInt();
+                byte[] compressed = new byte[file.readInt()];
+                file.readFully(compressed);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(Zstd.decompress(compressed, rawLength)));
+                values[c] = new Object[rows];
+                for (int r = 0; r < rows; r++) {
+                    values[c][r] = decode(in, columns.get(c).getType());
+                }
+            }
+            for (int r = 0; r < rows; r++) {
+                Object[] row = new Object[columns.size()];
+                for (int c = 0; c < row.length; c++) row[c] = values[c][r];
+                action.accept(row);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    /** Range column value as a long: timestamps as epoch millis, integers as they are. */
+    public static long rangeValue(Object value) {
+        return value instanceof Instant instant ? instant.toEpochMilli() : ((Number) value).longValue();
+    }
+
+    private static int indexOf(List<Column> columns, String name) {
+        for (int c = 0; c < columns.size(); c++) {
+            Column column = columns.get(c);
+            if (!column.getName().equals(name)) continue;
+            if (column.getType() != Type.TIMESTAMP && column.getType() != Type.INT && column.getType() != Type.LONG) {
+                throw new IllegalArgumentException("Range column must be a timestamp or integer: " + name);
+            }
+            return c;
+        }
+        throw new IllegalArgumentException("Unknown range column: " + name);
+    }
+
+    private static void encode(DataOutputStream out, Type type, Object value) throws IOException {
+        if (value == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        switch (type) {
+            case UUID -> {
+                UUID uuid = (UUID) value;
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+            }
+            case STRING -> {
+                byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            case INT -> out.writeInt(((Number) value).intValue());
+            case LONG -> out.writeLong(((Number) value).longValue());
+            case DOUBLE -> out.writeDouble(((Number) value).doubleValue());
+            case BOOLEAN -> out.writeBoolean((Boolean) value);
+            case TIMESTAMP -> out.writeLong(ChronoUnit.MICROS.between(Instant.EPOCH, (Instant) value));
+        }
+    }
+
+    private static Object decode(DataInputStream in, Type type) throws IOException {
+        if (!in.readBoolean()) return null;
+        return switch (type) {
+            case UUID -> new UUID(in.readLong(), in.readLong());
+            case STRING -> {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                yield new String(bytes, StandardCharsets.UTF_8);
+            }
+            case INT -> in.readInt();
+            case LONG -> in.readLong();
+            case DOUBLE -> in.readDouble();
+            case BOOLEAN -> in.readBoolean();
+            case TIMESTAMP -> Instant.EPOCH.plus(in.readLong(), ChronoUnit.MICROS);
+        };
+    }
+}
@@ -3,8 +3,7 @@ package com.productivityx.util;
 import com.google.common.hash.Hashing;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneOffset;
 
 public class IngestHelper {
 
@@ -13,19 +12,26 @@ public class IngestHelper {
         return Hashing.sha256().hashString(input, StandardCharsets.UTF_8).toString();
     }
 
-    public static LocalDateTime parseIso(String iso) {
-        if (iso == null || iso.isBlank()) return LocalDateTime.now();
-        try {
-            // Try parsing as OffsetDateTime first (e.g. 2023-01-01T10:00:00Z)
-            return java.time.OffsetDateTime.parse(iso).toLocalDateTime();
-        } catch (Exception e1) {
-            try {
-                // Fallback to LocalDateTime (e.g. 2023-01-01T10:00:00)
-                return LocalDateTime.parse(iso);
-            } catch (Exception e2) {
-                System.err.println("Failed to parse date: " + iso);
-                return LocalDateTime.now();
-            }
+    /**
+     * Resolves an event timestamp, preferring the epoch-millisecond form sent by binary agents
+     * over the ISO string. Both end up as UTC wall-clock time.
+     *
+     * @return {@code null} if neither form is present and valid
+     */
+    public static LocalDateTime timestamp(Long epochMs, String iso) {
+        if (epochMs != null) {
+            return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMs, 1000L),
+                    (int) Math.floorMod(epochMs, 1000L) * 1_000_000, ZoneOffset.UTC);
         }
+        return parseIso(iso);
+    }
+
+    /**
+     * Parses an agent ISO-8601 timestamp ("Z", offset or no offset) to UTC wall-clock time.
+     *
+     * @return {@code null} if the value is missing or malformed; callers reject the event
+     */
+    public static LocalDateTime parseIso(String iso) {
+        return IsoTimestampParser.parseUtc(iso);
     }
 }
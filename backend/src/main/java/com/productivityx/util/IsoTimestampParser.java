@@ -0,0 +1,151 @@
+package com.productivityx.util;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Hand-rolled parser for the ISO-8601 timestamps agents send, without exceptions or intermediate
+ * objects on the hot path. Accepted forms:
+ * <pre>
+ *   yyyy-MM-ddTHH:mm[:ss[.fraction]]        (no offset, read as UTC)
+ *   yyyy-MM-ddTHH:mm[:ss[.fraction]]Z
+ *   yyyy-MM-ddTHH:mm[:ss[.fraction]]+HH:mm  (also +HHmm and +HH; normalized to UTC)
+ * </pre>
+ * A space is accepted in place of {@code T}; fractions are truncated to milliseconds. Malformed or
+ * out-of-range values yield {@link #INVALID} / {@code null} instead of an exception.
+ */
+public final class IsoTimestampParser {
+
+    /** Returned by {@link #parseEpochMillis} for malformed input. */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private IsoTimestampParser() {
+    }
+
+    /**
+     * @return the timestamp as UTC wall-clock time, or {@code null} if the value is missing or malformed
+     */
+    public static LocalDateTime parseUtc(CharSequence s) {
+        long millis = parseEpochMillis(s);
+        if (millis == INVALID) return null;
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                (int) Math.floorMod(millis, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * @return epoch milliseconds, or {@link #INVALID} if the value is missing or malformed
+     */
+    public static long parseEpochMillis(CharSequence s) {
+        if (s == null) return INVALID;
+        int len = s.length();
+        // Shortest accepted form: yyyy-MM-ddTHH:mm
+        if (len < 16) return INVALID;
+
+        int year = digits(s, 0, 4);
+        if (year < 0 || s.charAt(4) != '-') return INVALID;
+        int month = digits(s, 5, 2);
+        if (month < 1 || month > 12 || s.charAt(7) != '-') return INVALID;
+        int day = digits(s, 8, 2);
+        if (day < 1 || day > daysInMonth(year, month)) return INVALID;
+        char sep = s.charAt(10);
+        if (sep != 'T' && sep != 't' && sep != ' ') return INVALID;
+        int hour = digits(s, 11, 2);
+        if (hour < 0 || hour > 23 || s.charAt(13) != ':') return INVALID;
+        int minute = digits(s, 14, 2);
+        if (minute < 0 || minute > 59) return INVALID;
+
+        int pos = 16;
+        int second = 0;
+        int millis = 0;
+        if (pos < len && s.charAt(pos) == ':') {
+            second = digits(s, pos + 1, 2);
+            if (second < 0 || second > 59) return INVALID;
+            pos += 3;
+            if (pos < len && (s.charAt(pos) == '.' || s.charAt(pos) == ',')) {
+                pos++;
+                int fractionDigits = 0;
+                while (pos < len && isDigit(s.charAt(pos))) {
+                    if (fractionDigits < 3) millis = millis * 10 + (s.charAt(pos) - '0');
+                    fractionDigits++;
+                    pos++;
+                }
+                if (fractionDigits == 0 || fractionDigits > 9) return INVALID;
+                for (int i = fractionDigits; i < 3; i++) millis *= 10;
+            }
+        }
+
+        int offsetSeconds = 0;
+        if (pos < len) {
+            char c = s.charAt(pos);
+            if (c == 'Z' || c == 'z') {
+                pos++;
+            } else if (c == '+' || c == '-') {
+                int offHours = digits(s, pos + 1, 2);
+                if (offHours < 0 || offHours > 18) return INVALID;
+                pos += 3;
+                int offMinutes = 0;
+                if (pos < len) {
+                    if (s.charAt(pos) == ':') pos++;
+                    offMinutes = digits(s, pos, 2);
+                    if (offMinutes < 0 || offMinutes > 59) return INVALID;
+                    pos += 2;
+                }
+                offsetSeconds = (offHours * 3600 + offMinutes * 60) * (c == '-' ? -1 : 1);
+            } else {
+                return INVALID;
+            }
+        }
+        if (pos != len) return INVALID;
+
+        long epochSecond = epochDay(year, month, day) * 86_400L
+                + hour * 3600L + minute * 60L + second
+                - offsetSeconds;
+        return epochSecond * 1000L + millis;
+    }
+
+    /** Parses {@code count} ASCII digits at {@code from}, or returns -1. */
+    private static int digits(CharSequence s, int from, int count) {
+        if (from + count > s.length()) return -1;
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int daysInMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> isLeap(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    private static boolean isLeap(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /** Days since 1970-01-01 for a proleptic Gregorian date (same algorithm as {@code LocalDate.toEpochDay}). */
+    private static long epochDay(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y;
+        if (y >= 0) {
+            total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        } else {
+            total -= y / -4 - y / -100 + y / -400;
+        }
+        total += (367L * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeap(year)) total--;
+        }
+        return total - 719_528L; // days from year 0 to 1970
+    }
+}
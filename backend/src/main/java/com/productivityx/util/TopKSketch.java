@@ -0,0 +1,84 @@
+package com.productivityx.util;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weighted Space-Saving heavy-hitter sketch: tracks at most {@code capacity} keys, so memory stays
+ * bounded however many distinct apps or domains a device reports in a day. Any key whose true
+ * weight exceeds {@code total / capacity} is guaranteed to be tracked; a tracked key's weight is
+ * over-estimated by at most its {@link Item#getError() error}.
+ * <p>
+ * Thread-safe; contention is per sketch (one per device-day), so plain synchronization suffices.
+ */
+public class TopKSketch {
+
+    private static final Comparator<Item> HEAVIEST_FIRST = Comparator
+            .comparingLong(Item::getWeight).reversed()
+            .thenComparing(Item::getKey);
+
+    private final int capacity;
+    private final Map<String, long[]> counters = new HashMap<>();
+
+    public TopKSketch(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.capacity = capacity;
+    }
+
+    public synchronized void add(String key, long weight) {
+        if (key == null || weight <= 0) return;
+
+        long[] counter = counters.get(key);
+        if (counter != null) {
+            counter[0] += weight;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(key, new long[]{weight, 0});
+            return;
+        }
+
+        // Evict the lightest key; the newcomer inherits its weight as the error bound.
+        String minKey = null;
+        long[] min = null;
+        for (Map.Entry<String, long[]> e : counters.entrySet()) {
+            if (min == null || e.getValue()[0] < min[0]) {
+                minKey = e.getKey();
+                min = e.getValue();
+            }
+        }
+        counters.remove(minKey);
+        counters.put(key, new long[]{min[0] + weight, min[0]});
+    }
+
+    /** Adds every tracked key of {@code other}, e.g. to put back a snapshot that failed to persist. */
+    public void addAll(TopKSketch other) {
+        for (Item item : other.top(other.capacity)) {
+            add(item.getKey(), item.getWeight());
+        }
+    }
+
+    /** The {@code k} heaviest keys, heaviest first. */
+    public synchronized List<Item> top(int k) {
+        List<Item> items = new ArrayList<>(counters.size());
+        counters.forEach((key, c) -> items.add(new Item(key, c[0], c[1])));
+        items.sort(HEAVIEST_FIRST);
+        return items.size() > k ? new ArrayList<>(items.subList(0, k)) : items;
+    }
+
+    public synchronized boolean isEmpty() {
+        return counters.isEmpty();
+    }
+
+    @Data
+    public static class Item {
+        private final String key;
+        private final long weight;
+        private final long error;
+    }
+}
@@ -0,0 +1,96 @@
+-- V14__partition_telemetry.sql
+-- Turns the raw telemetry tables into native range partitions on their event time.
+--
+-- Existing rows are not copied: each old table is attached as one <table>_legacy partition holding
+-- everything before the cutover (the start of the next day or week). The cost is one validation scan
+-- and one primary key build per table. PartitionManager creates the later partitions ahead of time
+-- and records its progress in telemetry_partition. Rows beyond the newest partition go to
+-- <table>_default until their partition is created.
+--
+-- Unique keys of a partitioned table must contain the partition column, so primary keys become
+-- (id, <time column>) and ingest dedups on that pair. Event ids and times both come from the agent
+-- and do not change on replay. uq_activity_bucket already contains bucket_start.
+
+SET LOCAL TimeZone = 'UTC';
+
+CREATE TABLE telemetry_partition (
+    table_name VARCHAR(63) PRIMARY KEY,
+    partition_column VARCHAR(63) NOT NULL,
+    epoch_millis BOOLEAN NOT NULL DEFAULT FALSE, -- partition column is epoch ms (BIGINT) rather than TIMESTAMPTZ
+    period VARCHAR(10) NOT NULL CHECK (period IN ('DAY', 'WEEK')),
+    covered_until TIMESTAMPTZ NOT NULL, -- partitions exist for every value below this
+    updated_at TIMESTAMPTZ DEFAULT NOW()
+);
+
+CREATE FUNCTION px_partition_table(p_table TEXT, p_column TEXT, p_period TEXT, p_epoch_millis BOOLEAN)
+RETURNS VOID AS $$
+DECLARE
+    legacy TEXT := p_table || '_legacy';
+    cutover TIMESTAMPTZ := date_trunc(lower(p_period), NOW()) + ('1 ' || lower(p_period))::INTERVAL;
+    bound TEXT;
+    pkey TEXT;
+    idx RECORD;
+    cols TEXT;
+BEGIN
+    bound := CASE WHEN p_epoch_millis
+                  THEN (EXTRACT(EPOCH FROM cutover) * 1000)::BIGINT::TEXT
+                  ELSE quote_literal(cutover) END;
+
+    EXECUTE format('ALTER TABLE %I RENAME TO %I', p_table, legacy);
+
+    -- A partition can only carry the parent's primary key; other indexes stay, renamed out of the way
+    SELECT conname INTO pkey FROM pg_constraint WHERE conrelid = legacy::regclass AND contype = 'p';
+    EXECUTE format('ALTER TABLE %I DROP CONSTRAINT %I', legacy, pkey);
+    FOR idx IN SELECT c.relname FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid
+               WHERE i.indrelid = legacy::regclass LOOP
+        EXECUTE format('ALTER INDEX %I RENAME TO %I', idx.relname, left(idx.relname, 56) || '_legacy');
+    END LOOP;
+
+    EXECUTE format('CREATE TABLE %I (LIKE %I INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING GENERATED INCLUDING STORAGE) '
+                   'PARTITION BY RANGE (%I)', p_table, legacy, p_column);
+    EXECUTE format('ALTER TABLE %I ADD PRIMARY KEY (id, %I)', p_table, p_column);
+    EXECUTE format('CREATE TABLE %I PARTITION OF %I DEFAULT', p_table || '_default', p_table);
+
+    -- Rows stamped after the cutover (agent clock skew) move to the default partition
+    SELECT string_agg(quote_ident(attname), ', ' ORDER BY attnum) INTO cols
+      FROM pg_attribute
+     WHERE attrelid = legacy::regclass AND attnum > 0 AND NOT attisdropped AND attgenerated = '';
+    EXECUTE format('INSERT INTO %I (%s) SELECT %s FROM %I WHERE %I >= %s', p_table, cols, cols, legacy, p_column, bound);
+    EXECUTE format('DELETE FROM %I WHERE %I >= %s', legacy, p_column, bound);
+
+    EXECUTE format('ALTER TABLE %I ATTACH PARTITION %I FOR VALUES FROM (MINVALUE) TO (%s)', p_table, legacy, bound);
+
+    INSERT INTO telemetry_partition (table_name, partition_column, epoch_millis, period, covered_until)
+    VALUES (p_table, p_column, p_epoch_millis, p_period, cutover);
+END;
+$$ LANGUAGE plpgsql;
+
+-- High-volume tables by day, the rest by week (weeks start on Monday)
+SELECT px_partition_table('activity_buckets', 'bucket_start', 'DAY', FALSE);
+SELECT px_partition_table('app_usage_events', 'ts_start', 'DAY', FALSE);
+SELECT px_partition_table('web_usage_events', 'ts_start', 'DAY', FALSE);
+SELECT px_partition_table('file_events', 'ts', 'DAY', FALSE);
+SELECT px_partition_table('device_heartbeats', 'ts', 'DAY', FALSE);
+SELECT px_partition_table('block_events', 'ts', 'WEEK', FALSE);
+SELECT px_partition_table('usb_events', 'ts_ms', 'WEEK', TRUE);
+
+DROP FUNCTION px_partition_table(TEXT, TEXT, TEXT, BOOLEAN);
+
+-- Indexes on the partitioned parents; matching indexes of the legacy partitions are reused
+ALTER TABLE activity_buckets ADD CONSTRAINT uq_activity_bucket UNIQUE (device_id, bucket_start, bucket_minutes);
+CREATE INDEX idx_activity_tenant_time ON activity_buckets(tenant_id, bucket_start);
+
+CREATE INDEX idx_app_tenant_start ON app_usage_events(tenant_id, ts_start);
+CREATE INDEX idx_app_device_start ON app_usage_events(device_id, ts_start);
+
+CREATE INDEX idx_web_tenant_start ON web_usage_events(tenant_id, ts_start);
+
+CREATE INDEX idx_file_tenant_time ON file_events(tenant_id, ts);
+CREATE INDEX idx_file_events_external_ts ON file_events(tenant_id, org_id, device_id, is_external, ts_ms DESC);
+CREATE INDEX idx_file_events_operation_ts ON file_events(tenant_id, org_id, device_id, operation, ts_ms DESC);
+
+CREATE INDEX idx_heartbeat_device_ts ON device_heartbeats(device_id, ts DESC);
+
+CREATE INDEX idx_block_tenant_time ON block_events(tenant_id, ts);
+
+CREATE INDEX idx_usb_events_device_ts ON usb_events(tenant_id, org_id, device_id, ts_ms DESC);
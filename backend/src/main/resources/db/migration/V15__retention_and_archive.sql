@@ -0,0 +1,26 @@
+-- V15__retention_and_archive.sql
+-- Per-tenant retention of raw telemetry, and the manifest of partitions archived to columnar files.
+
+CREATE TABLE retention_policy (
+    tenant_id UUID PRIMARY KEY,
+    hot_days INT NOT NULL CHECK (hot_days > 0), -- raw telemetry stays in PostgreSQL at least this long
+    archive_days INT CHECK (archive_days > 0), -- archived files are deleted this long after their range ends; NULL keeps them
+    updated_at TIMESTAMPTZ DEFAULT NOW()
+);
+
+-- One row per tenant file of an archived partition; present only once the partition is dropped
+CREATE TABLE telemetry_archive (
+    id UUID PRIMARY KEY,
+    tenant_id UUID NOT NULL,
+    table_name VARCHAR(63) NOT NULL,
+    partition_name VARCHAR(63) NOT NULL,
+    range_start TIMESTAMPTZ NOT NULL,
+    range_end TIMESTAMPTZ NOT NULL,
+    file_path TEXT NOT NULL, -- relative to productivityx.retention.archive-dir
+    row_count BIGINT NOT NULL,
+    size_bytes BIGINT NOT NULL,
+    sha256 VARCHAR(64) NOT NULL,
+    created_at TIMESTAMPTZ DEFAULT NOW(),
+    CONSTRAINT uq_telemetry_archive UNIQUE (table_name, partition_name, tenant_id)
+);
+CREATE INDEX idx_telemetry_archive_tenant_range ON telemetry_archive(tenant_id, table_name, range_start);
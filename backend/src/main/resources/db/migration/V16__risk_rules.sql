@@ -0,0 +1,33 @@
+-- V16__risk_rules.sql
+-- Risk rules as data. Rows without tenant_id apply to every tenant; a tenant row (org_id NULL) or an
+-- org row with the same code replaces it for that scope, and enabled = FALSE switches it off there.
+-- The definition is compiled by RiskRuleService; its shape depends on kind:
+--   COUNT     {"match": {...}, "window_ms": 300000, "threshold": 30}          more than threshold matches in the window
+--   SEQUENCE  {"first": {...}, "then": {...}, "within_ms": 600000, "ordered": true}
+--   BASELINE  {"match": {...}, "window_ms": 3600000, "factor": 3.0, "min_count": 20, "alpha": 0.1, "warmup_windows": 24}
+-- A matcher is {"events": ["FILE_DELETE", ...], "external": true}; see RiskSignal.Type for event names.
+
+CREATE TABLE risk_rule (
+    id UUID PRIMARY KEY,
+    tenant_id UUID,
+    org_id UUID,
+    code VARCHAR(50) NOT NULL, -- becomes risk_event.type
+    kind VARCHAR(20) NOT NULL CHECK (kind IN ('COUNT', 'SEQUENCE', 'BASELINE')),
+    severity VARCHAR(20) NOT NULL DEFAULT 'HIGH',
+    enabled BOOLEAN NOT NULL DEFAULT TRUE,
+    definition JSONB NOT NULL,
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    CHECK (org_id IS NULL OR tenant_id IS NOT NULL)
+);
+
+CREATE UNIQUE INDEX uq_risk_rule_scope_code ON risk_rule (
+    COALESCE(tenant_id, '00000000-0000-0000-0000-000000000000'),
+    COALESCE(org_id, '00000000-0000-0000-0000-000000000000'),
+    code);
+
+-- The two rules that used to be hard-coded in RiskService
+INSERT INTO risk_rule (id, code, kind, severity, definition) VALUES
+('30000000-0000-0000-0000-000000000001', 'R1_USB_EXFIL', 'SEQUENCE', 'HIGH',
+ '{"first": {"events": ["USB_INSERT"]}, "then": {"events": ["FILE_COPY", "FILE_MODIFY"], "external": true}, "within_ms": 600000, "ordered": false}'),
+('30000000-0000-0000-0000-000000000002', 'R2_MASS_DELETE_RENAME', 'COUNT', 'HIGH',
+ '{"match": {"events": ["FILE_DELETE", "FILE_RENAME"]}, "window_ms": 300000, "threshold": 30}');
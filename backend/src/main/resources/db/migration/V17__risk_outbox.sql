@@ -0,0 +1,15 @@
+-- V17__risk_outbox.sql
+-- Risk-relevant events written by the ingest transaction and consumed by RiskOutboxDispatcher.
+-- One row per device and ingest chunk; signals is a compact JSON array of
+-- [type, ts_ms, event_id, external, detail, bytes] entries. Rows are deleted once evaluated;
+-- workers scan by primary key and keep the rows of their share of devices (hash of device_id).
+
+CREATE TABLE risk_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    tenant_id UUID NOT NULL,
+    org_id UUID NOT NULL,
+    device_id VARCHAR(255) NOT NULL,
+    signals JSONB NOT NULL,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+
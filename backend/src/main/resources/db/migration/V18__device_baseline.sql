@@ -0,0 +1,14 @@
+-- V18__device_baseline.sql
+-- Checkpoints of DeviceBaselineTracker: per device, the hour-of-week EWMA mean/variance of file
+-- operations, bytes written to external media and USB inserts, plus the hour being filled.
+-- state is the tracker's own binary format (about 5 KB); rows are upserted every checkpoint interval
+-- and read back when a device is first seen by a node.
+
+CREATE TABLE device_baseline (
+    tenant_id UUID NOT NULL,
+    device_id VARCHAR(255) NOT NULL,
+    org_id UUID NOT NULL,
+    state BYTEA NOT NULL,
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (tenant_id, device_id)
+);
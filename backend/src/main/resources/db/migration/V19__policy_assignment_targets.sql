@@ -0,0 +1,27 @@
+-- V19__policy_assignment_targets.sql
+-- Policy assignments can target a device group, an org or a whole tenant as well as a single device.
+-- A device gets the active assignment with the highest priority among its own, its group's, its
+-- org's and its tenant's; ties go to the most specific target. Existing rows are DEVICE targets.
+
+ALTER TABLE policy_assignment ADD COLUMN target_type VARCHAR(10) NOT NULL DEFAULT 'DEVICE';
+ALTER TABLE policy_assignment ADD COLUMN group_id UUID;
+ALTER TABLE policy_assignment ALTER COLUMN device_id DROP NOT NULL;
+ALTER TABLE policy_assignment ALTER COLUMN org_id DROP NOT NULL;
+
+ALTER TABLE policy_assignment ADD CONSTRAINT chk_policy_assignment_target CHECK (
+    (target_type = 'DEVICE' AND device_id IS NOT NULL AND org_id IS NOT NULL AND group_id IS NULL)
+    OR (target_type = 'GROUP' AND group_id IS NOT NULL AND device_id IS NULL)
+    OR (target_type = 'ORG' AND org_id IS NOT NULL AND device_id IS NULL AND group_id IS NULL)
+    OR (target_type = 'TENANT' AND org_id IS NULL AND device_id IS NULL AND group_id IS NULL)
+);
+
+-- One active assignment per target (DEVICE targets keep idx_policy_assignment_unique_active)
+CREATE UNIQUE INDEX idx_policy_assignment_active_group
+    ON policy_assignment(tenant_id, group_id) WHERE active = true AND target_type = 'GROUP';
+CREATE UNIQUE INDEX idx_policy_assignment_active_org
+    ON policy_assignment(tenant_id, org_id) WHERE active = true AND target_type = 'ORG';
+CREATE UNIQUE INDEX idx_policy_assignment_active_tenant
+    ON policy_assignment(tenant_id) WHERE active = true AND target_type = 'TENANT';
+
+-- Nodes poll for assignments changed elsewhere
+CREATE INDEX idx_policy_assignment_updated_at ON policy_assignment(updated_at);
@@ -0,0 +1,4 @@
+-- V20__policy_snapshot_etag_index.sql
+-- Delta snapshots look up the version an agent holds by the ETag it sends.
+
+CREATE INDEX idx_policy_snapshot_policy_etag ON policy_snapshot(policy_id, etag);
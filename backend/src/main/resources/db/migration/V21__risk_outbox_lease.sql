@@ -0,0 +1,10 @@
+-- V21__risk_outbox_lease.sql
+-- One owner per RiskOutboxDispatcher share (hash of device_id mod workers) across all nodes, so a
+-- device's outbox rows are always evaluated by the node holding its windows and baselines.
+-- The owner renews the lease with every claim; another node takes the share over once it expires.
+
+CREATE TABLE risk_outbox_lease (
+    share INT PRIMARY KEY,
+    owner VARCHAR(64) NOT NULL,
+    expires_at TIMESTAMPTZ NOT NULL
+);
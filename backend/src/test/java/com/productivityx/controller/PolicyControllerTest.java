@@ -0,0 +1,86 @@
+package com.productivityx.controller;
+
+import com.productivityx.service.PolicyAckAggregator;
+import com.productivityx.service.PolicyService;
+import com.productivityx.service.PolicySnapshotDeltas;
+import com.productivityx.service.PolicySnapshotIndex;
+import com.productivityx.service.PolicySnapshotWatcher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PolicyControllerTest {
+
+    @Mock private PolicyService policyService;
+    @Mock private PolicySnapshotWatcher snapshotWatcher;
+    @Mock private PolicySnapshotDeltas snapshotDeltas;
+    @Mock private PolicyAckAggregator ackAggregator;
+
+    private PolicyController controller;
+    private final PolicySnapshotIndex.Snapshot snapshot = new PolicySnapshotIndex.Snapshot(UUID.randomUUID(), 2, "v2",
+            "{}".getBytes(StandardCharsets.UTF_8), null);
+
+    @BeforeEach
+    void setUp() {
+        controller = new PolicyController(policyService, snapshotWatcher, snapshotDeltas, ackAggregator);
+    }
+
+    @Test
+    void acceptsGzip_HonoursQValues() {
+        assertTrue(PolicyController.acceptsGzip("gzip"));
+        assertTrue(PolicyController.acceptsGzip("br, gzip;q=0.5"));
+        assertTrue(PolicyController.acceptsGzip("*"));
+        assertFalse(PolicyController.acceptsGzip(null));
+        assertFalse(PolicyController.acceptsGzip("gzip;q=0"));
+        assertFalse(PolicyController.acceptsGzip("*;q=0"));
+        assertFalse(PolicyController.acceptsGzip("gzip;q=0, *"));
+        assertFalse(PolicyController.acceptsGzip("identity"));
+    }
+
+    @Test
+    void acceptsPatch_RequiresTheExplicitMediaType() {
+        assertTrue(PolicyController.acceptsPatch("application/json-patch+json, application/json;q=0.5"));
+        assertFalse(PolicyController.acceptsPatch(null));
+        assertFalse(PolicyController.acceptsPatch("application/json-patch+json;q=0"));
+        assertFalse(PolicyController.acceptsPatch("*/*"));
+        assertFalse(PolicyController.acceptsPatch("application/*"));
+        assertFalse(PolicyController.acceptsPatch("not a media type"));
+    }
+
+    @Test
+    void getSnapshot_DeltaIsNotCacheable() {
+        PolicySnapshotDeltas.Delta delta = new PolicySnapshotDeltas.Delta(snapshot.policyId(), 1, 2, "v2",
+                "[]".getBytes(StandardCharsets.UTF_8), null);
+        when(policyService.getSnapshotForDevice("dev-1")).thenReturn(Optional.of(snapshot));
+        when(snapshotDeltas.find(snapshot, "\"v1\"")).thenReturn(Optional.of(delta));
+
+        ResponseEntity<byte[]> response = controller.getSnapshot("dev-1", "\"v1\"", PolicyController.JSON_PATCH, null);
+
+        assertEquals(PolicyController.JSON_PATCH, response.getHeaders().getContentType().toString());
+        assertEquals("no-store, private", response.getHeaders().getCacheControl());
+    }
+
+    @Test
+    void getSnapshot_FullBodyIsCacheable() {
+        when(policyService.getSnapshotForDevice("dev-1")).thenReturn(Optional.of(snapshot));
+
+        ResponseEntity<byte[]> response = controller.getSnapshot("dev-1", null, null, "gzip");
+
+        assertEquals("max-age=60", response.getHeaders().getCacheControl());
+        assertFalse(response.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING));
+    }
+}
@@ -0,0 +1,69 @@
+package com.productivityx.service;
+
+import com.productivityx.dto.ingest.IngestBatchDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncIngestPipelineTest {
+
+    @Mock private IngestService ingestService;
+    @Mock private IngestSpool spool;
+    @Mock private PlatformTransactionManager transactionManager;
+
+    private final IngestSpool.Ticket ticket = mock(IngestSpool.Ticket.class);
+    private AsyncIngestPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new AsyncIngestPipeline(ingestService, spool, transactionManager, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(pipeline, "enabled", true);
+        ReflectionTestUtils.setField(pipeline, "partitions", 1);
+        ReflectionTestUtils.setField(pipeline, "queueCapacity", 10);
+        ReflectionTestUtils.setField(pipeline, "groupSize", 1);
+        when(spool.isEnabled()).thenReturn(true);
+        when(spool.append(any(), eq("dev-1"), any())).thenReturn(ticket);
+        pipeline.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pipeline.stop();
+    }
+
+    @Test
+    void transientFailure_IsRetriedAndKeptInTheSpoolUntilCommitted() {
+        when(ingestService.processBatch(eq("dev-1"), any()))
+                .thenThrow(new TransientDataAccessResourceException("database restarting"))
+                .thenThrow(new TransientDataAccessResourceException("database restarting"))
+                .thenReturn(new IngestResponse());
+
+        assertTrue(pipeline.submit("dev-1", new IngestBatchDTO()).isPresent());
+
+        verify(spool, timeout(5000)).markCommitted(ticket);
+        verify(ingestService, times(3)).processBatch(eq("dev-1"), any());
+    }
+
+    @Test
+    void invalidBatch_IsDroppedAndReleased() {
+        when(ingestService.processBatch(eq("dev-1"), any())).thenThrow(new IllegalArgumentException("bad batch"));
+
+        assertTrue(pipeline.submit("dev-1", new IngestBatchDTO()).isPresent());
+
+        verify(spool, timeout(5000)).markCommitted(ticket);
+        verify(ingestService, times(2)).processBatch(eq("dev-1"), any());
+    }
+}
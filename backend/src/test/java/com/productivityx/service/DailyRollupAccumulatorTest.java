@@ -0,0 +1,140 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.repository.telemetry.DailyDeviceSummaryRepository;
+import com.productivityx.repository.telemetry.DailyDeviceTotals;
+import com.productivityx.repository.telemetry.DailyOrgSummaryRepository;
+import com.productivityx.repository.telemetry.DailyOrgTotals;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DailyRollupAccumulatorTest {
+
+    @Mock private DailyDeviceSummaryRepository summaryRepository;
+    @Mock private DailyOrgSummaryRepository orgSummaryRepository;
+    @Mock private PlatformTransactionManager transactionManager;
+
+    private DailyRollupAccumulator accumulator;
+    private final UUID tenantId = UUID.randomUUID();
+    private final UUID orgId = UUID.randomUUID();
+    private final LocalDate day = LocalDate.of(2023, 1, 1);
+
+    @BeforeEach
+    void setUp() {
+        accumulator = new DailyRollupAccumulator(summaryRepository, orgSummaryRepository, transactionManager, new SimpleMeterRegistry(), new ObjectMapper());
+        ReflectionTestUtils.setField(accumulator, "sketchCapacity", 64);
+        accumulator.start();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_SumsBatchesPerDeviceDayInKeyOrder() {
+        accumulator.add(target("dev-b"), Map.of(day, totals(100, 10)));
+        accumulator.add(target("dev-a"), Map.of(day, totals(300, 0)));
+        accumulator.add(target("dev-a"), Map.of(day, totals(200, 50), day.plusDays(1), totals(60, 0)));
+
+        accumulator.flush();
+
+        ArgumentCaptor<List<DailyDeviceTotals>> captor = ArgumentCaptor.forClass(List.class);
+        verify(summaryRepository, times(1)).addTotals(captor.capture());
+        List<DailyDeviceTotals> written = captor.getValue();
+        assertEquals(3, written.size());
+        assertEquals("dev-a", written.get(0).getDeviceId());
+        assertEquals(day, written.get(0).getDate());
+        assertEquals(500, written.get(0).getActiveSeconds());
+        assertEquals(50, written.get(0).getIdleSeconds());
+        assertEquals(day.plusDays(1), written.get(1).getDate());
+        assertEquals("dev-b", written.get(2).getDeviceId());
+
+        // Deltas were handed over; nothing left to add
+        accumulator.flush();
+        verifyNoMoreInteractions(summaryRepository);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_WritesTopAppsAndRiskCounters() {
+        IngestMapper.DailyTotals first = totals(0, 0);
+        first.getAppSeconds().put("Teams", 120L);
+        first.getAppSeconds().put("IDEA", 600L);
+        IngestMapper.DailyTotals second = totals(0, 0);
+        second.getAppSeconds().put("Teams", 900L);
+        second.getDomainSeconds().put("github.com", 30L);
+        accumulator.add(target("dev-a"), Map.of(day, first));
+        accumulator.add(target("dev-a"), Map.of(day, second));
+        accumulator.addRisk(tenantId, orgId, "dev-a", day, "R1_USB_EXFIL");
+        accumulator.addRisk(tenantId, orgId, "dev-a", day, "R1_USB_EXFIL");
+
+        accumulator.flush();
+
+        ArgumentCaptor<List<DailyDeviceTotals>> captor = ArgumentCaptor.forClass(List.class);
+        verify(summaryRepository).addTotals(captor.capture());
+        DailyDeviceTotals written = captor.getValue().get(0);
+        assertEquals("[{\"name\":\"Teams\",\"durationSeconds\":1020},{\"name\":\"IDEA\",\"durationSeconds\":600}]", written.getTopApps());
+        assertEquals("[{\"name\":\"github.com\",\"durationSeconds\":30}]", written.getTopDomains());
+        assertEquals("{\"R1_USB_EXFIL\":2}", written.getRiskCounters());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_RollsDeviceDeltasUpPerOrgDay() {
+        accumulator.add(target("dev-a"), Map.of(day, totals(300, 20)));
+        accumulator.add(target("dev-b"), Map.of(day, totals(100, 10)));
+        // dev-b already had a row for the day; only dev-a becomes a new active device
+        when(summaryRepository.addTotals(any())).thenAnswer(inv -> ((List<DailyDeviceTotals>) inv.getArgument(0)).subList(0, 1));
+
+        accumulator.flush();
+
+        ArgumentCaptor<List<DailyOrgTotals>> captor = ArgumentCaptor.forClass(List.class);
+        verify(orgSummaryRepository).addTotals(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        DailyOrgTotals org = captor.getValue().get(0);
+        assertEquals(orgId, org.getOrgId());
+        assertEquals(400, org.getActiveSeconds());
+        assertEquals(30, org.getIdleSeconds());
+        assertEquals(1, org.getNewDevices());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_KeepsDeltasOnFailure() {
+        accumulator.add(target("dev-a"), Map.of(day, totals(100, 0)));
+        when(summaryRepository.addTotals(any())).thenThrow(new RuntimeException("db down")).thenReturn(List.of());
+
+        accumulator.flush();
+        accumulator.add(target("dev-a"), Map.of(day, totals(50, 0)));
+        accumulator.flush();
+
+        ArgumentCaptor<List<DailyDeviceTotals>> captor = ArgumentCaptor.forClass(List.class);
+        verify(summaryRepository, times(2)).addTotals(captor.capture());
+        assertEquals(150, captor.getAllValues().get(1).get(0).getActiveSeconds());
+    }
+
+    private IngestMapper.Target target(String deviceId) {
+        return new IngestMapper.Target(deviceId, tenantId, orgId, UUID.randomUUID());
+    }
+
+    private static IngestMapper.DailyTotals totals(long active, long idle) {
+        IngestMapper.DailyTotals totals = new IngestMapper.DailyTotals();
+        totals.setActiveSeconds(active);
+        totals.setIdleSeconds(idle);
+        return totals;
+    }
+}
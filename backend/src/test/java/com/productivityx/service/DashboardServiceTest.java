@@ -0,0 +1,102 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.dto.dashboard.DashboardDataDTO;
+import com.productivityx.model.telemetry.DailyOrgSummary;
+import com.productivityx.repository.DeviceRepository;
+import com.productivityx.repository.OrganizationRepository;
+import com.productivityx.repository.telemetry.DailyOrgSummaryRepository;
+import com.productivityx.repository.telemetry.RiskEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DashboardServiceTest {
+
+    @Mock private DailyOrgSummaryRepository orgSummaryRepository;
+    @Mock private RiskEventRepository riskEventRepository;
+    @Mock private DeviceRepository deviceRepository;
+    @Mock private OrganizationRepository organizationRepository;
+
+    private DashboardService service;
+    private final UUID tenantId = UUID.randomUUID();
+    private final UUID orgId = UUID.randomUUID();
+    private final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+
+    @BeforeEach
+    void setUp() {
+        service = new DashboardService(orgSummaryRepository, riskEventRepository, deviceRepository, organizationRepository,
+                new ObjectMapper(), new SimpleMeterRegistry(), 30, 300, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void getDashboardData_BuildsKpisFromOrgSummaries() {
+        when(orgSummaryRepository.findByTenantIdAndDateBetweenOrderByDateAscOrgIdAsc(tenantId, today.minusDays(1), today))
+                .thenReturn(List.of(
+                        row(today.minusDays(1), 3600, 0, 1, "{}"),
+                        row(today, 7200, 800, 2, "{\"R1_USB_EXFIL\":3}")));
+        when(deviceRepository.countByOrgStatusAndAck(tenantId)).thenReturn(List.of(
+                new Object[]{orgId, "ONLINE", "APPLIED", 2L},
+                new Object[]{orgId, "OFFLINE", "PENDING", 2L}));
+
+        DashboardDataDTO data = service.getDashboardData(tenantId, "TODAY", "ORG", null);
+
+        assertEquals("2/4", data.getKpis().getOnlineDevices().getValue());
+        assertEquals("1h 0m", data.getKpis().getActiveMinutes().getValue()); // 7200s over 2 devices
+        assertEquals(0, data.getKpis().getActiveMinutes().getTrend().getValue()); // same as yesterday's 1h
+        assertEquals("10%", data.getKpis().getIdleRatio().getValue());
+        assertEquals(3L, data.getKpis().getRiskAlerts().getValue());
+        assertEquals("50%", data.getKpis().getPolicyCompliance().getValue());
+        assertEquals("50%", data.getKpis().getDataHealth().getValue());
+        assertEquals(1, data.getRiskBreakdown().size());
+        assertEquals("R1_USB_EXFIL", data.getDepartments().get(0).getTopRiskType());
+    }
+
+    @Test
+    void getDashboardData_ServesRepeatedRequestsFromSnapshot() {
+        service.getDashboardData(tenantId, "7D", "ORG", "root");
+        service.getDashboardData(tenantId, "7d", "org", null);
+
+        verify(orgSummaryRepository, times(1)).findByTenantIdAndDateBetweenOrderByDateAscOrgIdAsc(eq(tenantId), any(), any());
+        verify(deviceRepository, times(1)).countByOrgStatusAndAck(tenantId);
+    }
+
+    @Test
+    void getDashboardData_RejectsUnknownRangeAndScope() {
+        assertThrows(IllegalArgumentException.class, () -> service.getDashboardData(tenantId, "1Y", "ORG", null));
+        assertThrows(IllegalArgumentException.class, () -> service.getDashboardData(tenantId, "TODAY", "GROUP", null));
+        assertThrows(IllegalArgumentException.class, () -> service.getDashboardData(tenantId, "TODAY", "ORG", "not-a-uuid"));
+    }
+
+    private DailyOrgSummary row(LocalDate date, long active, long idle, int devices, String risks) {
+        DailyOrgSummary row = new DailyOrgSummary();
+        row.setTenantId(tenantId);
+        row.setOrgId(orgId);
+        row.setDate(date);
+        row.setTotalActiveSeconds(active);
+        row.setTotalIdleSeconds(idle);
+        row.setActiveDevicesCount(devices);
+        row.setRiskCounters(risks);
+        return row;
+    }
+}
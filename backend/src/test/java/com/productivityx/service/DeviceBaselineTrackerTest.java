@@ -0,0 +1,112 @@
+package com.productivityx.service;
+
+import com.productivityx.repository.telemetry.DeviceBaselineCheckpoint;
+import com.productivityx.repository.telemetry.DeviceBaselineRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeviceBaselineTrackerTest {
+
+    private static final long WEEK_MS = 7 * 24 * DeviceBaseline.HOUR_MS;
+
+    @Mock private DeviceBaselineRepository baselineRepository;
+
+    private DeviceBaselineTracker tracker;
+    private final UUID tenantId = UUID.randomUUID();
+    private final UUID orgId = UUID.randomUUID();
+    /** Monday 09:10 UTC. */
+    private final long monday = LocalDateTime.of(2024, 1, 1, 9, 10).toInstant(ZoneOffset.UTC).toEpochMilli();
+    private long outboxId;
+
+    @BeforeEach
+    void setUp() {
+        tracker = newTracker();
+    }
+
+    @Test
+    void usbInsertsWellAboveHourOfWeekBaseline_AreReportedOncePerHour() {
+        for (int week = 0; week < 3; week++) {
+            assertTrue(feedUsb(tracker, monday + week * WEEK_MS, 1).isEmpty());
+        }
+
+        List<DeviceBaselineTracker.Anomaly> anomalies = feedUsb(tracker, monday + 3 * WEEK_MS, 6);
+        assertTrue(feedUsb(tracker, monday + 3 * WEEK_MS + 60_000, 2).isEmpty());
+
+        assertEquals(1, anomalies.size());
+        DeviceBaselineTracker.Anomaly anomaly = anomalies.get(0);
+        assertEquals("ANOMALY_USB_INSERTS", anomaly.code());
+        assertEquals(6, anomaly.value());
+        assertEquals(1.0, anomaly.mean(), 1e-6);
+        assertEquals(3, anomaly.samples());
+        assertEquals(9, anomaly.evidence().get("hour_of_week"));
+    }
+
+    @Test
+    void spikeBeforeWarmup_IsNotReported() {
+        feedUsb(tracker, monday, 1);
+        assertTrue(feedUsb(tracker, monday + WEEK_MS, 10).isEmpty());
+    }
+
+    @Test
+    void redeliveredRowAndLateSignals_AreNotCounted() {
+        for (int week = 0; week < 3; week++) feedUsb(tracker, monday + week * WEEK_MS, 1);
+        List<RiskSignal> inserts = usb(monday + 3 * WEEK_MS, 2);
+
+        tracker.apply(tenantId, orgId, "dev-1", 42, inserts);
+        // The same row again, and inserts from an hour already closed, must not reach the minimum of 3
+        assertTrue(tracker.apply(tenantId, orgId, "dev-1", 42, inserts).isEmpty());
+        assertTrue(feedUsb(tracker, monday + 2 * WEEK_MS, 5).isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void checkpoint_WritesChangedBaselinesAndRestoresThem() {
+        for (int week = 0; week < 3; week++) feedUsb(tracker, monday + week * WEEK_MS, 1);
+
+        tracker.checkpoint();
+        tracker.checkpoint(); // nothing changed since
+
+        ArgumentCaptor<List<DeviceBaselineCheckpoint>> captor = ArgumentCaptor.forClass(List.class);
+        verify(baselineRepository, times(1)).saveAll(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        DeviceBaselineCheckpoint checkpoint = captor.getValue().get(0);
+        assertEquals("dev-1", checkpoint.getDeviceId());
+
+        // A fresh node picks up the history and scores the spike straight away
+        when(baselineRepository.find(tenantId, "dev-1")).thenReturn(checkpoint.getState());
+        DeviceBaselineTracker restarted = newTracker();
+        assertEquals(1, feedUsb(restarted, monday + 3 * WEEK_MS, 6).size());
+    }
+
+    private DeviceBaselineTracker newTracker() {
+        return new DeviceBaselineTracker(baselineRepository, new SimpleMeterRegistry(),
+                true, 0.2, 3, 4.0, 200, 100L << 20, 3, 1000);
+    }
+
+    private List<DeviceBaselineTracker.Anomaly> feedUsb(DeviceBaselineTracker target, long tsMs, int inserts) {
+        return target.apply(tenantId, orgId, "dev-1", ++outboxId, usb(tsMs, inserts));
+    }
+
+    private static List<RiskSignal> usb(long tsMs, int inserts) {
+        List<RiskSignal> signals = new ArrayList<>();
+        for (int i = 0; i < inserts; i++) {
+            signals.add(new RiskSignal(RiskSignal.Type.USB_INSERT, tsMs + i, UUID.randomUUID(), true, "E:", 0));
+        }
+        return signals;
+    }
+}
@@ -0,0 +1,82 @@
+package com.productivityx.service;
+
+import com.productivityx.repository.DevicePresence;
+import com.productivityx.repository.DeviceRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DevicePresenceTrackerTest {
+
+    @Mock private DeviceRepository deviceRepository;
+
+    private DevicePresenceTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new DevicePresenceTracker(deviceRepository, new SimpleMeterRegistry());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_CoalescesCheckInsPerDevice() {
+        tracker.record("dev-b", null, false);
+        tracker.record("dev-a", "1.0", true);
+        tracker.record("dev-a", null, false);
+
+        tracker.flush();
+
+        ArgumentCaptor<List<DevicePresence>> captor = ArgumentCaptor.forClass(List.class);
+        verify(deviceRepository, times(1)).updatePresence(captor.capture());
+        List<DevicePresence> written = captor.getValue();
+        assertEquals(2, written.size());
+        assertEquals("dev-a", written.get(0).getDeviceId());
+        assertEquals("1.0", written.get(0).getAgentVersion());
+        assertNotNull(written.get(0).getLastUploadAt());
+        assertNull(written.get(1).getLastUploadAt());
+
+        // Nothing pending any more
+        tracker.flush();
+        verifyNoMoreInteractions(deviceRepository);
+    }
+
+    @Test
+    void flush_RequeuesOnFailure() {
+        tracker.record("dev-a", "1.0", false);
+        when(deviceRepository.updatePresence(any())).thenThrow(new RuntimeException("db down")).thenReturn(1);
+
+        tracker.flush();
+        tracker.flush();
+
+        verify(deviceRepository, times(2)).updatePresence(any());
+    }
+
+    @Test
+    void record_InsideTransactionCountsOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            tracker.record("dev-a", null, false);
+            tracker.flush();
+            verifyNoInteractions(deviceRepository); // not committed yet
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        tracker.flush();
+        verify(deviceRepository, times(1)).updatePresence(any());
+    }
+}
@@ -0,0 +1,60 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.dto.ingest.IngestBatchDTO;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IngestBatchStreamReaderTest {
+
+    private final IngestBatchStreamReader reader = new IngestBatchStreamReader(new ObjectMapper(), 2);
+
+    @Test
+    void read_DispatchesSectionsInBoundedChunks() {
+        String json = "{\"schemaVersion\":\"1\"," +
+                "\"heartbeat\":{\"status\":\"OK\",\"agentVersion\":\"2.1\"}," +
+                "\"app_events\":[{\"app_name\":\"a\"},{\"app_name\":\"b\"},{\"app_name\":\"c\"}]," +
+                "\"unknown\":{\"nested\":[1,2,3]}," +
+                "\"web_events\":null," +
+                "\"usb_events\":[{\"action\":\"INSERT\",\"ts_ms\":1}]}";
+
+        RecordingHandler handler = new RecordingHandler();
+        reader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), handler);
+
+        assertEquals("2.1", handler.heartbeat.getAgentVersion());
+        assertEquals(List.of(2, 1), handler.appChunkSizes);
+        assertEquals("c", handler.lastApp.getApp_name());
+        assertEquals(1, handler.usbCount);
+    }
+
+    @Test
+    void read_RejectsNonObjectBody() {
+        assertThrows(IllegalArgumentException.class, () ->
+                reader.read(new ByteArrayInputStream("[1,2]".getBytes(StandardCharsets.UTF_8)), new RecordingHandler()));
+        assertThrows(IllegalArgumentException.class, () ->
+                reader.read(new ByteArrayInputStream("{\"app_events\":[{\"app_name\":".getBytes(StandardCharsets.UTF_8)), new RecordingHandler()));
+    }
+
+    private static class RecordingHandler implements IngestBatchStreamReader.SectionHandler {
+        IngestBatchDTO.HeartbeatPayload heartbeat;
+        List<Integer> appChunkSizes = new ArrayList<>();
+        IngestBatchDTO.AppPayload lastApp;
+        int usbCount;
+
+        @Override public void onHeartbeat(IngestBatchDTO.HeartbeatPayload heartbeat) { this.heartbeat = heartbeat; }
+        @Override public void onBuckets(List<IngestBatchDTO.BucketPayload> chunk) { }
+        @Override public void onAppEvents(List<IngestBatchDTO.AppPayload> chunk) {
+            appChunkSizes.add(chunk.size());
+            lastApp = chunk.get(chunk.size() - 1);
+        }
+        @Override public void onWebEvents(List<IngestBatchDTO.WebPayload> chunk) { fail("null section must be skipped"); }
+        @Override public void onFileEvents(List<IngestBatchDTO.FilePayload> chunk) { }
+        @Override public void onUsbEvents(List<IngestBatchDTO.UsbPayload> chunk) { usbCount += chunk.size(); }
+    }
+}
@@ -1,9 +1,7 @@
 package com.productivityx.service;
 
 import com.productivityx.dto.ingest.IngestBatchDTO;
-import com.productivityx.model.Device;
-import com.productivityx.model.telemetry.AppUsageEvent;
-import com.productivityx.repository.DeviceRepository;
+import com.productivityx.model.telemetry.ActivityBucket;
 import com.productivityx.repository.telemetry.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,46 +11,46 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.LocalDate;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class IngestServiceTest {
 
-    @Mock private DeviceRepository deviceRepository;
+    @Mock private DeviceContextCache deviceContextCache;
+    @Mock private DevicePresenceTracker presenceTracker;
     @Mock private ActivityBucketRepository bucketRepo;
     @Mock private AppUsageEventRepository appRepo;
     @Mock private WebUsageEventRepository webRepo;
     @Mock private FileEventRepository fileRepo;
     @Mock private DeviceHeartbeatRepository heartbeatRepo;
-    @Mock private DailyDeviceSummaryRepository dailySummaryRepo;
+    @Mock private DailyRollupAccumulator rollupAccumulator;
+    @Mock private RiskOutboxDispatcher riskOutbox;
 
     @InjectMocks
     private IngestService ingestService;
 
-    private Device device;
+    private DeviceContext device;
     private final String DEVICE_ID = "dev-test-1";
 
     @BeforeEach
     void setUp() {
-        device = new Device();
-        device.setDeviceId(DEVICE_ID);
-        device.setTenantId(UUID.randomUUID());
-        device.setOrgId(UUID.randomUUID());
+        device = new DeviceContext(DEVICE_ID, UUID.randomUUID(), UUID.randomUUID(), null);
     }
 
     @Test
     void processBatch_ShouldProcessAppEvents() {
         // Arrange
-        when(deviceRepository.findById(DEVICE_ID)).thenReturn(Optional.of(device));
+        when(deviceContextCache.find(DEVICE_ID)).thenReturn(Optional.of(device));
         
         IngestBatchDTO batch = new IngestBatchDTO();
         IngestBatchDTO.AppPayload appEvent = new IngestBatchDTO.AppPayload();
@@ -62,47 +60,113 @@ class IngestServiceTest {
         appEvent.setTs_end("2023-01-01T10:05:00Z");
         batch.setApp_events(List.of(appEvent));
 
-        // Mock filtering: No existing events
-        when(appRepo.findAllById(any())).thenReturn(Collections.emptyList());
+        // Bulk insert: row is new
+        when(appRepo.saveAllIgnoreConflictReturningIds(any())).thenReturn(List.of(appEvent.getId()));
 
         // Act
         IngestResponse response = ingestService.processBatch(DEVICE_ID, batch);
 
         // Assert
         assertEquals(1, response.getProcessed().get("app_events"));
-        verify(appRepo, times(1)).saveAll(any());
-        verify(dailySummaryRepo, times(0)).upsertStats(any(), any(), anyString(), any(), any(), any(), any(), any(), any()); // No buckets
+        verify(appRepo, times(1)).saveAllIgnoreConflictReturningIds(any());
+        // No buckets, but the app's usage seconds feed the daily top apps
+        verify(rollupAccumulator).add(any(), argThat(totals -> totals.get(LocalDate.of(2023, 1, 1)).getAppSeconds().get("TestApp") == 300L));
     }
 
     @Test
     void processBatch_ShouldFilterDuplicates() {
         // Arrange
-        when(deviceRepository.findById(DEVICE_ID)).thenReturn(Optional.of(device));
+        when(deviceContextCache.find(DEVICE_ID)).thenReturn(Optional.of(device));
         
         UUID eventId = UUID.randomUUID();
         IngestBatchDTO batch = new IngestBatchDTO();
         IngestBatchDTO.AppPayload appEvent = new IngestBatchDTO.AppPayload();
         appEvent.setId(eventId);
+        appEvent.setApp_name("TestApp");
+        appEvent.setTs_start("2023-01-01T10:00:00Z");
+        appEvent.setTs_end("2023-01-01T10:05:00Z");
         batch.setApp_events(List.of(appEvent));
 
-        // Mock filtering: Event exists
-        AppUsageEvent existing = new AppUsageEvent();
-        existing.setId(eventId);
-        when(appRepo.findAllById(any())).thenReturn(List.of(existing));
+        // Bulk insert: ON CONFLICT (id, ts_start) DO NOTHING skipped the row
+        when(appRepo.saveAllIgnoreConflictReturningIds(any())).thenReturn(List.of());
 
         // Act
         IngestResponse response = ingestService.processBatch(DEVICE_ID, batch);
 
         // Assert
         assertEquals(1, response.getRejected().get("app_events"));
+        assertNull(response.getProcessed().get("app_events"));
         verify(appRepo, times(0)).saveAll(any());
+        // The skipped row's usage was counted when it was first inserted
+        verify(rollupAccumulator).add(any(), argThat(Map::isEmpty));
+    }
+
+    @Test
+    void processBatch_ShouldCountFileEventsFromReturnedIds() {
+        // Arrange
+        when(deviceContextCache.find(DEVICE_ID)).thenReturn(Optional.of(device));
+
+        IngestBatchDTO batch = new IngestBatchDTO();
+        IngestBatchDTO.FilePayload fresh = new IngestBatchDTO.FilePayload();
+        fresh.setId(UUID.randomUUID());
+        fresh.setFile_name("report.docx");
+        fresh.setTimestamp("2023-01-01T10:00:00Z");
+        fresh.setOperation("CREATE");
+        IngestBatchDTO.FilePayload replayed = new IngestBatchDTO.FilePayload();
+        replayed.setId(UUID.randomUUID());
+        replayed.setFile_name("notes.txt");
+        replayed.setTimestamp("2023-01-01T10:01:00+02:00");
+        replayed.setOperation("MODIFY");
+        batch.setFile_events(List.of(fresh, replayed));
+
+        // Only the first row survives ON CONFLICT (id, ts) DO NOTHING
+        when(fileRepo.saveAllIgnoreConflictReturningIds(any())).thenReturn(List.of(fresh.getId()));
+
+        // Act
+        IngestResponse response = ingestService.processBatch(DEVICE_ID, batch);
+
+        // Assert
+        assertEquals(1, response.getProcessed().get("file_events"));
+        assertEquals(1, response.getRejected().get("file_events"));
+        verify(fileRepo, never()).findAllById(any());
+        verify(riskOutbox).onFileEvents(any(), argThat(events -> events.size() == 1 && events.get(0).getId().equals(fresh.getId())));
+    }
+
+    @Test
+    void processBatch_ShouldRejectMalformedTimestamps() {
+        // Arrange
+        when(deviceContextCache.find(DEVICE_ID)).thenReturn(Optional.of(device));
+
+        IngestBatchDTO batch = new IngestBatchDTO();
+        IngestBatchDTO.AppPayload good = new IngestBatchDTO.AppPayload();
+        good.setId(UUID.randomUUID());
+        good.setTs_start("2023-01-01T10:00:00");
+        good.setTs_end("2023-01-01T10:05:00");
+        IngestBatchDTO.AppPayload bad = new IngestBatchDTO.AppPayload();
+        bad.setId(UUID.randomUUID());
+        bad.setTs_start("01/01/2023 10:00");
+        bad.setTs_end("2023-01-01T10:05:00Z");
+        batch.setApp_events(List.of(good, bad));
+
+        when(appRepo.saveAllIgnoreConflictReturningIds(any())).thenReturn(List.of(good.getId()));
+
+        // Act
+        IngestResponse response = ingestService.processBatch(DEVICE_ID, batch);
+
+        // Assert: the malformed event is reported, not stored with a made-up timestamp
+        assertEquals(1, response.getProcessed().get("app_events"));
+        assertEquals(1, response.getRejected().get("app_events"));
+        assertEquals(1, response.getRejections().size());
+        assertEquals(bad.getId().toString(), response.getRejections().get(0).getId());
+        assertEquals("ts_start", response.getRejections().get(0).getField());
+        verify(appRepo).saveAllIgnoreConflictReturningIds(argThat(list -> list.size() == 1));
     }
 
     @Test
     void processBatch_ShouldProcessBucketsAndCallBatchInsert() {
         // Arrange
-        when(deviceRepository.findById(DEVICE_ID)).thenReturn(Optional.of(device));
-        when(bucketRepo.saveAllIgnoreConflict(any())).thenReturn(1);
+        when(deviceContextCache.find(DEVICE_ID)).thenReturn(Optional.of(device));
+        when(bucketRepo.saveAllIgnoreConflictReturningIds(any())).thenAnswer(inv -> ids(inv.getArgument(0)));
         
         IngestBatchDTO batch = new IngestBatchDTO();
         IngestBatchDTO.BucketPayload bucket = new IngestBatchDTO.BucketPayload();
@@ -116,7 +180,39 @@ class IngestServiceTest {
         IngestResponse response = ingestService.processBatch(DEVICE_ID, batch);
 
         // Assert
-        verify(bucketRepo, times(1)).saveAllIgnoreConflict(any());
+        verify(bucketRepo, times(1)).saveAllIgnoreConflictReturningIds(any());
         assertEquals(1, response.getProcessed().get("buckets"));
+        verify(rollupAccumulator).add(any(), argThat(totals -> totals.get(LocalDate.of(2023, 1, 1)).getActiveSeconds() == 300));
+    }
+
+    @Test
+    void processBatch_ReplayedBucketsLeaveTotalsUnchanged() {
+        // Arrange
+        when(deviceContextCache.find(DEVICE_ID)).thenReturn(Optional.of(device));
+        // First upload inserts the bucket, the replay is skipped by ON CONFLICT
+        when(bucketRepo.saveAllIgnoreConflictReturningIds(any()))
+                .thenAnswer(inv -> ids(inv.getArgument(0)))
+                .thenReturn(List.of());
+
+        IngestBatchDTO batch = new IngestBatchDTO();
+        IngestBatchDTO.BucketPayload bucket = new IngestBatchDTO.BucketPayload();
+        bucket.setBucket_start("2023-01-01T10:00:00Z");
+        bucket.setBucket_minutes(5);
+        bucket.setActive_seconds(300);
+        bucket.setIdle_seconds(0);
+        batch.setActivity_buckets(List.of(bucket));
+
+        // Act
+        ingestService.processBatch(DEVICE_ID, batch);
+        IngestResponse replay = ingestService.processBatch(DEVICE_ID, batch);
+
+        // Assert
+        assertEquals(1, replay.getRejected().get("buckets"));
+        verify(rollupAccumulator).add(any(), argThat(totals -> !totals.isEmpty()));
+        verify(rollupAccumulator).add(any(), argThat(Map::isEmpty));
+    }
+
+    private static List<UUID> ids(List<ActivityBucket> buckets) {
+        return buckets.stream().map(ActivityBucket::getId).toList();
     }
 }
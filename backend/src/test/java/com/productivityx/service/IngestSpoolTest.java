@@ -0,0 +1,77 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.dto.ingest.IngestBatchDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IngestSpoolTest {
+
+    @Mock private IngestService ingestService;
+
+    @TempDir Path dir;
+
+    @Test
+    void restart_ReplaysOnlyUncommittedBatches() throws Exception {
+        IngestSpool spool = newSpool();
+        spool.start();
+        IngestSpool.Ticket committed = spool.append(UUID.randomUUID(), "dev-1", new IngestBatchDTO());
+        spool.append(UUID.randomUUID(), "dev-2", new IngestBatchDTO());
+        spool.markCommitted(committed);
+        spool.stop();
+
+        IngestSpool restarted = newSpool();
+        restarted.start();
+        restarted.stop();
+
+        verify(ingestService, times(1)).processBatch(eq("dev-2"), any());
+        verifyNoMoreInteractions(ingestService);
+        assertEquals(0, files());
+    }
+
+    @Test
+    void cleanStop_DeletesFullyCommittedSegment() throws Exception {
+        IngestSpool spool = newSpool();
+        spool.start();
+        spool.markCommitted(spool.append(UUID.randomUUID(), "dev-1", new IngestBatchDTO()));
+        spool.stop();
+
+        IngestSpool restarted = newSpool();
+        restarted.start();
+        restarted.stop();
+
+        verifyNoInteractions(ingestService);
+        assertEquals(0, files());
+    }
+
+    private IngestSpool newSpool() {
+        IngestSpool spool = new IngestSpool(ingestService, new ObjectMapper());
+        ReflectionTestUtils.setField(spool, "enabled", true);
+        ReflectionTestUtils.setField(spool, "dir", dir.toString());
+        ReflectionTestUtils.setField(spool, "segmentBytes", 1L << 20);
+        ReflectionTestUtils.setField(spool, "fsyncIntervalMs", 0L);
+        ReflectionTestUtils.setField(spool, "fsyncBatchSize", 1);
+        return spool;
+    }
+
+    private long files() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
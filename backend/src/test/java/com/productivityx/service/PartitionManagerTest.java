@@ -0,0 +1,59 @@
+package com.productivityx.service;
+
+import com.productivityx.repository.telemetry.TelemetryPartition;
+import com.productivityx.repository.telemetry.TelemetryPartitionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PartitionManagerTest {
+
+    @Mock private TelemetryPartitionRepository partitionRepository;
+    @Mock private PlatformTransactionManager transactionManager;
+
+    @InjectMocks private PartitionManager partitionManager;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(partitionManager, "premakeDays", 7);
+    }
+
+    @Test
+    void start_CreatesConsecutivePartitionsUpToPremakeHorizon() {
+        LocalDateTime today = LocalDate.now(ZoneOffset.UTC).atStartOfDay();
+        AtomicReference<LocalDateTime> coveredUntil = new AtomicReference<>(today.minusDays(2));
+        when(partitionRepository.findAll()).thenReturn(List.of(partition(coveredUntil.get())));
+        when(partitionRepository.lock("file_events")).thenAnswer(inv -> Optional.of(partition(coveredUntil.get())));
+        doAnswer(inv -> {
+            coveredUntil.set(inv.getArgument(1));
+            return null;
+        }).when(partitionRepository).setCoveredUntil(eq("file_events"), any());
+
+        partitionManager.start();
+
+        // Two missed days, today, and seven days ahead
+        verify(partitionRepository, times(10)).createPartition(any(), any(), any());
+        verify(partitionRepository).createPartition(any(), eq(today.minusDays(2)), eq(today.minusDays(1)));
+        verify(partitionRepository).createPartition(any(), eq(today.plusDays(7)), eq(today.plusDays(8)));
+    }
+
+    private static TelemetryPartition partition(LocalDateTime coveredUntil) {
+        return new TelemetryPartition("file_events", "ts", false, "DAY", coveredUntil);
+    }
+}
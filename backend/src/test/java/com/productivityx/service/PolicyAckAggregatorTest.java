@@ -0,0 +1,119 @@
+package com.productivityx.service;
+
+import com.productivityx.model.policy.DevicePolicyAck;
+import com.productivityx.repository.DevicePolicyAckRepository;
+import com.productivityx.repository.DevicePolicyStatus;
+import com.productivityx.repository.DeviceRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PolicyAckAggregatorTest {
+
+    @Mock private DevicePolicyAckRepository ackRepository;
+    @Mock private DeviceRepository deviceRepository;
+
+    private PolicyAckAggregator aggregator;
+    private final UUID tenantId = UUID.randomUUID();
+    private final UUID policyId = UUID.randomUUID();
+    private long receivedAtMs;
+
+    @BeforeEach
+    void setUp() {
+        aggregator = new PolicyAckAggregator(ackRepository, deviceRepository, new SimpleMeterRegistry(), 3, 5, 100);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_InsertsAllAcksAndUpdatesEachDeviceOnce() {
+        aggregator.record(ack("dev-b", 2, "FAILED"));
+        aggregator.record(ack("dev-a", 2, "APPLIED"));
+        aggregator.record(ack("dev-b", 2, "APPLIED"));
+
+        aggregator.flush();
+        aggregator.flush(); // nothing pending
+
+        verify(ackRepository, times(1)).insertAll(argThat(acks -> acks.size() == 3));
+        ArgumentCaptor<List<DevicePolicyStatus>> captor = ArgumentCaptor.forClass(List.class);
+        verify(deviceRepository, times(1)).updatePolicyAcks(captor.capture());
+        List<DevicePolicyStatus> statuses = captor.getValue();
+        assertEquals(List.of("dev-a", "dev-b"), statuses.stream().map(DevicePolicyStatus::getDeviceId).toList());
+        assertEquals("APPLIED", statuses.get(1).getAckStatus()); // the later ack wins
+        assertEquals("2", statuses.get(1).getPolicyVersion());
+    }
+
+    @Test
+    void record_RefusesWhenFullAndRetriesFailedFlush() {
+        for (int i = 0; i < 3; i++) assertTrue(aggregator.record(ack("dev-" + i, 1, "APPLIED")));
+        assertFalse(aggregator.record(ack("dev-3", 1, "APPLIED")));
+
+        when(ackRepository.insertAll(anyList())).thenThrow(new RuntimeException("db down")).thenReturn(3);
+        aggregator.flush();
+        assertFalse(aggregator.record(ack("dev-3", 1, "APPLIED"))); // still pending
+
+        aggregator.flush();
+        assertTrue(aggregator.record(ack("dev-3", 1, "APPLIED")));
+        verify(ackRepository, times(2)).insertAll(argThat(acks -> acks.size() == 3));
+    }
+
+    @Test
+    void flush_DropsOnlyTheRowsThatViolateAConstraint() {
+        DevicePolicyAck good = ack("dev-a", 1, "APPLIED");
+        DevicePolicyAck bad = ack("dev-b", 1, "APPLIED");
+        aggregator.record(good);
+        aggregator.record(bad);
+        when(ackRepository.insertAll(anyList())).thenAnswer(inv -> {
+            List<DevicePolicyAck> acks = inv.getArgument(0);
+            if (acks.contains(bad)) throw new DataIntegrityViolationException("value too long");
+            return acks.size();
+        });
+
+        aggregator.flush();
+        aggregator.flush(); // the bad ack is not retried
+
+        verify(ackRepository, times(1)).insertAll(List.of(good, bad));
+        verify(ackRepository, times(1)).insertAll(List.of(good));
+        verify(ackRepository, times(1)).insertAll(List.of(bad));
+        for (int i = 0; i < 3; i++) assertTrue(aggregator.record(ack("dev-" + i, 2, "APPLIED")));
+    }
+
+    @Test
+    void progress_CountsEachDeviceByItsLatestStatus() {
+        aggregator.record(ack("dev-a", 4, "FAILED"));
+        aggregator.record(ack("dev-a", 4, "APPLIED"));
+        aggregator.record(ack("dev-b", 4, "APPLIED"));
+
+        PolicyAckAggregator.RolloutProgress progress = aggregator.progress(policyId, 4);
+
+        assertEquals(2, progress.devices());
+        assertEquals(Map.of("APPLIED", 2L), progress.byStatus());
+        assertEquals(0, aggregator.progress(policyId, 3).devices());
+    }
+
+    private DevicePolicyAck ack(String deviceId, int version, String status) {
+        DevicePolicyAck ack = new DevicePolicyAck();
+        ack.setId(UUID.randomUUID());
+        ack.setTenantId(tenantId);
+        ack.setOrgId(tenantId);
+        ack.setDeviceId(deviceId);
+        ack.setPolicyId(policyId);
+        ack.setVersion(version);
+        ack.setStatus(status);
+        ack.setCreatedAt(++receivedAtMs);
+        return ack;
+    }
+}
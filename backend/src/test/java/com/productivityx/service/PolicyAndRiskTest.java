@@ -3,12 +3,11 @@ package com.productivityx.service;
 import com.productivityx.dto.policy.PolicyPackDTO;
 import com.productivityx.dto.policy.PolicySnapshotDTO;
 import com.productivityx.model.policy.*;
-import com.productivityx.model.telemetry.FileEvent;
-import com.productivityx.model.telemetry.UsbEvent;
+import com.productivityx.model.telemetry.RiskEvent;
+import com.productivityx.model.telemetry.RiskRule;
 import com.productivityx.repository.*;
-import com.productivityx.repository.telemetry.FileEventRepository;
 import com.productivityx.repository.telemetry.RiskEventRepository;
-import com.productivityx.repository.telemetry.UsbEventRepository;
+import com.productivityx.repository.telemetry.RiskRuleRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -28,16 +27,18 @@ public class PolicyAndRiskTest {
     @Mock private PolicyPackRepository policyRepo;
     @Mock private PolicySnapshotRepository snapshotRepo;
     @Mock private PolicyAssignmentRepository assignmentRepo;
-    @Mock private DevicePolicyAckRepository ackRepo;
-    @Mock private DeviceRepository deviceRepo;
+    @Mock private PolicyAckAggregator ackAggregator;
+    @Mock private DeviceContextCache deviceContextCache;
+    @Mock private PolicySnapshotIndex snapshotIndex;
     @Mock private AuditLogRepository auditRepo;
     @Mock private RiskEventRepository riskRepo;
-    @Mock private UsbEventRepository usbRepo;
-    @Mock private FileEventRepository fileRepo;
     @Mock private ObjectMapper objectMapper;
+    @Mock private DailyRollupAccumulator rollupAccumulator;
+    @Mock private RiskRuleRepository ruleRepo;
 
     @InjectMocks private PolicyService policyService;
     @InjectMocks private RiskService riskService;
+    @InjectMocks private RiskRuleService ruleService;
 
     private final UUID tenantId = UUID.randomUUID();
     private final UUID orgId = UUID.randomUUID();
@@ -66,64 +67,124 @@ public class PolicyAndRiskTest {
         assertEquals("{\"foo\":\"bar\"}", result.getSnapshotJson());
         
         verify(policyRepo).save(pack);
+        verify(snapshotIndex).published(argThat(snapshot -> snapshot.getVersion() == 1));
         assertEquals("PUBLISHED", pack.getStatus());
         assertEquals(1, pack.getPublishedVersion());
     }
 
     @Test
-    public void testGetSnapshotWithEtag() {
-        PolicyAssignment assignment = new PolicyAssignment();
-        assignment.setPolicyId(UUID.randomUUID());
-        assignment.setActive(true);
+    public void testAssignPolicyRefreshesSnapshotIndex() {
+        UUID policyId = UUID.randomUUID();
+        PolicyAssignment existing = new PolicyAssignment();
+        existing.setActive(true);
+        when(assignmentRepo.findActiveByDeviceId(tenantId, orgId, deviceId)).thenReturn(Optional.of(existing));
 
-        PolicyPack pack = new PolicyPack();
-        pack.setId(assignment.getPolicyId());
-        pack.setPublishedVersion(2);
+        policyService.assignPolicy(tenantId, orgId, userId, deviceId, policyId);
 
-        PolicySnapshot snapshot = new PolicySnapshot();
-        snapshot.setVersion(2);
-        snapshot.setSnapshotJson("{}");
-        snapshot.setEtag("hash123");
+        assertFalse(existing.getActive());
+        assertNotNull(existing.getUpdatedAt()); // other nodes' indexes find changed devices by updated_at
+        verify(snapshotIndex).assignmentsChanged(argThat(rows -> rows.size() == 2 && rows.contains(existing)));
+    }
 
-        com.productivityx.model.Device device = new com.productivityx.model.Device();
-        device.setDeviceId(deviceId);
-        device.setTenantId(tenantId);
-        device.setOrgId(orgId);
+    @Test
+    public void testGroupAssignmentIsOneRowForTheWholeGroup() {
+        UUID policyId = UUID.randomUUID();
+        UUID groupId = UUID.randomUUID();
+        when(assignmentRepo.findActiveByGroupId(tenantId, groupId)).thenReturn(Optional.empty());
 
-        when(deviceRepo.findById(deviceId)).thenReturn(Optional.of(device));
-        when(assignmentRepo.findActiveByDeviceId(tenantId, orgId, deviceId)).thenReturn(Optional.of(assignment));
-        when(policyRepo.findById(assignment.getPolicyId())).thenReturn(Optional.of(pack));
-        when(snapshotRepo.findByPolicyIdAndVersion(pack.getId(), 2)).thenReturn(Optional.of(snapshot));
+        PolicyAssignment assignment = policyService.assignPolicy(tenantId, orgId, userId, "GROUP", groupId.toString(), policyId, 200);
 
-        Optional<PolicySnapshotDTO> result = policyService.getSnapshotForDevice(deviceId, "hash123");
-        
-        assertTrue(result.isPresent());
-        assertEquals("hash123", result.get().getEtag());
-        // Controller layer handles the 304 transformation based on logic
+        assertEquals(groupId, assignment.getGroupId());
+        assertNull(assignment.getDeviceId());
+        assertEquals(200, assignment.getPriority());
+        verify(assignmentRepo, times(1)).save(any(PolicyAssignment.class));
+        verify(auditRepo, times(1)).save(any(AuditLog.class));
+        verify(snapshotIndex).assignmentsChanged(List.of(assignment));
+    }
+
+    @Test
+    public void testAssignPolicyRejectsUnknownTarget() {
+        assertThrows(IllegalArgumentException.class,
+                () -> policyService.assignPolicy(tenantId, orgId, userId, "SITE", "x", UUID.randomUUID(), null));
+        assertThrows(IllegalArgumentException.class,
+                () -> policyService.assignPolicy(tenantId, orgId, userId, "GROUP", "not-a-uuid", UUID.randomUUID(), null));
+        verifyNoInteractions(snapshotIndex);
     }
     
     @Test
-    public void testRiskR1Detection() {
-        UsbEvent usb = new UsbEvent();
-        usb.setId(UUID.randomUUID());
-        usb.setDriveLetter("E:");
-        
-        FileEvent file = new FileEvent();
-        file.setId(UUID.randomUUID());
-        
-        com.productivityx.model.Device device = new com.productivityx.model.Device();
-        device.setDeviceId(deviceId);
-        device.setTenantId(tenantId);
-        device.setOrgId(orgId);
-
-        when(deviceRepo.findById(deviceId)).thenReturn(Optional.of(device));
-        when(usbRepo.findRecentInserts(eq(tenantId), eq(orgId), eq(deviceId), anyLong()))
-            .thenReturn(List.of(usb));
-        when(fileRepo.findRecentExternalOps(eq(tenantId), eq(orgId), eq(deviceId), anyLong()))
-            .thenReturn(List.of(file));
-        
-        riskService.checkForRisks(deviceId, System.currentTimeMillis());
-        
-        verify(riskRepo, times(1)).save(any(com.productivityx.model.telemetry.RiskEvent.class));
+    public void testAckIsQueuedNotWritten() {
+        UUID policyId = UUID.randomUUID();
+        when(deviceContextCache.find(deviceId)).thenReturn(Optional.of(new DeviceContext(deviceId, tenantId, orgId, null)));
+        when(ackAggregator.record(any(DevicePolicyAck.class))).thenReturn(true);
+
+        assertTrue(policyService.recordAck(deviceId, policyId, 3, "APPLIED", null, 1L, "1.0", "hash"));
+
+        verify(ackAggregator).record(argThat(ack -> ack.getTenantId().equals(tenantId)
+                && ack.getPolicyId().equals(policyId) && ack.getVersion() == 3 && ack.getCreatedAt() != null));
+    }
+
+    @Test
+    public void testAckWithOverlongFieldsRejected() {
+        UUID policyId = UUID.randomUUID();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> policyService.recordAck(deviceId, policyId, 3, "APPLIED", null, 1L, "1.0-" + "x".repeat(50), "hash"));
+        verifyNoInteractions(ackAggregator);
+    }
+
+    @Test
+    public void testRiskRaised() {
+        CompiledRiskRule.Firing firing = firing("R1_USB_EXFIL");
+
+        boolean raised = riskService.raise(tenantId, orgId, deviceId, firing);
+
+        assertTrue(raised);
+        verify(riskRepo, times(1)).save(argThat((RiskEvent risk) -> risk.getType().equals("R1_USB_EXFIL") && risk.getSeverity().equals("HIGH")));
+        verify(rollupAccumulator).addRisk(eq(tenantId), eq(orgId), eq(deviceId), any(), eq("R1_USB_EXFIL"));
+    }
+
+    @Test
+    public void testRiskSkippedWhenAlreadyRaised() {
+        when(riskRepo.existsByTenantIdAndOrgIdAndDeviceIdAndTypeAndDedupKey(eq(tenantId), eq(orgId), eq(deviceId), eq("R2_MASS_DELETE_RENAME"), any()))
+            .thenReturn(true);
+
+        boolean raised = riskService.raise(tenantId, orgId, deviceId, firing("R2_MASS_DELETE_RENAME"));
+
+        assertFalse(raised);
+        verify(riskRepo, never()).save(any());
+        verifyNoInteractions(rollupAccumulator);
+    }
+
+    @Test
+    public void testAnomalyRaisedAsMediumSeverity() {
+        DeviceBaselineTracker.Anomaly anomaly = new DeviceBaselineTracker.Anomaly(
+                DeviceBaseline.Metric.FILE_OPS, 3_600_000L, 900, 40.0, 10.0, 86.0, 24);
+
+        assertTrue(riskService.raise(tenantId, orgId, deviceId, anomaly));
+
+        verify(riskRepo).save(argThat((RiskEvent risk) -> risk.getType().equals("ANOMALY_FILE_OPS") && risk.getSeverity().equals("MED")));
+    }
+
+    @Test
+    public void testRuleWithUnknownSeverityRejected() {
+        RiskRule rule = new RiskRule();
+        rule.setCode("R9_CUSTOM");
+        rule.setKind("COUNT");
+        rule.setSeverity("MEDIUM");
+
+        assertThrows(IllegalArgumentException.class, () -> ruleService.saveRule(tenantId, rule));
+        verify(ruleRepo, never()).save(any());
+    }
+
+    private CompiledRiskRule.Firing firing(String code) {
+        RiskRule rule = new RiskRule();
+        rule.setId(UUID.randomUUID());
+        rule.setCode(code);
+        rule.setKind("COUNT");
+        rule.setSeverity("HIGH");
+        rule.setEnabled(true);
+        rule.setDefinition("{\"match\": {\"events\": [\"FILE_DELETE\"]}, \"window_ms\": 300000, \"threshold\": 30}");
+        CompiledRiskRule compiled = CompiledRiskRule.compile(rule, new ObjectMapper());
+        return new CompiledRiskRule.Firing(compiled, 1, 0, 300_000, Map.of("rule", code));
     }
 }
@@ -0,0 +1,125 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.dto.policy.PolicySnapshotDTO;
+import com.productivityx.model.policy.PolicySnapshot;
+import com.productivityx.repository.PolicySnapshotRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PolicySnapshotDeltasTest {
+
+    @Mock private PolicySnapshotRepository snapshotRepo;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private PolicySnapshotDeltas deltas;
+    private final UUID policyId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        deltas = new PolicySnapshotDeltas(snapshotRepo, objectMapper, new SimpleMeterRegistry(), 100);
+    }
+
+    @Test
+    void find_PatchesTheHeldConfigOncePerPair() throws Exception {
+        String held = "{\"blockList\":" + domains(0, 200) + ",\"idleMinutes\":5,\"old\":true}";
+        String current = "{\"blockList\":" + domains(0, 201) + ",\"idleMinutes\":10}";
+        heldInDatabase(3, "hash-3", held);
+        PolicySnapshotIndex.Snapshot snapshot = current(4, "hash-4", current);
+
+        PolicySnapshotDeltas.Delta delta = deltas.find(snapshot, "\"hash-3\"").orElseThrow();
+        assertSame(delta, deltas.find(snapshot, "hash-3").orElseThrow());
+
+        assertEquals(3, delta.fromVersion());
+        assertEquals(4, delta.version());
+        assertEquals("hash-4", delta.etag());
+        JsonNode patch = objectMapper.readTree(delta.body());
+        assertEquals(3, patch.size());
+        assertEquals(op("add", "/blockList/200", "\"site200.example\""), patch.get(0));
+        assertEquals(op("replace", "/idleMinutes", "10"), patch.get(1));
+        assertEquals("{\"op\":\"remove\",\"path\":\"/old\"}", patch.get(2).toString());
+        verify(snapshotRepo, times(1)).findFirstByPolicyIdAndEtagOrderByVersionDesc(policyId, "hash-3");
+    }
+
+    @Test
+    void find_SendsFullSnapshotWhenHeldVersionIsUnknownOrCurrent() throws Exception {
+        when(snapshotRepo.findFirstByPolicyIdAndEtagOrderByVersionDesc(policyId, "other")).thenReturn(Optional.empty());
+        PolicySnapshotIndex.Snapshot snapshot = current(4, "hash-4", "{\"a\":1}");
+
+        assertTrue(deltas.find(snapshot, "other").isEmpty());
+        assertTrue(deltas.find(snapshot, "other").isEmpty());
+        assertTrue(deltas.find(snapshot, "hash-4").isEmpty());
+        assertTrue(deltas.find(snapshot, null).isEmpty());
+        verify(snapshotRepo, times(1)).findFirstByPolicyIdAndEtagOrderByVersionDesc(policyId, "other");
+    }
+
+    @Test
+    void jsonPatchDiff_TrimsCommonArrayHeadAndTail() throws Exception {
+        JsonNode from = objectMapper.readTree("{\"list\":[1,2,3,4,5],\"a/b\":{\"x\":1}}");
+        JsonNode to = objectMapper.readTree("{\"list\":[1,2,9,9,4,5],\"a/b\":{\"x\":2}}");
+
+        JsonNode patch = JsonPatchDiff.diff(from, to);
+
+        assertEquals(3, patch.size());
+        assertEquals(op("replace", "/list/2", "9"), patch.get(0));
+        assertEquals(op("add", "/list/3", "9"), patch.get(1));
+        assertEquals(op("replace", "/a~1b/x", "2"), patch.get(2));
+    }
+
+    @Test
+    void gzip_OnlyBodiesWorthCompressing() throws Exception {
+        assertNull(PolicySnapshotIndex.gzip(new byte[10]));
+
+        byte[] body = domains(0, 500).getBytes();
+        byte[] gzipped = PolicySnapshotIndex.gzip(body);
+        assertTrue(gzipped.length < body.length);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            assertArrayEquals(body, in.readAllBytes());
+        }
+    }
+
+    private void heldInDatabase(int version, String etag, String json) {
+        PolicySnapshot snapshot = new PolicySnapshot();
+        snapshot.setPolicyId(policyId);
+        snapshot.setVersion(version);
+        snapshot.setEtag(etag);
+        snapshot.setSnapshotJson(json);
+        when(snapshotRepo.findFirstByPolicyIdAndEtagOrderByVersionDesc(policyId, etag)).thenReturn(Optional.of(snapshot));
+    }
+
+    private PolicySnapshotIndex.Snapshot current(int version, String etag, String json) throws Exception {
+        PolicySnapshotDTO dto = new PolicySnapshotDTO();
+        dto.setPolicyId(policyId);
+        dto.setVersion(version);
+        dto.setEtag(etag);
+        dto.setSnapshotJson(json);
+        return new PolicySnapshotIndex.Snapshot(policyId, version, etag, objectMapper.writeValueAsBytes(dto), null);
+    }
+
+    private JsonNode op(String op, String path, String value) throws Exception {
+        return objectMapper.readTree("{\"op\":\"" + op + "\",\"path\":\"" + path + "\",\"value\":" + value + "}");
+    }
+
+    private static String domains(int from, int to) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = from; i < to; i++) {
+            if (i > from) json.append(',');
+            json.append("\"site").append(i).append(".example\"");
+        }
+        return json.append(']').toString();
+    }
+}
@@ -0,0 +1,201 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.model.policy.PolicyAssignment;
+import com.productivityx.model.policy.PolicyPack;
+import com.productivityx.model.policy.PolicySnapshot;
+import com.productivityx.repository.PolicyAssignmentRepository;
+import com.productivityx.repository.PolicyPackRepository;
+import com.productivityx.repository.PolicySnapshotRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PolicySnapshotIndexTest {
+
+    @Mock private DeviceContextCache deviceContextCache;
+    @Mock private PolicyAssignmentRepository assignmentRepo;
+    @Mock private PolicyPackRepository policyRepo;
+    @Mock private PolicySnapshotRepository snapshotRepo;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private PolicySnapshotIndex index;
+    private final UUID tenantId = UUID.randomUUID();
+    private final UUID orgId = UUID.randomUUID();
+    private final UUID policyId = UUID.randomUUID();
+    private final String deviceId = "device-123";
+
+    @BeforeEach
+    void setUp() {
+        index = new PolicySnapshotIndex(deviceContextCache, assignmentRepo, policyRepo, snapshotRepo,
+                objectMapper, new SimpleMeterRegistry(), 1000, 600);
+    }
+
+    @Test
+    void find_ResolvesOnceThenAnswersFromMemory() throws Exception {
+        assignDevice();
+        publishedInDatabase(2, "hash123");
+
+        PolicySnapshotIndex.Snapshot first = index.find(deviceId).orElseThrow();
+        PolicySnapshotIndex.Snapshot second = index.find(deviceId).orElseThrow();
+
+        assertSame(first, second);
+        assertEquals(2, first.version());
+        assertTrue(first.matches("\"hash123\""));
+        assertFalse(first.matches("\"other\""));
+        JsonNode body = objectMapper.readTree(first.body());
+        assertEquals("hash123", body.get("etag").asText());
+        assertEquals("{}", body.get("snapshotJson").asText());
+        verify(deviceContextCache, times(1)).find(deviceId);
+        verify(snapshotRepo, times(1)).findByPolicyIdAndVersion(policyId, 2);
+    }
+
+    @Test
+    void published_ReplacesThePolicySnapshotForAllItsDevices() {
+        assignDevice();
+        publishedInDatabase(2, "hash123");
+        index.find(deviceId);
+
+        index.published(snapshot(3, "hash456"));
+
+        assertEquals("hash456", index.find(deviceId).orElseThrow().etag());
+        // An older version arriving late does not win
+        index.published(snapshot(2, "hash123"));
+        assertEquals(3, index.find(deviceId).orElseThrow().version());
+        verify(snapshotRepo, times(1)).findByPolicyIdAndVersion(policyId, 2);
+        verifyNoMoreInteractions(snapshotRepo);
+    }
+
+    @Test
+    void groupAssignment_ReResolvesCachedDevicesWithoutQueries() {
+        UUID groupId = UUID.randomUUID();
+        UUID groupPolicy = UUID.randomUUID();
+        String other = "device-456";
+        PolicyAssignment own = assignment("DEVICE", policyId, 100, 1, null);
+        own.setDeviceId(deviceId);
+        when(assignmentRepo.findByActiveTrue()).thenReturn(List.of(own));
+        when(deviceContextCache.find(deviceId)).thenReturn(Optional.of(new DeviceContext(deviceId, tenantId, orgId, groupId)));
+        when(deviceContextCache.find(other)).thenReturn(Optional.of(new DeviceContext(other, tenantId, orgId, groupId)));
+        index.start();
+        List<String> changed = new ArrayList<>();
+        index.addListener(listener(changed));
+        index.find(deviceId);
+        index.find(other);
+        assertEquals(policyId, index.cachedPolicyOf(deviceId));
+        assertNull(index.cachedPolicyOf("device-789")); // never asked for
+
+        // Same priority: the device's own assignment stays more specific than its group's
+        index.assignmentsChanged(List.of(assignment("GROUP", groupPolicy, 100, 2, groupId)));
+        assertEquals(policyId, index.cachedPolicyOf(deviceId));
+        assertEquals(groupPolicy, index.cachedPolicyOf(other));
+        assertEquals(List.of(other), changed);
+
+        // A higher priority group assignment wins over the device's own
+        index.assignmentsChanged(List.of(assignment("GROUP", groupPolicy, 500, 3, groupId)));
+        assertEquals(groupPolicy, index.cachedPolicyOf(deviceId));
+        assertEquals(List.of(other, deviceId), changed);
+
+        verify(deviceContextCache, times(1)).find(deviceId);
+        verify(assignmentRepo, times(1)).findByActiveTrue();
+        verifyNoMoreInteractions(assignmentRepo);
+    }
+
+    @Test
+    void refresh_AppliesAssignmentsChangedOnOtherNodes() {
+        DeviceContext device = new DeviceContext(deviceId, tenantId, orgId, null);
+        when(deviceContextCache.find(deviceId)).thenReturn(Optional.of(device));
+        index.start();
+        assertTrue(index.find(deviceId).isEmpty());
+
+        PolicyAssignment tenantWide = assignment("TENANT", policyId, 100, 5, null);
+        when(assignmentRepo.findByUpdatedAtGreaterThanOrderByUpdatedAt(anyLong())).thenReturn(List.of(tenantWide));
+        index.refresh();
+        assertEquals(policyId, index.cachedPolicyOf(deviceId));
+
+        // Deactivated on another node
+        PolicyAssignment deactivated = assignment("TENANT", policyId, 100, 6, null);
+        deactivated.setId(tenantWide.getId());
+        deactivated.setActive(false);
+        when(assignmentRepo.findByUpdatedAtGreaterThanOrderByUpdatedAt(anyLong())).thenReturn(List.of(deactivated));
+        index.refresh();
+        assertEquals(new UUID(0, 0), index.cachedPolicyOf(deviceId));
+        verify(deviceContextCache, times(1)).find(deviceId);
+    }
+
+    @Test
+    void find_UnknownDeviceIsNotCached() {
+        when(deviceContextCache.find("ghost")).thenReturn(Optional.empty());
+
+        assertTrue(index.find("ghost").isEmpty());
+        assertTrue(index.find("ghost").isEmpty());
+
+        verify(deviceContextCache, times(2)).find("ghost");
+        verifyNoInteractions(assignmentRepo);
+    }
+
+    private void assignDevice() {
+        PolicyAssignment assignment = assignment("DEVICE", policyId, 100, 1, null);
+        assignment.setDeviceId(deviceId);
+        when(deviceContextCache.find(deviceId)).thenReturn(Optional.of(new DeviceContext(deviceId, tenantId, orgId, null)));
+        when(assignmentRepo.findByActiveTrue()).thenReturn(List.of(assignment));
+        index.start();
+    }
+
+    private PolicyAssignment assignment(String targetType, UUID policy, int priority, long updatedAt, UUID groupId) {
+        PolicyAssignment assignment = new PolicyAssignment();
+        assignment.setId(UUID.randomUUID());
+        assignment.setTenantId(tenantId);
+        assignment.setOrgId("TENANT".equals(targetType) ? null : orgId);
+        assignment.setTargetType(targetType);
+        assignment.setGroupId(groupId);
+        assignment.setPolicyId(policy);
+        assignment.setPriority(priority);
+        assignment.setActive(true);
+        assignment.setUpdatedAt(updatedAt);
+        return assignment;
+    }
+
+    private static PolicySnapshotIndex.Listener listener(List<String> changedDevices) {
+        return new PolicySnapshotIndex.Listener() {
+            @Override
+            public void policyChanged(UUID policyId) {
+            }
+
+            @Override
+            public void deviceChanged(String deviceId) {
+                changedDevices.add(deviceId);
+            }
+        };
+    }
+
+    private void publishedInDatabase(int version, String etag) {
+        PolicyPack pack = new PolicyPack();
+        pack.setId(policyId);
+        pack.setPublishedVersion(version);
+        when(policyRepo.findById(policyId)).thenReturn(Optional.of(pack));
+        when(snapshotRepo.findByPolicyIdAndVersion(policyId, version)).thenReturn(Optional.of(snapshot(version, etag)));
+    }
+
+    private PolicySnapshot snapshot(int version, String etag) {
+        PolicySnapshot snapshot = new PolicySnapshot();
+        snapshot.setPolicyId(policyId);
+        snapshot.setVersion(version);
+        snapshot.setSnapshotJson("{}");
+        snapshot.setEtag(etag);
+        return snapshot;
+    }
+}
@@ -0,0 +1,106 @@
+package com.productivityx.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PolicySnapshotWatcherTest {
+
+    @Mock private PolicySnapshotIndex snapshotIndex;
+
+    private PolicySnapshotWatcher watcher;
+    private final UUID policyId = UUID.randomUUID();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        watcher = new PolicySnapshotWatcher(snapshotIndex, meterRegistry);
+        ReflectionTestUtils.setField(watcher, "maxWatchers", 50000);
+        ReflectionTestUtils.setField(watcher, "timeoutMs", 55000L);
+        ReflectionTestUtils.setField(watcher, "retryAfterSeconds", 30);
+        watcher.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.stop();
+    }
+
+    @Test
+    void watch_AnswersAtOnceWhenTheAgentIsBehind() {
+        when(snapshotIndex.find("dev-1")).thenReturn(Optional.of(snapshot(3, "v3")));
+        CompletableFuture<Optional<PolicySnapshotIndex.Snapshot>> woken = new CompletableFuture<>();
+
+        assertTrue(watcher.watch("dev-1", "v2", woken::complete).isPresent());
+
+        assertEquals("v3", woken.getNow(null).orElseThrow().etag());
+        assertEquals(0, parked());
+    }
+
+    @Test
+    void watch_ParksUntilThePolicyIsPublished() throws Exception {
+        when(snapshotIndex.find("dev-1")).thenReturn(Optional.of(snapshot(2, "v2")));
+        CompletableFuture<Optional<PolicySnapshotIndex.Snapshot>> woken = new CompletableFuture<>();
+        watcher.watch("dev-1", "v2", woken::complete);
+        assertFalse(woken.isDone());
+        assertEquals(1, parked());
+
+        when(snapshotIndex.find("dev-1")).thenReturn(Optional.of(snapshot(3, "v3")));
+        when(snapshotIndex.cachedPolicyOf("dev-1")).thenReturn(policyId);
+        watcher.policyChanged(UUID.randomUUID()); // another policy: not re-checked
+        watcher.policyChanged(policyId);
+
+        assertEquals("v3", woken.get(5, TimeUnit.SECONDS).orElseThrow().etag());
+        verify(snapshotIndex, times(2)).find("dev-1");
+        assertEquals(0, parked());
+    }
+
+    @Test
+    void watch_AgentWithoutPolicyIsWokenWhenAssigned() throws Exception {
+        when(snapshotIndex.find("dev-1")).thenReturn(Optional.empty());
+        CompletableFuture<Optional<PolicySnapshotIndex.Snapshot>> woken = new CompletableFuture<>();
+        watcher.watch("dev-1", null, woken::complete);
+        assertFalse(woken.isDone());
+
+        when(snapshotIndex.find("dev-1")).thenReturn(Optional.of(snapshot(1, "v1")));
+        watcher.deviceChanged("dev-1");
+
+        assertEquals("v1", woken.get(5, TimeUnit.SECONDS).orElseThrow().etag());
+    }
+
+    @Test
+    void watch_RefusesBeyondCapacityAndCancelFreesRoom() {
+        ReflectionTestUtils.setField(watcher, "maxWatchers", 1);
+        when(snapshotIndex.find(anyString())).thenReturn(Optional.of(snapshot(2, "v2")));
+
+        Optional<Runnable> cancel = watcher.watch("dev-1", "v2", s -> fail("not changed"));
+        assertTrue(cancel.isPresent());
+        assertTrue(watcher.watch("dev-2", "v2", s -> fail("not changed")).isEmpty());
+
+        cancel.get().run();
+        assertEquals(0, parked());
+        assertTrue(watcher.watch("dev-2", "v2", s -> fail("not changed")).isPresent());
+    }
+
+    private int parked() {
+        return (int) meterRegistry.get("policy.watch.parked").gauge().value();
+    }
+
+    private PolicySnapshotIndex.Snapshot snapshot(int version, String etag) {
+        return new PolicySnapshotIndex.Snapshot(policyId, version, etag, new byte[0], null);
+    }
+}
@@ -0,0 +1,129 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.model.telemetry.FileEvent;
+import com.productivityx.model.telemetry.UsbEvent;
+import com.productivityx.repository.telemetry.RiskOutboxEntry;
+import com.productivityx.repository.telemetry.RiskOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RiskOutboxDispatcherTest {
+
+    @Mock private RiskOutboxRepository outboxRepository;
+    @Mock private RiskWindowEngine engine;
+    @Mock private DeviceBaselineTracker baselines;
+    @Mock private RiskService riskService;
+    @Mock private PlatformTransactionManager transactionManager;
+
+    private RiskOutboxDispatcher dispatcher;
+    private final IngestMapper.Target target =
+            new IngestMapper.Target("dev-1", UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new RiskOutboxDispatcher(outboxRepository, engine, baselines, riskService, new ObjectMapper(),
+                transactionManager, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(dispatcher, "workers", 0); // no background threads
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 500);
+        dispatcher.start();
+    }
+
+    @Test
+    void onFileEvents_QueuesOnlySignalsSomeRuleWants() {
+        when(engine.wants(any(), any(), eq(RiskSignal.Type.FILE_DELETE))).thenReturn(true);
+        when(engine.wants(any(), any(), eq(RiskSignal.Type.FILE_CREATE))).thenReturn(false);
+
+        FileEvent delete = file("DELETE");
+        dispatcher.onFileEvents(target, List.of(delete, file("CREATE")));
+
+        ArgumentCaptor<String> json = ArgumentCaptor.forClass(String.class);
+        verify(outboxRepository).append(eq(target.getTenantId()), eq(target.getOrgId()), eq("dev-1"), json.capture());
+        List<RiskSignal> queued = dispatcher.decode(json.getValue());
+        assertEquals(1, queued.size());
+        assertEquals(delete.getId(), queued.get(0).id());
+        assertEquals(RiskSignal.Type.FILE_DELETE, queued.get(0).type());
+    }
+
+    @Test
+    void onUsbEvents_SkipsAppendWhenNothingIsWanted() {
+        UsbEvent usb = new UsbEvent();
+        usb.setId(UUID.randomUUID());
+        usb.setTsMs(1L);
+        usb.setAction("REMOVE");
+
+        dispatcher.onUsbEvents(target, List.of(usb));
+
+        verifyNoInteractions(outboxRepository);
+    }
+
+    @Test
+    void dispatchOnce_EvaluatesRaisesAndDeletesClaimedRows() {
+        RiskSignal signal = new RiskSignal(RiskSignal.Type.USB_INSERT, 1_000L, UUID.randomUUID(), true, "E:", 0);
+        String json = dispatcher.encode(List.of(signal));
+        RiskOutboxEntry entry = new RiskOutboxEntry(42L, target.getTenantId(), target.getOrgId(), "dev-1", json,
+                LocalDateTime.now(ZoneOffset.UTC).minusSeconds(2));
+        RiskOutboxEntry malformed = new RiskOutboxEntry(43L, target.getTenantId(), target.getOrgId(), "dev-1", "{",
+                LocalDateTime.now(ZoneOffset.UTC));
+        CompiledRiskRule.Firing firing = new CompiledRiskRule.Firing(null, 1_000L, 0, 1_000L, Map.of());
+        when(outboxRepository.claim(anyString(), eq(0), eq(1), eq(500), anyLong())).thenReturn(List.of(entry, malformed));
+        when(engine.apply(eq(target.getTenantId()), eq(target.getOrgId()), eq("dev-1"), eq(42L), eq(List.of(signal))))
+                .thenReturn(List.of(firing));
+
+        int claimed = dispatcher.dispatchOnce(0, 1);
+
+        assertEquals(2, claimed);
+        verify(riskService).raise(target.getTenantId(), target.getOrgId(), "dev-1", firing);
+        verify(engine, never()).apply(any(), any(), any(), eq(43L), any());
+        verify(outboxRepository).delete(List.of(42L, 43L));
+    }
+
+    @Test
+    void dispatchOnce_KeepsRowsAndRaisesAgainWhenRecordingFails() {
+        RiskSignal signal = new RiskSignal(RiskSignal.Type.USB_INSERT, 1_000L, UUID.randomUUID(), true, "E:", 0);
+        RiskOutboxEntry entry = new RiskOutboxEntry(42L, target.getTenantId(), target.getOrgId(), "dev-1",
+                dispatcher.encode(List.of(signal)), LocalDateTime.now(ZoneOffset.UTC));
+        CompiledRiskRule.Firing firing = new CompiledRiskRule.Firing(null, 1_000L, 0, 1_000L, Map.of());
+        when(outboxRepository.claim(anyString(), eq(0), eq(1), eq(500), anyLong())).thenReturn(List.of(entry));
+        // The engine counts the row once; on redelivery it reports nothing new
+        when(engine.apply(any(), any(), eq("dev-1"), eq(42L), any())).thenReturn(List.of(firing), List.of());
+        when(riskService.raise(target.getTenantId(), target.getOrgId(), "dev-1", firing))
+                .thenThrow(new IllegalStateException("database down"))
+                .thenReturn(true);
+
+        assertThrows(IllegalStateException.class, () -> dispatcher.dispatchOnce(0, 1));
+        verify(outboxRepository, never()).delete(any());
+
+        assertEquals(1, dispatcher.dispatchOnce(0, 1));
+        verify(riskService, times(2)).raise(target.getTenantId(), target.getOrgId(), "dev-1", firing);
+        verify(outboxRepository).delete(List.of(42L));
+    }
+
+    private static FileEvent file(String operation) {
+        FileEvent file = new FileEvent();
+        file.setId(UUID.randomUUID());
+        file.setTsMs(1_000L);
+        file.setOperation(operation);
+        file.setIsExternal(false);
+        file.setIsUsb(false);
+        return file;
+    }
+}
@@ -0,0 +1,196 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.model.telemetry.FileEvent;
+import com.productivityx.model.telemetry.RiskRule;
+import com.productivityx.model.telemetry.UsbEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class RiskWindowEngineTest {
+
+    private static final String R1 = "{\"first\": {\"events\": [\"USB_INSERT\"]}, \"then\": {\"events\": [\"FILE_COPY\", \"FILE_MODIFY\"], \"external\": true}, \"within_ms\": 600000, \"ordered\": false}";
+    private static final String R2 = "{\"match\": {\"events\": [\"FILE_DELETE\", \"FILE_RENAME\"]}, \"window_ms\": 300000, \"threshold\": 30}";
+
+    @Mock private RiskRuleService ruleService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private RiskWindowEngine engine;
+    private final UUID tenantId = UUID.randomUUID();
+    private final UUID orgId = UUID.randomUUID();
+    private final long t0 = 1_700_000_000_000L;
+    private long outboxId;
+
+    @BeforeEach
+    void setUp() {
+        engine = new RiskWindowEngine(ruleService, new SimpleMeterRegistry(), 1000, 30, 1024);
+        useRules(rule(null, null, "R1_USB_EXFIL", "SEQUENCE", R1, true), rule(null, null, "R2_MASS_DELETE_RENAME", "COUNT", R2, true));
+    }
+
+    @Test
+    void usbInsertFollowedByExternalCopy_FiresR1Once() {
+        UsbEvent usb = usb(t0);
+        assertTrue(feedUsb(usb).isEmpty());
+
+        FileEvent copy = file(t0 + 120_000, "COPY", true);
+        List<CompiledRiskRule.Firing> firings = feedFiles(List.of(copy));
+        assertTrue(feedFiles(List.of(file(t0 + 180_000, "MODIFY", true))).isEmpty());
+
+        assertEquals(1, firings.size());
+        CompiledRiskRule.Firing firing = firings.get(0);
+        assertEquals("R1_USB_EXFIL", firing.rule().getCode());
+        assertEquals(t0, firing.anchor());
+        assertEquals(t0 + 120_000, firing.windowEndMs());
+        assertEquals(usb.getId(), firing.evidence().get("first_event_id"));
+        assertEquals(List.of(copy.getId()), firing.evidence().get("event_ids"));
+    }
+
+    @Test
+    void externalCopyOutsideWindow_DoesNotFireR1() {
+        assertTrue(feedFiles(List.of(file(t0, "COPY", true), file(t0 + 1_000, "COPY", false))).isEmpty());
+        assertTrue(feedUsb(usb(t0 + 601_000)).isEmpty());
+    }
+
+    @Test
+    void replayedUsbInsert_IsNotEvaluatedTwice() {
+        feedUsb(usb(t0));
+        assertEquals(1, feedFiles(List.of(file(t0 + 1_000, "COPY", true))).size());
+        feedUsb(usb(t0));
+        assertTrue(feedFiles(List.of(file(t0 + 2_000, "COPY", true))).isEmpty());
+    }
+
+    @Test
+    void redeliveredOutboxRow_IsIgnored() {
+        List<RiskSignal> deletes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) deletes.add(RiskSignal.of(file(t0 + i, "DELETE", false)));
+
+        engine.apply(tenantId, orgId, "dev-1", 7, deletes);
+        // The same row again must not push the count over 30
+        assertTrue(engine.apply(tenantId, orgId, "dev-1", 7, deletes).isEmpty());
+    }
+
+    @Test
+    void destructiveOpsAboveThreshold_FireR2OncePerBucket() {
+        long start = t0 - t0 % 300_000;
+        List<FileEvent> ops = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ops.add(file(start + i * 1_000L, i % 2 == 0 ? "DELETE" : "RENAME", false));
+        }
+        assertTrue(feedFiles(ops.subList(0, 30)).isEmpty());
+
+        List<CompiledRiskRule.Firing> firings = feedFiles(ops.subList(30, 40));
+
+        assertEquals(1, firings.size());
+        assertEquals("R2_MASS_DELETE_RENAME", firings.get(0).rule().getCode());
+        assertEquals(start + 30_000, firings.get(0).windowEndMs());
+        assertEquals(31, firings.get(0).evidence().get("count"));
+    }
+
+    @Test
+    void destructiveOpsSpreadOverTime_DoNotFireR2() {
+        List<FileEvent> ops = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            ops.add(file(t0 + i * 20_000L, "DELETE", false)); // 15 per 5 minutes
+        }
+        assertTrue(feedFiles(ops).isEmpty());
+    }
+
+    @Test
+    void tenantRuleOverridesBuiltInRule() {
+        String stricter = "{\"match\": {\"events\": [\"FILE_DELETE\"]}, \"window_ms\": 60000, \"threshold\": 2}";
+        useRules(rule(null, null, "R2_MASS_DELETE_RENAME", "COUNT", R2, true),
+                rule(tenantId, null, "R2_MASS_DELETE_RENAME", "COUNT", stricter, true),
+                rule(tenantId, orgId, "R1_USB_EXFIL", "SEQUENCE", R1, false),
+                rule(null, null, "R1_USB_EXFIL", "SEQUENCE", R1, true));
+
+        // R1 is switched off for this org, so inserts are not even queued; R2 uses the tenant's threshold of 2
+        assertFalse(engine.wants(tenantId, orgId, RiskSignal.Type.USB_INSERT));
+        assertTrue(engine.wants(UUID.randomUUID(), orgId, RiskSignal.Type.USB_INSERT));
+        List<CompiledRiskRule.Firing> firings = feedFiles(List.of(file(t0 + 1_000, "COPY", true),
+                file(t0 + 2_000, "DELETE", false), file(t0 + 3_000, "DELETE", false), file(t0 + 4_000, "DELETE", false)));
+
+        assertEquals(1, firings.size());
+        assertEquals("R2_MASS_DELETE_RENAME", firings.get(0).rule().getCode());
+    }
+
+    @Test
+    void baselineRuleFiresOnCountWellAboveDeviceMean() {
+        String def = "{\"match\": {\"events\": [\"FILE_COPY\"], \"external\": true}, \"window_ms\": 60000, \"factor\": 3.0, \"min_count\": 5, \"warmup_windows\": 3}";
+        useRules(rule(null, null, "R3_EXTERNAL_COPY_SPIKE", "BASELINE", def, true));
+        long start = t0 - t0 % 60_000;
+
+        List<FileEvent> events = new ArrayList<>();
+        for (int minute = 0; minute < 4; minute++) {
+            events.add(file(start + minute * 60_000L, "COPY", true));
+            events.add(file(start + minute * 60_000L + 1_000, "COPY", true));
+        }
+        assertTrue(feedFiles(events).isEmpty());
+
+        List<FileEvent> spike = new ArrayList<>();
+        for (int i = 0; i < 10; i++) spike.add(file(start + 4 * 60_000L + i * 100, "COPY", true));
+        List<CompiledRiskRule.Firing> firings = feedFiles(spike);
+
+        assertEquals(1, firings.size());
+        assertEquals(7L, firings.get(0).evidence().get("count"));
+    }
+
+    private List<CompiledRiskRule.Firing> feedFiles(List<FileEvent> files) {
+        List<RiskSignal> signals = new ArrayList<>();
+        for (FileEvent file : files) signals.add(RiskSignal.of(file));
+        return engine.apply(tenantId, orgId, "dev-1", ++outboxId, signals);
+    }
+
+    private List<CompiledRiskRule.Firing> feedUsb(UsbEvent usb) {
+        return engine.apply(tenantId, orgId, "dev-1", ++outboxId, List.of(RiskSignal.of(usb)));
+    }
+
+    private void useRules(RiskRule... rules) {
+        List<CompiledRiskRule> compiled = new ArrayList<>();
+        for (RiskRule rule : rules) compiled.add(CompiledRiskRule.compile(rule, objectMapper));
+        lenient().when(ruleService.index()).thenReturn(new RiskRuleIndex(compiled));
+    }
+
+    private static RiskRule rule(UUID tenantId, UUID orgId, String code, String kind, String definition, boolean enabled) {
+        RiskRule rule = new RiskRule();
+        rule.setId(UUID.randomUUID());
+        rule.setTenantId(tenantId);
+        rule.setOrgId(orgId);
+        rule.setCode(code);
+        rule.setKind(kind);
+        rule.setSeverity("HIGH");
+        rule.setEnabled(enabled);
+        rule.setDefinition(definition);
+        return rule;
+    }
+
+    private static UsbEvent usb(long tsMs) {
+        UsbEvent usb = new UsbEvent();
+        usb.setId(UUID.randomUUID());
+        usb.setTsMs(tsMs);
+        usb.setAction("INSERT");
+        usb.setDriveLetter("E:");
+        return usb;
+    }
+
+    private static FileEvent file(long tsMs, String operation, boolean external) {
+        FileEvent file = new FileEvent();
+        file.setId(UUID.randomUUID());
+        file.setTsMs(tsMs);
+        file.setOperation(operation);
+        file.setIsExternal(external);
+        file.setIsUsb(false);
+        return file;
+    }
+}
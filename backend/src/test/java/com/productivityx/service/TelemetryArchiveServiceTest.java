@@ -0,0 +1,173 @@
+package com.productivityx.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.productivityx.model.telemetry.TelemetryArchive;
+import com.productivityx.repository.RetentionPolicyRepository;
+import com.productivityx.repository.telemetry.RawTelemetryRepository;
+import com.productivityx.repository.telemetry.TelemetryArchiveRepository;
+import com.productivityx.repository.telemetry.TelemetryPartition;
+import com.productivityx.repository.telemetry.TelemetryPartitionRepository;
+import com.productivityx.util.ColumnarFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TelemetryArchiveServiceTest {
+
+    private static final List<ColumnarFile.Column> COLUMNS = List.of(
+            new ColumnarFile.Column("id", ColumnarFile.Type.UUID),
+            new ColumnarFile.Column("device_id", ColumnarFile.Type.STRING),
+            new ColumnarFile.Column("ts", ColumnarFile.Type.TIMESTAMP));
+
+    @Mock private TelemetryPartitionRepository partitionRepository;
+    @Mock private RawTelemetryRepository rawRepository;
+    @Mock private TelemetryArchiveRepository archiveRepository;
+    @Mock private RetentionPolicyRepository policyRepository;
+    @Mock private PlatformTransactionManager transactionManager;
+    @Captor private ArgumentCaptor<List<TelemetryArchive>> saved;
+
+    @TempDir Path archiveDir;
+
+    private TelemetryArchiveService service;
+    private final UUID tenantId = UUID.randomUUID();
+    private final TelemetryPartition table =
+            new TelemetryPartition("file_events", "ts", false, "WEEK", LocalDateTime.of(2020, 1, 13, 0, 0));
+
+    @BeforeEach
+    void setUp() {
+        service = new TelemetryArchiveService(partitionRepository, rawRepository, archiveRepository, policyRepository,
+                transactionManager, new ObjectMapper());
+        ReflectionTestUtils.setField(service, "hotDays", 90);
+        ReflectionTestUtils.setField(service, "archiveDir", archiveDir.toString());
+        ReflectionTestUtils.setField(service, "rowGroupSize", 2);
+        ReflectionTestUtils.setField(service, "compressionLevel", 3);
+        service.start();
+    }
+
+    @Test
+    void archiveAgedPartitions_KeepsPartitionWhenRowsChangedDuringExport() throws Exception {
+        when(partitionRepository.findAll()).thenReturn(List.of(table));
+        when(partitionRepository.findPartitionNames("file_events"))
+                .thenReturn(List.of("file_events_default", "file_events_p20200106"));
+        when(rawRepository.findTenants("file_events_p20200106")).thenReturn(List.of(tenantId));
+        streamRows("file_events_p20200106", Instant.parse("2020-01-06T10:00:00Z"));
+        when(partitionRepository.lockAndCount("file_events_p20200106")).thenReturn(2L);
+
+        service.archiveAgedPartitions();
+
+        verify(partitionRepository, never()).dropPartition(any(), any());
+        verify(archiveRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void archiveAgedPartitions_LegacyPartitionEndsWhereTheFirstDatedOneStarts() throws Exception {
+        when(partitionRepository.findAll()).thenReturn(List.of(table));
+        when(partitionRepository.findPartitionNames("file_events"))
+                .thenReturn(List.of("file_events_default", "file_events_legacy", "file_events_p20200106"));
+        when(rawRepository.findTenants(any())).thenReturn(List.of(tenantId));
+        streamRows("file_events_legacy", Instant.parse("2019-12-31T10:00:00Z"));
+        streamRows("file_events_p20200106", Instant.parse("2020-01-06T10:00:00Z"));
+        when(partitionRepository.lockAndCount(any())).thenReturn(1L);
+
+        service.archiveAgedPartitions();
+
+        verify(archiveRepository, times(2)).saveAll(saved.capture());
+        TelemetryArchive legacy = saved.getAllValues().get(0).get(0);
+        assertEquals("file_events_legacy", legacy.getPartitionName());
+        assertEquals(LocalDateTime.of(1970, 1, 1, 0, 0), legacy.getRangeStart());
+        assertEquals(LocalDateTime.of(2020, 1, 6, 0, 0), legacy.getRangeEnd());
+        TelemetryArchive dated = saved.getAllValues().get(1).get(0);
+        assertEquals(LocalDateTime.of(2020, 1, 6, 0, 0), dated.getRangeStart());
+        assertEquals(LocalDateTime.of(2020, 1, 13, 0, 0), dated.getRangeEnd());
+        verify(partitionRepository).dropPartition("file_events", "file_events_legacy");
+        verify(partitionRepository).dropPartition("file_events", "file_events_p20200106");
+    }
+
+    @Test
+    void archiveAgedPartitions_LegacyPartitionAloneEndsAtCoveredUntil() throws Exception {
+        when(partitionRepository.findAll()).thenReturn(List.of(table));
+        when(partitionRepository.findPartitionNames("file_events"))
+                .thenReturn(List.of("file_events_default", "file_events_legacy"));
+        when(rawRepository.findTenants("file_events_legacy")).thenReturn(List.of(tenantId));
+        streamRows("file_events_legacy", Instant.parse("2019-12-31T10:00:00Z"));
+        when(partitionRepository.lockAndCount("file_events_legacy")).thenReturn(1L);
+
+        service.archiveAgedPartitions();
+
+        verify(archiveRepository).saveAll(saved.capture());
+        assertEquals(table.getCoveredUntil(), saved.getValue().get(0).getRangeEnd());
+    }
+
+    @Test
+    void readEvents_MergesArchivesAndPostgresInTimeOrderUpToLimit() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2020, 1, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2020, 2, 1, 0, 0);
+        TelemetryArchive first = archive("first.pxc", Instant.parse("2020-01-06T10:00:00Z"), Instant.parse("2020-01-08T10:00:00Z"));
+        TelemetryArchive second = archive("second.pxc", Instant.parse("2020-01-14T10:00:00Z"));
+        when(partitionRepository.findAll()).thenReturn(List.of(table));
+        when(archiveRepository.findByTenantIdAndTableNameAndRangeStartLessThanAndRangeEndGreaterThanOrderByRangeStartAsc(
+                tenantId, "file_events", to, from)).thenReturn(List.of(first, second));
+        // A late row of an archived week, kept in the default partition
+        when(rawRepository.findRows(table, tenantId, null, from, to, 3))
+                .thenReturn(List.of(row(Instant.parse("2020-01-07T10:00:00Z")), row(Instant.parse("2020-01-20T10:00:00Z"))));
+
+        List<Map<String, Object>> rows = service.readEvents(tenantId, "file_events", null, from, to, 3);
+
+        assertEquals(List.of(Instant.parse("2020-01-06T10:00:00Z"), Instant.parse("2020-01-07T10:00:00Z"),
+                Instant.parse("2020-01-08T10:00:00Z")), rows.stream().map(r -> r.get("ts")).toList());
+    }
+
+    private void streamRows(String partition, Instant ts) throws Exception {
+        doAnswer(invocation -> {
+            RawTelemetryRepository.RowSink sink = invocation.getArgument(2);
+            sink.columns(COLUMNS);
+            sink.row(new Object[]{UUID.randomUUID(), "dev-1", ts});
+            return null;
+        }).when(rawRepository).streamPartition(eq(partition), eq(tenantId), any());
+    }
+
+    private TelemetryArchive archive(String name, Instant... times) throws Exception {
+        try (OutputStream out = Files.newOutputStream(archiveDir.resolve(name));
+             ColumnarFile.Writer writer = new ColumnarFile.Writer(out, COLUMNS, 2, 3, "ts")) {
+            for (Instant ts : times) {
+                writer.write(new Object[]{UUID.randomUUID(), "dev-1", ts});
+            }
+        }
+        TelemetryArchive archive = new TelemetryArchive();
+        archive.setTenantId(tenantId);
+        archive.setTableName("file_events");
+        archive.setRangeStart(LocalDateTime.ofInstant(times[0], ZoneOffset.UTC));
+        archive.setFilePath(name);
+        return archive;
+    }
+
+    private static Map<String, Object> row(Instant ts) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", UUID.randomUUID());
+        row.put("device_id", "dev-1");
+        row.put("ts", ts);
+        return row;
+    }
+}
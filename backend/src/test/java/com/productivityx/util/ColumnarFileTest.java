@@ -0,0 +1,89 @@
+package com.productivityx.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarFileTest {
+
+    private static final List<ColumnarFile.Column> COLUMNS = List.of(
+            new ColumnarFile.Column("id", ColumnarFile.Type.UUID),
+            new ColumnarFile.Column("device_id", ColumnarFile.Type.STRING),
+            new ColumnarFile.Column("ts", ColumnarFile.Type.TIMESTAMP),
+            new ColumnarFile.Column("size_bytes", ColumnarFile.Type.LONG),
+            new ColumnarFile.Column("is_usb", ColumnarFile.Type.BOOLEAN));
+
+    @Test
+    void roundTripsRowsAcrossRowGroups(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("file_events.pxc");
+        List<Object[]> written = new ArrayList<>();
+        try (OutputStream out = Files.newOutputStream(file);
+             ColumnarFile.Writer writer = new ColumnarFile.Writer(out, COLUMNS, 4, 3)) {
+            for (int i = 0; i < 10; i++) {
+                Object[] row = {UUID.randomUUID(), "dev-" + (i % 3), Instant.parse("2024-03-01T10:00:00.123456Z").plusSeconds(i),
+                        i % 4 == 0 ? null : (long) i * 1024, i % 2 == 0};
+                writer.write(row);
+                written.add(row);
+            }
+        }
+
+        List<Object[]> read = new ArrayList<>();
+        try (ColumnarFile.Reader reader = new ColumnarFile.Reader(file)) {
+            assertEquals(COLUMNS, reader.getColumns());
+            assertEquals(10, reader.getRows());
+            reader.forEach(read::add);
+        }
+
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertArrayEquals(written.get(i), read.get(i));
+        }
+    }
+
+    @Test
+    void keepsRangeColumnBoundsPerRowGroup(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("file_events.pxc");
+        Instant base = Instant.parse("2024-03-01T10:00:00Z");
+        try (OutputStream out = Files.newOutputStream(file);
+             ColumnarFile.Writer writer = new ColumnarFile.Writer(out, COLUMNS, 4, 3, "ts")) {
+            for (int i = 0; i < 6; i++) {
+                writer.write(new Object[]{UUID.randomUUID(), "dev-1", base.plusSeconds(10 - i), null, false});
+            }
+        }
+
+        try (ColumnarFile.Reader reader = new ColumnarFile.Reader(file)) {
+            assertEquals("ts", reader.getRangeColumn());
+            List<ColumnarFile.RowGroup> groups = reader.getRowGroups();
+            assertEquals(2, groups.size());
+            assertEquals(base.plusSeconds(7).toEpochMilli(), groups.get(0).min());
+            assertEquals(base.plusSeconds(10).toEpochMilli(), groups.get(0).max());
+            assertFalse(groups.get(1).overlaps(base.plusSeconds(7).toEpochMilli(), base.plusSeconds(20).toEpochMilli()));
+            assertTrue(groups.get(1).overlaps(base.toEpochMilli(), base.plusSeconds(6).toEpochMilli()));
+
+            List<Object[]> read = new ArrayList<>();
+            reader.read(groups.get(1), read::add);
+            assertEquals(2, read.size());
+        }
+    }
+
+    @Test
+    void readsEmptyFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("empty.pxc");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            new ColumnarFile.Writer(out, COLUMNS, 4, 3).close();
+        }
+
+        try (ColumnarFile.Reader reader = new ColumnarFile.Reader(file)) {
+            assertEquals(0, reader.getRows());
+        }
+    }
+}
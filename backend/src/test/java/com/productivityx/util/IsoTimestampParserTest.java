@@ -0,0 +1,47 @@
+package com.productivityx.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IsoTimestampParserTest {
+
+    @Test
+    void parsesZuluOffsetAndLocalFormsToUtc() {
+        assertEquals(LocalDateTime.of(2023, 10, 27, 10, 0), IsoTimestampParser.parseUtc("2023-10-27T10:00:00Z"));
+        assertEquals(LocalDateTime.of(2023, 10, 27, 8, 0), IsoTimestampParser.parseUtc("2023-10-27T10:00:00+02:00"));
+        assertEquals(LocalDateTime.of(2023, 10, 27, 15, 30), IsoTimestampParser.parseUtc("2023-10-27T10:00-0530"));
+        assertEquals(LocalDateTime.of(2023, 10, 27, 10, 0, 0, 123_000_000), IsoTimestampParser.parseUtc("2023-10-27T10:00:00.123456"));
+        assertEquals(LocalDateTime.of(2024, 2, 29, 23, 59, 59), IsoTimestampParser.parseUtc("2024-02-29 23:59:59"));
+    }
+
+    @Test
+    void agreesWithJavaTime() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long millis = (random.nextLong() >>> 22) - 1_000_000_000_000L;
+            Instant instant = Instant.ofEpochMilli(millis);
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds((random.nextInt(49) - 24) * 1800);
+
+            assertEquals(millis, IsoTimestampParser.parseEpochMillis(instant.toString()));
+            assertEquals(millis, IsoTimestampParser.parseEpochMillis(OffsetDateTime.ofInstant(instant, offset).toString()));
+            assertEquals(millis, IsoTimestampParser.parseEpochMillis(LocalDateTime.ofInstant(instant, ZoneOffset.UTC).toString()));
+        }
+    }
+
+    @Test
+    void rejectsMalformedValuesWithoutThrowing() {
+        for (String value : new String[]{null, "", "garbage", "2023-10-27", "2023-02-29T10:00:00Z", "2023-13-01T10:00Z",
+                "2023-10-27T24:00:00Z", "2023-10-27T10:60Z", "2023-10-27T10:00:00.Z", "2023-10-27T10:00:00Zjunk",
+                "2023-10-27T10:00:00+1", "27/10/2023 10:00"}) {
+            assertEquals(IsoTimestampParser.INVALID, IsoTimestampParser.parseEpochMillis(value), String.valueOf(value));
+            assertNull(IsoTimestampParser.parseUtc(value));
+        }
+    }
+}
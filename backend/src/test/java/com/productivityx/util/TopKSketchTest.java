@@ -0,0 +1,64 @@
+package com.productivityx.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopKSketchTest {
+
+    @Test
+    void top_IsExactWhileUnderCapacity() {
+        TopKSketch sketch = new TopKSketch(4);
+        sketch.add("teams", 100);
+        sketch.add("idea", 300);
+        sketch.add("teams", 250);
+        sketch.add("chrome", 50);
+
+        List<TopKSketch.Item> top = sketch.top(2);
+
+        assertEquals(2, top.size());
+        assertEquals("teams", top.get(0).getKey());
+        assertEquals(350, top.get(0).getWeight());
+        assertEquals(0, top.get(0).getError());
+        assertEquals("idea", top.get(1).getKey());
+    }
+
+    @Test
+    void add_EvictsLightestKeyAndBoundsError() {
+        TopKSketch sketch = new TopKSketch(2);
+        sketch.add("a", 500);
+        sketch.add("b", 10);
+        sketch.add("c", 20); // replaces b: weight 10 + 20, error 10
+
+        List<TopKSketch.Item> top = sketch.top(5);
+
+        assertEquals(2, top.size());
+        assertEquals("a", top.get(0).getKey());
+        assertEquals("c", top.get(1).getKey());
+        assertEquals(30, top.get(1).getWeight());
+        assertEquals(10, top.get(1).getError());
+    }
+
+    @Test
+    void heavyHitterSurvivesManyLightKeys() {
+        TopKSketch sketch = new TopKSketch(16);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("domain-" + i, 1);
+            if (i % 10 == 0) sketch.add("github.com", 60);
+        }
+
+        assertEquals("github.com", sketch.top(1).get(0).getKey());
+    }
+
+    @Test
+    void add_IgnoresNullKeysAndNonPositiveWeights() {
+        TopKSketch sketch = new TopKSketch(4);
+        sketch.add(null, 10);
+        sketch.add("x", 0);
+        sketch.add("y", -5);
+
+        assertTrue(sketch.isEmpty());
+    }
+}